@@ -0,0 +1,141 @@
+package com.github.daemontus.ar.libgdx;
+
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Flat, GL independent description of a model as stored by {@link MeshCache}.
+ *
+ * Vertex and index data are kept in buffers, so a model read from the cache can point straight
+ * into the memory mapped file.
+ */
+public class CachedModel {
+
+    public static class MeshData {
+
+        private static final int GL_BYTE = 0x1400;
+        private static final int GL_UNSIGNED_BYTE = 0x1401;
+        private static final int GL_FLOAT = 0x1406;
+
+        //one entry per vertex attribute
+        public int[] usage;
+        public int[] numComponents;
+        public int[] type;
+        public boolean[] normalized;
+        public int[] unit;
+        public String[] alias;
+
+        //interleaved vertices and (possibly empty) indices
+        public FloatBuffer vertices;
+        public ShortBuffer indices;
+
+        //floats per interleaved vertex
+        public int stride() {
+            int stride = 0;
+            for (int a = 0; a < usage.length; a++) {
+                stride += floats(numComponents[a], type[a]);
+            }
+            return stride;
+        }
+
+        //offset in floats of the first attribute with the given usage, -1 if the mesh has none
+        public int offset(int attributeUsage) {
+            int offset = 0;
+            for (int a = 0; a < usage.length; a++) {
+                if (usage[a] == attributeUsage) return offset;
+                offset += floats(numComponents[a], type[a]);
+            }
+            return -1;
+        }
+
+        //copies of the whole vertex and index buffers, their positions are left alone
+        public float[] readVertices() {
+            FloatBuffer view = vertices.duplicate();
+            view.rewind();
+            float[] values = new float[view.remaining()];
+            view.get(values);
+            return values;
+        }
+
+        public short[] readIndices() {
+            ShortBuffer view = indices.duplicate();
+            view.rewind();
+            short[] values = new short[view.remaining()];
+            view.get(values);
+            return values;
+        }
+
+        private static int floats(int components, int type) {
+            int bytes;
+            if (type == GL_UNSIGNED_BYTE || type == GL_BYTE) {
+                bytes = components;
+            } else if (type == GL_FLOAT || type == 0) {
+                bytes = components * 4;
+            } else {
+                bytes = components * 2;
+            }
+            return (bytes + 3) / 4;
+        }
+    }
+
+    public static class PartData {
+        public String id;
+        public int mesh;
+        public int primitiveType;
+        public int offset;
+        public int size;
+    }
+
+    public static class MaterialData {
+
+        public static final int DIFFUSE = 1;
+        public static final int SPECULAR = 1 << 1;
+        public static final int AMBIENT = 1 << 2;
+        public static final int EMISSIVE = 1 << 3;
+        public static final int SHININESS = 1 << 4;
+        public static final int BLENDING = 1 << 5;
+        public static final int DIFFUSE_TEXTURE = 1 << 6;
+
+        public String id;
+        //which of the values below are present
+        public int flags;
+        public final float[] diffuse = new float[4];
+        public final float[] specular = new float[4];
+        public final float[] ambient = new float[4];
+        public final float[] emissive = new float[4];
+        public float shininess;
+        public float opacity = 1f;
+        //texture file path and its GL filter/wrap settings
+        public String texture = "";
+        public int minFilter;
+        public int magFilter;
+        public int uWrap;
+        public int vWrap;
+
+        public boolean has(int flag) {
+            return (flags & flag) != 0;
+        }
+    }
+
+    public static class NodeData {
+        public String id;
+        //index of the parent node or -1, parents always precede their children
+        public int parent = -1;
+        //translation (3), rotation quaternion (4) and scale (3)
+        public final float[] transform = new float[10];
+        //indices into parts and materials, one pair per node part
+        public int[] parts = new int[0];
+        public int[] materials = new int[0];
+    }
+
+    public final List<MeshData> meshes = new ArrayList<MeshData>();
+    public final List<PartData> parts = new ArrayList<PartData>();
+    public final List<MaterialData> materials = new ArrayList<MaterialData>();
+    public final List<NodeData> nodes = new ArrayList<NodeData>();
+
+    //how long the original asset took to load, reported next to the cached load time
+    public long sourceLoadMillis;
+
+}
@@ -0,0 +1,357 @@
+package com.github.daemontus.ar.libgdx;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.TextureData;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.graphics.g3d.Material;
+import com.badlogic.gdx.graphics.g3d.Model;
+import com.badlogic.gdx.graphics.g3d.attributes.BlendingAttribute;
+import com.badlogic.gdx.graphics.g3d.attributes.ColorAttribute;
+import com.badlogic.gdx.graphics.g3d.attributes.FloatAttribute;
+import com.badlogic.gdx.graphics.g3d.attributes.TextureAttribute;
+import com.badlogic.gdx.graphics.g3d.model.MeshPart;
+import com.badlogic.gdx.graphics.g3d.model.Node;
+import com.badlogic.gdx.graphics.g3d.model.NodePart;
+import com.badlogic.gdx.graphics.g3d.utils.TextureDescriptor;
+import com.badlogic.gdx.graphics.glutils.FileTextureData;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectIntMap;
+import com.badlogic.gdx.utils.ObjectMap;
+
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Converts between libgdx models and their {@link CachedModel} representation.
+ *
+ * Only static geometry is supported: meshes, mesh parts, node hierarchy and basic materials
+ * (colors, shininess, blending and diffuse texture). Animations and bones are dropped.
+ * Both directions have to be called on the GL thread.
+ */
+public class CachedModelLoader {
+
+    private CachedModelLoader() {
+    }
+
+    /**
+     * Copies geometry and metadata of a loaded model. The result does not reference the model.
+     */
+    public static CachedModel snapshot(Model model, long sourceLoadMillis) {
+        CachedModel cached = new CachedModel();
+        cached.sourceLoadMillis = sourceLoadMillis;
+
+        ObjectIntMap<Mesh> meshIndex = new ObjectIntMap<Mesh>();
+        for (Mesh mesh : model.meshes) {
+            meshIndex.put(mesh, cached.meshes.size());
+            cached.meshes.add(snapshot(mesh));
+        }
+
+        ObjectIntMap<MeshPart> partIndex = new ObjectIntMap<MeshPart>();
+        for (MeshPart part : model.meshParts) {
+            CachedModel.PartData data = new CachedModel.PartData();
+            data.id = part.id;
+            data.mesh = meshIndex.get(part.mesh, -1);
+            data.primitiveType = part.primitiveType;
+            data.offset = part.offset;
+            data.size = part.size;
+            partIndex.put(part, cached.parts.size());
+            cached.parts.add(data);
+        }
+
+        ObjectIntMap<Material> materialIndex = new ObjectIntMap<Material>();
+        for (Material material : model.materials) {
+            materialIndex.put(material, cached.materials.size());
+            cached.materials.add(snapshot(material));
+        }
+
+        for (Node node : model.nodes) {
+            snapshot(node, -1, cached, partIndex, materialIndex);
+        }
+        return cached;
+    }
+
+    /**
+     * Creates a model from cached data, uploading vertex and index buffers straight to the GPU.
+     * Textures are loaded from internal files and owned by the returned model.
+     */
+    public static Model load(CachedModel cached) {
+        return load(cached, null);
+    }
+
+    /**
+     * Like {@link #load(CachedModel)}, but uses the materials (and textures) of another model
+     * created from the same data, e.g. for levels of detail. That model keeps owning them.
+     */
+    public static Model load(CachedModel cached, Model shareMaterials) {
+        return load(cached, shareMaterials, false);
+    }
+
+    /**
+     * Like {@link #load(CachedModel)}, with the option to upload meshes in the compact layout of
+     * {@link VertexQuantizer}. Quantized meshes need a {@link QuantizedShaderProvider} in the batch.
+     */
+    public static Model load(CachedModel cached, boolean quantize) {
+        return load(cached, null, quantize);
+    }
+
+    /**
+     * Like {@link #load(CachedModel, Model)}, with the option to quantize vertices.
+     */
+    public static Model load(CachedModel cached, Model shareMaterials, boolean quantize) {
+        Model model = new Model();
+
+        for (CachedModel.MeshData data : cached.meshes) {
+            Mesh mesh = quantize ? loadQuantized(data) : load(data);
+            model.meshes.add(mesh);
+            model.manageDisposable(mesh);
+        }
+
+        for (CachedModel.PartData data : cached.parts) {
+            MeshPart part = new MeshPart(data.id, model.meshes.get(data.mesh),
+                    data.offset, data.size, data.primitiveType);
+            part.update();
+            model.meshParts.add(part);
+        }
+
+        if (shareMaterials != null) {
+            model.materials.addAll(shareMaterials.materials);
+        } else {
+            ObjectMap<String, Texture> textures = new ObjectMap<String, Texture>();
+            for (CachedModel.MaterialData data : cached.materials) {
+                model.materials.add(load(data, model, textures));
+            }
+        }
+
+        Array<Node> nodes = new Array<Node>(cached.nodes.size());
+        for (CachedModel.NodeData data : cached.nodes) {
+            Node node = new Node();
+            node.id = data.id;
+            float[] t = data.transform;
+            node.translation.set(t[0], t[1], t[2]);
+            node.rotation.set(t[3], t[4], t[5], t[6]);
+            node.scale.set(t[7], t[8], t[9]);
+            for (int p = 0; p < data.parts.length; p++) {
+                //parts not listed in the model could not be stored
+                if (data.parts[p] < 0 || data.materials[p] < 0) continue;
+                node.parts.add(new NodePart(model.meshParts.get(data.parts[p]), model.materials.get(data.materials[p])));
+            }
+            nodes.add(node);
+            if (data.parent < 0) {
+                model.nodes.add(node);
+            } else {
+                nodes.get(data.parent).addChild(node);
+            }
+        }
+
+        model.calculateTransforms();
+        return model;
+    }
+
+    private static CachedModel.MeshData snapshot(Mesh mesh) {
+        CachedModel.MeshData data = new CachedModel.MeshData();
+        VertexAttributes attributes = mesh.getVertexAttributes();
+        int count = attributes.size();
+        data.usage = new int[count];
+        data.numComponents = new int[count];
+        data.type = new int[count];
+        data.normalized = new boolean[count];
+        data.unit = new int[count];
+        data.alias = new String[count];
+        for (int a = 0; a < count; a++) {
+            VertexAttribute attribute = attributes.get(a);
+            data.usage[a] = attribute.usage;
+            data.numComponents[a] = attribute.numComponents;
+            data.type[a] = attribute.type;
+            data.normalized[a] = attribute.normalized;
+            data.unit[a] = attribute.unit;
+            data.alias[a] = attribute.alias;
+        }
+
+        float[] vertices = new float[mesh.getNumVertices() * attributes.vertexSize / 4];
+        mesh.getVertices(vertices);
+        data.vertices = FloatBuffer.wrap(vertices);
+        short[] indices = new short[mesh.getNumIndices()];
+        mesh.getIndices(indices);
+        data.indices = ShortBuffer.wrap(indices);
+        return data;
+    }
+
+    private static Mesh load(CachedModel.MeshData data) {
+        VertexAttributes layout = layout(data);
+        FloatBuffer vertices = data.vertices.duplicate();
+        vertices.rewind();
+        ShortBuffer indices = data.indices.duplicate();
+        indices.rewind();
+        Mesh mesh = new Mesh(true, vertices.remaining() * 4 / layout.vertexSize, indices.remaining(), layout);
+        return fill(mesh, vertices, indices);
+    }
+
+    //falls back to float vertices for meshes the quantizer can not handle
+    private static Mesh loadQuantized(CachedModel.MeshData data) {
+        VertexQuantizer.Result result = VertexQuantizer.quantize(data);
+        if (result == null) return load(data);
+        VertexAttributes layout = layout(result.mesh);
+        FloatBuffer vertices = result.mesh.vertices.duplicate();
+        vertices.rewind();
+        ShortBuffer indices = result.mesh.indices.duplicate();
+        indices.rewind();
+        Mesh mesh = new QuantizedMesh(vertices.remaining() * 4 / layout.vertexSize, indices.remaining(), layout,
+                result.format, result.decode);
+        return fill(mesh, vertices, indices);
+    }
+
+    private static VertexAttributes layout(CachedModel.MeshData data) {
+        VertexAttribute[] attributes = new VertexAttribute[data.usage.length];
+        for (int a = 0; a < attributes.length; a++) {
+            //type and normalization follow from the usage in this libgdx version
+            attributes[a] = new VertexAttribute(data.usage[a], data.numComponents[a], data.alias[a], data.unit[a]);
+        }
+        return new VertexAttributes(attributes);
+    }
+
+    private static Mesh fill(Mesh mesh, FloatBuffer vertices, ShortBuffer indices) {
+        //bulk copy from the mapped file, the buffers are marked dirty and uploaded on first bind
+        FloatBuffer target = mesh.getVerticesBuffer();
+        target.clear();
+        target.put(vertices);
+        target.flip();
+        ShortBuffer targetIndices = mesh.getIndicesBuffer();
+        targetIndices.clear();
+        targetIndices.put(indices);
+        targetIndices.flip();
+        return mesh;
+    }
+
+    private static CachedModel.MaterialData snapshot(Material material) {
+        CachedModel.MaterialData data = new CachedModel.MaterialData();
+        data.id = material.id;
+        snapshotColor(material, ColorAttribute.Diffuse, CachedModel.MaterialData.DIFFUSE, data.diffuse, data);
+        snapshotColor(material, ColorAttribute.Specular, CachedModel.MaterialData.SPECULAR, data.specular, data);
+        snapshotColor(material, ColorAttribute.Ambient, CachedModel.MaterialData.AMBIENT, data.ambient, data);
+        snapshotColor(material, ColorAttribute.Emissive, CachedModel.MaterialData.EMISSIVE, data.emissive, data);
+
+        FloatAttribute shininess = (FloatAttribute) material.get(FloatAttribute.Shininess);
+        if (shininess != null) {
+            data.flags |= CachedModel.MaterialData.SHININESS;
+            data.shininess = shininess.value;
+        }
+        BlendingAttribute blending = (BlendingAttribute) material.get(BlendingAttribute.Type);
+        if (blending != null) {
+            data.flags |= CachedModel.MaterialData.BLENDING;
+            data.opacity = blending.opacity;
+        }
+        TextureAttribute texture = (TextureAttribute) material.get(TextureAttribute.Diffuse);
+        if (texture != null && texture.textureDescription.texture != null) {
+            TextureData textureData = texture.textureDescription.texture.getTextureData();
+            //only file backed textures can be restored
+            if (textureData instanceof FileTextureData) {
+                TextureDescriptor<Texture> descriptor = texture.textureDescription;
+                data.flags |= CachedModel.MaterialData.DIFFUSE_TEXTURE;
+                data.texture = ((FileTextureData) textureData).getFileHandle().path();
+                data.minFilter = descriptor.minFilter == null ? 0 : descriptor.minFilter.getGLEnum();
+                data.magFilter = descriptor.magFilter == null ? 0 : descriptor.magFilter.getGLEnum();
+                data.uWrap = descriptor.uWrap == null ? 0 : descriptor.uWrap.getGLEnum();
+                data.vWrap = descriptor.vWrap == null ? 0 : descriptor.vWrap.getGLEnum();
+            }
+        }
+        return data;
+    }
+
+    private static void snapshotColor(Material material, long type, int flag, float[] out, CachedModel.MaterialData data) {
+        ColorAttribute attribute = (ColorAttribute) material.get(type);
+        if (attribute != null) {
+            data.flags |= flag;
+            Color c = attribute.color;
+            out[0] = c.r;
+            out[1] = c.g;
+            out[2] = c.b;
+            out[3] = c.a;
+        }
+    }
+
+    private static Material load(CachedModel.MaterialData data, Model model, ObjectMap<String, Texture> textures) {
+        Material material = new Material(data.id);
+        if (data.has(CachedModel.MaterialData.DIFFUSE)) {
+            material.set(new ColorAttribute(ColorAttribute.Diffuse, data.diffuse[0], data.diffuse[1], data.diffuse[2], data.diffuse[3]));
+        }
+        if (data.has(CachedModel.MaterialData.SPECULAR)) {
+            material.set(new ColorAttribute(ColorAttribute.Specular, data.specular[0], data.specular[1], data.specular[2], data.specular[3]));
+        }
+        if (data.has(CachedModel.MaterialData.AMBIENT)) {
+            material.set(new ColorAttribute(ColorAttribute.Ambient, data.ambient[0], data.ambient[1], data.ambient[2], data.ambient[3]));
+        }
+        if (data.has(CachedModel.MaterialData.EMISSIVE)) {
+            material.set(new ColorAttribute(ColorAttribute.Emissive, data.emissive[0], data.emissive[1], data.emissive[2], data.emissive[3]));
+        }
+        if (data.has(CachedModel.MaterialData.SHININESS)) {
+            material.set(new FloatAttribute(FloatAttribute.Shininess, data.shininess));
+        }
+        if (data.has(CachedModel.MaterialData.BLENDING)) {
+            material.set(new BlendingAttribute(data.opacity));
+        }
+        if (data.has(CachedModel.MaterialData.DIFFUSE_TEXTURE)) {
+            Texture texture = textures.get(data.texture);
+            if (texture == null) {
+                texture = new Texture(Gdx.files.internal(data.texture), true);
+                textures.put(data.texture, texture);
+                model.manageDisposable(texture);
+            }
+            TextureDescriptor<Texture> descriptor = new TextureDescriptor<Texture>(texture);
+            descriptor.minFilter = filter(data.minFilter);
+            descriptor.magFilter = filter(data.magFilter);
+            descriptor.uWrap = wrap(data.uWrap);
+            descriptor.vWrap = wrap(data.vWrap);
+            material.set(new TextureAttribute(TextureAttribute.Diffuse, descriptor));
+        }
+        return material;
+    }
+
+    private static void snapshot(Node node, int parent, CachedModel cached,
+                                 ObjectIntMap<MeshPart> partIndex, ObjectIntMap<Material> materialIndex) {
+        CachedModel.NodeData data = new CachedModel.NodeData();
+        data.id = node.id;
+        data.parent = parent;
+        float[] t = data.transform;
+        t[0] = node.translation.x;
+        t[1] = node.translation.y;
+        t[2] = node.translation.z;
+        t[3] = node.rotation.x;
+        t[4] = node.rotation.y;
+        t[5] = node.rotation.z;
+        t[6] = node.rotation.w;
+        t[7] = node.scale.x;
+        t[8] = node.scale.y;
+        t[9] = node.scale.z;
+        data.parts = new int[node.parts.size];
+        data.materials = new int[node.parts.size];
+        for (int p = 0; p < node.parts.size; p++) {
+            NodePart part = node.parts.get(p);
+            data.parts[p] = partIndex.get(part.meshPart, -1);
+            data.materials[p] = materialIndex.get(part.material, -1);
+        }
+
+        int index = cached.nodes.size();
+        cached.nodes.add(data);
+        for (Node child : node.getChildren()) {
+            snapshot(child, index, cached, partIndex, materialIndex);
+        }
+    }
+
+    private static Texture.TextureFilter filter(int glEnum) {
+        for (Texture.TextureFilter filter : Texture.TextureFilter.values()) {
+            if (filter.getGLEnum() == glEnum) return filter;
+        }
+        return null;
+    }
+
+    private static Texture.TextureWrap wrap(int glEnum) {
+        for (Texture.TextureWrap wrap : Texture.TextureWrap.values()) {
+            if (wrap.getGLEnum() == glEnum) return wrap;
+        }
+        return null;
+    }
+}
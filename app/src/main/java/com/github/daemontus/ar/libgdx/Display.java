@@ -1,42 +1,230 @@
 package com.github.daemontus.ar.libgdx;
 
+import android.util.Log;
+
+import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.Screen;
 import com.badlogic.gdx.assets.AssetManager;
-import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.GL20;
-import com.badlogic.gdx.graphics.Mesh;
 import com.badlogic.gdx.graphics.VertexAttributes;
 import com.badlogic.gdx.graphics.g3d.Material;
 import com.badlogic.gdx.graphics.g3d.Model;
 import com.badlogic.gdx.graphics.g3d.ModelInstance;
-import com.badlogic.gdx.graphics.g3d.attributes.ColorAttribute;
-import com.badlogic.gdx.graphics.g3d.model.MeshPart;
 import com.badlogic.gdx.graphics.g3d.model.Node;
-import com.badlogic.gdx.graphics.g3d.utils.MeshBuilder;
 import com.badlogic.gdx.graphics.g3d.utils.MeshPartBuilder;
 import com.badlogic.gdx.graphics.g3d.utils.ModelBuilder;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.GdxRuntimeException;
 import com.github.daemontus.ar.vuforia.VuforiaRenderer;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
 /**
  * Screen implementation responsible for model loading and calling renderer properly.
+ *
+ * The model is loaded asynchronously, a lightweight placeholder is rendered until it arrives.
+ * After the first load the model is stored in a {@link MeshCache}, later launches map the cache
+ * file instead of parsing the asset. Reading the cache is done by a {@link ModelPreloader}, which
+ * usually runs as a start up stage before the display exists.
+ *
+ * Once the model is in, every target switches between coarser levels of detail by its size on
+ * screen (see {@link LodGroup}). The levels shipped with the cache are used when present, otherwise
+ * they are generated from the cached form of the model in the background.
+ *
+ * Background work (cache writing, level generation) runs on a single daemon worker thread which is
+ * stopped in dispose().
  */
 public class Display implements Screen {
 
+    private static final String LOG = "DISPLAY";
+
+    public static final String MODEL_FILE = "jet.g3db";
+    public static final String CACHE_FILE = "cache/jet.bin";
+
+    //time the asset manager may spend loading during each frame
+    private static final int LOAD_BUDGET_MILLIS = 8;
+
+    //grid resolution of the generated levels of detail, finest first (level 0 is the model)
+    private static final int[] LOD_CELLS = { 48, 16 };
+    //screen size (fraction of the viewport height) above which each level but the last is used
+    private static final float[] LOD_THRESHOLDS = { 0.3f, 0.1f };
+    private static final float LOD_HYSTERESIS = 0.15f;
+
+    //names of the image targets in StonesAndChips.xml
+    private static final String[] TARGETS = { "stones", "chips" };
+
     public ModelInstance modelInstance;
     public Model model;
 
+    public final TrackableRegistry registry = new TrackableRegistry();
+    public final Picker picker = new Picker();
+    //meshes uploaded again right after a context loss
+    public final GLRestoreManager restoreManager = new GLRestoreManager();
+
     private Renderer mRenderer;
 
-    public Display(VuforiaRenderer vuforiaRenderer) {
+    private final AssetManager assets;
+    private final Model placeholder;
+    private final ModelPreloader preloader;
+    private boolean loading = true;
+    private boolean waitingForPreload = true;
+
+    //hash of the source asset, null if it could not be read (cache disabled)
+    private byte[] sourceHash;
+    private long loadStart;
+    //model created from the cache, owned by this screen (asset manager owns the other one)
+    private Model cachedModel;
+
+    //model the levels of detail are generated for, their data (background thread) and models
+    private Model lodBase;
+    private volatile CachedModel[] lodData;
+    private final Array<Model> lodModels = new Array<Model>();
+
+    //cache writing and level generation, interrupted on dispose
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "DisplayWorker");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * @param preloader prepared elsewhere (e.g. by a start up stage), the display only polls it
+     */
+    public Display(VuforiaRenderer vuforiaRenderer, ModelPreloader preloader) {
 
         mRenderer = new Renderer(vuforiaRenderer);
 
-        AssetManager assets = new AssetManager();
-        assets.load("jet.g3db", Model.class);
-        assets.finishLoading();
+        assets = new AssetManager();
+        placeholder = createPlaceholder();
+        this.preloader = preloader;
+
+        loadStart = System.nanoTime();
+        setModel(placeholder);
+        checkPreload();
+    }
 
-        //model = assets.get("jet.g3db", Model.class);
+    //takes the cached model once the preloader is done, falls back to loading the asset
+    private void checkPreload() {
+        if (!preloader.isPrepared()) return;
+        waitingForPreload = false;
+        sourceHash = preloader.getSourceHash();
 
+        Model cached = preloader.takeModel();
+        if (cached == null) {
+            //only schedule loading, parsing runs in the background and GPU upload in render
+            assets.load(preloader.getModelFile(), Model.class);
+            return;
+        }
+
+        cachedModel = cached;
+        loading = false;
+        long warm = (System.nanoTime() - loadStart) / 1000000;
+        Log.d(LOG, "Model load: warm (cache) " + warm + " ms after display, prepare " + preloader.getPrepareMillis()
+                + " ms, cold (asset) " + preloader.getCached().sourceLoadMillis + " ms");
+        replacePlaceholder(cachedModel);
+        CachedModel[] shipped = preloader.getLods();
+        if (shipped != null && shipped.length == LOD_CELLS.length) {
+            //uploaded in render like the generated ones
+            lodBase = model;
+            lodData = shipped;
+        } else {
+            buildLods(preloader.getCached());
+        }
+    }
+
+    private void replacePlaceholder(Model model) {
+        setModel(model);
+        picker.forget(placeholder);
+        registry.invalidateBounds(placeholder);
+        restoreManager.unregister(placeholder);
+        placeholder.dispose();
+    }
+
+    //writes the cache in the background, the snapshot itself has to be taken on the GL thread
+    private void writeCache(final CachedModel cached) {
+        if (sourceHash == null) return;
+        final byte[] hash = sourceHash;
+        final File file = Gdx.files.local(preloader.getCacheFile()).file();
+        worker.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    //an interrupted write leaves only its temporary file behind
+                    MeshCache.write(file, hash, cached);
+                } catch (IOException e) {
+                    Log.w(LOG, "Unable to write model cache", e);
+                }
+            }
+        });
+    }
+
+    //simplifies the current model in the background, the levels are uploaded in render
+    private void buildLods(final CachedModel source) {
+        lodBase = model;
+        worker.execute(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                CachedModel[] levels = new CachedModel[LOD_CELLS.length];
+                StringBuilder triangles = new StringBuilder().append(LodGenerator.countTriangles(source));
+                for (int i = 0; i < levels.length; i++) {
+                    //the display is gone
+                    if (Thread.currentThread().isInterrupted()) return;
+                    levels[i] = LodGenerator.simplify(source, LOD_CELLS[i]);
+                    triangles.append(", ").append(LodGenerator.countTriangles(levels[i]));
+                }
+                Log.d(LOG, "Levels of detail generated in " + (System.nanoTime() - start) / 1000000
+                        + " ms, triangles " + triangles);
+                lodData = levels;
+            }
+        });
+    }
+
+    //GL thread, creates the level models and gives every target of the base model a LodGroup
+    private void createLods(CachedModel[] levels) {
+        lodData = null;
+        if (model != lodBase) return;
+        for (CachedModel level : levels) {
+            Model lodModel = CachedModelLoader.load(level, lodBase, preloader.isQuantizeVertices());
+            lodModels.add(lodModel);
+            restoreManager.register(lodModel);
+            mRenderer.warmUp(lodModel);
+        }
+        for (TrackableRegistry.Entry entry : registry.entries()) {
+            if (entry.instance == null || entry.instance.model != lodBase) continue;
+            ModelInstance[] instances = new ModelInstance[lodModels.size + 1];
+            instances[0] = entry.instance;
+            for (int i = 0; i < lodModels.size; i++) {
+                instances[i + 1] = new ModelInstance(lodModels.get(i));
+            }
+            entry.lod = new LodGroup(instances, LOD_THRESHOLDS, LOD_HYSTERESIS);
+        }
+    }
+
+    /**
+     * @return model loading progress from 0 to 1
+     */
+    public float getLoadProgress() {
+        if (waitingForPreload) return 0f;
+        return loading ? assets.getProgress() : 1f;
+    }
+
+    public Renderer getRenderer() {
+        return mRenderer;
+    }
+
+    public boolean isModelLoaded() {
+        return !loading;
+    }
+
+    private Model createPlaceholder() {
         ModelBuilder modelBuilder = new ModelBuilder();
         modelBuilder.begin();
         MeshPartBuilder meshBuilder;
@@ -47,27 +235,71 @@ public class Display implements Screen {
         meshBuilder = modelBuilder.part("part2", GL20.GL_TRIANGLES, VertexAttributes.Usage.Position | VertexAttributes.Usage.Normal, new Material());
         meshBuilder.box(10,10,10);
 
+        return modelBuilder.end();
+    }
 
-        Model model = modelBuilder.end();
-
-//        ModelBuilder modelBuilder = new ModelBuilder();
-//        model = modelBuilder.createBox(5f, 10f, 5f,
-//                new Material(ColorAttribute.createDiffuse(Color.GRAY)),
-//                VertexAttributes.Usage.Position | VertexAttributes.Usage.Normal);
+    //every target gets its own instance, so each can be placed by its own pose
+    private void setModel(Model model) {
+        this.model = model;
+        picker.prepare(model);
+        restoreManager.register(model);
+        mRenderer.warmUp(model);
 
         modelInstance = new ModelInstance(model);
+        registry.register(TARGETS[0], modelInstance);
+        for (int i = 1; i < TARGETS.length; i++) {
+            registry.register(TARGETS[i], new ModelInstance(model));
+        }
+    }
 
-
+    private void updateLoading() {
+        try {
+            if (assets.update(LOAD_BUDGET_MILLIS)) {
+                loading = false;
+                long cold = (System.nanoTime() - loadStart) / 1000000;
+                Log.d(LOG, "Model load: cold (asset) " + cold + " ms, no cache yet");
+                replacePlaceholder(assets.get(preloader.getModelFile(), Model.class));
+                CachedModel snapshot = CachedModelLoader.snapshot(model, cold);
+                writeCache(snapshot);
+                buildLods(snapshot);
+            }
+        } catch (GdxRuntimeException e) {
+            //keep the placeholder
+            loading = false;
+            Log.e(LOG, "Unable to load " + preloader.getModelFile(), e);
+        }
     }
 
     @Override
     public void render(float delta) {
+        if (waitingForPreload) {
+            checkPreload();
+        } else if (loading) {
+            updateLoading();
+        }
+        CachedModel[] levels = lodData;
+        if (levels != null) {
+            createLods(levels);
+        }
         mRenderer.render(this, delta);
     }
 
     @Override
     public void dispose() {
+        worker.shutdownNow();
         mRenderer.dispose();
+        restoreManager.dispose();
+        //the levels share materials with the base model, they only own their meshes
+        for (Model lodModel : lodModels) {
+            lodModel.dispose();
+        }
+        if (model == placeholder) {
+            placeholder.dispose();
+        }
+        if (cachedModel != null) {
+            cachedModel.dispose();
+        }
+        assets.dispose();
     }
 
 
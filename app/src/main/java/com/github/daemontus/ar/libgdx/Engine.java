@@ -3,8 +3,9 @@ package com.github.daemontus.ar.libgdx;
 import android.util.Log;
 
 import com.badlogic.gdx.Game;
-import com.badlogic.gdx.graphics.FPSLogger;
+import com.badlogic.gdx.graphics.profiling.GLProfiler;
 
+import com.github.daemontus.ar.vuforia.FrameProfiler;
 import com.github.daemontus.ar.vuforia.VuforiaRenderer;
 
 /**
@@ -12,19 +13,65 @@ import com.github.daemontus.ar.vuforia.VuforiaRenderer;
  */
 public class Engine extends Game {
 
-    private FPSLogger fps;
+    //how often the frame timing report is logged
+    private static final long REPORT_INTERVAL_NANOS = 5000000000L;
+
     private VuforiaRenderer vuforiaRenderer;
+    private ModelPreloader preloader;
+    private Display display;
+    //set by resume(), which may be called off the GL thread, checked on the next frame
+    private volatile boolean checkContext;
+    private FrameProfiler profiler;
+    private boolean profileGLCalls;
+    private boolean instancing;
+    private long lastReport;
 
     public Engine(VuforiaRenderer vuforiaRenderer) {
+        this(vuforiaRenderer, null);
+    }
+
+    /**
+     * @param preloader model preparation started elsewhere, null to prepare the model in create()
+     */
+    public Engine(VuforiaRenderer vuforiaRenderer, ModelPreloader preloader) {
         this.vuforiaRenderer = vuforiaRenderer;
+        this.preloader = preloader;
+    }
+
+    /**
+     * Counts the draw calls of the content with libgdx's GLProfiler, call before create().
+     * GLProfiler wraps every GL call of the app, so this is off by default and should stay off
+     * when measuring timings.
+     */
+    public void setProfileGLCalls(boolean profileGLCalls) {
+        this.profileGLCalls = profileGLCalls;
+    }
+
+    /**
+     * Draws the content through the {@link InstancedRenderer} instead of the ModelBatch, call
+     * before create(). See {@link Renderer#setInstancing(boolean)}.
+     */
+    public void setInstancing(boolean instancing) {
+        this.instancing = instancing;
     }
 
     @Override
     public void create () {
-        Display mDisplay = new Display(vuforiaRenderer);
-        setScreen(mDisplay);
+        if (preloader == null) {
+            preloader = new ModelPreloader(Display.MODEL_FILE, Display.CACHE_FILE);
+            preloader.prepare();
+        }
+        display = new Display(vuforiaRenderer, preloader);
+        display.getRenderer().setInstancing(instancing);
+        setScreen(display);
         vuforiaRenderer.initRendering();
-        fps = new FPSLogger();
+        display.restoreManager.attach();
+        profiler = vuforiaRenderer.profiler;
+        if (profileGLCalls) {
+            //counts the draw calls reported next to the frame timings
+            GLProfiler.enable();
+        }
+        lastReport = System.nanoTime();
     }
 
     @Override
@@ -34,10 +81,36 @@ public class Engine extends Game {
         vuforiaRenderer.onSurfaceChanged(width, height);
     }
 
+    @Override
+    public void resume() {
+        checkContext = true;
+        super.resume();
+    }
+
     @Override
     public void render () {
+        if (checkContext) {
+            checkContext = false;
+            //new context, Vuforia has to set up its surface again
+            if (display.restoreManager.restoreIfLost()) {
+                vuforiaRenderer.initRendering();
+            }
+        }
+        profiler.frameStart();
         super.render();
-        fps.log();
+        profiler.frameEnd();
+
+        if (profiler.isEnabled()) {
+            long now = System.nanoTime();
+            if (now - lastReport > REPORT_INTERVAL_NANOS) {
+                Log.i("PROFILER", profiler.report());
+                profiler.reset();
+                if (GLProfiler.isEnabled()) {
+                    GLProfiler.reset();
+                }
+                lastReport = now;
+            }
+        }
     }
 
 }
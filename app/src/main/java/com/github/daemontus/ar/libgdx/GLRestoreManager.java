@@ -0,0 +1,160 @@
+package com.github.daemontus.ar.libgdx;
+
+import android.util.Log;
+
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.g3d.Model;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLContext;
+
+/**
+ * Brings registered models back after the GL context was lost, without loading them again.
+ *
+ * libgdx keeps a CPU side copy of every mesh and recreates the buffer objects when a new context
+ * is created, but uploads them lazily on first draw and nobody tells Vuforia about the new
+ * surface. The manager notices the new context (by comparing the current EGL context), lets the
+ * caller re-initialize Vuforia rendering and uploads all registered meshes in one go, so the
+ * content is back on the first frame instead of stuttering in mesh by mesh.
+ *
+ * Everything except register/unregister has to be called on the GL thread.
+ */
+public class GLRestoreManager implements Disposable {
+
+    private static final String LOG = "GL_RESTORE";
+
+    /**
+     * Owner of raw GL objects libgdx does not manage, told to drop them after a context loss.
+     */
+    public interface Restorable {
+        void restore();
+    }
+
+    //binds every vertex attribute it might meet, only used to trigger the buffer upload
+    private static final String UPLOAD_VERTEX_SHADER =
+            "attribute vec4 a_position;\nvoid main() {\n    gl_Position = a_position;\n}\n";
+    private static final String UPLOAD_FRAGMENT_SHADER =
+            "#ifdef GL_ES\nprecision mediump float;\n#endif\nvoid main() {\n    gl_FragColor = vec4(1.0);\n}\n";
+
+    private final Array<Model> models = new Array<Model>();
+    private final Array<Restorable> restorables = new Array<Restorable>();
+    private EGLContext context;
+    private ShaderProgram uploadShader;
+
+    private int restores;
+    private long lastRestoreMillis = -1;
+    private int lastRestoreMeshes;
+    private long lastRestoreBytes;
+
+    /**
+     * Model whose meshes should be uploaded eagerly after a context loss. Any thread.
+     */
+    public synchronized void register(Model model) {
+        if (!models.contains(model, true)) {
+            models.add(model);
+        }
+    }
+
+    public synchronized void unregister(Model model) {
+        models.removeValue(model, true);
+    }
+
+    public synchronized void register(Restorable restorable) {
+        if (!restorables.contains(restorable, true)) {
+            restorables.add(restorable);
+        }
+    }
+
+    public synchronized void unregister(Restorable restorable) {
+        restorables.removeValue(restorable, true);
+    }
+
+    /**
+     * Remembers the current context, call once it exists (e.g. in create()).
+     */
+    public void attach() {
+        context = currentContext();
+    }
+
+    /**
+     * @return true if the context changed since the last call, registered meshes are uploaded again
+     */
+    public boolean restoreIfLost() {
+        EGLContext current = currentContext();
+        if (current == null || current.equals(context)) return false;
+        context = current;
+
+        long start = System.nanoTime();
+        int meshes = 0;
+        long bytes = 0;
+        synchronized (this) {
+            for (Restorable restorable : restorables) {
+                restorable.restore();
+            }
+            for (Model model : models) {
+                for (Mesh mesh : model.meshes) {
+                    upload(mesh);
+                    meshes++;
+                    bytes += (long) mesh.getNumVertices() * mesh.getVertexSize() + mesh.getNumIndices() * 2;
+                }
+            }
+        }
+        restores++;
+        lastRestoreMillis = (System.nanoTime() - start) / 1000000;
+        lastRestoreMeshes = meshes;
+        lastRestoreBytes = bytes;
+        Log.i(LOG, "Context lost, re-uploaded " + meshes + " meshes (" + bytes / 1024 + " KB) in " + lastRestoreMillis + " ms");
+        return true;
+    }
+
+    //binding a dirty buffer uploads it from the retained copy
+    private void upload(Mesh mesh) {
+        if (uploadShader == null) {
+            uploadShader = new ShaderProgram(UPLOAD_VERTEX_SHADER, UPLOAD_FRAGMENT_SHADER);
+            if (!uploadShader.isCompiled()) {
+                Log.w(LOG, "Upload shader: " + uploadShader.getLog());
+            }
+        }
+        uploadShader.begin();
+        mesh.bind(uploadShader);
+        mesh.unbind(uploadShader);
+        uploadShader.end();
+    }
+
+    public int getRestoreCount() {
+        return restores;
+    }
+
+    /**
+     * @return duration of the last restore, -1 if the context was never lost
+     */
+    public long getLastRestoreMillis() {
+        return lastRestoreMillis;
+    }
+
+    public int getLastRestoreMeshes() {
+        return lastRestoreMeshes;
+    }
+
+    public long getLastRestoreBytes() {
+        return lastRestoreBytes;
+    }
+
+    private static EGLContext currentContext() {
+        EGLContext current = ((EGL10) EGLContext.getEGL()).eglGetCurrentContext();
+        return current == null || current.equals(EGL10.EGL_NO_CONTEXT) ? null : current;
+    }
+
+    @Override
+    public synchronized void dispose() {
+        models.clear();
+        restorables.clear();
+        if (uploadShader != null) {
+            uploadShader.dispose();
+            uploadShader = null;
+        }
+    }
+}
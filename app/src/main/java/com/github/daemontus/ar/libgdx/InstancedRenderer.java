@@ -0,0 +1,473 @@
+package com.github.daemontus.ar.libgdx;
+
+import android.util.Log;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.graphics.g3d.Environment;
+import com.badlogic.gdx.graphics.g3d.Material;
+import com.badlogic.gdx.graphics.g3d.Model;
+import com.badlogic.gdx.graphics.g3d.ModelInstance;
+import com.badlogic.gdx.graphics.g3d.Renderable;
+import com.badlogic.gdx.graphics.g3d.attributes.BlendingAttribute;
+import com.badlogic.gdx.graphics.g3d.attributes.ColorAttribute;
+import com.badlogic.gdx.graphics.g3d.attributes.DirectionalLightsAttribute;
+import com.badlogic.gdx.graphics.g3d.attributes.TextureAttribute;
+import com.badlogic.gdx.graphics.g3d.environment.DirectionalLight;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.FlushablePool;
+import com.badlogic.gdx.utils.IntMap;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.github.daemontus.ar.vuforia.FrameProfiler;
+
+/**
+ * Draws many copies of the same meshes with few draw calls, as an alternative to ModelBatch.
+ *
+ * Renderables of all instances are grouped by mesh part and material. The world transform of
+ * every renderable is packed as three rows of its affine matrix (12 floats).
+ *
+ * The rows are uploaded as a uniform array and the mesh part is replicated up to
+ * {@link #MAX_BATCH} times with an instance index attribute, so one draw covers a whole batch.
+ * Parts which can not be replicated (strips, fans, too many vertices) are drawn once per
+ * instance with the same shader. This works on GLES2, which is all the app runs on: Vuforia is
+ * initialized for GLES2 and libgdx creates a GLES2 context, so GLES3 instanced draws (per
+ * instance attributes with a divisor) are not available.
+ *
+ * Shading is a single directional light plus ambient light with diffuse color, diffuse texture
+ * and blending, taken from the environment and materials like the default shader does.
+ * Quantized meshes are decoded in the vertex shader, the replicated copies keep their layout.
+ * Shader variants can be compiled ahead of the first frame with {@link #warmUp(Model)}.
+ * GL thread only.
+ */
+public class InstancedRenderer implements Disposable {
+
+    private static final String LOG = "INSTANCED_RENDERER";
+
+    /**
+     * Instances per draw, 3 vec4 uniforms each stay within the guaranteed 128 vectors.
+     */
+    public static final int MAX_BATCH = 32;
+    private static final int ROW_FLOATS = 12;
+    //groups not drawn for this many frames release their buffers
+    private static final int MAX_IDLE_FRAMES = 120;
+
+    private static final int FLAG_TEXTURE = 1;
+    //QuantizedMesh attributes, decoded like the QuantizedShader does
+    private static final int FLAG_QUANTIZED = 1 << 1;
+
+    private static final String VERTEX_SHADER =
+            "#ifdef quantizedFlag\n" +
+            QuantizedShader.DECODE +
+            "attribute vec4 " + VertexQuantizer.NORMAL_ALIAS + ";\n" +
+            "attribute vec4 " + VertexQuantizer.TEXTURE_ALIAS + ";\n" +
+            "#else\n" +
+            "attribute vec3 a_position;\n" +
+            "attribute vec3 a_normal;\n" +
+            "attribute vec2 a_texCoord0;\n" +
+            "#endif\n" +
+            "#ifdef textureFlag\n" +
+            "varying vec2 v_texCoord0;\n" +
+            "#endif\n" +
+            "attribute float a_instanceIndex;\n" +
+            "uniform vec4 u_rows[" + MAX_BATCH * 3 + "];\n" +
+            "uniform mat4 u_projViewTrans;\n" +
+            "varying vec3 v_normal;\n" +
+            "void main() {\n" +
+            "    int i = int(a_instanceIndex) * 3;\n" +
+            "    vec4 r0 = u_rows[i];\n" +
+            "    vec4 r1 = u_rows[i + 1];\n" +
+            "    vec4 r2 = u_rows[i + 2];\n" +
+            "#ifdef quantizedFlag\n" +
+            "    vec4 p = vec4(decodePosition(), 1.0);\n" +
+            "    vec4 n = vec4(decodeNormal(" + VertexQuantizer.NORMAL_ALIAS + "), 0.0);\n" +
+            "#else\n" +
+            "    vec4 p = vec4(a_position, 1.0);\n" +
+            "    vec4 n = vec4(a_normal, 0.0);\n" +
+            "#endif\n" +
+            "    v_normal = vec3(dot(r0, n), dot(r1, n), dot(r2, n));\n" +
+            "#ifdef textureFlag\n" +
+            "#ifdef quantizedFlag\n" +
+            "    v_texCoord0 = decodeTexCoord(" + VertexQuantizer.TEXTURE_ALIAS + ");\n" +
+            "#else\n" +
+            "    v_texCoord0 = a_texCoord0;\n" +
+            "#endif\n" +
+            "#endif\n" +
+            "    gl_Position = u_projViewTrans * vec4(dot(r0, p), dot(r1, p), dot(r2, p), 1.0);\n" +
+            "}\n";
+
+    private static final String FRAGMENT_SHADER =
+            "#ifdef GL_ES\n" +
+            "precision mediump float;\n" +
+            "#endif\n" +
+            "uniform vec4 u_diffuseColor;\n" +
+            "uniform vec3 u_ambientLight;\n" +
+            "uniform vec3 u_lightColor;\n" +
+            "uniform vec3 u_lightDirection;\n" +
+            "#ifdef textureFlag\n" +
+            "uniform sampler2D u_diffuseTexture;\n" +
+            "varying vec2 v_texCoord0;\n" +
+            "#endif\n" +
+            "varying vec3 v_normal;\n" +
+            "void main() {\n" +
+            "    vec4 color = u_diffuseColor;\n" +
+            "#ifdef textureFlag\n" +
+            "    color *= texture2D(u_diffuseTexture, v_texCoord0);\n" +
+            "#endif\n" +
+            "    float lambert = max(dot(normalize(v_normal), -u_lightDirection), 0.0);\n" +
+            "    gl_FragColor = vec4(color.rgb * (u_ambientLight + u_lightColor * lambert), color.a);\n" +
+            "}\n";
+
+    private static class Group {
+        Mesh mesh;
+        int primitiveType;
+        int offset;
+        int size;
+        Material material;
+
+        //packed rows of every instance drawn this frame
+        float[] rows = new float[ROW_FLOATS * 4];
+        int count;
+        int idleFrames;
+        //the part replicated batchSize times, null when drawn one by one
+        Mesh replicated;
+        int batchSize;
+
+        void set(Renderable renderable) {
+            mesh = renderable.meshPart.mesh;
+            primitiveType = renderable.meshPart.primitiveType;
+            offset = renderable.meshPart.offset;
+            size = renderable.meshPart.size;
+            material = renderable.material;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Group)) return false;
+            Group g = (Group) o;
+            return mesh == g.mesh && material == g.material && primitiveType == g.primitiveType
+                    && offset == g.offset && size == g.size;
+        }
+
+        @Override
+        public int hashCode() {
+            int h = System.identityHashCode(mesh);
+            h = 31 * h + System.identityHashCode(material);
+            h = 31 * h + primitiveType;
+            h = 31 * h + offset;
+            return 31 * h + size;
+        }
+    }
+
+    private final ObjectMap<Group, Group> groups = new ObjectMap<Group, Group>();
+    private final Array<Group> drawn = new Array<Group>();
+    private final Group probe = new Group();
+    private final IntMap<ShaderProgram> shaders = new IntMap<ShaderProgram>();
+
+    private final Array<Renderable> renderables = new Array<Renderable>();
+    private final FlushablePool<Renderable> renderablePool = new FlushablePool<Renderable>() {
+        @Override
+        protected Renderable newObject() {
+            return new Renderable();
+        }
+
+        @Override
+        public Renderable obtain() {
+            Renderable renderable = super.obtain();
+            renderable.environment = null;
+            renderable.material = null;
+            renderable.meshPart.set("", null, 0, 0, 0);
+            renderable.shader = null;
+            return renderable;
+        }
+    };
+
+    private final float[] ambient = new float[3];
+    private final float[] lightColor = new float[3];
+    private final float[] lightDirection = new float[3];
+
+    //records shaders compiled while drawing, may be null
+    private FrameProfiler profiler;
+    private boolean warmingUp;
+
+    public void setProfiler(FrameProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    public void render(Camera camera, Array<ModelInstance> instances, Environment environment) {
+        collect(instances);
+        if (drawn.size == 0) return;
+        setLights(environment);
+
+        //opaque groups first, blended ones on top
+        for (int pass = 0; pass < 2; pass++) {
+            for (Group group : drawn) {
+                boolean blended = group.material.has(BlendingAttribute.Type);
+                if (blended == (pass == 1)) {
+                    draw(camera, group);
+                }
+            }
+        }
+        Gdx.gl.glDisable(GL20.GL_BLEND);
+        renderablePool.flush();
+        renderables.clear();
+    }
+
+    //groups the renderables of all instances and packs their transforms
+    private void collect(Array<ModelInstance> instances) {
+        drawn.clear();
+        for (ModelInstance instance : instances) {
+            instance.getRenderables(renderables, renderablePool);
+        }
+        for (Renderable renderable : renderables) {
+            probe.set(renderable);
+            Group group = groups.get(probe);
+            if (group == null) {
+                group = new Group();
+                group.set(renderable);
+                groups.put(group, group);
+            }
+            if (group.count == 0) {
+                drawn.add(group);
+            }
+            pack(group, renderable);
+        }
+
+        //release groups of content which is gone
+        ObjectMap.Values<Group> all = groups.values();
+        while (all.hasNext()) {
+            Group group = all.next();
+            if (group.count > 0) {
+                group.idleFrames = 0;
+            } else if (++group.idleFrames > MAX_IDLE_FRAMES) {
+                if (group.replicated != null) group.replicated.dispose();
+                all.remove();
+            }
+        }
+    }
+
+    private static void pack(Group group, Renderable renderable) {
+        int at = group.count * ROW_FLOATS;
+        if (at + ROW_FLOATS > group.rows.length) {
+            float[] grown = new float[group.rows.length * 2];
+            System.arraycopy(group.rows, 0, grown, 0, at);
+            group.rows = grown;
+        }
+        //column major matrix, rows of the upper 3x4 part
+        float[] m = renderable.worldTransform.val;
+        float[] rows = group.rows;
+        rows[at] = m[0];
+        rows[at + 1] = m[4];
+        rows[at + 2] = m[8];
+        rows[at + 3] = m[12];
+        rows[at + 4] = m[1];
+        rows[at + 5] = m[5];
+        rows[at + 6] = m[9];
+        rows[at + 7] = m[13];
+        rows[at + 8] = m[2];
+        rows[at + 9] = m[6];
+        rows[at + 10] = m[10];
+        rows[at + 11] = m[14];
+        group.count++;
+    }
+
+    private void setLights(Environment environment) {
+        ambient[0] = ambient[1] = ambient[2] = 0f;
+        lightColor[0] = lightColor[1] = lightColor[2] = 0f;
+        lightDirection[0] = 0f;
+        lightDirection[1] = 0f;
+        lightDirection[2] = -1f;
+        ColorAttribute ambientLight = (ColorAttribute) environment.get(ColorAttribute.AmbientLight);
+        if (ambientLight != null) {
+            ambient[0] = ambientLight.color.r;
+            ambient[1] = ambientLight.color.g;
+            ambient[2] = ambientLight.color.b;
+        }
+        DirectionalLightsAttribute lights = (DirectionalLightsAttribute) environment.get(DirectionalLightsAttribute.Type);
+        if (lights != null && lights.lights.size > 0) {
+            DirectionalLight light = lights.lights.first();
+            lightColor[0] = light.color.r;
+            lightColor[1] = light.color.g;
+            lightColor[2] = light.color.b;
+            lightDirection[0] = light.direction.x;
+            lightDirection[1] = light.direction.y;
+            lightDirection[2] = light.direction.z;
+        }
+    }
+
+    private void draw(Camera camera, Group group) {
+        Material material = group.material;
+        TextureAttribute texture = texture(group.mesh, material);
+        ShaderProgram shader = getShader(flags(group.mesh, texture != null));
+
+        shader.begin();
+        shader.setUniformMatrix("u_projViewTrans", camera.combined);
+        shader.setUniformf("u_ambientLight", ambient[0], ambient[1], ambient[2]);
+        shader.setUniformf("u_lightColor", lightColor[0], lightColor[1], lightColor[2]);
+        shader.setUniformf("u_lightDirection", lightDirection[0], lightDirection[1], lightDirection[2]);
+        setMaterial(shader, material, texture);
+        if (group.mesh instanceof QuantizedMesh) {
+            QuantizedShader.setDecode(shader, (QuantizedMesh) group.mesh);
+        }
+
+        drawBatched(shader, group);
+        shader.end();
+        group.count = 0;
+    }
+
+    //diffuse texture of the material, null when the mesh has nothing to map it with
+    private static TextureAttribute texture(Mesh mesh, Material material) {
+        if (mesh instanceof QuantizedMesh && !((QuantizedMesh) mesh).has(VertexQuantizer.TEXTURE)) return null;
+        return (TextureAttribute) material.get(TextureAttribute.Diffuse);
+    }
+
+    private static int flags(Mesh mesh, boolean texture) {
+        return (texture ? FLAG_TEXTURE : 0) | (mesh instanceof QuantizedMesh ? FLAG_QUANTIZED : 0);
+    }
+
+    private void setMaterial(ShaderProgram shader, Material material, TextureAttribute texture) {
+        ColorAttribute diffuse = (ColorAttribute) material.get(ColorAttribute.Diffuse);
+        Color color = diffuse == null ? Color.WHITE : diffuse.color;
+        BlendingAttribute blending = (BlendingAttribute) material.get(BlendingAttribute.Type);
+        float alpha = color.a;
+        GL20 gl = Gdx.gl;
+        if (blending != null && blending.blended) {
+            alpha *= blending.opacity;
+            gl.glEnable(GL20.GL_BLEND);
+            gl.glBlendFunc(blending.sourceFunction, blending.destFunction);
+        } else {
+            gl.glDisable(GL20.GL_BLEND);
+        }
+        shader.setUniformf("u_diffuseColor", color.r, color.g, color.b, alpha);
+        if (texture != null) {
+            Texture diffuseTexture = texture.textureDescription.texture;
+            diffuseTexture.bind(0);
+            shader.setUniformi("u_diffuseTexture", 0);
+        }
+    }
+
+    private void drawBatched(ShaderProgram shader, Group group) {
+        if (group.batchSize == 0) {
+            replicate(group);
+        }
+        int batch = group.batchSize;
+        Mesh mesh = group.replicated != null ? group.replicated : group.mesh;
+        mesh.bind(shader);
+        for (int first = 0; first < group.count; first += batch) {
+            int count = Math.min(batch, group.count - first);
+            shader.setUniform4fv("u_rows", group.rows, first * ROW_FLOATS, count * ROW_FLOATS);
+            if (group.replicated != null) {
+                mesh.render(shader, group.primitiveType, 0, count * group.size, false);
+            } else {
+                mesh.render(shader, group.primitiveType, group.offset, group.size, false);
+            }
+        }
+        mesh.unbind(shader);
+    }
+
+    //copies the part MAX_BATCH times (or as many times as short indices allow)
+    private static void replicate(Group group) {
+        group.batchSize = 1;
+        Mesh source = group.mesh;
+        int vertices = source.getNumVertices();
+        boolean lists = group.primitiveType == GL20.GL_TRIANGLES || group.primitiveType == GL20.GL_LINES
+                || group.primitiveType == GL20.GL_POINTS;
+        int batch = Math.min(MAX_BATCH, 65536 / Math.max(vertices, 1));
+        if (!lists || source.getNumIndices() == 0 || batch < 2) return;
+
+        VertexAttributes attributes = source.getVertexAttributes();
+        VertexAttribute[] extended = new VertexAttribute[attributes.size() + 1];
+        for (int a = 0; a < attributes.size(); a++) {
+            extended[a] = attributes.get(a);
+        }
+        extended[attributes.size()] = new VertexAttribute(VertexAttributes.Usage.Generic, 1, "a_instanceIndex");
+        int stride = attributes.vertexSize / 4;
+
+        float[] original = new float[vertices * stride];
+        source.getVertices(original);
+        short[] part = new short[group.size];
+        source.getIndices(group.offset, group.size, part, 0);
+
+        float[] copies = new float[vertices * (stride + 1) * batch];
+        short[] indices = new short[group.size * batch];
+        int v = 0;
+        for (int k = 0; k < batch; k++) {
+            for (int i = 0; i < vertices; i++) {
+                System.arraycopy(original, i * stride, copies, v, stride);
+                v += stride;
+                copies[v++] = k;
+            }
+            for (int i = 0; i < part.length; i++) {
+                indices[k * part.length + i] = (short) ((part[i] & 0xFFFF) + k * vertices);
+            }
+        }
+
+        Mesh replicated = new Mesh(true, vertices * batch, indices.length, extended);
+        replicated.setVertices(copies);
+        replicated.setIndices(indices);
+        group.replicated = replicated;
+        group.batchSize = batch;
+    }
+
+    private ShaderProgram getShader(int flags) {
+        ShaderProgram shader = shaders.get(flags);
+        if (shader == null) {
+            long start = System.nanoTime();
+            String prefix = "";
+            if ((flags & FLAG_TEXTURE) != 0) prefix += "#define textureFlag\n";
+            if ((flags & FLAG_QUANTIZED) != 0) prefix += "#define quantizedFlag\n";
+            shader = new ShaderProgram(prefix + VERTEX_SHADER, prefix + FRAGMENT_SHADER);
+            if (!shader.isCompiled()) {
+                Log.e(LOG, "Shader " + flags + ": " + shader.getLog());
+            }
+            shaders.put(flags, shader);
+            long micros = (System.nanoTime() - start) / 1000;
+            if (warmingUp) {
+                Log.d(LOG, "Shader " + flags + " compiled in " + micros / 1000 + " ms");
+            } else {
+                Log.w(LOG, "Shader " + flags + " compiled while drawing, " + micros / 1000 + " ms");
+                if (profiler != null && profiler.isEnabled()) {
+                    profiler.recordMicros(FrameProfiler.SHADER_COMPILE, micros);
+                }
+            }
+        }
+        return shader;
+    }
+
+    /**
+     * Compiles the shader variants the parts of the model need, before its first frame.
+     */
+    public void warmUp(Model model) {
+        warmingUp = true;
+        try {
+            new ModelInstance(model).getRenderables(renderables, renderablePool);
+            for (Renderable renderable : renderables) {
+                Mesh mesh = renderable.meshPart.mesh;
+                getShader(flags(mesh, texture(mesh, renderable.material) != null));
+            }
+        } finally {
+            warmingUp = false;
+            renderablePool.flush();
+            renderables.clear();
+        }
+    }
+
+    @Override
+    public void dispose() {
+        for (Group group : groups.values()) {
+            if (group.replicated != null) group.replicated.dispose();
+        }
+        groups.clear();
+        for (ShaderProgram shader : shaders.values()) {
+            shader.dispose();
+        }
+        shaders.clear();
+    }
+}
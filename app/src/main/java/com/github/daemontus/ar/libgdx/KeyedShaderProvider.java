@@ -0,0 +1,220 @@
+package com.github.daemontus.ar.libgdx;
+
+import android.util.Log;
+
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.graphics.g3d.Attribute;
+import com.badlogic.gdx.graphics.g3d.Environment;
+import com.badlogic.gdx.graphics.g3d.Model;
+import com.badlogic.gdx.graphics.g3d.ModelInstance;
+import com.badlogic.gdx.graphics.g3d.Renderable;
+import com.badlogic.gdx.graphics.g3d.Shader;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.Pool;
+import com.github.daemontus.ar.vuforia.FrameProfiler;
+
+/**
+ * Shader provider which finds shaders by a key instead of asking every cached shader, and can
+ * compile them ahead of time.
+ *
+ * The key is what decides the variant: vertex attributes of the mesh, the combined attribute
+ * mask of environment and material, and the layout of quantized meshes. {@link #warmUp} compiles
+ * the variants of every part of a model before it is drawn, so the first frame showing it does
+ * not stall. Every compile is timed; compiles that still happen while drawing are recorded in the
+ * frame profiler (as {@link FrameProfiler#SHADER_COMPILE}) and logged.
+ *
+ * GL thread only.
+ */
+public class KeyedShaderProvider extends QuantizedShaderProvider {
+
+    private static final String LOG = "SHADER_PROVIDER";
+
+    /**
+     * One compiled shader variant.
+     */
+    public static class Variant {
+        public final String name;
+        public final long compileMicros;
+        //false if the variant was first needed while drawing
+        public final boolean warmedUp;
+
+        Variant(String name, long compileMicros, boolean warmedUp) {
+            this.name = name;
+            this.compileMicros = compileMicros;
+            this.warmedUp = warmedUp;
+        }
+    }
+
+    private static class Key {
+        long vertexMask;
+        int vertexSize;
+        long attributesMask;
+        //VertexQuantizer format, -1 for float meshes
+        int format;
+
+        Key set(Renderable renderable) {
+            Mesh mesh = renderable.meshPart.mesh;
+            VertexAttributes attributes = mesh.getVertexAttributes();
+            vertexMask = attributes.getMask();
+            vertexSize = attributes.vertexSize;
+            attributesMask = renderable.material.getMask()
+                    | (renderable.environment == null ? 0 : renderable.environment.getMask());
+            format = mesh instanceof QuantizedMesh ? ((QuantizedMesh) mesh).getFormat() : -1;
+            return this;
+        }
+
+        Key copy() {
+            Key copy = new Key();
+            copy.vertexMask = vertexMask;
+            copy.vertexSize = vertexSize;
+            copy.attributesMask = attributesMask;
+            copy.format = format;
+            return copy;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return vertexMask == k.vertexMask && vertexSize == k.vertexSize
+                    && attributesMask == k.attributesMask && format == k.format;
+        }
+
+        @Override
+        public int hashCode() {
+            int h = (int) (vertexMask ^ (vertexMask >>> 32));
+            h = 31 * h + vertexSize;
+            h = 31 * h + (int) (attributesMask ^ (attributesMask >>> 32));
+            return 31 * h + format;
+        }
+    }
+
+    private final FrameProfiler profiler;
+    private final ObjectMap<Key, Shader> keyed = new ObjectMap<Key, Shader>();
+    private final Array<Variant> variants = new Array<Variant>();
+    private final Key probe = new Key();
+    private boolean warmingUp;
+
+    private final Array<Renderable> renderables = new Array<Renderable>();
+    private final Pool<Renderable> renderablePool = new Pool<Renderable>() {
+        @Override
+        protected Renderable newObject() {
+            return new Renderable();
+        }
+    };
+
+    /**
+     * @param profiler records compiles which happen while drawing, may be null
+     */
+    public KeyedShaderProvider(FrameProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    @Override
+    public Shader getShader(Renderable renderable) {
+        Shader suggested = renderable.shader;
+        if (suggested != null && suggested.canRender(renderable)) return suggested;
+
+        Shader shader = keyed.get(probe.set(renderable));
+        if (shader != null && shader.canRender(renderable)) return shader;
+
+        //not known yet, or the key missed something the shader cares about
+        long start = System.nanoTime();
+        shader = createShader(renderable);
+        shader.init();
+        long micros = (System.nanoTime() - start) / 1000;
+        shaders.add(shader);
+        keyed.put(probe.copy(), shader);
+
+        Variant variant = new Variant(describe(renderable), micros, warmingUp);
+        variants.add(variant);
+        if (!warmingUp) {
+            Log.w(LOG, "Shader " + variant.name + " compiled while drawing, " + micros / 1000 + " ms");
+            if (profiler != null && profiler.isEnabled()) {
+                profiler.recordMicros(FrameProfiler.SHADER_COMPILE, micros);
+            }
+        }
+        return shader;
+    }
+
+    /**
+     * Compiles the shaders of all parts of the model lit by the environment, the ones already
+     * cached are skipped.
+     * @return number of newly compiled variants
+     */
+    public int warmUp(Model model, Environment environment) {
+        int before = variants.size;
+        long start = System.nanoTime();
+        warmingUp = true;
+        try {
+            new ModelInstance(model).getRenderables(renderables, renderablePool);
+            for (Renderable renderable : renderables) {
+                renderable.environment = environment;
+                renderable.shader = null;
+                getShader(renderable);
+            }
+        } finally {
+            warmingUp = false;
+            renderablePool.freeAll(renderables);
+            renderables.clear();
+        }
+
+        int compiled = variants.size - before;
+        if (compiled > 0) {
+            StringBuilder builder = new StringBuilder("Warmed up ").append(compiled).append(" shader variants in ")
+                    .append((System.nanoTime() - start) / 1000000).append(" ms");
+            for (int i = before; i < variants.size; i++) {
+                Variant variant = variants.get(i);
+                builder.append("\n  ").append(variant.name).append(": ").append(variant.compileMicros / 1000).append(" ms");
+            }
+            Log.d(LOG, builder.toString());
+        }
+        return compiled;
+    }
+
+    /**
+     * @return every variant compiled so far, in compile order
+     */
+    public Array<Variant> getVariants() {
+        return variants;
+    }
+
+    /**
+     * @return number of variants compiled while drawing instead of during warm up
+     */
+    public int getLateCompiles() {
+        int late = 0;
+        for (Variant variant : variants) {
+            if (!variant.warmedUp) late++;
+        }
+        return late;
+    }
+
+    //vertex attribute aliases, then material attribute aliases
+    private static String describe(Renderable renderable) {
+        StringBuilder builder = new StringBuilder();
+        Mesh mesh = renderable.meshPart.mesh;
+        builder.append(mesh instanceof QuantizedMesh ? "quantized[" : "[");
+        VertexAttributes attributes = mesh.getVertexAttributes();
+        for (int a = 0; a < attributes.size(); a++) {
+            if (a > 0) builder.append(' ');
+            builder.append(attributes.get(a).alias);
+        }
+        builder.append("] material[");
+        boolean first = true;
+        for (Attribute attribute : renderable.material) {
+            if (!first) builder.append(' ');
+            builder.append(Attribute.getAttributeAlias(attribute.type));
+            first = false;
+        }
+        return builder.append(']').toString();
+    }
+
+    @Override
+    public void dispose() {
+        keyed.clear();
+        super.dispose();
+    }
+}
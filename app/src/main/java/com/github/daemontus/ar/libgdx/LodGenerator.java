@@ -0,0 +1,167 @@
+package com.github.daemontus.ar.libgdx;
+
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Builds coarser levels of detail of a {@link CachedModel} by vertex clustering.
+ *
+ * The bounding box of every mesh is divided into a grid (cells along the longest side), all
+ * vertices falling into the same cell are merged into one at their average position, the other
+ * attributes are taken from the first vertex of the cell. Triangles whose corners end up in fewer
+ * than three cells disappear. Fast and robust, but it does not preserve texture seams or sharp
+ * features, so it suits the levels seen from far away.
+ *
+ * Materials and nodes are shared with the source model. Plain Java, can run on any thread.
+ */
+public class LodGenerator {
+
+    //VertexAttributes.Usage.Position
+    private static final int USAGE_POSITION = 1;
+    private static final int GL_TRIANGLES = 0x0004;
+
+    private LodGenerator() {
+    }
+
+    /**
+     * @param cells grid resolution along the longest side of each mesh, smaller is coarser
+     */
+    public static CachedModel simplify(CachedModel source, int cells) {
+        CachedModel result = new CachedModel();
+        result.sourceLoadMillis = source.sourceLoadMillis;
+        //node parts refer to parts by index, so the order has to stay
+        CachedModel.PartData[] parts = new CachedModel.PartData[source.parts.size()];
+        for (int m = 0; m < source.meshes.size(); m++) {
+            result.meshes.add(simplify(source, m, cells, parts));
+        }
+        result.parts.addAll(Arrays.asList(parts));
+        result.materials.addAll(source.materials);
+        result.nodes.addAll(source.nodes);
+        return result;
+    }
+
+    /**
+     * @return number of triangles of all triangle list parts
+     */
+    public static int countTriangles(CachedModel model) {
+        int triangles = 0;
+        for (CachedModel.PartData part : model.parts) {
+            if (part.primitiveType == GL_TRIANGLES) {
+                triangles += part.size / 3;
+            }
+        }
+        return triangles;
+    }
+
+    //simplifies one mesh and stores new versions of its parts at their original index
+    private static CachedModel.MeshData simplify(CachedModel source, int meshIndex, int cells, CachedModel.PartData[] parts) {
+        CachedModel.MeshData mesh = source.meshes.get(meshIndex);
+        int stride = mesh.stride();
+        int position = mesh.offset(USAGE_POSITION);
+
+        float[] vertices = mesh.readVertices();
+        short[] indices = mesh.readIndices();
+        int count = stride == 0 ? 0 : vertices.length / stride;
+
+        //vertex -> cluster, cluster position is the average of its vertices
+        int[] cluster = new int[count];
+        float[] clustered = new float[vertices.length];
+        int[] members = new int[count];
+        int clusters = 0;
+        if (position >= 0 && count > 0) {
+            float[] min = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE};
+            float[] max = {-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+            for (int v = 0; v < count; v++) {
+                for (int c = 0; c < 3; c++) {
+                    float value = vertices[v * stride + position + c];
+                    min[c] = Math.min(min[c], value);
+                    max[c] = Math.max(max[c], value);
+                }
+            }
+            float extent = Math.max(max[0] - min[0], Math.max(max[1] - min[1], max[2] - min[2]));
+            float cell = extent > 0 ? extent / cells : 1f;
+
+            Map<Long, Integer> grid = new HashMap<Long, Integer>();
+            for (int v = 0; v < count; v++) {
+                int base = v * stride + position;
+                long x = (long) ((vertices[base] - min[0]) / cell);
+                long y = (long) ((vertices[base + 1] - min[1]) / cell);
+                long z = (long) ((vertices[base + 2] - min[2]) / cell);
+                Long key = (x << 42) | (y << 21) | z;
+                Integer id = grid.get(key);
+                if (id == null) {
+                    id = clusters++;
+                    grid.put(key, id);
+                    System.arraycopy(vertices, v * stride, clustered, id * stride, stride);
+                    for (int c = 0; c < 3; c++) clustered[id * stride + position + c] = 0f;
+                }
+                cluster[v] = id;
+                members[id]++;
+                for (int c = 0; c < 3; c++) {
+                    clustered[id * stride + position + c] += vertices[base + c];
+                }
+            }
+            for (int id = 0; id < clusters; id++) {
+                for (int c = 0; c < 3; c++) clustered[id * stride + position + c] /= members[id];
+            }
+        } else {
+            //nothing to cluster by, keep the mesh as it is
+            for (int v = 0; v < count; v++) cluster[v] = v;
+            System.arraycopy(vertices, 0, clustered, 0, vertices.length);
+            clusters = count;
+        }
+
+        int capacity = 0;
+        for (CachedModel.PartData part : source.parts) {
+            if (part.mesh == meshIndex) capacity += part.size;
+        }
+        short[] out = new short[capacity];
+        int size = 0;
+        for (int p = 0; p < parts.length; p++) {
+            CachedModel.PartData part = source.parts.get(p);
+            if (part.mesh != meshIndex) continue;
+            CachedModel.PartData simplified = new CachedModel.PartData();
+            simplified.id = part.id;
+            simplified.mesh = part.mesh;
+            simplified.primitiveType = part.primitiveType;
+            simplified.offset = size;
+            int end = part.offset + part.size;
+            if (part.primitiveType == GL_TRIANGLES) {
+                for (int i = part.offset; i + 2 < end; i += 3) {
+                    int a = cluster[vertex(indices, i)];
+                    int b = cluster[vertex(indices, i + 1)];
+                    int c = cluster[vertex(indices, i + 2)];
+                    if (a == b || b == c || a == c) continue;
+                    out[size++] = (short) a;
+                    out[size++] = (short) b;
+                    out[size++] = (short) c;
+                }
+            } else {
+                for (int i = part.offset; i < end; i++) {
+                    out[size++] = (short) cluster[vertex(indices, i)];
+                }
+            }
+            simplified.size = size - simplified.offset;
+            parts[p] = simplified;
+        }
+
+        CachedModel.MeshData data = new CachedModel.MeshData();
+        data.usage = mesh.usage;
+        data.numComponents = mesh.numComponents;
+        data.type = mesh.type;
+        data.normalized = mesh.normalized;
+        data.unit = mesh.unit;
+        data.alias = mesh.alias;
+        data.vertices = FloatBuffer.wrap(clustered, 0, clusters * stride).slice();
+        data.indices = ShortBuffer.wrap(out, 0, size).slice();
+        return data;
+    }
+
+    //vertex of the i-th index, meshes without indices use the vertices in order
+    private static int vertex(short[] indices, int i) {
+        return indices.length == 0 ? i : indices[i] & 0xFFFF;
+    }
+}
@@ -0,0 +1,69 @@
+package com.github.daemontus.ar.libgdx;
+
+import com.badlogic.gdx.graphics.g3d.ModelInstance;
+
+/**
+ * Levels of detail of one piece of content, finest first, and the level currently shown.
+ *
+ * A level is picked from the projected size of the content on screen (bounding sphere diameter
+ * as a fraction of the viewport height). To stop popping when the size hovers around a threshold,
+ * the level only changes once the size is past the threshold by the hysteresis margin.
+ * All instances are created up front, selecting a level never allocates.
+ */
+public class LodGroup {
+
+    private final ModelInstance[] levels;
+    //minimal screen size of every level except the last one, descending
+    private final float[] thresholds;
+    private final float hysteresis;
+    private int current;
+
+    /**
+     * @param levels instances from the finest to the coarsest level
+     * @param thresholds screen size (fraction of viewport height) above which level i is used, levels.length - 1 values
+     * @param hysteresis relative margin around each threshold, e.g. 0.15
+     */
+    public LodGroup(ModelInstance[] levels, float[] thresholds, float hysteresis) {
+        if (levels.length == 0 || thresholds.length != levels.length - 1) {
+            throw new IllegalArgumentException("Need one threshold less than levels");
+        }
+        for (int i = 1; i < thresholds.length; i++) {
+            if (thresholds[i] >= thresholds[i - 1]) {
+                throw new IllegalArgumentException("Thresholds have to be descending");
+            }
+        }
+        this.levels = levels;
+        this.thresholds = thresholds;
+        this.hysteresis = hysteresis;
+    }
+
+    /**
+     * @param screenSize projected size as a fraction of the viewport height
+     * @return instance of the level to draw
+     */
+    public ModelInstance select(float screenSize) {
+        int level = current;
+        //finer while clearly above the threshold of the finer level
+        while (level > 0 && screenSize > thresholds[level - 1] * (1f + hysteresis)) {
+            level--;
+        }
+        //coarser while clearly below the threshold of this level
+        while (level < thresholds.length && screenSize < thresholds[level] * (1f - hysteresis)) {
+            level++;
+        }
+        current = level;
+        return levels[level];
+    }
+
+    public int getLevel() {
+        return current;
+    }
+
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    public ModelInstance getInstance(int level) {
+        return levels[level];
+    }
+}
@@ -0,0 +1,406 @@
+package com.github.daemontus.ar.libgdx;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Reads and writes {@link CachedModel} in a flat little endian binary layout.
+ *
+ * The file starts with a header holding the hash of the source asset, so a stale cache is
+ * detected and ignored. All fields are 4 byte aligned and vertex/index data are stored as
+ * contiguous blocks, which lets the reader hand out views into a memory mapped file instead
+ * of copying them.
+ *
+ * Plain Java, no GL or Android dependencies.
+ */
+public class MeshCache {
+
+    private static final int MAGIC = 0x43443347; // "G3DC" in little endian
+    private static final int VERSION = 1;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private MeshCache() {
+    }
+
+    /**
+     * @return SHA-1 of the stream content, the stream is read to the end but not closed
+     */
+    public static byte[] hash(InputStream input) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-1 not available", e);
+        }
+        byte[] chunk = new byte[16 * 1024];
+        int read;
+        while ((read = input.read(chunk)) != -1) {
+            digest.update(chunk, 0, read);
+        }
+        return digest.digest();
+    }
+
+    /**
+     * @return path of a level of detail stored next to the cache file, "cache/jet.bin" level 1 is "cache/jet.lod1.bin"
+     */
+    public static String lodFile(String cacheFile, int level) {
+        int dot = cacheFile.lastIndexOf('.');
+        if (dot < 0 || dot < cacheFile.lastIndexOf('/')) {
+            return cacheFile + ".lod" + level;
+        }
+        return cacheFile.substring(0, dot) + ".lod" + level + cacheFile.substring(dot);
+    }
+
+    /**
+     * Writes the model to file, replacing it atomically (the data goes to a temporary file first).
+     */
+    public static void write(File file, byte[] sourceHash, CachedModel model) throws IOException {
+        Output out = new Output(estimateSize(model));
+
+        out.putInt(MAGIC);
+        out.putInt(VERSION);
+        out.putBytes(sourceHash);
+        out.putLong(model.sourceLoadMillis);
+
+        out.putInt(model.meshes.size());
+        for (CachedModel.MeshData mesh : model.meshes) {
+            out.putInt(mesh.usage.length);
+            for (int a = 0; a < mesh.usage.length; a++) {
+                out.putInt(mesh.usage[a]);
+                out.putInt(mesh.numComponents[a]);
+                out.putInt(mesh.type[a]);
+                out.putInt(mesh.normalized[a] ? 1 : 0);
+                out.putInt(mesh.unit[a]);
+                out.putString(mesh.alias[a]);
+            }
+            FloatBuffer vertices = mesh.vertices.duplicate();
+            vertices.rewind();
+            out.putInt(vertices.remaining());
+            out.putFloats(vertices);
+            ShortBuffer indices = mesh.indices.duplicate();
+            indices.rewind();
+            out.putInt(indices.remaining());
+            out.putShorts(indices);
+        }
+
+        out.putInt(model.parts.size());
+        for (CachedModel.PartData part : model.parts) {
+            out.putString(part.id);
+            out.putInt(part.mesh);
+            out.putInt(part.primitiveType);
+            out.putInt(part.offset);
+            out.putInt(part.size);
+        }
+
+        out.putInt(model.materials.size());
+        for (CachedModel.MaterialData material : model.materials) {
+            out.putString(material.id);
+            out.putInt(material.flags);
+            out.putFloats(material.diffuse);
+            out.putFloats(material.specular);
+            out.putFloats(material.ambient);
+            out.putFloats(material.emissive);
+            out.putFloat(material.shininess);
+            out.putFloat(material.opacity);
+            out.putString(material.texture);
+            out.putInt(material.minFilter);
+            out.putInt(material.magFilter);
+            out.putInt(material.uWrap);
+            out.putInt(material.vWrap);
+        }
+
+        out.putInt(model.nodes.size());
+        for (CachedModel.NodeData node : model.nodes) {
+            out.putString(node.id);
+            out.putInt(node.parent);
+            out.putFloats(node.transform);
+            out.putInt(node.parts.length);
+            for (int p = 0; p < node.parts.length; p++) {
+                out.putInt(node.parts[p]);
+                out.putInt(node.materials[p]);
+            }
+        }
+
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create " + parent);
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        FileOutputStream stream = new FileOutputStream(temp);
+        try {
+            FileChannel channel = stream.getChannel();
+            ByteBuffer data = out.finish();
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        } finally {
+            stream.close();
+        }
+        if (!temp.renameTo(file)) {
+            //rename does not replace existing files on every platform
+            if (!file.delete() || !temp.renameTo(file)) {
+                throw new IOException("Unable to replace " + file);
+            }
+        }
+    }
+
+    /**
+     * Memory maps the cache file. Vertex and index buffers of the result are views into the mapping.
+     * @return the cached model or null if the file does not exist, has an unknown format, is
+     * truncated or corrupted, or was created from a different source (hash mismatch)
+     */
+    public static CachedModel read(File file, byte[] sourceHash) throws IOException {
+        if (!file.isFile()) return null;
+
+        MappedByteBuffer mapped;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            //the mapping stays valid after the channel is closed
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            raf.close();
+        }
+        ByteBuffer in = mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+        try {
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) return null;
+            if (!Arrays.equals(getBytes(in), sourceHash)) return null;
+
+            CachedModel model = new CachedModel();
+            model.sourceLoadMillis = in.getLong();
+
+            //every mesh holds at least its attribute, vertex and index counts
+            int meshCount = count(in, 12);
+            for (int m = 0; m < meshCount; m++) {
+                CachedModel.MeshData mesh = new CachedModel.MeshData();
+                //five ints and the alias length per attribute
+                int attributes = count(in, 24);
+                mesh.usage = new int[attributes];
+                mesh.numComponents = new int[attributes];
+                mesh.type = new int[attributes];
+                mesh.normalized = new boolean[attributes];
+                mesh.unit = new int[attributes];
+                mesh.alias = new String[attributes];
+                for (int a = 0; a < attributes; a++) {
+                    mesh.usage[a] = in.getInt();
+                    mesh.numComponents[a] = in.getInt();
+                    mesh.type[a] = in.getInt();
+                    mesh.normalized[a] = in.getInt() != 0;
+                    mesh.unit[a] = in.getInt();
+                    mesh.alias[a] = getString(in);
+                }
+                int floats = count(in, 4);
+                mesh.vertices = view(in, floats * 4).asFloatBuffer();
+                int shorts = count(in, 2);
+                mesh.indices = view(in, align(shorts * 2)).asShortBuffer();
+                mesh.indices.limit(shorts);
+                model.meshes.add(mesh);
+            }
+
+            int partCount = count(in, 20);
+            for (int p = 0; p < partCount; p++) {
+                CachedModel.PartData part = new CachedModel.PartData();
+                part.id = getString(in);
+                part.mesh = in.getInt();
+                part.primitiveType = in.getInt();
+                part.offset = in.getInt();
+                part.size = in.getInt();
+                model.parts.add(part);
+            }
+
+            int materialCount = count(in, 4);
+            for (int m = 0; m < materialCount; m++) {
+                CachedModel.MaterialData material = new CachedModel.MaterialData();
+                material.id = getString(in);
+                material.flags = in.getInt();
+                getFloats(in, material.diffuse);
+                getFloats(in, material.specular);
+                getFloats(in, material.ambient);
+                getFloats(in, material.emissive);
+                material.shininess = in.getFloat();
+                material.opacity = in.getFloat();
+                material.texture = getString(in);
+                material.minFilter = in.getInt();
+                material.magFilter = in.getInt();
+                material.uWrap = in.getInt();
+                material.vWrap = in.getInt();
+                model.materials.add(material);
+            }
+
+            int nodeCount = count(in, 4);
+            for (int n = 0; n < nodeCount; n++) {
+                CachedModel.NodeData node = new CachedModel.NodeData();
+                node.id = getString(in);
+                node.parent = in.getInt();
+                getFloats(in, node.transform);
+                int parts = count(in, 8);
+                node.parts = new int[parts];
+                node.materials = new int[parts];
+                for (int p = 0; p < parts; p++) {
+                    node.parts[p] = in.getInt();
+                    node.materials[p] = in.getInt();
+                }
+                model.nodes.add(node);
+            }
+
+            return references(model) ? model : null;
+        } catch (BufferUnderflowException e) {
+            //truncated file or a count past its end, treat it as missing
+            return null;
+        } catch (IllegalArgumentException e) {
+            //corrupted lengths
+            return null;
+        }
+    }
+
+    //checks that parts, materials and parent nodes referenced by index exist, negative node
+    //part and material indices are skipped by the loader
+    private static boolean references(CachedModel model) {
+        for (CachedModel.PartData part : model.parts) {
+            if (part.mesh < 0 || part.mesh >= model.meshes.size()) return false;
+        }
+        for (int n = 0; n < model.nodes.size(); n++) {
+            CachedModel.NodeData node = model.nodes.get(n);
+            if (node.parent >= n) return false;
+            for (int p = 0; p < node.parts.length; p++) {
+                if (node.parts[p] >= model.parts.size() || node.materials[p] >= model.materials.size()) return false;
+            }
+        }
+        return true;
+    }
+
+    //reads a count of elements at least elementSize bytes each, a count that does not fit in the
+    //rest of the file means it is corrupted or truncated and is reported the same way as a short read
+    private static int count(ByteBuffer in, int elementSize) {
+        int count = in.getInt();
+        if (count < 0 || count > in.remaining() / elementSize) {
+            throw new BufferUnderflowException();
+        }
+        return count;
+    }
+
+    //returns a little endian view of the next length bytes and skips them
+    private static ByteBuffer view(ByteBuffer in, int length) {
+        ByteBuffer view = in.slice().order(ByteOrder.LITTLE_ENDIAN);
+        view.limit(length);
+        in.position(in.position() + length);
+        return view;
+    }
+
+    private static byte[] getBytes(ByteBuffer in) {
+        int length = count(in, 1);
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        in.position(in.position() + align(length) - length);
+        return bytes;
+    }
+
+    private static String getString(ByteBuffer in) {
+        return new String(getBytes(in), UTF8);
+    }
+
+    private static void getFloats(ByteBuffer in, float[] out) {
+        for (int i = 0; i < out.length; i++) {
+            out[i] = in.getFloat();
+        }
+    }
+
+    private static int align(int length) {
+        return (length + 3) & ~3;
+    }
+
+    private static int estimateSize(CachedModel model) {
+        int size = 1024;
+        for (CachedModel.MeshData mesh : model.meshes) {
+            size += 256 + mesh.vertices.capacity() * 4 + mesh.indices.capacity() * 2;
+        }
+        return size + 256 * (model.parts.size() + model.materials.size() + model.nodes.size());
+    }
+
+    //growable little endian output buffer
+    private static class Output {
+
+        private ByteBuffer buffer;
+
+        Output(int capacity) {
+            buffer = ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        void putInt(int value) {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        void putFloat(float value) {
+            ensure(4);
+            buffer.putFloat(value);
+        }
+
+        void putFloats(float[] values) {
+            ensure(values.length * 4);
+            buffer.asFloatBuffer().put(values);
+            buffer.position(buffer.position() + values.length * 4);
+        }
+
+        void putFloats(FloatBuffer values) {
+            int count = values.remaining();
+            ensure(count * 4);
+            buffer.asFloatBuffer().put(values);
+            buffer.position(buffer.position() + count * 4);
+        }
+
+        void putShorts(ShortBuffer values) {
+            int count = values.remaining();
+            ensure(align(count * 2));
+            buffer.asShortBuffer().put(values);
+            buffer.position(buffer.position() + align(count * 2));
+        }
+
+        void putBytes(byte[] bytes) {
+            ensure(4 + align(bytes.length));
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+            buffer.position(buffer.position() + align(bytes.length) - bytes.length);
+        }
+
+        void putString(String value) {
+            putBytes((value == null ? "" : value).getBytes(UTF8));
+        }
+
+        ByteBuffer finish() {
+            buffer.flip();
+            return buffer;
+        }
+
+        private void ensure(int bytes) {
+            if (buffer.remaining() < bytes) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes))
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                buffer.flip();
+                grown.put(buffer);
+                buffer = grown;
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.github.daemontus.ar.libgdx;
+
+import android.util.Log;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.g3d.Model;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Prepares the model before the display exists, so start up can overlap it with Vuforia init.
+ *
+ * prepare() hashes the source asset and maps the {@link MeshCache} file, it runs on any thread.
+ * upload() creates the GPU meshes from the cache and must run on the GL thread. Display polls
+ * isPrepared() and takes the model, or falls back to loading the asset when there is no cache.
+ *
+ * The build ships an optimized cache and its levels of detail as assets (see the meshopt module).
+ * Assets cannot be memory mapped, so they are copied to local storage when the local copy is
+ * missing or stale and mapped from there.
+ */
+public class ModelPreloader {
+
+    private static final String LOG = "MODEL_PRELOADER";
+
+    private final String modelFile;
+    private final String cacheFile;
+
+    private volatile boolean prepared;
+    //hash of the source asset, null if it could not be read (cache disabled)
+    private volatile byte[] sourceHash;
+    private volatile CachedModel cached;
+    private volatile CachedModel[] lods;
+    private volatile long prepareMillis;
+
+    private volatile boolean quantizeVertices;
+
+    //GL thread only
+    private Model model;
+    private boolean uploaded;
+
+    public ModelPreloader(String modelFile, String cacheFile) {
+        this.modelFile = modelFile;
+        this.cacheFile = cacheFile;
+    }
+
+    public String getModelFile() {
+        return modelFile;
+    }
+
+    public String getCacheFile() {
+        return cacheFile;
+    }
+
+    /**
+     * @param quantize upload meshes in the compact layout of {@link VertexQuantizer}, set before upload()
+     */
+    public void setQuantizeVertices(boolean quantize) {
+        this.quantizeVertices = quantize;
+    }
+
+    public boolean isQuantizeVertices() {
+        return quantizeVertices;
+    }
+
+    /**
+     * Reads the cache if it is valid. Never throws, failures leave the cold path to the display.
+     */
+    public void prepare() {
+        if (prepared) return;
+        long start = System.nanoTime();
+        try {
+            InputStream input = Gdx.files.internal(modelFile).read();
+            try {
+                sourceHash = MeshCache.hash(input);
+            } finally {
+                input.close();
+            }
+            cached = readSeeded(cacheFile);
+            if (cached != null) {
+                List<CachedModel> levels = new ArrayList<CachedModel>();
+                CachedModel level;
+                while ((level = readSeeded(MeshCache.lodFile(cacheFile, levels.size() + 1))) != null) {
+                    levels.add(level);
+                }
+                if (!levels.isEmpty()) {
+                    lods = levels.toArray(new CachedModel[levels.size()]);
+                }
+            }
+        } catch (IOException e) {
+            Log.w(LOG, "Unable to read model cache", e);
+        } catch (RuntimeException e) {
+            //missing asset (GdxRuntimeException) or anything the cache reader did not expect
+            Log.w(LOG, "Unable to read model cache", e);
+        }
+        prepareMillis = (System.nanoTime() - start) / 1000000;
+        prepared = true;
+    }
+
+    //maps the local copy, seeding it from the asset shipped by the build when missing or stale
+    private CachedModel readSeeded(String path) throws IOException {
+        FileHandle local = Gdx.files.local(path);
+        CachedModel model = MeshCache.read(local.file(), sourceHash);
+        if (model != null) return model;
+        FileHandle shipped = Gdx.files.internal(path);
+        if (!shipped.exists()) return null;
+        shipped.copyTo(local);
+        return MeshCache.read(local.file(), sourceHash);
+    }
+
+    /**
+     * Creates the model from the cache, GL thread. Does nothing before prepare() or when done.
+     */
+    public void upload() {
+        if (!prepared || uploaded) return;
+        uploaded = true;
+        CachedModel data = cached;
+        if (data != null) {
+            try {
+                model = CachedModelLoader.load(data, quantizeVertices);
+                if (quantizeVertices) {
+                    logVertexMemory(data, model);
+                }
+            } catch (GdxRuntimeException e) {
+                Log.w(LOG, "Unable to create model from cache", e);
+            }
+        }
+    }
+
+    private static void logVertexMemory(CachedModel data, Model model) {
+        long before = 0;
+        long after = 0;
+        for (CachedModel.MeshData mesh : data.meshes) {
+            before += mesh.vertices.limit() * 4L;
+        }
+        for (Mesh mesh : model.meshes) {
+            after += (long) mesh.getNumVertices() * mesh.getVertexSize();
+        }
+        Log.d(LOG, "Vertex buffers: " + before / 1024 + " KB as floats, " + after / 1024 + " KB quantized");
+    }
+
+    public boolean isPrepared() {
+        return prepared;
+    }
+
+    public byte[] getSourceHash() {
+        return sourceHash;
+    }
+
+    public CachedModel getCached() {
+        return cached;
+    }
+
+    /**
+     * @return levels of detail shipped with the cache, coarser ones last, null if there are none
+     */
+    public CachedModel[] getLods() {
+        return lods;
+    }
+
+    public long getPrepareMillis() {
+        return prepareMillis;
+    }
+
+    /**
+     * @return the uploaded model (the caller owns it from now on) or null if there is no cache
+     */
+    public Model takeModel() {
+        upload();
+        Model result = model;
+        model = null;
+        return result;
+    }
+}
@@ -0,0 +1,16 @@
+package com.github.daemontus.ar.libgdx;
+
+import com.badlogic.gdx.math.Vector3;
+
+/**
+ * Receives results of touch picking. Called on the render thread.
+ */
+public interface PickListener {
+
+    // Closest content hit by the touch ray. The point (world space) is reused, copy it if you need to keep it.
+    void onPicked(TrackableRegistry.Entry entry, Vector3 point, float distance);
+
+    // The touch ray did not hit any visible content.
+    void onMissed(float screenX, float screenY);
+
+}
@@ -0,0 +1,152 @@
+package com.github.daemontus.ar.libgdx;
+
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.graphics.g3d.Model;
+import com.badlogic.gdx.graphics.g3d.model.MeshPart;
+import com.badlogic.gdx.graphics.g3d.model.Node;
+import com.badlogic.gdx.graphics.g3d.model.NodePart;
+import com.badlogic.gdx.math.Intersector;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.Ray;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.FloatArray;
+import com.badlogic.gdx.utils.ObjectMap;
+
+/**
+ * Ray-cast picking of tracked content.
+ *
+ * A touch is unprojected through the camera into a world space ray, which is first tested
+ * against the world bounds of each candidate and then, in model space, against a triangle BVH
+ * of the model. Trees are built once per model by {@link #prepare(Model)}.
+ */
+public class Picker {
+
+    private final ObjectMap<Model, TriangleBvh> trees = new ObjectMap<Model, TriangleBvh>();
+
+    private final Matrix4 inverse = new Matrix4();
+    private final Ray localRay = new Ray(new Vector3(), new Vector3());
+    private final Vector3 point = new Vector3();
+
+    private PickListener listener;
+
+    public void setListener(PickListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Builds the triangle tree of the model, call once when the model is loaded.
+     */
+    public void prepare(Model model) {
+        if (!trees.containsKey(model)) {
+            FloatArray triangles = collectTriangles(model);
+            trees.put(model, new TriangleBvh(triangles.items, triangles.size / 9));
+        }
+    }
+
+    public void forget(Model model) {
+        trees.remove(model);
+    }
+
+    /**
+     * Picks the closest content hit by the touch and reports it to the listener.
+     * @param candidates entries drawn in the last frame, their world bounds have to be up to date
+     * @return true if something was hit
+     */
+    public boolean pick(Camera camera, float screenX, float screenY, Array<TrackableRegistry.Entry> candidates) {
+        Ray ray = camera.getPickRay(screenX, screenY);
+
+        TrackableRegistry.Entry best = null;
+        float bestDistance = Float.POSITIVE_INFINITY;
+
+        for (int i = 0; i < candidates.size; i++) {
+            TrackableRegistry.Entry entry = candidates.get(i);
+            //coarse test first
+            if (!Intersector.intersectRayBoundsFast(ray, entry.worldBounds)) continue;
+
+            TriangleBvh tree = trees.get(entry.instance.model);
+            if (tree == null) continue;
+
+            //the model space ray keeps the world space parametrisation, so t is a world distance
+            inverse.set(entry.instance.transform).inv();
+            localRay.set(ray).mul(inverse);
+            Vector3 o = localRay.origin;
+            Vector3 d = localRay.direction;
+            float t = tree.intersect(o.x, o.y, o.z, d.x, d.y, d.z, bestDistance);
+            if (t >= 0 && t < bestDistance) {
+                bestDistance = t;
+                best = entry;
+            }
+        }
+
+        if (listener != null) {
+            if (best != null) {
+                ray.getEndPoint(point, bestDistance);
+                listener.onPicked(best, point, bestDistance);
+            } else {
+                listener.onMissed(screenX, screenY);
+            }
+        }
+        return best != null;
+    }
+
+    // Model space triangles (three vertices per triangle) of all triangle parts of the model.
+    private static FloatArray collectTriangles(Model model) {
+        FloatArray out = new FloatArray();
+        model.calculateTransforms();
+        for (Node node : model.nodes) {
+            collectTriangles(node, out);
+        }
+        return out;
+    }
+
+    private static void collectTriangles(Node node, FloatArray out) {
+        Vector3 v = new Vector3();
+        for (NodePart part : node.parts) {
+            MeshPart meshPart = part.meshPart;
+            if (meshPart.primitiveType != GL20.GL_TRIANGLES) continue;
+
+            Mesh mesh = meshPart.mesh;
+            int stride;
+            int positionOffset;
+            float[] vertices;
+            if (mesh instanceof QuantizedMesh) {
+                //positions are only known after decoding
+                stride = 3;
+                positionOffset = 0;
+                vertices = ((QuantizedMesh) mesh).getPositions();
+            } else {
+                VertexAttribute position = mesh.getVertexAttribute(VertexAttributes.Usage.Position);
+                if (position == null) continue;
+
+                stride = mesh.getVertexSize() / 4;
+                positionOffset = position.offset / 4;
+                vertices = new float[mesh.getNumVertices() * stride];
+                mesh.getVertices(vertices);
+            }
+
+            short[] indices = null;
+            if (mesh.getNumIndices() > 0) {
+                indices = new short[mesh.getNumIndices()];
+                mesh.getIndices(indices);
+            }
+
+            int end = meshPart.offset + meshPart.size;
+            for (int i = meshPart.offset; i < end; i++) {
+                int index = indices == null ? i : indices[i] & 0xFFFF;
+                int base = index * stride + positionOffset;
+                v.set(vertices[base], vertices[base + 1], vertices[base + 2]).mul(node.globalTransform);
+                out.add(v.x);
+                out.add(v.y);
+                out.add(v.z);
+            }
+        }
+        for (Node child : node.getChildren()) {
+            collectTriangles(child, out);
+        }
+    }
+}
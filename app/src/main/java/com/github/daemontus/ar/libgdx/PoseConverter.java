@@ -0,0 +1,51 @@
+package com.github.daemontus.ar.libgdx;
+
+import com.github.daemontus.ar.vuforia.MatrixMath;
+
+/**
+ * Converts Vuforia trackable poses into libgdx transforms without allocating.
+ *
+ * Input is the row-major 3x4 pose as returned by Matrix34F.getData(). The pose is turned into
+ * a column-major model view matrix with the front/back camera axis swap applied, which is then
+ * inverted in closed form (it is rigid, so the inverse is just a rotation transpose).
+ * The model view matrix places content on the target for a camera fixed in the origin,
+ * the inverse gives the camera placement in target space.
+ */
+public class PoseConverter {
+
+    //column-major model view matrix with axis swap applied
+    private final float[] modelView = new float[16];
+    //inverse of modelView, i.e. the camera placement in target space
+    private final float[] inverse = new float[16];
+
+    /**
+     * Loads a 3x4 row-major pose and applies the axis swap.
+     * Back camera maps (x, y, z) to (y, -x, z), front camera (reflected video) to (y, x, z).
+     */
+    public void setPose(float[] pose, int offset, boolean frontCamera) {
+        float sign = frontCamera ? 1.0f : -1.0f;
+        for (int c = 0; c < 4; c++) {
+            modelView[c * 4] = pose[offset + 4 + c];
+            modelView[c * 4 + 1] = sign * pose[offset + c];
+            modelView[c * 4 + 2] = pose[offset + 8 + c];
+            modelView[c * 4 + 3] = 0.0f;
+        }
+        modelView[15] = 1.0f;
+
+        MatrixMath.invertRigid(modelView, 0, inverse, 0);
+    }
+
+    /**
+     * @return column-major model view matrix of the last pose. Owned by the converter, do not modify.
+     */
+    public float[] getModelView() {
+        return modelView;
+    }
+
+    /**
+     * @return column-major inverse of the model view matrix. Owned by the converter, do not modify.
+     */
+    public float[] getInverseModelView() {
+        return inverse;
+    }
+}
@@ -0,0 +1,19 @@
+package com.github.daemontus.ar.libgdx;
+
+/**
+ * Processing stage between tracking and rendering. Called on the render thread.
+ *
+ * Poses are the row-major 3x4 matrices returned by Matrix34F.getData() and are modified in place.
+ * Every trackable has its own slot (see {@link TrackableRegistry.Entry#slot}) so implementations
+ * can keep per-trackable state in preallocated arrays.
+ */
+public interface PoseFilter {
+
+    // Filters the pose observed at timestamp (seconds, camera clock). The same timestamp may be
+    // passed repeatedly when rendering is faster than the camera.
+    void filter(int slot, float[] pose, int offset, double timestamp);
+
+    // Forgets the state of the slot, the next pose is passed through unchanged.
+    void reset(int slot);
+
+}
@@ -0,0 +1,107 @@
+package com.github.daemontus.ar.libgdx;
+
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.BoundingBox;
+
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Mesh in the layout of {@link VertexQuantizer}, with the transform that decodes it.
+ *
+ * Bounding boxes are computed from the decoded positions, so models made of quantized meshes
+ * can be culled and measured as usual. Everything else reading vertex data on the CPU has to
+ * go through {@link #getPositions()}.
+ */
+public class QuantizedMesh extends Mesh {
+
+    private final int format;
+    private final float[] decode;
+    private final Vector3 temp = new Vector3();
+
+    /**
+     * @param format optional attributes, see {@link VertexQuantizer#NORMAL} and friends
+     * @param decode position minimum and extent, texture coordinate minimum and extent
+     */
+    public QuantizedMesh(int maxVertices, int maxIndices, VertexAttributes attributes, int format, float[] decode) {
+        super(true, maxVertices, maxIndices, attributes);
+        this.format = format;
+        this.decode = decode;
+    }
+
+    public boolean has(int attribute) {
+        return (format & attribute) != 0;
+    }
+
+    public int getFormat() {
+        return format;
+    }
+
+    /**
+     * @return position minimum (3) and extent (3), texture coordinate minimum (2) and extent (2)
+     */
+    public float[] getDecode() {
+        return decode;
+    }
+
+    /**
+     * @return decoded positions, 3 floats per vertex
+     */
+    public float[] getPositions() {
+        FloatBuffer vertices = getVerticesBuffer();
+        int stride = getVertexSize() / 4;
+        int count = getNumVertices();
+        float[] positions = new float[count * 3];
+        for (int v = 0; v < count; v++) {
+            float high = vertices.get(v * stride);
+            float low = vertices.get(v * stride + 1);
+            for (int c = 0; c < 3; c++) {
+                int q = VertexQuantizer.join(VertexQuantizer.unpack(high, c), VertexQuantizer.unpack(low, c));
+                positions[v * 3 + c] = VertexQuantizer.dequantize(q, decode[c], decode[3 + c]);
+            }
+        }
+        return positions;
+    }
+
+    private Vector3 position(FloatBuffer vertices, int stride, int vertex, Vector3 out) {
+        float high = vertices.get(vertex * stride);
+        float low = vertices.get(vertex * stride + 1);
+        return out.set(
+                VertexQuantizer.dequantize(VertexQuantizer.join(VertexQuantizer.unpack(high, 0), VertexQuantizer.unpack(low, 0)), decode[0], decode[3]),
+                VertexQuantizer.dequantize(VertexQuantizer.join(VertexQuantizer.unpack(high, 1), VertexQuantizer.unpack(low, 1)), decode[1], decode[4]),
+                VertexQuantizer.dequantize(VertexQuantizer.join(VertexQuantizer.unpack(high, 2), VertexQuantizer.unpack(low, 2)), decode[2], decode[5]));
+    }
+
+    @Override
+    public void calculateBoundingBox(BoundingBox bbox) {
+        bbox.inf();
+        FloatBuffer vertices = getVerticesBuffer();
+        int stride = getVertexSize() / 4;
+        for (int v = 0, count = getNumVertices(); v < count; v++) {
+            bbox.ext(position(vertices, stride, v, temp));
+        }
+    }
+
+    @Override
+    public BoundingBox calculateBoundingBox(BoundingBox out, int offset, int count, Matrix4 transform) {
+        return extendBoundingBox(out.inf(), offset, count, transform);
+    }
+
+    @Override
+    public BoundingBox extendBoundingBox(BoundingBox out, int offset, int count, Matrix4 transform) {
+        FloatBuffer vertices = getVerticesBuffer();
+        ShortBuffer indices = getIndicesBuffer();
+        int stride = getVertexSize() / 4;
+        boolean indexed = getNumIndices() > 0;
+        for (int i = offset, end = offset + count; i < end; i++) {
+            int vertex = indexed ? indices.get(i) & 0xFFFF : i;
+            position(vertices, stride, vertex, temp);
+            if (transform != null) temp.mul(transform);
+            out.ext(temp);
+        }
+        return out;
+    }
+}
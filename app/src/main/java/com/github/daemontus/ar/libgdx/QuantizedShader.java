@@ -0,0 +1,307 @@
+package com.github.daemontus.ar.libgdx;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.g3d.Attributes;
+import com.badlogic.gdx.graphics.g3d.Renderable;
+import com.badlogic.gdx.graphics.g3d.Shader;
+import com.badlogic.gdx.graphics.g3d.attributes.BlendingAttribute;
+import com.badlogic.gdx.graphics.g3d.attributes.ColorAttribute;
+import com.badlogic.gdx.graphics.g3d.attributes.DirectionalLightsAttribute;
+import com.badlogic.gdx.graphics.g3d.attributes.FloatAttribute;
+import com.badlogic.gdx.graphics.g3d.attributes.TextureAttribute;
+import com.badlogic.gdx.graphics.g3d.environment.DirectionalLight;
+import com.badlogic.gdx.graphics.g3d.shaders.BaseShader;
+import com.badlogic.gdx.graphics.g3d.shaders.DefaultShader;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+/**
+ * ModelBatch shader for {@link QuantizedMesh}, decodes the attributes written by {@link VertexQuantizer}.
+ *
+ * Shading has the terms of libgdx's DefaultShader for the materials of our models: ambient light,
+ * diffuse color, diffuse texture and blending, Lambert diffuse and Blinn-Phong specular (specular
+ * color, shininess defaulting to 20 like there) from the first directional light. It is computed
+ * per fragment instead of per vertex, so highlights are a little sharper on coarse meshes. Other
+ * lights, specular textures and fog are ignored, and so are emissive colors, which the
+ * DefaultShader of libgdx 1.9.3 does not draw either. One instance serves one combination of
+ * optional vertex attributes, diffuse texture and specular color, {@link QuantizedShaderProvider}
+ * creates them as needed.
+ */
+public class QuantizedShader extends BaseShader {
+
+    /**
+     * Declarations and functions decoding the quantized attributes, for vertex shaders.
+     * Positions need u_positionMin and u_positionExtent, texture coordinates u_texCoordDecode
+     * (minimum in xy, extent in zw), see {@link #setDecode(ShaderProgram, QuantizedMesh)}.
+     */
+    public static final String DECODE =
+            "attribute vec4 " + VertexQuantizer.POSITION_HIGH_ALIAS + ";\n" +
+            "attribute vec4 " + VertexQuantizer.POSITION_LOW_ALIAS + ";\n" +
+            "uniform vec3 u_positionMin;\n" +
+            "uniform vec3 u_positionExtent;\n" +
+            "uniform vec4 u_texCoordDecode;\n" +
+            //normalized high and low bytes back to a 16 bit value in [0, 1]
+            "vec2 joinBytes(vec2 high, vec2 low) {\n" +
+            "    return high * (65280.0 / 65535.0) + low * (255.0 / 65535.0);\n" +
+            "}\n" +
+            "vec3 joinBytes(vec3 high, vec3 low) {\n" +
+            "    return high * (65280.0 / 65535.0) + low * (255.0 / 65535.0);\n" +
+            "}\n" +
+            "vec3 decodePosition() {\n" +
+            "    return u_positionMin + joinBytes(" + VertexQuantizer.POSITION_HIGH_ALIAS + ".xyz, "
+                    + VertexQuantizer.POSITION_LOW_ALIAS + ".xyz) * u_positionExtent;\n" +
+            "}\n" +
+            "vec3 decodeNormal(vec4 value) {\n" +
+            "    vec2 e = joinBytes(value.xz, value.yw) * 2.0 - 1.0;\n" +
+            "    vec3 n = vec3(e, 1.0 - abs(e.x) - abs(e.y));\n" +
+            "    float t = max(-n.z, 0.0);\n" +
+            "    n.xy += mix(vec2(t), vec2(-t), step(0.0, n.xy));\n" +
+            "    return normalize(n);\n" +
+            "}\n" +
+            "vec2 decodeTexCoord(vec4 value) {\n" +
+            "    return u_texCoordDecode.xy + joinBytes(value.xz, value.yw) * u_texCoordDecode.zw;\n" +
+            "}\n";
+
+    private static final String VERTEX_SHADER =
+            DECODE +
+            "#ifdef normalFlag\n" +
+            "attribute vec4 " + VertexQuantizer.NORMAL_ALIAS + ";\n" +
+            "uniform mat3 u_normalMatrix;\n" +
+            "varying vec3 v_normal;\n" +
+            "#endif\n" +
+            "#ifdef specularFlag\n" +
+            "uniform vec4 u_cameraPosition;\n" +
+            "varying vec3 v_viewVec;\n" +
+            "#endif\n" +
+            "#ifdef colorFlag\n" +
+            "attribute vec4 " + VertexQuantizer.COLOR_ALIAS + ";\n" +
+            "varying vec4 v_color;\n" +
+            "#endif\n" +
+            "#ifdef textureFlag\n" +
+            "attribute vec4 " + VertexQuantizer.TEXTURE_ALIAS + ";\n" +
+            "varying vec2 v_texCoord0;\n" +
+            "#endif\n" +
+            "uniform mat4 u_projViewTrans;\n" +
+            "uniform mat4 u_worldTrans;\n" +
+            "void main() {\n" +
+            "#ifdef normalFlag\n" +
+            "    v_normal = normalize(u_normalMatrix * decodeNormal(" + VertexQuantizer.NORMAL_ALIAS + "));\n" +
+            "#endif\n" +
+            "#ifdef colorFlag\n" +
+            "    v_color = " + VertexQuantizer.COLOR_ALIAS + ";\n" +
+            "#endif\n" +
+            "#ifdef textureFlag\n" +
+            "    v_texCoord0 = decodeTexCoord(" + VertexQuantizer.TEXTURE_ALIAS + ");\n" +
+            "#endif\n" +
+            "    vec4 position = u_worldTrans * vec4(decodePosition(), 1.0);\n" +
+            "#ifdef specularFlag\n" +
+            "    v_viewVec = u_cameraPosition.xyz - position.xyz;\n" +
+            "#endif\n" +
+            "    gl_Position = u_projViewTrans * position;\n" +
+            "}\n";
+
+    private static final String FRAGMENT_SHADER =
+            "#ifdef GL_ES\n" +
+            "precision mediump float;\n" +
+            "#endif\n" +
+            "uniform vec4 u_diffuseColor;\n" +
+            "uniform vec3 u_ambientLight;\n" +
+            "uniform vec3 u_lightColor;\n" +
+            "uniform vec3 u_lightDirection;\n" +
+            "#ifdef normalFlag\n" +
+            "varying vec3 v_normal;\n" +
+            "#endif\n" +
+            "#ifdef specularFlag\n" +
+            "uniform vec4 u_specularColor;\n" +
+            "uniform float u_shininess;\n" +
+            "varying vec3 v_viewVec;\n" +
+            "#endif\n" +
+            "#ifdef colorFlag\n" +
+            "varying vec4 v_color;\n" +
+            "#endif\n" +
+            "#ifdef textureFlag\n" +
+            "uniform sampler2D u_diffuseTexture;\n" +
+            "varying vec2 v_texCoord0;\n" +
+            "#endif\n" +
+            "void main() {\n" +
+            "    vec4 color = u_diffuseColor;\n" +
+            "#ifdef colorFlag\n" +
+            "    color *= v_color;\n" +
+            "#endif\n" +
+            "#ifdef textureFlag\n" +
+            "    color *= texture2D(u_diffuseTexture, v_texCoord0);\n" +
+            "#endif\n" +
+            //without normals only the ambient light applies, like in the DefaultShader
+            "    vec3 light = u_ambientLight;\n" +
+            "#ifdef normalFlag\n" +
+            "    vec3 normal = normalize(v_normal);\n" +
+            "    vec3 lightDir = -u_lightDirection;\n" +
+            "    vec3 value = u_lightColor * clamp(dot(normal, lightDir), 0.0, 1.0);\n" +
+            "    light += value;\n" +
+            "#endif\n" +
+            "    gl_FragColor = vec4(color.rgb * light, color.a);\n" +
+            "#if defined(normalFlag) && defined(specularFlag)\n" +
+            "    float halfDotView = max(0.0, dot(normal, normalize(lightDir + normalize(v_viewVec))));\n" +
+            "    gl_FragColor.rgb += u_specularColor.rgb * value * pow(halfDotView, u_shininess);\n" +
+            "#endif\n" +
+            "}\n";
+
+    private static final Setter positionDecode = new LocalSetter() {
+        @Override
+        public void set(BaseShader shader, int inputID, Renderable renderable, Attributes combinedAttributes) {
+            float[] decode = ((QuantizedMesh) renderable.meshPart.mesh).getDecode();
+            shader.program.setUniformf("u_positionMin", decode[0], decode[1], decode[2]);
+            shader.program.setUniformf("u_positionExtent", decode[3], decode[4], decode[5]);
+        }
+    };
+
+    private static final Setter texCoordDecode = new LocalSetter() {
+        @Override
+        public void set(BaseShader shader, int inputID, Renderable renderable, Attributes combinedAttributes) {
+            float[] decode = ((QuantizedMesh) renderable.meshPart.mesh).getDecode();
+            shader.set(inputID, decode[6], decode[7], decode[8], decode[9]);
+        }
+    };
+
+    //diffuse color with the blending opacity in alpha
+    private static final Setter diffuseColor = new LocalSetter() {
+        @Override
+        public void set(BaseShader shader, int inputID, Renderable renderable, Attributes combinedAttributes) {
+            ColorAttribute diffuse = (ColorAttribute) combinedAttributes.get(ColorAttribute.Diffuse);
+            Color color = diffuse == null ? Color.WHITE : diffuse.color;
+            BlendingAttribute blending = (BlendingAttribute) combinedAttributes.get(BlendingAttribute.Type);
+            float alpha = blending != null && blending.blended ? color.a * blending.opacity : color.a;
+            shader.set(inputID, color.r, color.g, color.b, alpha);
+        }
+    };
+
+    //DefaultShader's value when the material has no shininess
+    private static final float DEFAULT_SHININESS = 20f;
+
+    private static final Setter shininess = new LocalSetter() {
+        @Override
+        public void set(BaseShader shader, int inputID, Renderable renderable, Attributes combinedAttributes) {
+            FloatAttribute attribute = (FloatAttribute) combinedAttributes.get(FloatAttribute.Shininess);
+            shader.set(inputID, attribute == null ? DEFAULT_SHININESS : attribute.value);
+        }
+    };
+
+    //first directional light and ambient light from the environment
+    private static final Setter lights = new LocalSetter() {
+        @Override
+        public void set(BaseShader shader, int inputID, Renderable renderable, Attributes combinedAttributes) {
+            ShaderProgram program = shader.program;
+            ColorAttribute ambient = (ColorAttribute) combinedAttributes.get(ColorAttribute.AmbientLight);
+            if (ambient != null) {
+                program.setUniformf("u_ambientLight", ambient.color.r, ambient.color.g, ambient.color.b);
+            } else {
+                program.setUniformf("u_ambientLight", 0f, 0f, 0f);
+            }
+            DirectionalLightsAttribute directional = (DirectionalLightsAttribute) combinedAttributes.get(DirectionalLightsAttribute.Type);
+            if (directional != null && directional.lights.size > 0) {
+                DirectionalLight light = directional.lights.first();
+                program.setUniformf("u_lightColor", light.color.r, light.color.g, light.color.b);
+                program.setUniformf("u_lightDirection", light.direction);
+            } else {
+                program.setUniformf("u_lightColor", 0f, 0f, 0f);
+                program.setUniformf("u_lightDirection", 0f, 0f, -1f);
+            }
+        }
+    };
+
+    private final int format;
+    private final boolean texture;
+    private final boolean specular;
+    private final Renderable renderable;
+
+    /**
+     * Compiles the program for the attributes and material of the renderable.
+     */
+    public QuantizedShader(Renderable renderable) {
+        QuantizedMesh mesh = (QuantizedMesh) renderable.meshPart.mesh;
+        this.renderable = renderable;
+        this.format = mesh.getFormat();
+        this.texture = mesh.has(VertexQuantizer.TEXTURE) && renderable.material.has(TextureAttribute.Diffuse);
+        this.specular = mesh.has(VertexQuantizer.NORMAL) && renderable.material.has(ColorAttribute.Specular);
+
+        String prefix = "";
+        if (mesh.has(VertexQuantizer.NORMAL)) prefix += "#define normalFlag\n";
+        if (mesh.has(VertexQuantizer.COLOR)) prefix += "#define colorFlag\n";
+        if (texture) prefix += "#define textureFlag\n";
+        if (specular) prefix += "#define specularFlag\n";
+        program = new ShaderProgram(prefix + VERTEX_SHADER, prefix + FRAGMENT_SHADER);
+        if (!program.isCompiled()) {
+            throw new GdxRuntimeException("Quantized shader " + format + ": " + program.getLog());
+        }
+
+        register(DefaultShader.Inputs.projViewTrans, DefaultShader.Setters.projViewTrans);
+        register(DefaultShader.Inputs.worldTrans, DefaultShader.Setters.worldTrans);
+        register("u_positionMin", positionDecode);
+        register("u_texCoordDecode", texCoordDecode);
+        register("u_diffuseColor", diffuseColor);
+        register("u_ambientLight", lights);
+        if (mesh.has(VertexQuantizer.NORMAL)) {
+            register(DefaultShader.Inputs.normalMatrix, DefaultShader.Setters.normalMatrix);
+        }
+        if (texture) {
+            register(DefaultShader.Inputs.diffuseTexture, DefaultShader.Setters.diffuseTexture);
+        }
+        if (specular) {
+            register(DefaultShader.Inputs.cameraPosition, DefaultShader.Setters.cameraPosition);
+            register(DefaultShader.Inputs.specularColor, DefaultShader.Setters.specularColor);
+            register(DefaultShader.Inputs.shininess, shininess);
+        }
+    }
+
+    /**
+     * Sets the decode uniforms of {@link #DECODE} for a mesh, the program has to be bound.
+     */
+    public static void setDecode(ShaderProgram program, QuantizedMesh mesh) {
+        float[] decode = mesh.getDecode();
+        program.setUniformf("u_positionMin", decode[0], decode[1], decode[2]);
+        program.setUniformf("u_positionExtent", decode[3], decode[4], decode[5]);
+        if (program.hasUniform("u_texCoordDecode")) {
+            program.setUniformf("u_texCoordDecode", decode[6], decode[7], decode[8], decode[9]);
+        }
+    }
+
+    @Override
+    public void init() {
+        init(program, renderable);
+    }
+
+    @Override
+    public boolean canRender(Renderable instance) {
+        if (!(instance.meshPart.mesh instanceof QuantizedMesh)) return false;
+        QuantizedMesh mesh = (QuantizedMesh) instance.meshPart.mesh;
+        boolean hasTexture = mesh.has(VertexQuantizer.TEXTURE) && instance.material.has(TextureAttribute.Diffuse);
+        boolean hasSpecular = mesh.has(VertexQuantizer.NORMAL) && instance.material.has(ColorAttribute.Specular);
+        return mesh.getFormat() == format && hasTexture == texture && hasSpecular == specular;
+    }
+
+    @Override
+    public void render(Renderable renderable, Attributes combinedAttributes) {
+        BlendingAttribute blending = (BlendingAttribute) combinedAttributes.get(BlendingAttribute.Type);
+        if (blending != null && blending.blended) {
+            context.setBlending(true, blending.sourceFunction, blending.destFunction);
+        } else {
+            context.setBlending(false, GL20.GL_SRC_ALPHA, GL20.GL_ONE_MINUS_SRC_ALPHA);
+        }
+        context.setCullFace(GL20.GL_BACK);
+        context.setDepthTest(GL20.GL_LEQUAL);
+        context.setDepthMask(true);
+        super.render(renderable, combinedAttributes);
+    }
+
+    @Override
+    public int compareTo(Shader other) {
+        return 0;
+    }
+
+    @Override
+    public void dispose() {
+        program.dispose();
+        super.dispose();
+    }
+}
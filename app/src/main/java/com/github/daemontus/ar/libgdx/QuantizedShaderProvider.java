@@ -0,0 +1,19 @@
+package com.github.daemontus.ar.libgdx;
+
+import com.badlogic.gdx.graphics.g3d.Renderable;
+import com.badlogic.gdx.graphics.g3d.Shader;
+import com.badlogic.gdx.graphics.g3d.utils.DefaultShaderProvider;
+
+/**
+ * Default shaders for float meshes, a {@link QuantizedShader} for every {@link QuantizedMesh}.
+ */
+public class QuantizedShaderProvider extends DefaultShaderProvider {
+
+    @Override
+    protected Shader createShader(Renderable renderable) {
+        if (renderable.meshPart.mesh instanceof QuantizedMesh) {
+            return new QuantizedShader(renderable);
+        }
+        return super.createShader(renderable);
+    }
+}
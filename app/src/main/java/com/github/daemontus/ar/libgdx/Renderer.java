@@ -7,37 +7,74 @@ import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.GL20;
 import com.badlogic.gdx.graphics.PerspectiveCamera;
 import com.badlogic.gdx.graphics.g3d.Environment;
+import com.badlogic.gdx.graphics.g3d.Model;
 import com.badlogic.gdx.graphics.g3d.ModelBatch;
 import com.badlogic.gdx.graphics.g3d.ModelInstance;
 import com.badlogic.gdx.graphics.g3d.attributes.ColorAttribute;
 import com.badlogic.gdx.graphics.g3d.environment.DirectionalLight;
-import com.badlogic.gdx.math.Intersector;
+import com.badlogic.gdx.graphics.g3d.model.Node;
+import com.badlogic.gdx.graphics.g3d.model.NodePart;
+import com.badlogic.gdx.graphics.profiling.GLProfiler;
 import com.badlogic.gdx.math.Matrix4;
 import com.badlogic.gdx.math.Vector3;
 
 import com.badlogic.gdx.math.collision.BoundingBox;
-import com.badlogic.gdx.math.collision.Ray;
-import com.github.daemontus.ar.vuforia.SampleMath;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectIntMap;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.github.daemontus.ar.vuforia.CameraCalibrationCache;
+import com.github.daemontus.ar.vuforia.FrameProfiler;
+import com.github.daemontus.ar.vuforia.PoseFrame;
+import com.github.daemontus.ar.vuforia.TrackingResults;
 import com.github.daemontus.ar.vuforia.VuforiaRenderer;
-import com.vuforia.Matrix44F;
-import com.vuforia.Tool;
-import com.vuforia.TrackableResult;
-import com.vuforia.VIDEO_BACKGROUND_REFLECTION;
 
 /**
  * Class responsible for rendering and scene transformations.
+ *
+ * Visible content is drawn either through a ModelBatch or, for many copies of the same meshes,
+ * through an {@link InstancedRenderer}. Submission time, submitted vertices and (with GLProfiler
+ * enabled, see {@link Engine#setProfileGLCalls(boolean)}) draw calls are recorded in the frame
+ * profiler for both paths. Shaders are compiled when content is registered ({@link #warmUp(Model)}) rather
+ * than on the frame it first becomes visible.
+ *
+ * To compare the two paths on a device: call {@link #setCopies(int)} with 64, enable GL call
+ * profiling and read the "draw calls" and "batch" p50/p95 of the profiler report for each path,
+ * with one target tracked and the same camera view.
  */
 public class Renderer {
 
     private static final String LOG = "RENDERER";
 
     private static final float MODEL_SCALE = 8.0f;
+    //distance of load test copies on the target plane
+    private static final float COPY_SPACING = 40.0f;
 
     private PerspectiveCamera camera;
     private Environment lights;
     private ModelBatch modelBatch;
+    private KeyedShaderProvider shaderProvider;
+    private InstancedRenderer instancedRenderer;
+    private boolean instancing;
+    //extra copies drawn around every tracked model, to compare the draw paths under load
+    private int copies;
+    //copies of every model, reused frame to frame, and how many of them the current frame uses
+    private final ObjectMap<Model, Array<ModelInstance>> copyPools = new ObjectMap<Model, Array<ModelInstance>>();
+    private final ObjectIntMap<Model> copiesUsed = new ObjectIntMap<Model>();
+    private final Matrix4 copyTransform = new Matrix4();
+    //tan of half the vertical field of view, for the projected size of content
+    private float tanHalfFov = 1f;
+    private final Vector3 boundsCenter = new Vector3();
+    private final Vector3 boundsSize = new Vector3();
     private VuforiaRenderer vuforiaRenderer;
-    public BoundingBox modelBounds;
+    private final PoseConverter poseConverter = new PoseConverter();
+    private PoseFilter poseFilter = new SmoothingPoseFilter();
+    private final Matrix4 modelTransform = new Matrix4();
+    //filtered copy of the current pose, the frame keeps the raw ones
+    private final float[] pose = new float[PoseFrame.POSE_SIZE];
+    //calibration version the camera projection was taken from
+    private int calibrationVersion;
+    private final Array<ModelInstance> visible = new Array<ModelInstance>();
+    private final Array<TrackableRegistry.Entry> visibleEntries = new Array<TrackableRegistry.Entry>();
 
     public Renderer(VuforiaRenderer arRenderer) {
 
@@ -53,22 +90,72 @@ public class Renderer {
         //set camera into "Vuforia - style" direction
         camera.position.set(new Vector3(0,0,0));
         camera.lookAt(new Vector3(0,0,1));
+        camera.update();
 
         this.vuforiaRenderer = arRenderer;
 
-        modelBatch = new ModelBatch();
+        //default shaders, plus the decoding ones for quantized meshes, compiled ahead by warmUp
+        shaderProvider = new KeyedShaderProvider(arRenderer.profiler);
+        modelBatch = new ModelBatch(shaderProvider);
 
+        //the model is rotated
+        modelTransform.rotate(1.0F, 0.0F, 0.0F, 90.0F);
+        modelTransform.rotate(0.0F, 1.0F, 0.0F, 90.0F);
+        modelTransform.scale(MODEL_SCALE, MODEL_SCALE, MODEL_SCALE);
 
     }
 
-    public void render(Display display, float delta) {
-        modelBounds = display.modelInstance.calculateBoundingBox(new BoundingBox());
+    /**
+     * @param filter stage applied to every pose before it is used, null to use raw poses
+     */
+    public void setPoseFilter(PoseFilter filter) {
+        this.poseFilter = filter;
+    }
+
+    /**
+     * @param instancing draw content through the {@link InstancedRenderer} instead of the ModelBatch
+     */
+    public void setInstancing(boolean instancing) {
+        this.instancing = instancing;
+        Log.d(LOG, "Draw path: " + (instancing ? "instanced" : "model batch"));
+    }
+
+    public boolean isInstancing() {
+        return instancing;
+    }
+
+    /**
+     * Compiles the shaders the model needs on the current draw path, so the first frame showing
+     * it does not stall. Call on the GL thread when the model is registered.
+     */
+    public void warmUp(Model model) {
+        shaderProvider.warmUp(model, lights);
+        if (instancing) {
+            getInstancedRenderer().warmUp(model);
+        }
+    }
+
+    private InstancedRenderer getInstancedRenderer() {
+        if (instancedRenderer == null) {
+            instancedRenderer = new InstancedRenderer();
+            instancedRenderer.setProfiler(vuforiaRenderer.profiler);
+        }
+        return instancedRenderer;
+    }
+
+    /**
+     * @param copies extra copies of the model laid out in a grid around every tracked target (load test)
+     */
+    public void setCopies(int copies) {
+        this.copies = copies;
+    }
 
+    public void render(Display display, float delta) {
         GL20 gl = Gdx.gl;
 
         gl.glClear(GL20.GL_COLOR_BUFFER_BIT | GL20.GL_DEPTH_BUFFER_BIT);
 
-        TrackableResult[] results = null;
+        TrackingResults results = null;
 
         if (vuforiaRenderer.mIsActive) {
             //render camera background and find targets
@@ -79,20 +166,40 @@ public class Renderer {
         gl.glEnable(GL20.GL_CULL_FACE);
 
 
-        setProjectionAndCamera(display, results, (float) Math.toDegrees(vuforiaRenderer.fieldOfViewRadians));
-        modelBatch.begin(camera);
+        setProjectionAndCamera(vuforiaRenderer.getCalibration());
+        FrameProfiler profiler = vuforiaRenderer.profiler;
+        long start = profiler.start();
+        placeContent(display.registry, results);
+        profiler.record(FrameProfiler.POSES, start);
 
-        gl.glDepthMask(true);
-        modelBatch.render(display.modelInstance, lights);
+        if (visible.size > 0) {
+            int drawCalls = GLProfiler.drawCalls;
+            start = profiler.start();
+            gl.glDepthMask(true);
+            if (instancing) {
+                getInstancedRenderer().render(camera, visible, lights);
+            } else {
+                //all tracked content goes through a single batch
+                modelBatch.begin(camera);
+                modelBatch.render(visible, lights);
+                modelBatch.end();
+            }
+            profiler.record(FrameProfiler.BATCH, start);
+            if (GLProfiler.isEnabled()) {
+                profiler.recordCount(FrameProfiler.DRAW_CALLS, GLProfiler.drawCalls - drawCalls);
+            }
+            if (profiler.isEnabled()) {
+                profiler.recordCount(FrameProfiler.VERTICES, countVertices(visible));
+            }
+        }
 
-        modelBatch.end();
+        long captured = vuforiaRenderer.getPoseCaptureNanos();
+        if (results != null && results.getCount() > 0 && captured != 0 && profiler.isEnabled()) {
+            profiler.recordMicros(FrameProfiler.POSE_LATENCY, (System.nanoTime() - captured) / 1000);
+        }
 
         if (Gdx.input.justTouched()) {
-            Vector3 pos = new Vector3(Gdx.input.getX(), Gdx.input.getY(), 0);
-            System.out.println(pos);
-            if (modelBounds.contains(pos)) {
-                Log.d("toch","Touching the model");
-            }
+            display.picker.pick(camera, Gdx.input.getX(), Gdx.input.getY(), visibleEntries);
         }
 
         gl.glDisable(GL20.GL_CULL_FACE);
@@ -100,64 +207,128 @@ public class Renderer {
         gl.glDisable(GL20.GL_BLEND);
     }
 
-    private void setProjectionAndCamera(Display contentProvider, TrackableResult[] trackables, float filedOfView) {
-
-        ModelInstance model = contentProvider.modelInstance;
+    private void setProjectionAndCamera(CameraCalibrationCache calibration) {
+        //the camera stays in the origin looking down the z axis (Vuforia style),
+        //only the projection follows the camera calibration, which changes once per camera start
+        int version = calibration.getVersion();
+        if (version == calibrationVersion) return;
+        calibrationVersion = version;
+
+        camera.fieldOfView = (float) Math.toDegrees(calibration.getFieldOfView());
+        tanHalfFov = (float) Math.tan(calibration.getFieldOfView() * 0.5);
+        calibration.getProjection(camera.near, camera.far, camera.projection.val);
+        camera.combined.set(camera.projection).mul(camera.view);
+        camera.invProjectionView.set(camera.combined).inv();
+        camera.frustum.update(camera.invProjectionView);
+    }
 
-        if (trackables != null && trackables.length > 0) {
-            //transform all content
-            TrackableResult trackable = trackables[0];
+    private void placeContent(TrackableRegistry registry, TrackingResults frame) {
+        visible.clear();
+        visibleEntries.clear();
+        copiesUsed.clear();
+        if (frame == null) return;
+
+        boolean frontCamera = vuforiaRenderer.isVideoBackgroundReflected();
+        for (int i = 0, count = frame.getCount(); i < count; i++) {
+            int id = frame.getId(i);
+            TrackableRegistry.Entry entry = registry.get(id);
+            if (entry == null && !registry.isBound(id)) {
+                entry = registry.bind(id, frame.getName(i));
+            }
+            if (entry == null || entry.instance == null) continue;
 
-            Matrix44F modelViewMatrix = Tool.convertPose2GLMatrix(trackable.getPose());
-            float[] raw = modelViewMatrix.getData();
+            frame.getPose(i, pose, 0);
+            if (poseFilter != null) {
+                poseFilter.filter(entry.slot, pose, 0, frame.getTimestamp());
+            }
 
-            float[] rotated;
-            //switch axis and rotate to compensate coordinates change
-            if (com.vuforia.Renderer.getInstance().getVideoBackgroundConfig().getReflection() == VIDEO_BACKGROUND_REFLECTION.VIDEO_BACKGROUND_REFLECTION_ON) {
-                // Front camera
-                rotated = new float[]{
-                        raw[1], raw[0], raw[2], raw[3],
-                        raw[5], raw[4], raw[6], raw[7],
-                        raw[9], raw[8], raw[10], raw[11],
-                        raw[13], raw[12], raw[14], raw[15]
-                };
-            } else {
-                // Back camera
-                rotated = new float[]{
-                        raw[1], -raw[0], raw[2], raw[3],
-                        raw[5], -raw[4], raw[6], raw[7],
-                        raw[9], -raw[8], raw[10], raw[11],
-                        raw[13], -raw[12], raw[14], raw[15]
-                };
+            //switch axis to compensate coordinates change and move content onto the target
+            poseConverter.setPose(pose, 0, frontCamera);
+            entry.instance.transform.set(poseConverter.getModelView()).mul(modelTransform);
+
+            //skip content which would end up off screen
+            if (camera.frustum.boundsInFrustum(registry.updateWorldBounds(entry))) {
+                ModelInstance drawn = entry.instance;
+                if (entry.lod != null) {
+                    //level 0 is the entry instance, the others follow its transform
+                    drawn = entry.lod.select(screenSize(entry.worldBounds));
+                    if (drawn != entry.instance) drawn.transform.set(entry.instance.transform);
+                }
+                visible.add(drawn);
+                visibleEntries.add(entry);
             }
-            Matrix44F rot = new Matrix44F();
-            rot.setData(rotated);
-            Matrix44F inverse = SampleMath.Matrix44FInverse(rot);
-            Matrix44F transp = SampleMath.Matrix44FTranspose(inverse);
-
-            float[] data = transp.getData();
-            camera.position.set(data[12], data[13], data[14]);
-            camera.up.set(data[4], data[5], data[6]);
-            camera.direction.set(data[8], data[9], data[10]);
-            //update filed of view
-            camera.fieldOfView = filedOfView;
-
-        } else {
-            camera.position.set(100, 100, 100);
-            camera.lookAt(1000,1000,1000);
+            addCopies(entry.instance);
         }
+    }
 
-        model.transform.set(new Matrix4());
-        //the model is rotated
-        model.transform.rotate(1.0F, 0.0F, 0.0F, 90.0F);
-        model.transform.rotate(0.0F, 1.0F, 0.0F, 90.0F);
-        model.transform.scale(MODEL_SCALE, MODEL_SCALE, MODEL_SCALE);
+    //bounding sphere diameter as a fraction of the viewport height, the camera sits in the origin
+    private float screenSize(BoundingBox bounds) {
+        float radius = bounds.getDimensions(boundsSize).len() * 0.5f;
+        float distance = bounds.getCenter(boundsCenter).len();
+        if (distance <= radius) return Float.MAX_VALUE;
+        return radius / (distance * tanHalfFov);
+    }
 
-        camera.update();
+    //grid of copies on the target plane, centered on the target, not culled and not pickable
+    private void addCopies(ModelInstance source) {
+        if (copies == 0) return;
+        int side = (int) Math.ceil(Math.sqrt(copies + 1));
+        float center = (side - 1) * 0.5f;
+        int added = 0;
+        for (int cell = 0; cell < side * side && added < copies; cell++) {
+            float x = (cell % side - center) * COPY_SPACING;
+            float y = (cell / side - center) * COPY_SPACING;
+            if (x == 0 && y == 0) continue;
+            ModelInstance copy = obtainCopy(source);
+            copyTransform.set(poseConverter.getModelView()).translate(x, y, 0);
+            copy.transform.set(copyTransform).mul(modelTransform);
+            visible.add(copy);
+            added++;
+        }
+    }
+
+    private ModelInstance obtainCopy(ModelInstance source) {
+        Array<ModelInstance> pool = copyPools.get(source.model);
+        if (pool == null) {
+            pool = new Array<ModelInstance>();
+            copyPools.put(source.model, pool);
+        }
+        int index = copiesUsed.getAndIncrement(source.model, 0, 1);
+        if (index == pool.size) {
+            pool.add(new ModelInstance(source.model));
+        }
+        return pool.get(index);
+    }
+
+    //vertices (indices for indexed parts) the visible content submits, the same for both paths
+    private static long countVertices(Array<ModelInstance> instances) {
+        long vertices = 0;
+        for (int i = 0; i < instances.size; i++) {
+            Array<Node> nodes = instances.get(i).nodes;
+            for (int n = 0; n < nodes.size; n++) {
+                vertices += countVertices(nodes.get(n));
+            }
+        }
+        return vertices;
+    }
+
+    private static long countVertices(Node node) {
+        long vertices = 0;
+        for (int p = 0; p < node.parts.size; p++) {
+            NodePart part = node.parts.get(p);
+            if (part.enabled) vertices += part.meshPart.size;
+        }
+        for (int c = 0; c < node.getChildCount(); c++) {
+            vertices += countVertices(node.getChild(c));
+        }
+        return vertices;
     }
 
     public void dispose() {
         modelBatch.dispose();
+        if (instancedRenderer != null) {
+            instancedRenderer.dispose();
+        }
     }
 
 }
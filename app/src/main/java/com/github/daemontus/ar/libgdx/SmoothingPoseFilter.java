@@ -0,0 +1,287 @@
+package com.github.daemontus.ar.libgdx;
+
+/**
+ * Pose filter combining jitter smoothing with latency compensation.
+ *
+ * Translation goes through a one-euro filter (low pass whose cutoff grows with speed, so slow
+ * motion is smoothed and fast motion does not lag). Rotation is smoothed the same way, using
+ * SLERP towards the measured orientation with the cutoff driven by angular speed. Both filtered
+ * velocities are then used to extrapolate the pose by the prediction interval, which should
+ * roughly match the time between camera capture and display.
+ *
+ * State is kept in flat arrays indexed by slot, which grow only when a new slot is seen.
+ */
+public class SmoothingPoseFilter implements PoseFilter {
+
+    //gaps longer than this (e.g. target lost and found again) restart the filter
+    private static final double RESET_GAP = 0.25;
+
+    private static final int T = 3;     //translation and its velocity
+    private static final int Q = 4;     //rotation quaternion (x, y, z, w)
+    private static final int W = 3;     //angular velocity (rad/s)
+
+    private float minCutoff = 1.0f;
+    private float beta = 0.05f;
+    private float rotationMinCutoff = 1.0f;
+    private float rotationBeta = 0.3f;
+    private float derivateCutoff = 1.0f;
+    private float prediction = 1f / 30f;
+
+    private boolean[] initialized = new boolean[0];
+    private double[] lastTime = new double[0];
+    private float[] position = new float[0];
+    private float[] velocity = new float[0];
+    private float[] rotation = new float[0];
+    private float[] angularVelocity = new float[0];
+
+    //scratch quaternions
+    private final float[] measured = new float[4];
+    private final float[] output = new float[4];
+
+    /**
+     * @param minCutoff cutoff frequency (Hz) for translation at rest, lower means smoother
+     * @param beta how fast the cutoff grows with speed, higher means less lag
+     */
+    public void setTranslation(float minCutoff, float beta) {
+        this.minCutoff = minCutoff;
+        this.beta = beta;
+    }
+
+    /**
+     * Same as {@link #setTranslation(float, float)}, speed is measured in rad/s.
+     */
+    public void setRotation(float minCutoff, float beta) {
+        this.rotationMinCutoff = minCutoff;
+        this.rotationBeta = beta;
+    }
+
+    /**
+     * @param cutoff cutoff frequency (Hz) used when estimating velocities
+     */
+    public void setDerivateCutoff(float cutoff) {
+        this.derivateCutoff = cutoff;
+    }
+
+    /**
+     * @param seconds how far ahead the filtered pose is extrapolated, 0 disables prediction
+     */
+    public void setPrediction(float seconds) {
+        this.prediction = seconds;
+    }
+
+    @Override
+    public void filter(int slot, float[] pose, int offset, double timestamp) {
+        ensureCapacity(slot + 1);
+
+        double dt = timestamp - lastTime[slot];
+        if (!initialized[slot] || dt < 0 || dt > RESET_GAP) {
+            start(slot, pose, offset, timestamp);
+            return;
+        }
+
+        if (dt > 0) {
+            lastTime[slot] = timestamp;
+            filterTranslation(slot, pose, offset, (float) dt);
+            filterRotation(slot, pose, offset, (float) dt);
+        }
+        //dt == 0 means the camera frame did not change, only output the state again
+        write(slot, pose, offset);
+    }
+
+    @Override
+    public void reset(int slot) {
+        if (slot < initialized.length) {
+            initialized[slot] = false;
+        }
+    }
+
+    private void start(int slot, float[] pose, int offset, double timestamp) {
+        initialized[slot] = true;
+        lastTime[slot] = timestamp;
+        int t = slot * T;
+        for (int i = 0; i < 3; i++) {
+            position[t + i] = pose[offset + i * 4 + 3];
+            velocity[t + i] = 0f;
+        }
+        toQuaternion(pose, offset, measured);
+        System.arraycopy(measured, 0, rotation, slot * Q, 4);
+        int w = slot * W;
+        angularVelocity[w] = angularVelocity[w + 1] = angularVelocity[w + 2] = 0f;
+    }
+
+    private void filterTranslation(int slot, float[] pose, int offset, float dt) {
+        int t = slot * T;
+        float speed2 = 0f;
+        float dAlpha = alpha(derivateCutoff, dt);
+        for (int i = 0; i < 3; i++) {
+            float raw = (pose[offset + i * 4 + 3] - position[t + i]) / dt;
+            velocity[t + i] += dAlpha * (raw - velocity[t + i]);
+            speed2 += velocity[t + i] * velocity[t + i];
+        }
+        float a = alpha(minCutoff + beta * (float) Math.sqrt(speed2), dt);
+        for (int i = 0; i < 3; i++) {
+            position[t + i] += a * (pose[offset + i * 4 + 3] - position[t + i]);
+        }
+    }
+
+    private void filterRotation(int slot, float[] pose, int offset, float dt) {
+        int q = slot * Q;
+        int w = slot * W;
+        toQuaternion(pose, offset, measured);
+        //take the shorter way
+        float dot = measured[0] * rotation[q] + measured[1] * rotation[q + 1]
+                + measured[2] * rotation[q + 2] + measured[3] * rotation[q + 3];
+        if (dot < 0f) {
+            for (int i = 0; i < 4; i++) measured[i] = -measured[i];
+            dot = -dot;
+        }
+
+        //angular velocity from delta = measured * conjugate(rotation), as axis * angle / dt
+        float x = rotation[q], y = rotation[q + 1], z = rotation[q + 2], s = rotation[q + 3];
+        float mx = measured[0], my = measured[1], mz = measured[2], ms = measured[3];
+        float dx = -ms * x + mx * s - my * z + mz * y;
+        float dy = -ms * y + my * s - mz * x + mx * z;
+        float dz = -ms * z + mz * s - mx * y + my * x;
+        float sin = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+        float scale = 0f;
+        if (sin > 1e-6f) {
+            float angle = 2f * (float) Math.atan2(sin, Math.min(1f, dot));
+            scale = angle / (sin * dt);
+        }
+        float dAlpha = alpha(derivateCutoff, dt);
+        angularVelocity[w] += dAlpha * (dx * scale - angularVelocity[w]);
+        angularVelocity[w + 1] += dAlpha * (dy * scale - angularVelocity[w + 1]);
+        angularVelocity[w + 2] += dAlpha * (dz * scale - angularVelocity[w + 2]);
+        float speed = (float) Math.sqrt(angularVelocity[w] * angularVelocity[w]
+                + angularVelocity[w + 1] * angularVelocity[w + 1]
+                + angularVelocity[w + 2] * angularVelocity[w + 2]);
+
+        slerp(rotation, q, measured, dot, alpha(rotationMinCutoff + rotationBeta * speed, dt));
+    }
+
+    //writes filtered state extrapolated by the prediction interval back into the pose
+    private void write(int slot, float[] pose, int offset) {
+        int t = slot * T;
+        for (int i = 0; i < 3; i++) {
+            pose[offset + i * 4 + 3] = position[t + i] + velocity[t + i] * prediction;
+        }
+
+        int q = slot * Q;
+        int w = slot * W;
+        //rotate by angular velocity * prediction: output = exp(w * h / 2) * rotation
+        float ax = angularVelocity[w] * prediction;
+        float ay = angularVelocity[w + 1] * prediction;
+        float az = angularVelocity[w + 2] * prediction;
+        float angle = (float) Math.sqrt(ax * ax + ay * ay + az * az);
+        float ps = 0f, pw = 1f;
+        if (angle > 1e-6f) {
+            ps = (float) Math.sin(angle / 2) / angle;
+            pw = (float) Math.cos(angle / 2);
+        }
+        float px = ax * ps, py = ay * ps, pz = az * ps;
+        float x = rotation[q], y = rotation[q + 1], z = rotation[q + 2], s = rotation[q + 3];
+        output[0] = pw * x + px * s + py * z - pz * y;
+        output[1] = pw * y + py * s + pz * x - px * z;
+        output[2] = pw * z + pz * s + px * y - py * x;
+        output[3] = pw * s - px * x - py * y - pz * z;
+        toMatrix(output, pose, offset);
+    }
+
+    //exponential smoothing factor of a low pass filter with given cutoff frequency
+    private static float alpha(float cutoff, float dt) {
+        float tau = 1f / (2f * (float) Math.PI * cutoff);
+        return 1f / (1f + tau / dt);
+    }
+
+    //rotation[q] = slerp(rotation[q], target, a), dot is their (non-negative) dot product
+    private static void slerp(float[] rotation, int q, float[] target, float dot, float a) {
+        float from, to;
+        if (dot > 0.9995f) {
+            //nearly parallel, fall back to normalized lerp
+            from = 1f - a;
+            to = a;
+        } else {
+            float theta = (float) Math.acos(dot);
+            float sin = (float) Math.sin(theta);
+            from = (float) Math.sin((1f - a) * theta) / sin;
+            to = (float) Math.sin(a * theta) / sin;
+        }
+        float len = 0f;
+        for (int i = 0; i < 4; i++) {
+            rotation[q + i] = from * rotation[q + i] + to * target[i];
+            len += rotation[q + i] * rotation[q + i];
+        }
+        float inv = 1f / (float) Math.sqrt(len);
+        for (int i = 0; i < 4; i++) rotation[q + i] *= inv;
+    }
+
+    //rotation part of a row-major 3x4 matrix to a unit quaternion
+    private static void toQuaternion(float[] m, int o, float[] out) {
+        float m00 = m[o], m01 = m[o + 1], m02 = m[o + 2];
+        float m10 = m[o + 4], m11 = m[o + 5], m12 = m[o + 6];
+        float m20 = m[o + 8], m21 = m[o + 9], m22 = m[o + 10];
+        float trace = m00 + m11 + m22;
+        if (trace > 0) {
+            float s = 0.5f / (float) Math.sqrt(trace + 1f);
+            out[3] = 0.25f / s;
+            out[0] = (m21 - m12) * s;
+            out[1] = (m02 - m20) * s;
+            out[2] = (m10 - m01) * s;
+        } else if (m00 > m11 && m00 > m22) {
+            float s = 2f * (float) Math.sqrt(1f + m00 - m11 - m22);
+            out[3] = (m21 - m12) / s;
+            out[0] = 0.25f * s;
+            out[1] = (m01 + m10) / s;
+            out[2] = (m02 + m20) / s;
+        } else if (m11 > m22) {
+            float s = 2f * (float) Math.sqrt(1f + m11 - m00 - m22);
+            out[3] = (m02 - m20) / s;
+            out[0] = (m01 + m10) / s;
+            out[1] = 0.25f * s;
+            out[2] = (m12 + m21) / s;
+        } else {
+            float s = 2f * (float) Math.sqrt(1f + m22 - m00 - m11);
+            out[3] = (m10 - m01) / s;
+            out[0] = (m02 + m20) / s;
+            out[1] = (m12 + m21) / s;
+            out[2] = 0.25f * s;
+        }
+        float inv = 1f / (float) Math.sqrt(out[0] * out[0] + out[1] * out[1] + out[2] * out[2] + out[3] * out[3]);
+        for (int i = 0; i < 4; i++) out[i] *= inv;
+    }
+
+    //unit quaternion to the rotation part of a row-major 3x4 matrix
+    private static void toMatrix(float[] q, float[] m, int o) {
+        float x = q[0], y = q[1], z = q[2], w = q[3];
+        m[o] = 1f - 2f * (y * y + z * z);
+        m[o + 1] = 2f * (x * y - z * w);
+        m[o + 2] = 2f * (x * z + y * w);
+        m[o + 4] = 2f * (x * y + z * w);
+        m[o + 5] = 1f - 2f * (x * x + z * z);
+        m[o + 6] = 2f * (y * z - x * w);
+        m[o + 8] = 2f * (x * z - y * w);
+        m[o + 9] = 2f * (y * z + x * w);
+        m[o + 10] = 1f - 2f * (x * x + y * y);
+    }
+
+    private void ensureCapacity(int slots) {
+        if (slots <= initialized.length) return;
+        int capacity = Math.max(slots, initialized.length * 2);
+        boolean[] newInitialized = new boolean[capacity];
+        System.arraycopy(initialized, 0, newInitialized, 0, initialized.length);
+        initialized = newInitialized;
+        double[] newTime = new double[capacity];
+        System.arraycopy(lastTime, 0, newTime, 0, lastTime.length);
+        lastTime = newTime;
+        position = grow(position, capacity * T);
+        velocity = grow(velocity, capacity * T);
+        rotation = grow(rotation, capacity * Q);
+        angularVelocity = grow(angularVelocity, capacity * W);
+    }
+
+    private static float[] grow(float[] array, int size) {
+        float[] result = new float[size];
+        System.arraycopy(array, 0, result, 0, array.length);
+        return result;
+    }
+}
@@ -0,0 +1,134 @@
+package com.github.daemontus.ar.libgdx;
+
+import com.badlogic.gdx.graphics.g3d.Model;
+import com.badlogic.gdx.graphics.g3d.ModelInstance;
+import com.badlogic.gdx.math.collision.BoundingBox;
+import com.badlogic.gdx.utils.IntMap;
+import com.badlogic.gdx.utils.ObjectMap;
+
+/**
+ * Maps trackables to the content rendered on top of them.
+ *
+ * Content is registered by trackable name (as defined in the data set xml). Vuforia reports
+ * results by integer id, so every id is bound to its entry the first time it is seen and all
+ * further lookups go through an open-addressed int map, independent of the number of targets.
+ */
+public class TrackableRegistry {
+
+    public static class Entry {
+
+        public final String name;
+        //dense index of the entry, usable for per-trackable state kept in arrays
+        public final int slot;
+        public ModelInstance instance;
+        //levels of detail of the instance (level 0 is the instance itself), null if there are none
+        public LodGroup lod;
+        public int trackableId = -1;
+        //bounds of the instance under its current transform, see updateWorldBounds
+        public final BoundingBox worldBounds = new BoundingBox();
+        //model space bounds shared by all instances of the same model
+        BoundingBox localBounds;
+
+        Entry(String name, int slot, ModelInstance instance) {
+            this.name = name;
+            this.slot = slot;
+            this.instance = instance;
+        }
+    }
+
+    //marks ids that were already resolved but have no content registered
+    private static final Entry NO_CONTENT = new Entry("", -1, null);
+
+    private final ObjectMap<String, Entry> byName = new ObjectMap<String, Entry>();
+    private final IntMap<Entry> byId = new IntMap<Entry>();
+    private final ObjectMap<Model, BoundingBox> modelBounds = new ObjectMap<Model, BoundingBox>();
+
+    /**
+     * Registers content for the trackable with given name, replacing any previous content.
+     */
+    public Entry register(String name, ModelInstance instance) {
+        Entry entry = byName.get(name);
+        if (entry == null) {
+            entry = new Entry(name, byName.size, instance);
+            byName.put(name, entry);
+            //ids seen before registration have to be resolved again
+            byId.clear();
+        } else {
+            entry.instance = instance;
+            entry.localBounds = null;
+            entry.lod = null;
+        }
+        return entry;
+    }
+
+    /**
+     * @return entry bound to given trackable id, or null if the id has not been bound yet
+     * or there is no content for it (see {@link #isBound(int)}).
+     */
+    public Entry get(int trackableId) {
+        Entry entry = byId.get(trackableId);
+        return entry == NO_CONTENT ? null : entry;
+    }
+
+    /**
+     * @return true if the trackable id has already been resolved by {@link #bind(int, String)}.
+     */
+    public boolean isBound(int trackableId) {
+        return byId.containsKey(trackableId);
+    }
+
+    /**
+     * Binds trackable id to the entry registered under its name.
+     * @return the bound entry or null if there is no content for this trackable.
+     */
+    public Entry bind(int trackableId, String name) {
+        Entry entry = byName.get(name);
+        if (entry == null) {
+            byId.put(trackableId, NO_CONTENT);
+        } else {
+            entry.trackableId = trackableId;
+            byId.put(trackableId, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Recomputes world space bounds of the entry from cached model bounds and the instance transform.
+     * Model bounds are computed only once per model (or after {@link #invalidateBounds(Model)}).
+     */
+    public BoundingBox updateWorldBounds(Entry entry) {
+        if (entry.localBounds == null) {
+            entry.localBounds = getModelBounds(entry.instance.model);
+        }
+        return entry.worldBounds.set(entry.localBounds).mul(entry.instance.transform);
+    }
+
+    /**
+     * Drops cached bounds of the model, call when its meshes or node transforms change.
+     */
+    public void invalidateBounds(Model model) {
+        modelBounds.remove(model);
+        for (Entry entry : byName.values()) {
+            if (entry.instance != null && entry.instance.model == model) {
+                entry.localBounds = null;
+            }
+        }
+    }
+
+    private BoundingBox getModelBounds(Model model) {
+        BoundingBox bounds = modelBounds.get(model);
+        if (bounds == null) {
+            bounds = model.calculateBoundingBox(new BoundingBox());
+            modelBounds.put(model, bounds);
+        }
+        return bounds;
+    }
+
+    public Entry getByName(String name) {
+        return byName.get(name);
+    }
+
+    public ObjectMap.Values<Entry> entries() {
+        return byName.values();
+    }
+}
@@ -0,0 +1,244 @@
+package com.github.daemontus.ar.libgdx;
+
+/**
+ * Bounding volume hierarchy over a static triangle soup, used for exact ray picking.
+ *
+ * The tree is built once (median split along the longest axis of triangle centroids) and stored
+ * in flat primitive arrays, so a query touches no objects and allocates nothing. Queries reuse
+ * an internal traversal stack and are therefore not thread-safe.
+ */
+public class TriangleBvh {
+
+    private static final int LEAF_SIZE = 4;
+    private static final float EPSILON = 0.000001f;
+
+    //9 floats (three vertices) per triangle, reordered so that every leaf covers a contiguous range
+    private final float[] triangles;
+    private final int triangleCount;
+
+    //6 floats per node: min x, y, z, max x, y, z
+    private final float[] nodeBounds;
+    //per node: index of the first child (inner node) or first triangle (leaf)
+    private final int[] nodeStart;
+    //per node: number of triangles for a leaf, 0 for an inner node (children are start and start + 1)
+    private final int[] nodeCount;
+    private int nodeTotal;
+
+    private final int[] stack;
+    private int lastTriangle = -1;
+
+    /**
+     * @param vertices three vertices (9 floats) per triangle, the array is copied
+     * @param count number of triangles
+     */
+    public TriangleBvh(float[] vertices, int count) {
+        triangleCount = count;
+        triangles = new float[count * 9];
+        System.arraycopy(vertices, 0, triangles, 0, count * 9);
+
+        int maxNodes = Math.max(1, 2 * count);
+        nodeBounds = new float[maxNodes * 6];
+        nodeStart = new int[maxNodes];
+        nodeCount = new int[maxNodes];
+
+        float[] centroids = new float[count * 3];
+        int[] order = new int[count];
+        for (int t = 0; t < count; t++) {
+            int v = t * 9;
+            centroids[t * 3] = (triangles[v] + triangles[v + 3] + triangles[v + 6]) / 3f;
+            centroids[t * 3 + 1] = (triangles[v + 1] + triangles[v + 4] + triangles[v + 7]) / 3f;
+            centroids[t * 3 + 2] = (triangles[v + 2] + triangles[v + 5] + triangles[v + 8]) / 3f;
+            order[t] = t;
+        }
+
+        nodeTotal = 1;
+        int depth = build(0, order, centroids, 0, count);
+        stack = new int[Math.max(2, depth * 2 + 2)];
+
+        //reorder triangles to match leaf ranges
+        float[] source = triangles.clone();
+        for (int t = 0; t < count; t++) {
+            System.arraycopy(source, order[t] * 9, triangles, t * 9, 9);
+        }
+    }
+
+    public int getTriangleCount() {
+        return triangleCount;
+    }
+
+    /**
+     * @return index (in tree order) of the triangle hit by the last successful query
+     */
+    public int getLastTriangle() {
+        return lastTriangle;
+    }
+
+    /**
+     * Finds the closest intersection of the ray origin + t * direction with t in [0, maxT].
+     * The direction does not need to be normalized, t is expressed in its units.
+     * @return t of the closest hit or -1 if nothing was hit
+     */
+    public float intersect(float ox, float oy, float oz, float dx, float dy, float dz, float maxT) {
+        lastTriangle = -1;
+        if (triangleCount == 0) return -1;
+
+        float ix = 1f / dx, iy = 1f / dy, iz = 1f / dz;
+        float best = maxT;
+        boolean hit = false;
+
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            if (!intersectsNode(node, ox, oy, oz, ix, iy, iz, best)) continue;
+
+            int count = nodeCount[node];
+            int start = nodeStart[node];
+            if (count > 0) {
+                for (int t = start; t < start + count; t++) {
+                    float d = intersectTriangle(t, ox, oy, oz, dx, dy, dz);
+                    if (d >= 0 && d <= best) {
+                        best = d;
+                        hit = true;
+                        lastTriangle = t;
+                    }
+                }
+            } else {
+                stack[top++] = start;
+                stack[top++] = start + 1;
+            }
+        }
+
+        return hit ? best : -1;
+    }
+
+    //builds node for order[from, to) and returns depth of the subtree
+    private int build(int node, int[] order, float[] centroids, int from, int to) {
+        computeBounds(node, order, from, to);
+
+        int count = to - from;
+        if (count <= LEAF_SIZE) {
+            nodeStart[node] = from;
+            nodeCount[node] = count;
+            return 1;
+        }
+
+        //split along the longest axis of centroid bounds
+        float minX = Float.POSITIVE_INFINITY, minY = minX, minZ = minX;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = maxX, maxZ = maxX;
+        for (int i = from; i < to; i++) {
+            int c = order[i] * 3;
+            minX = Math.min(minX, centroids[c]);
+            maxX = Math.max(maxX, centroids[c]);
+            minY = Math.min(minY, centroids[c + 1]);
+            maxY = Math.max(maxY, centroids[c + 1]);
+            minZ = Math.min(minZ, centroids[c + 2]);
+            maxZ = Math.max(maxZ, centroids[c + 2]);
+        }
+        float ex = maxX - minX, ey = maxY - minY, ez = maxZ - minZ;
+        int axis = ex >= ey && ex >= ez ? 0 : (ey >= ez ? 1 : 2);
+
+        int mid = (from + to) >>> 1;
+        select(order, centroids, axis, from, to - 1, mid);
+
+        //children are always allocated next to each other
+        int left = nodeTotal;
+        nodeTotal += 2;
+        nodeStart[node] = left;
+        nodeCount[node] = 0;
+
+        int leftDepth = build(left, order, centroids, from, mid);
+        int rightDepth = build(left + 1, order, centroids, mid, to);
+        return 1 + Math.max(leftDepth, rightDepth);
+    }
+
+    private void computeBounds(int node, int[] order, int from, int to) {
+        float minX = Float.POSITIVE_INFINITY, minY = minX, minZ = minX;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = maxX, maxZ = maxX;
+        for (int i = from; i < to; i++) {
+            int v = order[i] * 9;
+            for (int k = 0; k < 9; k += 3) {
+                minX = Math.min(minX, triangles[v + k]);
+                maxX = Math.max(maxX, triangles[v + k]);
+                minY = Math.min(minY, triangles[v + k + 1]);
+                maxY = Math.max(maxY, triangles[v + k + 1]);
+                minZ = Math.min(minZ, triangles[v + k + 2]);
+                maxZ = Math.max(maxZ, triangles[v + k + 2]);
+            }
+        }
+        int b = node * 6;
+        nodeBounds[b] = minX;
+        nodeBounds[b + 1] = minY;
+        nodeBounds[b + 2] = minZ;
+        nodeBounds[b + 3] = maxX;
+        nodeBounds[b + 4] = maxY;
+        nodeBounds[b + 5] = maxZ;
+    }
+
+    //quickselect, puts the k-th smallest centroid (along axis) to position k
+    private static void select(int[] order, float[] centroids, int axis, int left, int right, int k) {
+        while (right > left) {
+            float pivot = centroids[order[(left + right) >>> 1] * 3 + axis];
+            int i = left, j = right;
+            while (i <= j) {
+                while (centroids[order[i] * 3 + axis] < pivot) i++;
+                while (centroids[order[j] * 3 + axis] > pivot) j--;
+                if (i <= j) {
+                    int tmp = order[i];
+                    order[i] = order[j];
+                    order[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) right = j;
+            else if (k >= i) left = i;
+            else return;
+        }
+    }
+
+    //slab test against node bounds, limited to [0, maxT]
+    private boolean intersectsNode(int node, float ox, float oy, float oz,
+                                   float ix, float iy, float iz, float maxT) {
+        int b = node * 6;
+        float t1 = (nodeBounds[b] - ox) * ix, t2 = (nodeBounds[b + 3] - ox) * ix;
+        float tMin = Math.min(t1, t2), tMax = Math.max(t1, t2);
+        t1 = (nodeBounds[b + 1] - oy) * iy;
+        t2 = (nodeBounds[b + 4] - oy) * iy;
+        tMin = Math.max(tMin, Math.min(t1, t2));
+        tMax = Math.min(tMax, Math.max(t1, t2));
+        t1 = (nodeBounds[b + 2] - oz) * iz;
+        t2 = (nodeBounds[b + 5] - oz) * iz;
+        tMin = Math.max(tMin, Math.min(t1, t2));
+        tMax = Math.min(tMax, Math.max(t1, t2));
+        return tMax >= Math.max(tMin, 0f) && tMin <= maxT;
+    }
+
+    //Moller-Trumbore, returns t or -1, both faces count as a hit
+    private float intersectTriangle(int t, float ox, float oy, float oz, float dx, float dy, float dz) {
+        int v = t * 9;
+        float ax = triangles[v], ay = triangles[v + 1], az = triangles[v + 2];
+        float e1x = triangles[v + 3] - ax, e1y = triangles[v + 4] - ay, e1z = triangles[v + 5] - az;
+        float e2x = triangles[v + 6] - ax, e2y = triangles[v + 7] - ay, e2z = triangles[v + 8] - az;
+
+        float px = dy * e2z - dz * e2y;
+        float py = dz * e2x - dx * e2z;
+        float pz = dx * e2y - dy * e2x;
+        float det = e1x * px + e1y * py + e1z * pz;
+        if (det > -EPSILON && det < EPSILON) return -1;
+        float inv = 1f / det;
+
+        float sx = ox - ax, sy = oy - ay, sz = oz - az;
+        float u = (sx * px + sy * py + sz * pz) * inv;
+        if (u < 0f || u > 1f) return -1;
+
+        float qx = sy * e1z - sz * e1y;
+        float qy = sz * e1x - sx * e1z;
+        float qz = sx * e1y - sy * e1x;
+        float w = (dx * qx + dy * qy + dz * qz) * inv;
+        if (w < 0f || u + w > 1f) return -1;
+
+        float d = (e2x * qx + e2y * qy + e2z * qz) * inv;
+        return d >= 0f ? d : -1;
+    }
+}
@@ -0,0 +1,272 @@
+package com.github.daemontus.ar.libgdx;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Converts float vertices of a {@link CachedModel} mesh into a compact quantized layout.
+ *
+ * Positions and texture coordinates are stored as 16 bit values relative to the bounding box of
+ * the mesh (the box is the per-mesh dequantization transform), normals as 16 bit octahedral
+ * coordinates and colors as bytes. This libgdx version only knows float attributes and packed
+ * colors (4 normalized bytes), so every 16 bit value is split into a high and a low byte and the
+ * shader joins them again ({@link QuantizedShader}). Attributes the shader does not read (bone
+ * weights, more texture units) are dropped.
+ *
+ * Layout, 4 bytes per attribute: position high bytes (x, y, z, 0), position low bytes (x, y, z, 0),
+ * optional octahedral normal (x high, x low, y high, y low), optional color (r, g, b, a) and
+ * optional texture coordinates (u high, u low, v high, v low). A Position | Normal vertex takes
+ * 12 bytes instead of 24.
+ *
+ * The lowest bit of the last byte of every packed float is cleared, so no packed value is a NaN
+ * (the same trick libgdx uses for packed colors). It costs the lowest bit of the second normal and
+ * texture coordinate component and of the color alpha.
+ *
+ * Plain Java, can run on any thread.
+ */
+public class VertexQuantizer {
+
+    //VertexAttributes.Usage values
+    private static final int USAGE_POSITION = 1;
+    private static final int USAGE_COLOR_UNPACKED = 2;
+    private static final int USAGE_COLOR_PACKED = 4;
+    private static final int USAGE_NORMAL = 8;
+    private static final int USAGE_TEXTURE_COORDINATES = 16;
+    private static final int GL_FLOAT = 0x1406;
+    private static final int GL_UNSIGNED_BYTE = 0x1401;
+
+    /**
+     * Largest quantized value.
+     */
+    public static final int MAX = 65535;
+
+    /**
+     * Which optional attributes a quantized mesh has.
+     */
+    public static final int NORMAL = 1;
+    public static final int COLOR = 1 << 1;
+    public static final int TEXTURE = 1 << 2;
+
+    public static final String POSITION_HIGH_ALIAS = "a_positionHigh";
+    public static final String POSITION_LOW_ALIAS = "a_positionLow";
+    public static final String NORMAL_ALIAS = "a_normalOct";
+    public static final String COLOR_ALIAS = "a_color";
+    public static final String TEXTURE_ALIAS = "a_texCoordQ";
+
+    /**
+     * Quantized mesh and what is needed to decode it.
+     */
+    public static class Result {
+        public final CachedModel.MeshData mesh;
+        //which optional attributes are present
+        public final int format;
+        //position minimum (3) and extent (3), texture coordinate minimum (2) and extent (2)
+        public final float[] decode;
+
+        Result(CachedModel.MeshData mesh, int format, float[] decode) {
+            this.mesh = mesh;
+            this.format = format;
+            this.decode = decode;
+        }
+    }
+
+    private VertexQuantizer() {
+    }
+
+    /**
+     * @return the quantized mesh, null if the mesh has no float position (nothing to gain)
+     */
+    public static Result quantize(CachedModel.MeshData mesh) {
+        int stride = 0;
+        int position = -1;
+        int normal = -1;
+        int color = -1;
+        boolean colorPacked = false;
+        int texture = -1;
+        for (int a = 0; a < mesh.usage.length; a++) {
+            int usage = mesh.usage[a];
+            boolean floats = mesh.type[a] == GL_FLOAT || mesh.type[a] == 0;
+            if (usage == USAGE_POSITION && floats && mesh.numComponents[a] >= 3) {
+                position = stride;
+            } else if (usage == USAGE_NORMAL && floats && mesh.numComponents[a] == 3) {
+                normal = stride;
+            } else if (usage == USAGE_COLOR_UNPACKED && floats && mesh.numComponents[a] == 4) {
+                color = stride;
+            } else if (usage == USAGE_COLOR_PACKED) {
+                color = stride;
+                colorPacked = true;
+            } else if (usage == USAGE_TEXTURE_COORDINATES && floats && mesh.numComponents[a] == 2 && mesh.unit[a] == 0) {
+                texture = stride;
+            }
+            stride += usage == USAGE_COLOR_PACKED ? 1 : mesh.numComponents[a];
+        }
+        if (position < 0) return null;
+
+        FloatBuffer source = mesh.vertices.duplicate();
+        source.rewind();
+        float[] vertices = new float[source.remaining()];
+        source.get(vertices);
+        int count = vertices.length / stride;
+
+        int format = (normal >= 0 ? NORMAL : 0) | (color >= 0 ? COLOR : 0) | (texture >= 0 ? TEXTURE : 0);
+        int outStride = 2 + Integer.bitCount(format);
+        float[] decode = new float[10];
+        bounds(vertices, stride, position, 3, count, decode, 0, 3);
+        if (texture >= 0) {
+            bounds(vertices, stride, texture, 2, count, decode, 6, 8);
+        }
+
+        float[] out = new float[count * outStride];
+        int[] q = new int[3];
+        float[] octahedral = new float[2];
+        for (int v = 0; v < count; v++) {
+            int in = v * stride;
+            int o = v * outStride;
+            for (int c = 0; c < 3; c++) {
+                q[c] = quantize(vertices[in + position + c], decode[c], decode[3 + c]);
+            }
+            out[o++] = pack(q[0] >> 8, q[1] >> 8, q[2] >> 8, 0);
+            out[o++] = pack(q[0] & 0xFF, q[1] & 0xFF, q[2] & 0xFF, 0);
+            if (normal >= 0) {
+                encodeOctahedral(vertices[in + normal], vertices[in + normal + 1], vertices[in + normal + 2], octahedral);
+                int x = quantize(octahedral[0], -1f, 2f);
+                int y = quantize(octahedral[1], -1f, 2f);
+                out[o++] = pack(x >> 8, x & 0xFF, y >> 8, y & 0xFF);
+            }
+            if (color >= 0) {
+                if (colorPacked) {
+                    int bits = Float.floatToRawIntBits(vertices[in + color]);
+                    out[o++] = pack(bits & 0xFF, (bits >> 8) & 0xFF, (bits >> 16) & 0xFF, (bits >>> 24));
+                } else {
+                    out[o++] = pack(toByte(vertices[in + color]), toByte(vertices[in + color + 1]),
+                            toByte(vertices[in + color + 2]), toByte(vertices[in + color + 3]));
+                }
+            }
+            if (texture >= 0) {
+                int u = quantize(vertices[in + texture], decode[6], decode[8]);
+                int t = quantize(vertices[in + texture + 1], decode[7], decode[9]);
+                out[o++] = pack(u >> 8, u & 0xFF, t >> 8, t & 0xFF);
+            }
+        }
+
+        int attributes = outStride;
+        CachedModel.MeshData data = new CachedModel.MeshData();
+        data.usage = new int[attributes];
+        data.numComponents = new int[attributes];
+        data.type = new int[attributes];
+        data.normalized = new boolean[attributes];
+        data.unit = new int[attributes];
+        data.alias = new String[attributes];
+        int a = 0;
+        a = packedAttribute(data, a, POSITION_HIGH_ALIAS);
+        a = packedAttribute(data, a, POSITION_LOW_ALIAS);
+        if (normal >= 0) a = packedAttribute(data, a, NORMAL_ALIAS);
+        if (color >= 0) a = packedAttribute(data, a, COLOR_ALIAS);
+        if (texture >= 0) packedAttribute(data, a, TEXTURE_ALIAS);
+        data.vertices = FloatBuffer.wrap(out);
+        data.indices = mesh.indices.duplicate();
+        return new Result(data, format, decode);
+    }
+
+    //minimum and extent of the components, written to decode[minAt..] and decode[extentAt..]
+    private static void bounds(float[] vertices, int stride, int offset, int components, int count,
+                               float[] decode, int minAt, int extentAt) {
+        for (int c = 0; c < components; c++) {
+            float min = Float.MAX_VALUE;
+            float max = -Float.MAX_VALUE;
+            for (int v = 0; v < count; v++) {
+                float value = vertices[v * stride + offset + c];
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+            if (count == 0) {
+                min = max = 0f;
+            }
+            decode[minAt + c] = min;
+            decode[extentAt + c] = max - min;
+        }
+    }
+
+    private static int packedAttribute(CachedModel.MeshData data, int a, String alias) {
+        data.usage[a] = USAGE_COLOR_PACKED;
+        data.numComponents[a] = 4;
+        data.type[a] = GL_UNSIGNED_BYTE;
+        data.normalized[a] = true;
+        data.alias[a] = alias;
+        return a + 1;
+    }
+
+    /**
+     * @return value mapped from [min, min + extent] to [0, MAX]
+     */
+    public static int quantize(float value, float min, float extent) {
+        if (extent <= 0f) return 0;
+        int q = Math.round((value - min) / extent * MAX);
+        return Math.max(0, Math.min(MAX, q));
+    }
+
+    public static float dequantize(int q, float min, float extent) {
+        return min + q * extent / MAX;
+    }
+
+    /**
+     * Octahedral mapping of a unit vector to [-1, 1]^2 (Meyer et al.), zero vectors map to +z.
+     */
+    public static void encodeOctahedral(float x, float y, float z, float[] out) {
+        float sum = Math.abs(x) + Math.abs(y) + Math.abs(z);
+        if (sum == 0f) {
+            out[0] = 0f;
+            out[1] = 0f;
+            return;
+        }
+        x /= sum;
+        y /= sum;
+        if (z < 0f) {
+            //fold the lower hemisphere over the diagonals
+            float fx = (1f - Math.abs(y)) * (x >= 0f ? 1f : -1f);
+            float fy = (1f - Math.abs(x)) * (y >= 0f ? 1f : -1f);
+            x = fx;
+            y = fy;
+        }
+        out[0] = x;
+        out[1] = y;
+    }
+
+    /**
+     * Inverse of {@link #encodeOctahedral}, the result is normalized. Mirrors the shader code.
+     */
+    public static void decodeOctahedral(float ex, float ey, float[] out) {
+        float x = ex;
+        float y = ey;
+        float z = 1f - Math.abs(ex) - Math.abs(ey);
+        float t = Math.max(-z, 0f);
+        x += x >= 0f ? -t : t;
+        y += y >= 0f ? -t : t;
+        float length = (float) Math.sqrt(x * x + y * y + z * z);
+        out[0] = x / length;
+        out[1] = y / length;
+        out[2] = z / length;
+    }
+
+    /**
+     * @return the 16 bit value a high and a low byte of a packed attribute stand for
+     */
+    public static int join(int high, int low) {
+        return (high << 8) | low;
+    }
+
+    //four bytes in memory order (little endian), the last one never makes the float a NaN
+    private static float pack(int b0, int b1, int b2, int b3) {
+        return Float.intBitsToFloat(b0 | (b1 << 8) | (b2 << 16) | ((b3 & 0xFE) << 24));
+    }
+
+    /**
+     * @return byte of a packed attribute, 0 is the first one in memory
+     */
+    public static int unpack(float packed, int index) {
+        return (Float.floatToRawIntBits(packed) >>> (index * 8)) & 0xFF;
+    }
+
+    private static int toByte(float value) {
+        return Math.max(0, Math.min(255, Math.round(value * 255f)));
+    }
+}
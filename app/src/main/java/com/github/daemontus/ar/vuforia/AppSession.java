@@ -1,36 +1,34 @@
 package com.github.daemontus.ar.vuforia;
 
-import android.app.Activity;
-import android.content.pm.ActivityInfo;
-import android.content.res.Configuration;
-import android.os.AsyncTask;
-import android.os.Build;
-import android.util.DisplayMetrics;
 import android.util.Log;
-import android.view.WindowManager;
-
-import com.github.daemontus.renderer.R;
-import com.vuforia.CameraDevice;
-import com.vuforia.PIXEL_FORMAT;
-import com.vuforia.Renderer;
-import com.vuforia.State;
-import com.vuforia.Vec2I;
-import com.vuforia.VideoBackgroundConfig;
-import com.vuforia.VideoMode;
-import com.vuforia.Vuforia;
+
+import java.util.concurrent.Executor;
 
 /**
  * Represents simple Vuforia App Session.
  *
+ * All calls into Vuforia and into the host (main thread, screen) go through the
+ * {@link VuforiaPlatform} passed in the constructor, so the session runs against
+ * {@link FakeVuforiaPlatform} off-device.
+ * Initialization runs as stages of a {@link StartupPipeline}, applications can add their own
+ * stages (asset loading, ...) through getStartup() before calling initAR, they run in parallel
+ * with the Vuforia stages.
+ *
+ * Pausing is warm by default: the camera and the trackers are stopped, Vuforia, the trackers'
+ * data and the loaded data sets stay resident, so resuming only restarts the camera and the
+ * trackers (and applies the focus mode again). After an idle timeout or under
+ * memory pressure (onTrimMemory) a warm suspended session is torn down completely, the next
+ * resume then runs the Vuforia start up stages again. The time from resume to the first tracked
+ * frame is logged for both paths (the application reports found trackables via onTrackableFound).
+ *
  * Created by daemontus on 03/04/14.
  */
-public class AppSession implements Vuforia.UpdateCallbackInterface {
+public class AppSession implements VuforiaPlatform.UpdateListener {
 
         private static final String LOGTAG = "Vuforia_App_Session";
 
-        // Reference to the current activity
-        private Activity mActivity;
         private SessionControl mSessionControl;
+        private final VuforiaPlatform mPlatform;
 
         // Flags
         private boolean mStarted = false;
@@ -39,9 +37,45 @@ public class AppSession implements Vuforia.UpdateCallbackInterface {
         private int mScreenWidth = 0;
         private int mScreenHeight = 0;
 
-        // The async tasks to initialize the Vuforia SDK:
-        private InitVuforiaTask mInitVuforiaTask;
-        private LoadTrackerTask mLoadTrackerTask;
+        // Stage names of the Vuforia start up
+        public static final String STAGE_VUFORIA_INIT = "vuforia-init";
+        public static final String STAGE_TRACKERS_INIT = "trackers-init";
+        public static final String STAGE_DATA_LOAD = "data-load";
+        public static final String STAGE_AR_READY = "ar-ready";
+
+        // How long stopAR waits for running start up stages
+        private static final long SHUTDOWN_WAIT_MILLIS = 10000;
+
+        // How long a paused session stays warm before it is torn down
+        public static final long DEFAULT_WARM_SUSPEND_MILLIS = 60000;
+
+        // TRIM_MEMORY_BACKGROUND
+        private static final int TRIM_MEMORY_BACKGROUND = 40;
+
+        // Start up stages, created with the session so its timeline starts at launch,
+        // replaced when a torn down session is resumed
+        private volatile StartupPipeline mStartup;
+        private final Executor mMainExecutor;
+
+        // Warm suspend state, main thread only
+        private long mWarmSuspendMillis = DEFAULT_WARM_SUSPEND_MILLIS;
+        private boolean mSuspended = false;
+        private boolean mTornDown = false;
+        private final Runnable mIdleTeardown = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                Log.i(LOGTAG, "Warm suspend timed out");
+                teardownSuspended();
+            }
+        };
+
+        // Resume to first tracked frame, guarded by this
+        private long mResumeNanos = 0;
+        private boolean mResumeWarm;
+        private long mWarmResumeMillis = -1;
+        private long mColdResumeMillis = -1;
 
         // An object used for synchronizing Vuforia initialization, dataset loading
         // and the Android onDestroy() life cycle event. If the application is
@@ -53,50 +87,87 @@ public class AppSession implements Vuforia.UpdateCallbackInterface {
         private int mVuforiaFlags = 0;
 
         // Holds the camera configuration to use upon resuming
-        private int mCamera = CameraDevice.CAMERA_DIRECTION.CAMERA_DIRECTION_DEFAULT;
+        private int mCamera = VuforiaCamera.DIRECTION_DEFAULT;
 
         // Stores orientation
         private boolean mIsPortrait = false;
 
+        // Video background reflection, read back once per video background configuration
+        private volatile boolean mVideoBackgroundReflected = false;
+
+        // Video background size on screen, set by configureVideoBackground
+        private int mBackgroundWidth = 0;
+        private int mBackgroundHeight = 0;
+
+        // Camera intrinsics and projection, refreshed once per camera start
+        private final CameraCalibrationCache mCalibration = new CameraCalibrationCache();
 
-        public AppSession(SessionControl sessionControl)
+        // Renderer of the session, told when tracking stops
+        private volatile VuforiaRenderer mRenderer;
+
+
+        public AppSession(SessionControl sessionControl, VuforiaPlatform platform)
         {
             mSessionControl = sessionControl;
+            mPlatform = platform;
+            mMainExecutor = new Executor()
+            {
+                @Override
+                public void execute(Runnable command)
+                {
+                    mPlatform.postToMain(command, 0);
+                }
+            };
+            mStartup = new StartupPipeline(mMainExecutor);
+        }
+
+
+        // Start up pipeline, add application stages before initAR.
+        public StartupPipeline getStartup()
+        {
+            return mStartup;
+        }
+
+
+        public VuforiaPlatform getPlatform()
+        {
+            return mPlatform;
+        }
+
+
+        // Called by the renderer created for this session.
+        void setRenderer(VuforiaRenderer renderer)
+        {
+            mRenderer = renderer;
+        }
+
+
+        // How long a paused session keeps Vuforia, trackers and data sets before it is torn down,
+        // 0 keeps them until stopAR (pausing then only stops camera and trackers, no teardown).
+        public void setWarmSuspendTimeout(long millis)
+        {
+            mWarmSuspendMillis = millis;
         }
 
 
         // Initializes Vuforia and sets up preferences.
-        public void initAR(Activity activity, int screenOrientation)
+        public void initAR(int screenOrientation)
         {
             VuforiaException vuforiaException = null;
-            mActivity = activity;
-
-            if ((screenOrientation == ActivityInfo.SCREEN_ORIENTATION_SENSOR) && (Build.VERSION.SDK_INT > Build.VERSION_CODES.FROYO)) {
-                screenOrientation = ActivityInfo.SCREEN_ORIENTATION_FULL_SENSOR;
-            }
 
-            // Apply screen orientation
-            mActivity.setRequestedOrientation(screenOrientation);
+            // Apply screen orientation, keeps the screen on as well
+            mPlatform.setScreenOrientation(screenOrientation);
 
             updateActivityOrientation();
 
             // Query display dimensions:
             storeScreenDimensions();
 
-            // As long as this window is visible to the user, keep the device's
-            // screen turned on and bright:
-            mActivity.getWindow().setFlags(
-                    WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON,
-                    WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
-
-            mVuforiaFlags = Vuforia.GL_20;
+            mVuforiaFlags = VuforiaPlatform.INIT_GL_20;
 
             // Initialize Vuforia SDK asynchronously to avoid blocking the
             // main (UI) thread.
-            //
-            // NOTE: This task instance must be created and invoked on the
-            // UI thread and it can be executed only once!
-            if (mInitVuforiaTask != null)
+            if (mStartup.isStarted())
             {
                 String logMessage = "Cannot initialize SDK twice";
                 vuforiaException = new VuforiaException(
@@ -109,15 +180,15 @@ public class AppSession implements Vuforia.UpdateCallbackInterface {
             {
                 try
                 {
-                    mInitVuforiaTask = new InitVuforiaTask();
-                    mInitVuforiaTask.execute();
+                    addStartupStages();
+                    mStartup.start();
                 } catch (Exception e)
                 {
                     String logMessage = "Initializing Vuforia SDK failed";
                     vuforiaException = new VuforiaException(
                             VuforiaException.INITIALIZATION_FAILURE,
                             logMessage);
-                    Log.e(LOGTAG, logMessage);
+                    Log.e(LOGTAG, logMessage, e);
                 }
             }
 
@@ -128,10 +199,30 @@ public class AppSession implements Vuforia.UpdateCallbackInterface {
 
         // Starts Vuforia, initialize and starts the camera and start the trackers
         public void startAR(int camera) throws VuforiaException
+        {
+            startCamera(camera);
+
+            mSessionControl.doStartTrackers();
+
+            try
+            {
+                setFocusMode(VuforiaCamera.FOCUS_MODE_TRIGGERAUTO);
+            } catch (VuforiaException exceptionTriggerAuto)
+            {
+                setFocusMode(VuforiaCamera.FOCUS_MODE_NORMAL);
+            }
+
+            // The camera forgets its settings when it is stopped, let the application apply its own
+            mSessionControl.onCameraStarted();
+        }
+
+
+        // Initializes, configures and starts the camera, the trackers are left alone
+        private void startCamera(int camera) throws VuforiaException
         {
             String error;
             mCamera = camera;
-            if (!CameraDevice.getInstance().init(camera))
+            if (!mPlatform.camera().init(camera))
             {
                 error = "Unable to open camera device: " + camera;
                 Log.e(LOGTAG, error);
@@ -141,8 +232,8 @@ public class AppSession implements Vuforia.UpdateCallbackInterface {
 
             configureVideoBackground();
 
-            if (!CameraDevice.getInstance().selectVideoMode(
-                    CameraDevice.MODE.MODE_DEFAULT))
+            if (!mPlatform.camera().selectVideoMode(
+                    VuforiaCamera.MODE_DEFAULT))
             {
                 error = "Unable to set video mode";
                 Log.e(LOGTAG, error);
@@ -150,7 +241,7 @@ public class AppSession implements Vuforia.UpdateCallbackInterface {
                         VuforiaException.CAMERA_INITIALIZATION_FAILURE, error);
             }
 
-            if (!CameraDevice.getInstance().start())
+            if (!mPlatform.camera().start())
             {
                 error = "Unable to start camera device: " + camera;
                 Log.e(LOGTAG, error);
@@ -158,45 +249,164 @@ public class AppSession implements Vuforia.UpdateCallbackInterface {
                         VuforiaException.CAMERA_INITIALIZATION_FAILURE, error);
             }
 
-            Vuforia.setFrameFormat(PIXEL_FORMAT.RGB565, true);
+            refreshCalibration();
 
-            mSessionControl.doStartTrackers();
+            mPlatform.setFrameFormat(VuforiaPlatform.PIXEL_FORMAT_RGB565, true);
+        }
 
-            try
-            {
-                setFocusMode(CameraDevice.FOCUS_MODE.FOCUS_MODE_TRIGGERAUTO);
-            } catch (VuforiaException exceptionTriggerAuto)
+
+    // Stops any ongoing initialization, stops Vuforia
+    public void stopAR() throws VuforiaException
+    {
+        mPlatform.removeFromMain(mIdleTeardown);
+        boolean wasSuspended = mSuspended;
+        mSuspended = false;
+
+        // Cancel potentially running start up stages and let them finish
+        StartupPipeline startup = mStartup;
+        startup.cancel();
+        try
+        {
+            if (!startup.awaitIdle(SHUTDOWN_WAIT_MILLIS))
+                Log.w(LOGTAG, "Start up stages still running at shutdown");
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        // Nothing left to release after an idle teardown
+        if (mTornDown)
+            return;
+
+        // A suspended session stopped the camera and the trackers already
+        if (!wasSuspended)
+            stopCamera();
+        shutdown();
+    }
+
+
+    // Resumes Vuforia. A warm session only restarts camera and trackers, a torn down one is
+    // initialized again.
+    public void resumeAR() throws VuforiaException
+    {
+        mPlatform.removeFromMain(mIdleTeardown);
+        boolean wasSuspended = mSuspended;
+        mSuspended = false;
+
+        // Vuforia-specific resume operation
+        mPlatform.onResume();
+
+        if (mStarted)
+        {
+            startResumeClock(true);
+            startAR(mCamera);
+        } else if (mTornDown)
+        {
+            mTornDown = false;
+            startResumeClock(false);
+            Log.i(LOGTAG, "Resuming torn down session, initializing Vuforia again");
+            mStartup = new StartupPipeline(mMainExecutor);
+            addStartupStages();
+            mStartup.start();
+        }
+    }
+
+
+    // Pauses Vuforia and stops the camera and the trackers, the rest stays resident for the warm
+    // suspend timeout
+    public void pauseAR() throws VuforiaException
+    {
+        if (mStarted)
+        {
+            stopCamera();
+
+            // Nothing stays tracked while suspended, the last poses must not show after resume
+            VuforiaRenderer renderer = mRenderer;
+            if (renderer != null)
+                renderer.onTrackingStopped();
+
+            if (mWarmSuspendMillis > 0)
             {
-                setFocusMode(CameraDevice.FOCUS_MODE.FOCUS_MODE_NORMAL);
+                mSuspended = true;
+                mPlatform.postToMain(mIdleTeardown, mWarmSuspendMillis);
             }
         }
 
+        mPlatform.onPause();
+    }
 
-    // Stops any ongoing initialization, stops Vuforia
-    public void stopAR() throws VuforiaException
+
+    // Forward of Activity.onTrimMemory, a warm suspended session is torn down once the app is
+    // in the background (or memory is critical).
+    public void onTrimMemory(int level)
     {
-        // Cancel potentially running tasks
-        if (mInitVuforiaTask != null
-                && mInitVuforiaTask.getStatus() != InitVuforiaTask.Status.FINISHED)
+        if (mSuspended && level >= TRIM_MEMORY_BACKGROUND)
         {
-            mInitVuforiaTask.cancel(true);
-            mInitVuforiaTask = null;
+            Log.i(LOGTAG, "Memory pressure (" + level + ") while suspended");
+            teardownSuspended();
         }
+    }
+
+
+    // Called by the application when a trackable is found (any thread), completes the
+    // measurement of the last resume.
+    public synchronized void onTrackableFound()
+    {
+        if (mResumeNanos == 0)
+            return;
+        long millis = (System.nanoTime() - mResumeNanos) / 1000000;
+        mResumeNanos = 0;
+        if (mResumeWarm)
+            mWarmResumeMillis = millis;
+        else
+            mColdResumeMillis = millis;
+        Log.i(LOGTAG, (mResumeWarm ? "Warm" : "Cold") + " resume to first tracked frame: " + millis + " ms");
+    }
+
+
+    // Resume to first tracked frame of the last warm (or cold) resume, -1 if none was measured.
+    public synchronized long getResumeMillis(boolean warm)
+    {
+        return warm ? mWarmResumeMillis : mColdResumeMillis;
+    }
+
+
+    private synchronized void startResumeClock(boolean warm)
+    {
+        mResumeNanos = System.nanoTime();
+        mResumeWarm = warm;
+    }
+
 
-        if (mLoadTrackerTask != null
-                && mLoadTrackerTask.getStatus() != LoadTrackerTask.Status.FINISHED)
+    // Full teardown of a warm suspended session, camera and trackers are already stopped.
+    private void teardownSuspended()
+    {
+        mPlatform.removeFromMain(mIdleTeardown);
+        if (!mSuspended)
+            return;
+        mSuspended = false;
+        shutdownQuietly();
+    }
+
+
+    private void shutdownQuietly()
+    {
+        try
         {
-            mLoadTrackerTask.cancel(true);
-            mLoadTrackerTask = null;
+            shutdown();
+        } catch (VuforiaException e)
+        {
+            Log.e(LOGTAG, e.getString());
         }
+        mTornDown = true;
+    }
 
-        mInitVuforiaTask = null;
-        mLoadTrackerTask = null;
 
+    // Unloads the data, deinitializes the trackers and Vuforia, the camera has to be stopped.
+    private void shutdown() throws VuforiaException
+    {
         mStarted = false;
 
-        stopCamera();
-
         // Ensure that all asynchronous operations to initialize Vuforia
         // and loading the tracker datasets do not overlap:
         synchronized (mShutdownLock)
@@ -212,7 +422,8 @@ public class AppSession implements Vuforia.UpdateCallbackInterface {
             deinitTrackersResult = mSessionControl.doDeinitTrackers();
 
             // Deinitialize Vuforia SDK:
-            Vuforia.deinit();
+            mPlatform.setUpdateListener(null);
+            mPlatform.deinit();
 
             if (!unloadTrackersResult)
                 throw new VuforiaException(
@@ -227,30 +438,10 @@ public class AppSession implements Vuforia.UpdateCallbackInterface {
         }
     }
 
-    // Resumes Vuforia, restarts the trackers and the camera
-    public void resumeAR() throws VuforiaException
-    {
-        // Vuforia-specific resume operation
-        Vuforia.onResume();
-
-        if (mStarted)
-            startAR(mCamera);
-    }
-
-
-    // Pauses Vuforia and stops the camera
-    public void pauseAR() throws VuforiaException
-    {
-        if (mStarted)
-            stopCamera();
-
-        Vuforia.onPause();
-    }
-
     // Callback called every cycle
     @Override
-    public void Vuforia_onUpdate(State state) {
-        mSessionControl.onQCARUpdate(state);
+    public void onUpdate(PoseFrame frame) {
+        mSessionControl.onQCARUpdate(frame);
     }
 
     // Manages the configuration changes
@@ -264,182 +455,140 @@ public class AppSession implements Vuforia.UpdateCallbackInterface {
         {
             // configure video background
             configureVideoBackground();
+            refreshCalibration();
         }
 
     }
 
     public void onSurfaceChanged(int width, int height)
     {
-        Vuforia.onSurfaceChanged(width, height);
+        mPlatform.onSurfaceChanged(width, height);
     }
 
     public void onSurfaceCreated()
     {
-        Vuforia.onSurfaceCreated();
+        mPlatform.onSurfaceCreated();
     }
 
-    // An async task to initialize Vuforia asynchronously.
-    private class InitVuforiaTask extends AsyncTask<Void, Integer, Boolean>
+    // Adds the Vuforia stages: init -> trackers -> data -> ready (UI thread).
+    private void addStartupStages()
     {
-        // Initialize with invalid value:
-        private int mProgressValue = -1;
-
-
-        protected Boolean doInBackground(Void... params)
+        mStartup.add(STAGE_VUFORIA_INIT, new StartupPipeline.Task()
         {
-            // Prevent the onDestroy() method to overlap with initialization:
-            synchronized (mShutdownLock)
+            @Override
+            public void run(StartupPipeline.Progress progress) throws Exception
             {
-                Vuforia.setInitParameters(mActivity, mVuforiaFlags, mActivity.getString(R.string.vuforia_key));
-
-                do
+                // Prevent the onDestroy() method to overlap with initialization:
+                synchronized (mShutdownLock)
                 {
-                    // Vuforia.init() blocks until an initialization step is
-                    // complete, then it proceeds to the next step and reports
-                    // progress in percents (0 ... 100%).
-                    // If Vuforia.init() returns -1, it indicates an error.
-                    // Initialization is done when progress has reached 100%.
-                    mProgressValue = Vuforia.init();
-
-                    // Publish the progress value:
-                    publishProgress(mProgressValue);
-
-                    // We check whether the task has been canceled in the
-                    // meantime (by calling AsyncTask.cancel(true)).
-                    // and bail out if it has, thus stopping this thread.
-                    // This is necessary as the AsyncTask will run to completion
-                    // regardless of the status of the component that
-                    // started is.
-                } while (!isCancelled() && mProgressValue >= 0
-                        && mProgressValue < 100);
-
-                return (mProgressValue > 0);
-            }
-        }
-
-
-        protected void onProgressUpdate(Integer... values)
-        {
-            // Do something with the progress value "values[0]", e.g. update
-            // splash screen, progress bar, etc.
-        }
-
-
-        protected void onPostExecute(Boolean result)
-        {
-            // Done initializing Vuforia, proceed to next application
-            // initialization status:
-
-            VuforiaException vuforiaException;
+                    mPlatform.setInitParameters(mVuforiaFlags);
 
-            if (result)
-            {
-                Log.d(LOGTAG, "InitVuforiaTask.onPostExecute: Vuforia "
-                        + "initialization successful");
-
-                boolean initTrackersResult;
-                initTrackersResult = mSessionControl.doInitTrackers();
-
-                if (initTrackersResult)
-                {
-                    try
+                    int progressValue;
+                    do
                     {
-                        mLoadTrackerTask = new LoadTrackerTask();
-                        mLoadTrackerTask.execute();
-                    } catch (Exception e)
+                        // init() blocks until an initialization step is complete,
+                        // then it proceeds to the next step and reports progress
+                        // in percents (0 ... 100%), a negative value is an error.
+                        progressValue = mPlatform.init();
+                        progress.report(Math.max(progressValue, 0));
+                    } while (!progress.isCancelled() && progressValue >= 0
+                            && progressValue < 100);
+
+                    if (progressValue < 0)
                     {
-                        String logMessage = "Loading tracking data set failed";
-                        vuforiaException = new VuforiaException(
-                                VuforiaException.LOADING_TRACKERS_FAILURE,
-                                logMessage);
-                        Log.e(LOGTAG, logMessage);
-                        mSessionControl.onInitARDone(vuforiaException);
+                        // NOTE: Check if initialization failed because the device is
+                        // not supported. At this point the user should be informed
+                        // with a message.
+                        String logMessage = progressValue == VuforiaPlatform.INIT_DEVICE_NOT_SUPPORTED
+                                ? "Failed to initialize Vuforia because this device is not supported."
+                                : "Failed to initialize Vuforia.";
+                        throw new VuforiaException(VuforiaException.INITIALIZATION_FAILURE, logMessage);
                     }
+                }
+            }
+        });
 
-                } else
-                {
-                    vuforiaException = new VuforiaException(
+        mStartup.add(STAGE_TRACKERS_INIT, new StartupPipeline.Task()
+        {
+            @Override
+            public void run(StartupPipeline.Progress progress) throws Exception
+            {
+                if (!mSessionControl.doInitTrackers())
+                    throw new VuforiaException(
                             VuforiaException.TRACKERS_INITIALIZATION_FAILURE,
                             "Failed to initialize trackers");
-                    mSessionControl.onInitARDone(vuforiaException);
-                }
-            } else
-            {
-                String logMessage;
+            }
+        }, STAGE_VUFORIA_INIT);
 
-                // NOTE: Check if initialization failed because the device is
-                // not supported. At this point the user should be informed
-                // with a message.
-                if (mProgressValue == Vuforia.INIT_DEVICE_NOT_SUPPORTED)
-                {
-                    logMessage = "Failed to initialize Vuforia because this "
-                            + "device is not supported.";
-                } else
+        mStartup.add(STAGE_DATA_LOAD, new StartupPipeline.Task()
+        {
+            @Override
+            public void run(StartupPipeline.Progress progress) throws Exception
+            {
+                // Prevent the onDestroy() method to overlap:
+                synchronized (mShutdownLock)
                 {
-                    logMessage = "Failed to initialize Vuforia.";
+                    if (!mSessionControl.doLoadTrackersData())
+                        throw new VuforiaException(
+                                VuforiaException.LOADING_TRACKERS_FAILURE,
+                                "Failed to load tracker data.");
                 }
+            }
+        }, STAGE_TRACKERS_INIT);
 
-                // Log error:
-                Log.e(LOGTAG, "InitVuforiaTask.onPostExecute: " + logMessage
-                        + " Exiting.");
+        mStartup.add(STAGE_AR_READY, new StartupPipeline.Task()
+        {
+            @Override
+            public void run(StartupPipeline.Progress progress)
+            {
+                Log.d(LOGTAG, "Vuforia initialization and data loading successful");
+                mPlatform.setUpdateListener(AppSession.this);
+                mStarted = true;
 
-                // Send Vuforia Exception to the application and call initDone
-                // to stop initialization process
-                vuforiaException = new VuforiaException(
-                        VuforiaException.INITIALIZATION_FAILURE,
-                        logMessage);
-                mSessionControl.onInitARDone(vuforiaException);
+                // Done loading the tracker, update application status
+                mSessionControl.onInitARDone(null);
             }
-        }
-    }
+        }, mMainExecutor, STAGE_DATA_LOAD);
 
-    // An async task to load the tracker data asynchronously.
-    private class LoadTrackerTask extends AsyncTask<Void, Integer, Boolean>
-    {
-        protected Boolean doInBackground(Void... params)
+        mStartup.addListener(new StartupPipeline.Listener()
         {
-            // Prevent the onDestroy() method to overlap:
-            synchronized (mShutdownLock)
+            @Override
+            public void onStageProgress(String stage, int percent)
             {
-                // Load the tracker data set:
-                return mSessionControl.doLoadTrackersData();
             }
-        }
 
 
-        protected void onPostExecute(Boolean result)
-        {
-
-            VuforiaException vuforiaException = null;
+            @Override
+            public void onStageFinished(String stage, long millis)
+            {
+                Log.d(LOGTAG, "Start up stage " + stage + " finished in " + millis + " ms");
+            }
 
-            Log.d(LOGTAG, "LoadTrackerTask.onPostExecute: execution " + (result ? "successful" : "failed"));
 
-            if (!result)
-            {
-                String logMessage = "Failed to load tracker data.";
-                // Error loading dataset
-                Log.e(LOGTAG, logMessage);
-                vuforiaException = new VuforiaException(
-                        VuforiaException.LOADING_TRACKERS_FAILURE,
-                        logMessage);
-            } else
+            @Override
+            public void onStageFailed(String stage, Exception e)
             {
-                // Hint to the virtual machine that it would be a good time to
-                // run the garbage collector:
-                //
-                // NOTE: This is only a hint. There is no guarantee that the
-                // garbage collector will actually be run.
-                System.gc();
-
-                Vuforia.registerCallback(AppSession.this);
+                VuforiaException vuforiaException;
+                if (e instanceof VuforiaException)
+                    vuforiaException = (VuforiaException) e;
+                else
+                    vuforiaException = new VuforiaException(
+                            VuforiaException.INITIALIZATION_FAILURE,
+                            "Start up stage " + stage + " failed: " + e);
+                Log.e(LOGTAG, "Start up stage " + stage + " failed: " + vuforiaException.getString());
 
-                mStarted = true;
+                // Send Vuforia Exception to the application to stop the
+                // initialization process
+                mSessionControl.onInitARDone(vuforiaException);
             }
 
-            // Done loading the tracker, update application status, send the
-            // exception to check errors
-            mSessionControl.onInitARDone(vuforiaException);
-        }
+
+            @Override
+            public void onFinished(boolean success)
+            {
+                Log.i(LOGTAG, mStartup.timeline());
+            }
+        });
     }
 
 
@@ -447,30 +596,17 @@ public class AppSession implements Vuforia.UpdateCallbackInterface {
     private void storeScreenDimensions()
     {
         // Query display dimensions:
-        DisplayMetrics metrics = new DisplayMetrics();
-        mActivity.getWindowManager().getDefaultDisplay().getMetrics(metrics);
-        mScreenWidth = metrics.widthPixels;
-        mScreenHeight = metrics.heightPixels;
+        int[] size = new int[2];
+        mPlatform.getScreenSize(size);
+        mScreenWidth = size[0];
+        mScreenHeight = size[1];
     }
 
 
     // Stores the orientation depending on the current resources configuration
     private void updateActivityOrientation()
     {
-        Configuration config = mActivity.getResources().getConfiguration();
-
-        switch (config.orientation)
-        {
-            case Configuration.ORIENTATION_PORTRAIT:
-                mIsPortrait = true;
-                break;
-            case Configuration.ORIENTATION_LANDSCAPE:
-                mIsPortrait = false;
-                break;
-            case Configuration.ORIENTATION_UNDEFINED:
-            default:
-                break;
-        }
+        mIsPortrait = mPlatform.isPortrait();
 
         Log.i(LOGTAG, "Activity is in " + (mIsPortrait ? "PORTRAIT" : "LANDSCAPE"));
     }
@@ -479,17 +615,16 @@ public class AppSession implements Vuforia.UpdateCallbackInterface {
     private void stopCamera()
     {
         mSessionControl.doStopTrackers();
-        CameraDevice.getInstance().setFlashTorchMode(false);
-        CameraDevice.getInstance().stop();
-        CameraDevice.getInstance().deinit();
-
+        mPlatform.camera().setFlashTorchMode(false);
+        mPlatform.camera().stop();
+        mPlatform.camera().deinit();
     }
 
 
     // Applies auto focus if supported by the current device
     private boolean setFocusMode(int mode) throws VuforiaException
     {
-        boolean result = CameraDevice.getInstance().setFocusMode(mode);
+        boolean result = mPlatform.camera().setFocusMode(mode);
 
         if (!result)
             throw new VuforiaException(
@@ -503,54 +638,71 @@ public class AppSession implements Vuforia.UpdateCallbackInterface {
     // Configures the video mode and sets offsets for the camera's image
     private void configureVideoBackground()
     {
-        CameraDevice cameraDevice = CameraDevice.getInstance();
-        VideoMode vm = cameraDevice.getVideoMode(CameraDevice.MODE.MODE_DEFAULT);
-
-        VideoBackgroundConfig config = new VideoBackgroundConfig();
-        config.setEnabled(true);
-        config.setPosition(new Vec2I(0, 0));
+        int[] vm = new int[2];
+        mPlatform.camera().getVideoMode(VuforiaCamera.MODE_DEFAULT, vm);
+        int videoWidth = vm[0];
+        int videoHeight = vm[1];
 
         int xSize, ySize;
         if (mIsPortrait)
         {
-            xSize = (int) (vm.getHeight() * (mScreenHeight / (float) vm
-                    .getWidth()));
+            xSize = (int) (videoHeight * (mScreenHeight / (float) videoWidth));
             ySize = mScreenHeight;
 
             if (xSize < mScreenWidth)
             {
                 xSize = mScreenWidth;
-                ySize = (int) (mScreenWidth * (vm.getWidth() / (float) vm
-                        .getHeight()));
+                ySize = (int) (mScreenWidth * (videoWidth / (float) videoHeight));
             }
         } else
         {
             xSize = mScreenWidth;
-            ySize = (int) (vm.getHeight() * (mScreenWidth / (float) vm
-                    .getWidth()));
+            ySize = (int) (videoHeight * (mScreenWidth / (float) videoWidth));
 
             if (ySize < mScreenHeight)
             {
-                xSize = (int) (mScreenHeight * (vm.getWidth() / (float) vm
-                        .getHeight()));
+                xSize = (int) (mScreenHeight * (videoWidth / (float) videoHeight));
                 ySize = mScreenHeight;
             }
         }
 
-        config.setSize(new Vec2I(xSize, ySize));
-
-        Log.i(LOGTAG, "Configure Video Background : Video (" + vm.getWidth()
-                + " , " + vm.getHeight() + "), Screen (" + mScreenWidth + " , "
+        Log.i(LOGTAG, "Configure Video Background : Video (" + videoWidth
+                + " , " + videoHeight + "), Screen (" + mScreenWidth + " , "
                 + mScreenHeight + "), mSize (" + xSize + " , " + ySize + ")");
 
-        Renderer.getInstance().setVideoBackgroundConfig(config);
+        mPlatform.renderState().setVideoBackgroundConfig(true, 0, 0, xSize, ySize);
+        mBackgroundWidth = xSize;
+        mBackgroundHeight = ySize;
+
+        mVideoBackgroundReflected = mPlatform.renderState().isVideoBackgroundReflected();
+    }
+
+
+    // Reads the camera intrinsics and recomputes the projection for the current video background
+    private void refreshCalibration()
+    {
+        mCalibration.refresh(mPlatform.camera(), mScreenWidth, mScreenHeight,
+                mBackgroundWidth, mBackgroundHeight, mVideoBackgroundReflected);
+    }
 
+
+    // Camera calibration of the running camera, see CameraCalibrationCache
+    public CameraCalibrationCache getCalibration()
+    {
+        return mCalibration;
+    }
+
+
+    // Returns true if the video background is mirrored (front camera)
+    public boolean isVideoBackgroundReflected()
+    {
+        return mVideoBackgroundReflected;
     }
 
 
     // Returns true if Vuforia is initialized, the trackers started and the
     // tracker data loaded
-    private boolean isARRunning()
+    public boolean isARRunning()
     {
         return mStarted;
     }
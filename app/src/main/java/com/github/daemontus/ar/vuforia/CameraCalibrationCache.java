@@ -0,0 +1,93 @@
+package com.github.daemontus.ar.vuforia;
+
+/**
+ * Camera intrinsics and the projection derived from them, refreshed when the camera starts or
+ * the video background changes instead of being queried every frame.
+ *
+ * The projection matches the libgdx camera of the renderer: placed in the origin, looking down
+ * +z, with poses axis-swapped by PoseConverter for a portrait screen. Image u then runs down
+ * the screen and image v from right to left. The frustum covers exactly the part of the camera
+ * image visible through the (aspect-fill, centered) video background, including the principal
+ * point offset, so content lines up with the video even when the principal point is not centered.
+ *
+ * Written on the UI thread, read on the GL thread. Readers poll getVersion and copy the values
+ * only when it changed.
+ */
+public class CameraCalibrationCache
+{
+
+    // image size, focal length and principal point in pixels, see VuforiaCamera.getCalibration
+    private final float[] mIntrinsics = new float[6];
+
+    // x_ndc = mScaleX * x_v / -z_v - mOffsetX (same for y), see getProjection
+    private float mScaleX, mOffsetX, mScaleY, mOffsetY;
+    private float mFieldOfView;
+
+    private volatile int mVersion;
+
+
+    // Reads the intrinsics from the started camera and recomputes the projection.
+    public synchronized void refresh(VuforiaCamera camera, int screenWidth, int screenHeight,
+                                     int backgroundWidth, int backgroundHeight, boolean reflected)
+    {
+        camera.getCalibration(mIntrinsics);
+        float width = mIntrinsics[0], height = mIntrinsics[1];
+        float fx = mIntrinsics[2], fy = mIntrinsics[3];
+        float cx = mIntrinsics[4], cy = mIntrinsics[5];
+        if (width <= 0 || height <= 0 || fx <= 0 || fy <= 0 || screenWidth <= 0 || screenHeight <= 0)
+            return;
+
+        // part of the screen covered by the video background, per axis in NDC units
+        float backgroundX = backgroundWidth / (float) screenWidth;
+        float backgroundY = backgroundHeight / (float) screenHeight;
+
+        // screen x follows image v (camera y), screen y follows image u (camera x)
+        mScaleX = backgroundX * 2 * fy / height;
+        mOffsetX = backgroundX * (2 * cy / height - 1);
+        mScaleY = backgroundY * 2 * fx / width;
+        mOffsetY = backgroundY * (2 * cx / width - 1);
+        // the front camera video is mirrored, and so is its principal point
+        if (reflected)
+            mOffsetY = -mOffsetY;
+
+        mFieldOfView = (float) (2 * Math.atan(1 / mScaleY));
+        mVersion++;
+    }
+
+
+    // Incremented on every successful refresh, 0 while the camera was never calibrated.
+    public int getVersion()
+    {
+        return mVersion;
+    }
+
+
+    // Vertical field of view of the projection in radians.
+    public synchronized float getFieldOfView()
+    {
+        return mFieldOfView;
+    }
+
+
+    // Copies image size, focal length and principal point (6 floats).
+    public synchronized void getIntrinsics(float[] out)
+    {
+        System.arraycopy(mIntrinsics, 0, out, 0, mIntrinsics.length);
+    }
+
+
+    // Writes the column-major OpenGL projection matrix for the given clip planes into out.
+    public synchronized void getProjection(float near, float far, float[] out)
+    {
+        for (int i = 0; i < 16; i++)
+            out[i] = 0;
+        out[0] = mScaleX;
+        out[5] = mScaleY;
+        out[8] = mOffsetX;
+        out[9] = mOffsetY;
+        out[10] = (far + near) / (near - far);
+        out[11] = -1;
+        out[14] = 2 * far * near / (near - far);
+    }
+
+}
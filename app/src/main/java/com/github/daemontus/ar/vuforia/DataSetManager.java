@@ -0,0 +1,420 @@
+package com.github.daemontus.ar.vuforia;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads tracking data sets in the background and keeps a bounded number of them active.
+ *
+ * Data sets are registered by path with a priority. activate() loads a data set on the loader
+ * thread (if it is not loaded yet) and activates it in the tracker. When more than maxActive
+ * data sets are active, the one with the lowest priority is deactivated, least recently used
+ * first. Data sets stay loaded after deactivation so they can come back quickly, up to maxLoaded,
+ * beyond that inactive ones are destroyed in the same order. The data set just loaded is never
+ * destroyed to make room, if all others are active the limit is exceeded until its activation
+ * deactivates one of them. A data set counts as used when it is activated or when one of its
+ * targets is found (the manager listens to TrackingStateTable).
+ *
+ * Vuforia only activates data sets while the tracker is stopped, so a swap stops the tracker for
+ * the duration of the (de)activation. The camera keeps running and the render loop never waits:
+ * it does not touch data sets and keeps drawing the last published poses. Tracker start/stop must
+ * go through startTracking/stopTracking so swaps know whether to restart it.
+ *
+ * Load time, activation time and memory (if a MemoryMeter is set) are recorded per data set.
+ */
+public class DataSetManager implements TrackingStateTable.Listener
+{
+
+    // Measures memory in use, e.g. the native heap which holds Vuforia's data sets.
+    public interface MemoryMeter
+    {
+        long usedBytes();
+    }
+
+
+    // Snapshot of the metrics of one data set.
+    public static final class Stats
+    {
+        public final String path;
+        public final boolean loaded;
+        public final boolean active;
+        // duration of the last load and activation, -1 if it did not happen yet
+        public final long loadMillis;
+        public final long activationMillis;
+        // memory used by the loaded data set, -1 if unknown
+        public final long memoryBytes;
+        public final int activations;
+
+
+        Stats(Entry entry)
+        {
+            path = entry.path;
+            loaded = entry.dataSet != null;
+            active = entry.active;
+            loadMillis = entry.loadMillis;
+            activationMillis = entry.activationMillis;
+            memoryBytes = entry.memoryBytes;
+            activations = entry.activations;
+        }
+
+
+        @Override
+        public String toString()
+        {
+            return path + (active ? " active" : loaded ? " loaded" : " unloaded")
+                    + ", load " + loadMillis + " ms, activation " + activationMillis
+                    + " ms, memory " + memoryBytes + " B, activations " + activations;
+        }
+    }
+
+
+    private static final class Entry
+    {
+        final String path;
+        final int storageType;
+        final int priority;
+
+        VuforiaDataSet dataSet;
+        int[] trackableIds = new int[0];
+        boolean active;
+        long lastUsed;
+
+        long loadMillis = -1;
+        long activationMillis = -1;
+        long memoryBytes = -1;
+        int activations;
+
+
+        Entry(String path, int storageType, int priority)
+        {
+            this.path = path;
+            this.storageType = storageType;
+            this.priority = priority;
+        }
+    }
+
+
+    // how long close() waits for a data set load to finish
+    private static final long CLOSE_TIMEOUT_SECONDS = 10;
+
+    private final VuforiaTracker mTracker;
+    private final int mMaxActive;
+    private final int mMaxLoaded;
+    private final ExecutorService mExecutor;
+    private volatile MemoryMeter mMemoryMeter;
+
+    // guarded by this
+    private final Map<String, Entry> mEntries = new LinkedHashMap<String, Entry>();
+    private boolean mTrackerRunning;
+    private boolean mClosed;
+    private long mClock;
+
+
+    public DataSetManager(VuforiaTracker tracker, int maxActive, int maxLoaded)
+    {
+        if (maxActive < 1 || maxLoaded < maxActive)
+            throw new IllegalArgumentException("Need 1 <= maxActive <= maxLoaded");
+        mTracker = tracker;
+        mMaxActive = maxActive;
+        mMaxLoaded = maxLoaded;
+        mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "DataSetLoader");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+
+    public void setMemoryMeter(MemoryMeter meter)
+    {
+        mMemoryMeter = meter;
+    }
+
+
+    // Registers a data set, higher priority data sets are deactivated last.
+    public synchronized void add(String path, int storageType, int priority)
+    {
+        if (!mEntries.containsKey(path))
+            mEntries.put(path, new Entry(path, storageType, priority));
+    }
+
+
+    // Loads (if needed) and activates the data set in the background, true once it is active.
+    public Future<Boolean> activate(final String path)
+    {
+        return mExecutor.submit(new Callable<Boolean>()
+        {
+            @Override
+            public Boolean call()
+            {
+                return load(path) && activateLoaded(path);
+            }
+        });
+    }
+
+
+    // Loads the data set in the background without activating it.
+    public Future<Boolean> preload(final String path)
+    {
+        return mExecutor.submit(new Callable<Boolean>()
+        {
+            @Override
+            public Boolean call()
+            {
+                return load(path);
+            }
+        });
+    }
+
+
+    // Marks the data set as used, so less recently used ones are deactivated first.
+    public synchronized void touch(String path)
+    {
+        Entry entry = mEntries.get(path);
+        if (entry != null)
+            entry.lastUsed = ++mClock;
+    }
+
+
+    public synchronized boolean startTracking()
+    {
+        mTrackerRunning = mTracker.start();
+        return mTrackerRunning;
+    }
+
+
+    public synchronized void stopTracking()
+    {
+        mTracker.stop();
+        mTrackerRunning = false;
+    }
+
+
+    // Deactivates and destroys all data sets, they stay registered and can be activated again.
+    public synchronized boolean unloadAll()
+    {
+        boolean result = true;
+        for (Entry entry : mEntries.values())
+        {
+            if (entry.active && !mTracker.deactivateDataSet(entry.dataSet))
+                result = false;
+            entry.active = false;
+            if (entry.dataSet != null && !mTracker.destroyDataSet(entry.dataSet))
+                result = false;
+            entry.dataSet = null;
+        }
+        return result;
+    }
+
+
+    // Unloads everything and stops the loader thread, the manager can not be used afterwards.
+    // Waits for a load in progress, which can not be interrupted and must not overlap with the
+    // unload. If it does not finish in time the data sets are left for the tracker deinit.
+    public boolean close()
+    {
+        synchronized (this)
+        {
+            mClosed = true;
+        }
+        mExecutor.shutdownNow();
+        try
+        {
+            if (!mExecutor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS))
+                return false;
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return unloadAll();
+    }
+
+
+    public synchronized List<Stats> getStats()
+    {
+        List<Stats> stats = new ArrayList<Stats>(mEntries.size());
+        for (Entry entry : mEntries.values())
+            stats.add(new Stats(entry));
+        return stats;
+    }
+
+
+    @Override
+    public void onTrackableFound(int id, String name, double timestamp)
+    {
+        synchronized (this)
+        {
+            for (Entry entry : mEntries.values())
+            {
+                if (entry.active && contains(entry.trackableIds, id))
+                {
+                    entry.lastUsed = ++mClock;
+                    return;
+                }
+            }
+        }
+    }
+
+
+    @Override
+    public void onTrackableLost(int id, String name, double timestamp)
+    {
+    }
+
+
+    // Loader thread. The load itself runs without the lock, so tracker start/stop never waits.
+    private boolean load(String path)
+    {
+        Entry entry;
+        VuforiaDataSet dataSet;
+        synchronized (this)
+        {
+            entry = mEntries.get(path);
+            if (entry == null || mClosed)
+                return false;
+            if (entry.dataSet != null)
+                return true;
+            dataSet = mTracker.createDataSet();
+            if (dataSet == null)
+                return false;
+        }
+
+        MemoryMeter meter = mMemoryMeter;
+        long memoryBefore = meter == null ? 0 : meter.usedBytes();
+        long start = System.nanoTime();
+        boolean loaded = dataSet.load(entry.path, entry.storageType);
+        long loadMillis = (System.nanoTime() - start) / 1000000;
+        long memory = meter == null ? -1 : meter.usedBytes() - memoryBefore;
+
+        int[] ids = new int[loaded ? dataSet.getTrackableCount() : 0];
+        for (int i = 0; i < ids.length; i++)
+            ids[i] = dataSet.getTrackableId(i);
+
+        synchronized (this)
+        {
+            if (!loaded || mClosed)
+            {
+                mTracker.destroyDataSet(dataSet);
+                return false;
+            }
+            entry.dataSet = dataSet;
+            entry.trackableIds = ids;
+            entry.loadMillis = loadMillis;
+            entry.memoryBytes = memory;
+            entry.lastUsed = ++mClock;
+            // the new data set is about to be activated, an older one makes room
+            evictLoaded(entry);
+            return true;
+        }
+    }
+
+
+    private synchronized boolean activateLoaded(String path)
+    {
+        Entry entry = mEntries.get(path);
+        if (entry == null || entry.dataSet == null || mClosed)
+            return false;
+        entry.lastUsed = ++mClock;
+        if (entry.active)
+            return true;
+
+        long start = System.nanoTime();
+        boolean restart = mTrackerRunning;
+        if (restart)
+            mTracker.stop();
+
+        Entry victim = activeCount() >= mMaxActive ? pickVictim(true, entry) : null;
+        if (victim != null && !mTracker.deactivateDataSet(victim.dataSet))
+        {
+            // activating anyway would exceed maxActive
+            if (restart)
+                mTrackerRunning = mTracker.start();
+            return false;
+        }
+        if (victim != null)
+            victim.active = false;
+        entry.active = mTracker.activateDataSet(entry.dataSet);
+
+        if (restart)
+            mTrackerRunning = mTracker.start();
+        entry.activationMillis = (System.nanoTime() - start) / 1000000;
+        if (entry.active)
+            entry.activations++;
+
+        evictLoaded(null);
+        return entry.active;
+    }
+
+
+    // Destroys inactive data sets other than keep while more than mMaxLoaded are loaded.
+    private void evictLoaded(Entry keep)
+    {
+        while (loadedCount() > mMaxLoaded)
+        {
+            Entry victim = pickVictim(false, keep);
+            if (victim == null)
+                return;
+            mTracker.destroyDataSet(victim.dataSet);
+            victim.dataSet = null;
+        }
+    }
+
+
+    // Lowest priority, then least recently used, among active (or loaded inactive) entries.
+    private Entry pickVictim(boolean active, Entry keep)
+    {
+        Entry victim = null;
+        for (Entry entry : mEntries.values())
+        {
+            if (entry == keep || entry.dataSet == null || entry.active != active)
+                continue;
+            if (victim == null || entry.priority < victim.priority
+                    || entry.priority == victim.priority && entry.lastUsed < victim.lastUsed)
+                victim = entry;
+        }
+        return victim;
+    }
+
+
+    private int activeCount()
+    {
+        int count = 0;
+        for (Entry entry : mEntries.values())
+            if (entry.active)
+                count++;
+        return count;
+    }
+
+
+    private int loadedCount()
+    {
+        int count = 0;
+        for (Entry entry : mEntries.values())
+            if (entry.dataSet != null)
+                count++;
+        return count;
+    }
+
+
+    private static boolean contains(int[] ids, int id)
+    {
+        for (int value : ids)
+            if (value == id)
+                return true;
+        return false;
+    }
+
+}
@@ -0,0 +1,563 @@
+package com.github.daemontus.ar.vuforia;
+
+import android.app.Activity;
+import android.content.pm.ActivityInfo;
+import android.content.res.Configuration;
+import android.opengl.GLES20;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.DisplayMetrics;
+import android.view.WindowManager;
+
+import com.vuforia.CameraCalibration;
+import com.vuforia.CameraDevice;
+import com.vuforia.DataSet;
+import com.vuforia.ObjectTracker;
+import com.vuforia.Renderer;
+import com.vuforia.State;
+import com.vuforia.Trackable;
+import com.vuforia.TrackableResult;
+import com.vuforia.TrackerManager;
+import com.vuforia.VIDEO_BACKGROUND_REFLECTION;
+import com.vuforia.Vec2I;
+import com.vuforia.VideoBackgroundConfig;
+import com.vuforia.VideoMode;
+import com.vuforia.Vuforia;
+
+/**
+ * {@link VuforiaPlatform} backed by the Vuforia SDK singletons.
+ */
+public class DeviceVuforiaPlatform implements VuforiaPlatform, Vuforia.UpdateCallbackInterface
+{
+
+    private final Activity mActivity;
+    private final String mLicenseKey;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    // kept while the configuration orientation is undefined
+    private boolean mPortrait = false;
+
+    private final TrackableNames mNames = new TrackableNames();
+    private final Camera mCamera = new Camera();
+    private final ImageTracker mTracker = new ImageTracker(mNames);
+    private final RenderState mRenderState = new RenderState(mNames);
+
+    private volatile UpdateListener mUpdateListener;
+    // only used on the Vuforia thread
+    private final PoseFrame mUpdateFrame = new PoseFrame();
+
+
+    public DeviceVuforiaPlatform(Activity activity, String licenseKey)
+    {
+        mActivity = activity;
+        mLicenseKey = licenseKey;
+    }
+
+
+    @Override
+    public void setInitParameters(int flags)
+    {
+        Vuforia.setInitParameters(mActivity, flags, mLicenseKey);
+    }
+
+
+    @Override
+    public int init()
+    {
+        return Vuforia.init();
+    }
+
+
+    @Override
+    public void deinit()
+    {
+        Vuforia.deinit();
+    }
+
+
+    @Override
+    public void onResume()
+    {
+        Vuforia.onResume();
+    }
+
+
+    @Override
+    public void onPause()
+    {
+        Vuforia.onPause();
+    }
+
+
+    @Override
+    public void onSurfaceCreated()
+    {
+        Vuforia.onSurfaceCreated();
+    }
+
+
+    @Override
+    public void onSurfaceChanged(int width, int height)
+    {
+        Vuforia.onSurfaceChanged(width, height);
+    }
+
+
+    @Override
+    public boolean setFrameFormat(int format, boolean enabled)
+    {
+        return Vuforia.setFrameFormat(format, enabled);
+    }
+
+
+    @Override
+    public boolean setHint(long hint, int value)
+    {
+        return Vuforia.setHint(hint, value);
+    }
+
+
+    @Override
+    public boolean requiresAlpha()
+    {
+        return Vuforia.requiresAlpha();
+    }
+
+
+    @Override
+    public void setUpdateListener(UpdateListener listener)
+    {
+        mUpdateListener = listener;
+        Vuforia.registerCallback(listener == null ? null : this);
+    }
+
+
+    @Override
+    public void Vuforia_onUpdate(State state)
+    {
+        UpdateListener listener = mUpdateListener;
+        if (listener == null)
+            return;
+        copyResults(state, mUpdateFrame, mNames);
+        listener.onUpdate(mUpdateFrame);
+    }
+
+
+    @Override
+    public VuforiaCamera camera()
+    {
+        return mCamera;
+    }
+
+
+    @Override
+    public VuforiaTracker tracker()
+    {
+        return mTracker;
+    }
+
+
+    @Override
+    public VuforiaRenderState renderState()
+    {
+        return mRenderState;
+    }
+
+
+    @Override
+    public TrackableNames trackableNames()
+    {
+        return mNames;
+    }
+
+
+    @Override
+    public void postToMain(Runnable task, long delayMillis)
+    {
+        mMainHandler.postDelayed(task, delayMillis);
+    }
+
+
+    @Override
+    public void removeFromMain(Runnable task)
+    {
+        mMainHandler.removeCallbacks(task);
+    }
+
+
+    @Override
+    public void setScreenOrientation(int orientation)
+    {
+        if ((orientation == ActivityInfo.SCREEN_ORIENTATION_SENSOR) && (Build.VERSION.SDK_INT > Build.VERSION_CODES.FROYO)) {
+            orientation = ActivityInfo.SCREEN_ORIENTATION_FULL_SENSOR;
+        }
+
+        mActivity.setRequestedOrientation(orientation);
+
+        // As long as this window is visible to the user, keep the device's
+        // screen turned on and bright:
+        mActivity.getWindow().setFlags(
+                WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON,
+                WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
+    }
+
+
+    @Override
+    public void getScreenSize(int[] size)
+    {
+        DisplayMetrics metrics = new DisplayMetrics();
+        mActivity.getWindowManager().getDefaultDisplay().getMetrics(metrics);
+        size[0] = metrics.widthPixels;
+        size[1] = metrics.heightPixels;
+    }
+
+
+    @Override
+    public boolean isPortrait()
+    {
+        switch (mActivity.getResources().getConfiguration().orientation)
+        {
+            case Configuration.ORIENTATION_PORTRAIT:
+                mPortrait = true;
+                break;
+            case Configuration.ORIENTATION_LANDSCAPE:
+                mPortrait = false;
+                break;
+            case Configuration.ORIENTATION_UNDEFINED:
+            default:
+                break;
+        }
+        return mPortrait;
+    }
+
+
+    // Copies ids and poses of all results, names come from the table (Vuforia is only asked
+    // for trackables which are not in any loaded data set).
+    static void copyResults(State state, PoseFrame frame, TrackableNames names)
+    {
+        frame.clear();
+        frame.timestamp = state.getFrame().getTimeStamp();
+        int count = state.getNumTrackableResults();
+        for (int i = 0; i < count; i++)
+        {
+            TrackableResult result = state.getTrackableResult(i);
+            Trackable trackable = result.getTrackable();
+            int id = trackable.getId();
+            String name = names.get(id);
+            if (name == null)
+            {
+                name = trackable.getName();
+                names.put(id, name);
+            }
+            frame.add(id, name, status(result.getStatus()), result.getPose().getData(), 0);
+        }
+    }
+
+
+    private static int status(int status)
+    {
+        switch (status)
+        {
+            case TrackableResult.STATUS.DETECTED:
+                return PoseFrame.STATUS_DETECTED;
+            case TrackableResult.STATUS.EXTENDED_TRACKED:
+                return PoseFrame.STATUS_EXTENDED;
+            default:
+                return PoseFrame.STATUS_TRACKED;
+        }
+    }
+
+
+    private static class Camera implements VuforiaCamera
+    {
+
+        @Override
+        public boolean init(int direction)
+        {
+            return CameraDevice.getInstance().init(direction);
+        }
+
+
+        @Override
+        public boolean deinit()
+        {
+            return CameraDevice.getInstance().deinit();
+        }
+
+
+        @Override
+        public boolean selectVideoMode(int mode)
+        {
+            return CameraDevice.getInstance().selectVideoMode(mode);
+        }
+
+
+        @Override
+        public boolean start()
+        {
+            return CameraDevice.getInstance().start();
+        }
+
+
+        @Override
+        public boolean stop()
+        {
+            return CameraDevice.getInstance().stop();
+        }
+
+
+        @Override
+        public boolean setFocusMode(int mode)
+        {
+            return CameraDevice.getInstance().setFocusMode(mode);
+        }
+
+
+        @Override
+        public boolean setFlashTorchMode(boolean on)
+        {
+            return CameraDevice.getInstance().setFlashTorchMode(on);
+        }
+
+
+        @Override
+        public void getVideoMode(int mode, int[] size)
+        {
+            VideoMode vm = CameraDevice.getInstance().getVideoMode(mode);
+            size[0] = vm.getWidth();
+            size[1] = vm.getHeight();
+        }
+
+
+        @Override
+        public void getCalibration(float[] calibration)
+        {
+            CameraCalibration c = CameraDevice.getInstance().getCameraCalibration();
+            float[] size = c.getSize().getData();
+            float[] focal = c.getFocalLength().getData();
+            float[] principal = c.getPrincipalPoint().getData();
+            calibration[0] = size[0];
+            calibration[1] = size[1];
+            calibration[2] = focal[0];
+            calibration[3] = focal[1];
+            calibration[4] = principal[0];
+            calibration[5] = principal[1];
+        }
+    }
+
+
+    private static class ImageDataSet implements VuforiaDataSet
+    {
+
+        final DataSet mDataSet;
+        private final TrackableNames mNames;
+
+
+        ImageDataSet(DataSet dataSet, TrackableNames names)
+        {
+            mDataSet = dataSet;
+            mNames = names;
+        }
+
+
+        @Override
+        public boolean load(String path, int storageType)
+        {
+            if (!mDataSet.load(path, storageType))
+                return false;
+            mNames.putAll(this);
+            return true;
+        }
+
+
+        @Override
+        public int getTrackableCount()
+        {
+            return mDataSet.getNumTrackables();
+        }
+
+
+        @Override
+        public int getTrackableId(int index)
+        {
+            return mDataSet.getTrackable(index).getId();
+        }
+
+
+        @Override
+        public String getTrackableName(int index)
+        {
+            return mDataSet.getTrackable(index).getName();
+        }
+    }
+
+
+    private static class ImageTracker implements VuforiaTracker
+    {
+
+        private final TrackableNames mNames;
+
+
+        ImageTracker(TrackableNames names)
+        {
+            mNames = names;
+        }
+
+
+        private ObjectTracker tracker()
+        {
+            return (ObjectTracker) TrackerManager.getInstance().getTracker(ObjectTracker.getClassType());
+        }
+
+
+        @Override
+        public boolean init()
+        {
+            return TrackerManager.getInstance().initTracker(ObjectTracker.getClassType()) != null;
+        }
+
+
+        @Override
+        public boolean deinit()
+        {
+            return TrackerManager.getInstance().deinitTracker(ObjectTracker.getClassType());
+        }
+
+
+        @Override
+        public boolean isInitialized()
+        {
+            return tracker() != null;
+        }
+
+
+        @Override
+        public boolean start()
+        {
+            ObjectTracker tracker = tracker();
+            return tracker != null && tracker.start();
+        }
+
+
+        @Override
+        public void stop()
+        {
+            ObjectTracker tracker = tracker();
+            if (tracker != null)
+                tracker.stop();
+        }
+
+
+        @Override
+        public VuforiaDataSet createDataSet()
+        {
+            ObjectTracker tracker = tracker();
+            if (tracker == null)
+                return null;
+            DataSet dataSet = tracker.createDataSet();
+            return dataSet == null ? null : new ImageDataSet(dataSet, mNames);
+        }
+
+
+        @Override
+        public boolean activateDataSet(VuforiaDataSet dataSet)
+        {
+            ObjectTracker tracker = tracker();
+            return tracker != null && tracker.activateDataSet(((ImageDataSet) dataSet).mDataSet);
+        }
+
+
+        @Override
+        public boolean deactivateDataSet(VuforiaDataSet dataSet)
+        {
+            ObjectTracker tracker = tracker();
+            return tracker != null && tracker.deactivateDataSet(((ImageDataSet) dataSet).mDataSet);
+        }
+
+
+        @Override
+        public boolean destroyDataSet(VuforiaDataSet dataSet)
+        {
+            ObjectTracker tracker = tracker();
+            return tracker != null && tracker.destroyDataSet(((ImageDataSet) dataSet).mDataSet);
+        }
+
+
+        @Override
+        public boolean isActive(VuforiaDataSet dataSet)
+        {
+            return ((ImageDataSet) dataSet).mDataSet.isActive();
+        }
+    }
+
+
+    private static class RenderState implements VuforiaRenderState
+    {
+
+        private final TrackableNames mNames;
+        // current frame state, GL thread only
+        private State mState;
+
+
+        RenderState(TrackableNames names)
+        {
+            mNames = names;
+        }
+
+
+        @Override
+        public void setClearColor(float red, float green, float blue, float alpha)
+        {
+            GLES20.glClearColor(red, green, blue, alpha);
+        }
+
+
+        @Override
+        public void setVideoBackgroundConfig(boolean enabled, int x, int y, int width, int height)
+        {
+            VideoBackgroundConfig config = new VideoBackgroundConfig();
+            config.setEnabled(enabled);
+            config.setPosition(new Vec2I(x, y));
+            config.setSize(new Vec2I(width, height));
+            Renderer.getInstance().setVideoBackgroundConfig(config);
+        }
+
+
+        @Override
+        public boolean isVideoBackgroundReflected()
+        {
+            return Renderer.getInstance().getVideoBackgroundConfig().getReflection()
+                    == VIDEO_BACKGROUND_REFLECTION.VIDEO_BACKGROUND_REFLECTION_ON;
+        }
+
+
+        @Override
+        public void begin()
+        {
+            mState = Renderer.getInstance().begin();
+        }
+
+
+        @Override
+        public void drawVideoBackground()
+        {
+            Renderer.getInstance().drawVideoBackground();
+        }
+
+
+        @Override
+        public void readResults(PoseFrame frame)
+        {
+            copyResults(mState, frame, mNames);
+        }
+
+
+        @Override
+        public void end()
+        {
+            Renderer.getInstance().end();
+            mState = null;
+        }
+    }
+
+}
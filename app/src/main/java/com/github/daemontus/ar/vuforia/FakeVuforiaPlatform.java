@@ -0,0 +1,914 @@
+package com.github.daemontus.ar.vuforia;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-memory {@link VuforiaPlatform} for running the session and render code on a plain JVM.
+ *
+ * Every facade call can be given a latency (the calling thread is parked for that long) and can
+ * be made to fail. Tracking results come either from scripted targets, reported with a fixed
+ * pose every frame, or from a {@link PoseSource} such as a replayed recording. Results are only
+ * produced while the camera and tracker run and a data set is active, like on a device.
+ *
+ * The fake also checks the order of lifecycle calls (e.g. starting the camera before
+ * initialization, nested begin/end) and counts violations, which makes lifecycle races visible.
+ * In strict mode a violation throws IllegalStateException. All methods are thread-safe.
+ *
+ * The main thread of the host is a single daemon thread of the fake ("FakeMainThread"), the
+ * screen has a configurable size, portrait unless it is wider than high.
+ */
+public class FakeVuforiaPlatform implements VuforiaPlatform
+{
+
+    public enum Call
+    {
+        INIT, DEINIT, RESUME, PAUSE, SURFACE_CREATED, SURFACE_CHANGED,
+        CAMERA_INIT, CAMERA_DEINIT, CAMERA_START, CAMERA_STOP,
+        TRACKER_INIT, TRACKER_DEINIT, TRACKER_START, TRACKER_STOP,
+        DATASET_LOAD, DATASET_ACTIVATE, DATASET_DEACTIVATE, DATASET_DESTROY,
+        BEGIN, DRAW_BACKGROUND, READ_RESULTS, END, UPDATE
+    }
+
+    private static final int INIT_STEPS = 4;
+    // Vuforia.INIT_ERROR
+    private static final int INIT_ERROR = -1;
+    private static final int CALL_COUNT = Call.values().length;
+
+    private final AtomicLongArray mLatency = new AtomicLongArray(CALL_COUNT);
+    private final AtomicLongArray mCalls = new AtomicLongArray(CALL_COUNT);
+    private final boolean[] mFailing = new boolean[CALL_COUNT];
+
+    private final AtomicInteger mViolations = new AtomicInteger();
+    private volatile String mLastViolation;
+    private volatile boolean mStrict;
+
+    // scripted targets
+    private final List<Integer> mTargetIds = new ArrayList<Integer>();
+    private final List<String> mTargetNames = new ArrayList<String>();
+    private final List<float[]> mTargetPoses = new ArrayList<float[]>();
+    private PoseSource mPoseSource;
+    private double mFrameInterval = 1.0 / 30.0;
+    private long mFrameIndex;
+
+    // lifecycle state, guarded by this
+    private int mInitStep;
+    private int mInitError;
+    private boolean mInitialized;
+    private boolean mPaused;
+    private boolean mCameraOpen;
+    private boolean mCameraStarted;
+    private boolean mTrackerInitialized;
+    private boolean mTrackerStarted;
+    private boolean mInFrame;
+    private boolean mReflected;
+    private final int[] mVideoSize = { 1280, 720 };
+    private final float[] mCalibration = { 1280, 720, 1100, 1100, 640, 360 };
+    private final List<FakeDataSet> mActive = new ArrayList<FakeDataSet>();
+
+    private volatile UpdateListener mUpdateListener;
+    private final PoseFrame mUpdateFrame = new PoseFrame();
+    private Thread mUpdateThread;
+
+    private final TrackableNames mTrackableNames = new TrackableNames();
+    private final Camera mCamera = new Camera();
+    private final Tracker mTracker = new Tracker();
+    private final RenderState mRenderState = new RenderState();
+
+    // host, guarded by mPosted
+    private final List<Posted> mPosted = new ArrayList<Posted>();
+    private ScheduledExecutorService mMain;
+    private final int[] mScreenSize = { 720, 1280 };
+    private int mScreenOrientation = -1;
+
+
+    // ---- configuration ----
+
+
+    public void setLatency(Call call, long nanos)
+    {
+        mLatency.set(call.ordinal(), nanos);
+    }
+
+
+    public synchronized void setFailing(Call call, boolean failing)
+    {
+        mFailing[call.ordinal()] = failing;
+    }
+
+
+    // Makes init() return the error code (negative) instead of progress.
+    public synchronized void setInitError(int error)
+    {
+        mInitError = error;
+    }
+
+
+    public void setStrict(boolean strict)
+    {
+        mStrict = strict;
+    }
+
+
+    // Adds a target which is reported with the given pose (row-major 3x4) in every frame.
+    public synchronized void addTarget(int id, String name, float[] pose)
+    {
+        mTargetIds.add(id);
+        mTargetNames.add(name);
+        mTargetPoses.add(pose.clone());
+    }
+
+
+    // Results are taken from the source instead of scripted targets, null to go back.
+    public synchronized void setPoseSource(PoseSource source)
+    {
+        mPoseSource = source;
+    }
+
+
+    // Timestamp step of scripted frames.
+    public synchronized void setFrameInterval(double seconds)
+    {
+        mFrameInterval = seconds;
+    }
+
+
+    public synchronized void setVideoBackgroundReflected(boolean reflected)
+    {
+        mReflected = reflected;
+    }
+
+
+    public void setScreenSize(int width, int height)
+    {
+        synchronized (mPosted)
+        {
+            mScreenSize[0] = width;
+            mScreenSize[1] = height;
+        }
+    }
+
+
+    // ---- inspection ----
+
+
+    public long getCallCount(Call call)
+    {
+        return mCalls.get(call.ordinal());
+    }
+
+
+    public int getViolationCount()
+    {
+        return mViolations.get();
+    }
+
+
+    public String getLastViolation()
+    {
+        return mLastViolation;
+    }
+
+
+    public synchronized boolean isCameraStarted()
+    {
+        return mCameraStarted;
+    }
+
+
+    // Last orientation requested through setScreenOrientation, -1 if none.
+    public int getScreenOrientation()
+    {
+        synchronized (mPosted)
+        {
+            return mScreenOrientation;
+        }
+    }
+
+
+    // Waits until the main thread ran everything posted without delay before this call.
+    public boolean awaitMainIdle(long timeoutMillis) throws InterruptedException
+    {
+        final CountDownLatch latch = new CountDownLatch(1);
+        postToMain(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                latch.countDown();
+            }
+        }, 0);
+        return latch.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+
+    // ---- update callback ----
+
+
+    // Delivers one update to the listener on the calling thread, as the Vuforia thread would.
+    public void deliverUpdate()
+    {
+        UpdateListener listener = mUpdateListener;
+        if (listener == null)
+            return;
+        synchronized (mUpdateFrame)
+        {
+            enter(Call.UPDATE);
+            produce(mUpdateFrame);
+            listener.onUpdate(mUpdateFrame);
+        }
+    }
+
+
+    // Starts a thread delivering updates with the given period, until stopUpdates.
+    public synchronized void startUpdates(final long periodNanos)
+    {
+        stopUpdates();
+        mUpdateThread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                while (!Thread.currentThread().isInterrupted())
+                {
+                    deliverUpdate();
+                    LockSupport.parkNanos(periodNanos);
+                }
+            }
+        }, "FakeVuforiaUpdates");
+        mUpdateThread.setDaemon(true);
+        mUpdateThread.start();
+    }
+
+
+    public synchronized void stopUpdates()
+    {
+        if (mUpdateThread != null)
+        {
+            mUpdateThread.interrupt();
+            mUpdateThread = null;
+        }
+    }
+
+
+    // ---- VuforiaPlatform ----
+
+
+    @Override
+    public void setInitParameters(int flags)
+    {
+    }
+
+
+    @Override
+    public int init()
+    {
+        if (!enter(Call.INIT))
+            return INIT_ERROR;
+        synchronized (this)
+        {
+            if (mInitError < 0)
+                return mInitError;
+            if (mInitStep < INIT_STEPS)
+                mInitStep++;
+            mInitialized = mInitStep == INIT_STEPS;
+            return mInitStep * 100 / INIT_STEPS;
+        }
+    }
+
+
+    @Override
+    public void deinit()
+    {
+        enter(Call.DEINIT);
+        synchronized (this)
+        {
+            check(!mCameraOpen, "deinit while the camera is open");
+            check(!mTrackerInitialized, "deinit while the tracker is initialized");
+            mInitialized = false;
+            mInitStep = 0;
+        }
+    }
+
+
+    @Override
+    public void onResume()
+    {
+        enter(Call.RESUME);
+        synchronized (this)
+        {
+            mPaused = false;
+        }
+    }
+
+
+    @Override
+    public void onPause()
+    {
+        enter(Call.PAUSE);
+        synchronized (this)
+        {
+            check(!mCameraStarted, "pause while the camera runs");
+            mPaused = true;
+        }
+    }
+
+
+    @Override
+    public void onSurfaceCreated()
+    {
+        enter(Call.SURFACE_CREATED);
+    }
+
+
+    @Override
+    public void onSurfaceChanged(int width, int height)
+    {
+        enter(Call.SURFACE_CHANGED);
+    }
+
+
+    @Override
+    public boolean setFrameFormat(int format, boolean enabled)
+    {
+        return true;
+    }
+
+
+    @Override
+    public boolean setHint(long hint, int value)
+    {
+        return true;
+    }
+
+
+    @Override
+    public boolean requiresAlpha()
+    {
+        return false;
+    }
+
+
+    @Override
+    public void setUpdateListener(UpdateListener listener)
+    {
+        mUpdateListener = listener;
+    }
+
+
+    @Override
+    public VuforiaCamera camera()
+    {
+        return mCamera;
+    }
+
+
+    @Override
+    public VuforiaTracker tracker()
+    {
+        return mTracker;
+    }
+
+
+    @Override
+    public VuforiaRenderState renderState()
+    {
+        return mRenderState;
+    }
+
+
+    @Override
+    public TrackableNames trackableNames()
+    {
+        return mTrackableNames;
+    }
+
+
+    @Override
+    public void postToMain(Runnable task, long delayMillis)
+    {
+        synchronized (mPosted)
+        {
+            if (mMain == null)
+            {
+                mMain = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+                {
+                    @Override
+                    public Thread newThread(Runnable runnable)
+                    {
+                        Thread thread = new Thread(runnable, "FakeMainThread");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
+            Posted posted = new Posted(task);
+            mPosted.add(posted);
+            mMain.schedule(posted, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+
+    @Override
+    public void removeFromMain(Runnable task)
+    {
+        synchronized (mPosted)
+        {
+            for (int i = mPosted.size() - 1; i >= 0; i--)
+            {
+                Posted posted = mPosted.get(i);
+                if (posted.mTask == task)
+                {
+                    posted.mRemoved = true;
+                    mPosted.remove(i);
+                }
+            }
+        }
+    }
+
+
+    @Override
+    public void setScreenOrientation(int orientation)
+    {
+        synchronized (mPosted)
+        {
+            mScreenOrientation = orientation;
+        }
+    }
+
+
+    @Override
+    public void getScreenSize(int[] size)
+    {
+        synchronized (mPosted)
+        {
+            size[0] = mScreenSize[0];
+            size[1] = mScreenSize[1];
+        }
+    }
+
+
+    @Override
+    public boolean isPortrait()
+    {
+        synchronized (mPosted)
+        {
+            return mScreenSize[0] <= mScreenSize[1];
+        }
+    }
+
+
+    // ---- internals ----
+
+
+    // Counts the call, applies its latency, returns false if the call should fail.
+    private boolean enter(Call call)
+    {
+        int index = call.ordinal();
+        mCalls.incrementAndGet(index);
+        long latency = mLatency.get(index);
+        if (latency > 0)
+            LockSupport.parkNanos(latency);
+        synchronized (this)
+        {
+            return !mFailing[index];
+        }
+    }
+
+
+    private void check(boolean condition, String message)
+    {
+        if (condition)
+            return;
+        mViolations.incrementAndGet();
+        mLastViolation = message;
+        if (mStrict)
+            throw new IllegalStateException(message);
+    }
+
+
+    // Fills the frame with the results of the next camera frame.
+    private synchronized void produce(PoseFrame frame)
+    {
+        frame.clear();
+        boolean tracking = mCameraStarted && mTrackerStarted && !mActive.isEmpty() && !mPaused;
+        if (mPoseSource != null)
+        {
+            if (!tracking || !mPoseSource.next(frame))
+                frame.clear();
+            return;
+        }
+        frame.timestamp = mFrameIndex++ * mFrameInterval;
+        if (!tracking)
+            return;
+        for (int i = 0; i < mTargetIds.size(); i++)
+            frame.add(mTargetIds.get(i), mTargetNames.get(i), mTargetPoses.get(i), 0);
+    }
+
+
+    private class Camera implements VuforiaCamera
+    {
+
+        @Override
+        public boolean init(int direction)
+        {
+            if (!enter(Call.CAMERA_INIT))
+                return false;
+            synchronized (FakeVuforiaPlatform.this)
+            {
+                check(mInitialized, "camera init before Vuforia init");
+                check(!mCameraOpen, "camera opened twice");
+                mCameraOpen = true;
+                return true;
+            }
+        }
+
+
+        @Override
+        public boolean deinit()
+        {
+            if (!enter(Call.CAMERA_DEINIT))
+                return false;
+            synchronized (FakeVuforiaPlatform.this)
+            {
+                check(!mCameraStarted, "camera deinit while running");
+                mCameraOpen = false;
+                return true;
+            }
+        }
+
+
+        @Override
+        public boolean selectVideoMode(int mode)
+        {
+            return true;
+        }
+
+
+        @Override
+        public boolean start()
+        {
+            if (!enter(Call.CAMERA_START))
+                return false;
+            synchronized (FakeVuforiaPlatform.this)
+            {
+                check(mCameraOpen, "camera start before init");
+                mCameraStarted = true;
+                return true;
+            }
+        }
+
+
+        @Override
+        public boolean stop()
+        {
+            if (!enter(Call.CAMERA_STOP))
+                return false;
+            synchronized (FakeVuforiaPlatform.this)
+            {
+                mCameraStarted = false;
+                return true;
+            }
+        }
+
+
+        @Override
+        public boolean setFocusMode(int mode)
+        {
+            return true;
+        }
+
+
+        @Override
+        public boolean setFlashTorchMode(boolean on)
+        {
+            return true;
+        }
+
+
+        @Override
+        public void getVideoMode(int mode, int[] size)
+        {
+            synchronized (FakeVuforiaPlatform.this)
+            {
+                size[0] = mVideoSize[0];
+                size[1] = mVideoSize[1];
+            }
+        }
+
+
+        @Override
+        public void getCalibration(float[] calibration)
+        {
+            synchronized (FakeVuforiaPlatform.this)
+            {
+                System.arraycopy(mCalibration, 0, calibration, 0, mCalibration.length);
+            }
+        }
+    }
+
+
+    private class FakeDataSet implements VuforiaDataSet
+    {
+
+        private boolean mLoaded;
+        private int[] mIds = new int[0];
+        private String[] mNames = new String[0];
+
+
+        @Override
+        public boolean load(String path, int storageType)
+        {
+            if (!enter(Call.DATASET_LOAD))
+                return false;
+            synchronized (FakeVuforiaPlatform.this)
+            {
+                check(mTrackerInitialized, "data set loaded without a tracker");
+                mIds = new int[mTargetIds.size()];
+                mNames = new String[mTargetIds.size()];
+                for (int i = 0; i < mIds.length; i++)
+                {
+                    mIds[i] = mTargetIds.get(i);
+                    mNames[i] = mTargetNames.get(i);
+                }
+                mLoaded = true;
+            }
+            mTrackableNames.putAll(this);
+            return true;
+        }
+
+
+        @Override
+        public int getTrackableCount()
+        {
+            synchronized (FakeVuforiaPlatform.this)
+            {
+                return mIds.length;
+            }
+        }
+
+
+        @Override
+        public int getTrackableId(int index)
+        {
+            synchronized (FakeVuforiaPlatform.this)
+            {
+                return mIds[index];
+            }
+        }
+
+
+        @Override
+        public String getTrackableName(int index)
+        {
+            synchronized (FakeVuforiaPlatform.this)
+            {
+                return mNames[index];
+            }
+        }
+    }
+
+
+    private class Tracker implements VuforiaTracker
+    {
+
+        @Override
+        public boolean init()
+        {
+            if (!enter(Call.TRACKER_INIT))
+                return false;
+            synchronized (FakeVuforiaPlatform.this)
+            {
+                check(mInitialized, "tracker init before Vuforia init");
+                mTrackerInitialized = true;
+                return true;
+            }
+        }
+
+
+        @Override
+        public boolean deinit()
+        {
+            if (!enter(Call.TRACKER_DEINIT))
+                return false;
+            synchronized (FakeVuforiaPlatform.this)
+            {
+                check(!mTrackerStarted, "tracker deinit while running");
+                check(mActive.isEmpty(), "tracker deinit with an active data set");
+                mTrackerInitialized = false;
+                return true;
+            }
+        }
+
+
+        @Override
+        public boolean isInitialized()
+        {
+            synchronized (FakeVuforiaPlatform.this)
+            {
+                return mTrackerInitialized;
+            }
+        }
+
+
+        @Override
+        public boolean start()
+        {
+            if (!enter(Call.TRACKER_START))
+                return false;
+            synchronized (FakeVuforiaPlatform.this)
+            {
+                if (!mTrackerInitialized)
+                    return false;
+                mTrackerStarted = true;
+                return true;
+            }
+        }
+
+
+        @Override
+        public void stop()
+        {
+            enter(Call.TRACKER_STOP);
+            synchronized (FakeVuforiaPlatform.this)
+            {
+                mTrackerStarted = false;
+            }
+        }
+
+
+        @Override
+        public VuforiaDataSet createDataSet()
+        {
+            synchronized (FakeVuforiaPlatform.this)
+            {
+                return mTrackerInitialized ? new FakeDataSet() : null;
+            }
+        }
+
+
+        @Override
+        public boolean activateDataSet(VuforiaDataSet dataSet)
+        {
+            if (!enter(Call.DATASET_ACTIVATE))
+                return false;
+            synchronized (FakeVuforiaPlatform.this)
+            {
+                FakeDataSet fake = (FakeDataSet) dataSet;
+                check(fake.mLoaded, "activating a data set which is not loaded");
+                check(!mActive.contains(fake), "data set activated twice");
+                if (!mActive.contains(fake))
+                    mActive.add(fake);
+                return true;
+            }
+        }
+
+
+        @Override
+        public boolean deactivateDataSet(VuforiaDataSet dataSet)
+        {
+            if (!enter(Call.DATASET_DEACTIVATE))
+                return false;
+            synchronized (FakeVuforiaPlatform.this)
+            {
+                return mActive.remove(dataSet);
+            }
+        }
+
+
+        @Override
+        public boolean destroyDataSet(VuforiaDataSet dataSet)
+        {
+            if (!enter(Call.DATASET_DESTROY))
+                return false;
+            synchronized (FakeVuforiaPlatform.this)
+            {
+                check(!mActive.contains(dataSet), "destroying an active data set");
+                ((FakeDataSet) dataSet).mLoaded = false;
+                return true;
+            }
+        }
+
+
+        @Override
+        public boolean isActive(VuforiaDataSet dataSet)
+        {
+            synchronized (FakeVuforiaPlatform.this)
+            {
+                return mActive.contains(dataSet);
+            }
+        }
+    }
+
+
+    // A task posted to the main thread, skipped once removed (like Handler.removeCallbacks).
+    private class Posted implements Runnable
+    {
+
+        private final Runnable mTask;
+        // guarded by mPosted
+        private boolean mRemoved;
+
+
+        Posted(Runnable task)
+        {
+            mTask = task;
+        }
+
+
+        @Override
+        public void run()
+        {
+            synchronized (mPosted)
+            {
+                if (mRemoved)
+                    return;
+                mPosted.remove(this);
+            }
+            mTask.run();
+        }
+    }
+
+
+    private class RenderState implements VuforiaRenderState
+    {
+
+        @Override
+        public void setClearColor(float red, float green, float blue, float alpha)
+        {
+        }
+
+
+        @Override
+        public void setVideoBackgroundConfig(boolean enabled, int x, int y, int width, int height)
+        {
+        }
+
+
+        @Override
+        public boolean isVideoBackgroundReflected()
+        {
+            synchronized (FakeVuforiaPlatform.this)
+            {
+                return mReflected;
+            }
+        }
+
+
+        @Override
+        public void begin()
+        {
+            enter(Call.BEGIN);
+            synchronized (FakeVuforiaPlatform.this)
+            {
+                check(mInitialized, "frame rendered before Vuforia init");
+                check(!mInFrame, "begin called twice");
+                mInFrame = true;
+            }
+        }
+
+
+        @Override
+        public void drawVideoBackground()
+        {
+            enter(Call.DRAW_BACKGROUND);
+            synchronized (FakeVuforiaPlatform.this)
+            {
+                check(mInFrame, "video background drawn outside of begin/end");
+            }
+        }
+
+
+        @Override
+        public void readResults(PoseFrame frame)
+        {
+            enter(Call.READ_RESULTS);
+            synchronized (FakeVuforiaPlatform.this)
+            {
+                check(mInFrame, "results read outside of begin/end");
+                produce(frame);
+            }
+        }
+
+
+        @Override
+        public void end()
+        {
+            enter(Call.END);
+            synchronized (FakeVuforiaPlatform.this)
+            {
+                check(mInFrame, "end without begin");
+                mInFrame = false;
+            }
+        }
+    }
+
+}
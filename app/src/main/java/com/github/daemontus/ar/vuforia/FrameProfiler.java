@@ -0,0 +1,247 @@
+package com.github.daemontus.ar.vuforia;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Low overhead per-stage frame timing.
+ *
+ * Durations are measured with System.nanoTime and recorded in microseconds into fixed size
+ * log-linear histograms (every power of two is split into 8 linear buckets, so the relative error
+ * is below 12.5%). Recording is lock-free, allocates nothing and can be switched on and off
+ * at runtime; when disabled, {@link #start()} returns 0 and {@link #record(int, long)} is a no-op.
+ *
+ * The count stages (draw calls, vertices) use the same histograms for per-frame counts, recorded
+ * with {@link #recordCount(int, long)} and reported without a unit.
+ */
+public final class FrameProfiler
+{
+
+    public static final int BACKGROUND = 0;     // Renderer.begin and drawVideoBackground
+    public static final int TRACKABLES = 1;     // trackable result extraction
+    public static final int END = 2;            // Renderer.end
+    public static final int POSES = 3;          // pose filtering and conversion
+    public static final int BATCH = 4;          // ModelBatch or instanced submission
+    public static final int FRAME = 5;          // whole frame
+    public static final int TRACKING = 6;       // pose copy and publish in the update callback
+    public static final int POSE_LATENCY = 7;   // from pose capture to the draw using it
+    public static final int DRAW_CALLS = 8;     // draw calls of the content per frame (count)
+    public static final int VERTICES = 9;       // vertices submitted for the content per frame (count)
+    public static final int SHADER_COMPILE = 10; // shaders compiled while drawing, none after a complete warm up
+    public static final int STAGE_COUNT = 11;
+
+    private static final String[] STAGE_NAMES = {
+            "background", "trackables", "end", "poses", "batch", "frame", "tracking", "pose latency",
+            "draw calls", "vertices", "shader compile"
+    };
+
+    // stages which hold counts instead of durations
+    private static final boolean[] COUNT_STAGES = {
+            false, false, false, false, false, false, false, false, true, true, false
+    };
+
+    // values below this are stored exactly, one bucket each
+    private static final int LINEAR_LIMIT = 16;
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // largest recorded magnitude (2^25 us ~ 33 s, or ~ 33 million for counts), larger values are clamped
+    private static final int MAX_MAGNITUDE = 25;
+    private static final int BUCKETS = LINEAR_LIMIT + (MAX_MAGNITUDE - 3) * SUB_BUCKETS;
+
+    private final AtomicLongArray histograms = new AtomicLongArray(STAGE_COUNT * BUCKETS);
+    private final AtomicLongArray counts = new AtomicLongArray(STAGE_COUNT);
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final AtomicLong frames = new AtomicLong();
+
+    private volatile boolean enabled = true;
+    private volatile long frameIntervalNanos = 1000000000L / 60;
+
+    // render thread only
+    private long frameStart;
+    private long lastFrameStart;
+
+
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+
+    // Expected display refresh interval, frames taking longer than 1.5 times this count as dropped.
+    public void setFrameInterval(long nanos)
+    {
+        frameIntervalNanos = nanos;
+    }
+
+
+    // Returns the start timestamp for record, or 0 if profiling is disabled.
+    public long start()
+    {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+
+    // Records the time elapsed since start (as returned by start()).
+    public void record(int stage, long start)
+    {
+        if (start == 0)
+            return;
+        recordMicros(stage, (System.nanoTime() - start) / 1000);
+    }
+
+
+    public void recordMicros(int stage, long micros)
+    {
+        if (COUNT_STAGES[stage])
+            throw new IllegalArgumentException(STAGE_NAMES[stage] + " is a count stage");
+        add(stage, micros);
+    }
+
+
+    // Records a per-frame count (draw calls, vertices), no-op if profiling is disabled.
+    public void recordCount(int stage, long count)
+    {
+        if (!COUNT_STAGES[stage])
+            throw new IllegalArgumentException(STAGE_NAMES[stage] + " is a time stage");
+        if (enabled)
+            add(stage, count);
+    }
+
+
+    // Marks the beginning of a frame, call from the render thread.
+    public void frameStart()
+    {
+        if (!enabled)
+        {
+            frameStart = 0;
+            lastFrameStart = 0;
+            return;
+        }
+
+        long now = System.nanoTime();
+        if (lastFrameStart != 0)
+        {
+            long interval = now - lastFrameStart;
+            long expected = frameIntervalNanos;
+            if (interval * 2 > expected * 3)
+                droppedFrames.addAndGet((interval + expected / 2) / expected - 1);
+        }
+        lastFrameStart = now;
+        frameStart = now;
+    }
+
+
+    // Marks the end of a frame, call from the render thread.
+    public void frameEnd()
+    {
+        if (frameStart == 0)
+            return;
+        record(FRAME, frameStart);
+        frames.incrementAndGet();
+    }
+
+
+    public long getDroppedFrames()
+    {
+        return droppedFrames.get();
+    }
+
+
+    public long getCount(int stage)
+    {
+        return counts.get(stage);
+    }
+
+
+    // Returns the given percentile (0 - 100) of the stage in microseconds (or as a count for the
+    // count stages), or 0 with no samples.
+    public long getPercentile(int stage, double percentile)
+    {
+        long total = counts.get(stage);
+        if (total == 0)
+            return 0;
+        long rank = (long) Math.ceil(total * percentile / 100.0);
+        if (rank < 1)
+            rank = 1;
+        long seen = 0;
+        int offset = stage * BUCKETS;
+        for (int b = 0; b < BUCKETS; b++)
+        {
+            seen += histograms.get(offset + b);
+            if (seen >= rank)
+                return bucketValue(b);
+        }
+        return bucketValue(BUCKETS - 1);
+    }
+
+
+    // Clears all recorded samples.
+    public void reset()
+    {
+        for (int i = 0; i < histograms.length(); i++)
+            histograms.set(i, 0);
+        for (int i = 0; i < STAGE_COUNT; i++)
+            counts.set(i, 0);
+        droppedFrames.set(0);
+        frames.set(0);
+    }
+
+
+    // Human readable summary: p50/p95/p99 per stage in microseconds (counts without a unit) and
+    // dropped frames.
+    public String report()
+    {
+        StringBuilder builder = new StringBuilder();
+        builder.append("frames ").append(frames.get())
+                .append(", dropped ").append(droppedFrames.get());
+        for (int stage = 0; stage < STAGE_COUNT; stage++)
+        {
+            if (counts.get(stage) == 0)
+                continue;
+            builder.append('\n').append(STAGE_NAMES[stage])
+                    .append(": p50 ").append(getPercentile(stage, 50))
+                    .append(" p95 ").append(getPercentile(stage, 95))
+                    .append(" p99 ").append(getPercentile(stage, 99))
+                    .append(COUNT_STAGES[stage] ? " (" : " us (").append(counts.get(stage)).append(')');
+        }
+        return builder.toString();
+    }
+
+
+    private void add(int stage, long value)
+    {
+        histograms.incrementAndGet(stage * BUCKETS + bucket(value));
+        counts.incrementAndGet(stage);
+    }
+
+
+    private static int bucket(long value)
+    {
+        if (value < LINEAR_LIMIT)
+            return value < 0 ? 0 : (int) value;
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        if (magnitude > MAX_MAGNITUDE)
+            return BUCKETS - 1;
+        int sub = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_LIMIT + (magnitude - 4) * SUB_BUCKETS + sub;
+    }
+
+
+    // Middle of the value range covered by the bucket.
+    private static long bucketValue(int bucket)
+    {
+        if (bucket < LINEAR_LIMIT)
+            return bucket;
+        int magnitude = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + 4;
+        int sub = (bucket - LINEAR_LIMIT) % SUB_BUCKETS;
+        long width = 1L << (magnitude - SUB_BUCKET_BITS);
+        return (SUB_BUCKETS + sub) * width + width / 2;
+    }
+
+}
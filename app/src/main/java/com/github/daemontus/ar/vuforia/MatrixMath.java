@@ -0,0 +1,327 @@
+package com.github.daemontus.ar.vuforia;
+
+/**
+ * Allocation free counterpart of {@link SampleMath}.
+ *
+ * All routines work on caller supplied float arrays with an explicit offset, so several
+ * matrices and vectors can share one preallocated buffer. Matrices are 4x4 and stored
+ * column-major, which is the layout used by OpenGL, libGDX Matrix4.val and
+ * Tool.convertPose2GLMatrix (translation lives in elements 12, 13 and 14).
+ *
+ * Unless stated otherwise, the output may alias any of the inputs.
+ * The class holds no state and is therefore safe to use from any thread.
+ */
+public final class MatrixMath
+{
+
+    private static final float PARALLEL_EPSILON = 0.00001f;
+
+    private MatrixMath()
+    {
+    }
+
+
+    public static void identity(float[] m, int mo)
+    {
+        for (int i = 0; i < 16; i++)
+            m[mo + i] = 0.0f;
+
+        m[mo] = 1.0f;
+        m[mo + 5] = 1.0f;
+        m[mo + 10] = 1.0f;
+        m[mo + 15] = 1.0f;
+    }
+
+
+    public static void transpose(float[] m, int mo, float[] out, int oo)
+    {
+        float m01 = m[mo + 4], m02 = m[mo + 8], m03 = m[mo + 12];
+        float m10 = m[mo + 1], m12 = m[mo + 9], m13 = m[mo + 13];
+        float m20 = m[mo + 2], m21 = m[mo + 6], m23 = m[mo + 14];
+        float m30 = m[mo + 3], m31 = m[mo + 7], m32 = m[mo + 11];
+
+        out[oo] = m[mo];
+        out[oo + 5] = m[mo + 5];
+        out[oo + 10] = m[mo + 10];
+        out[oo + 15] = m[mo + 15];
+
+        out[oo + 1] = m01;
+        out[oo + 2] = m02;
+        out[oo + 3] = m03;
+        out[oo + 4] = m10;
+        out[oo + 6] = m12;
+        out[oo + 7] = m13;
+        out[oo + 8] = m20;
+        out[oo + 9] = m21;
+        out[oo + 11] = m23;
+        out[oo + 12] = m30;
+        out[oo + 13] = m31;
+        out[oo + 14] = m32;
+    }
+
+
+    // out = a * b
+    public static void multiply(float[] a, int ao, float[] b, int bo, float[] out, int oo)
+    {
+        float a00 = a[ao], a10 = a[ao + 1], a20 = a[ao + 2], a30 = a[ao + 3];
+        float a01 = a[ao + 4], a11 = a[ao + 5], a21 = a[ao + 6], a31 = a[ao + 7];
+        float a02 = a[ao + 8], a12 = a[ao + 9], a22 = a[ao + 10], a32 = a[ao + 11];
+        float a03 = a[ao + 12], a13 = a[ao + 13], a23 = a[ao + 14], a33 = a[ao + 15];
+
+        float b00 = b[bo], b10 = b[bo + 1], b20 = b[bo + 2], b30 = b[bo + 3];
+        float b01 = b[bo + 4], b11 = b[bo + 5], b21 = b[bo + 6], b31 = b[bo + 7];
+        float b02 = b[bo + 8], b12 = b[bo + 9], b22 = b[bo + 10], b32 = b[bo + 11];
+        float b03 = b[bo + 12], b13 = b[bo + 13], b23 = b[bo + 14], b33 = b[bo + 15];
+
+        out[oo] = a00 * b00 + a01 * b10 + a02 * b20 + a03 * b30;
+        out[oo + 1] = a10 * b00 + a11 * b10 + a12 * b20 + a13 * b30;
+        out[oo + 2] = a20 * b00 + a21 * b10 + a22 * b20 + a23 * b30;
+        out[oo + 3] = a30 * b00 + a31 * b10 + a32 * b20 + a33 * b30;
+
+        out[oo + 4] = a00 * b01 + a01 * b11 + a02 * b21 + a03 * b31;
+        out[oo + 5] = a10 * b01 + a11 * b11 + a12 * b21 + a13 * b31;
+        out[oo + 6] = a20 * b01 + a21 * b11 + a22 * b21 + a23 * b31;
+        out[oo + 7] = a30 * b01 + a31 * b11 + a32 * b21 + a33 * b31;
+
+        out[oo + 8] = a00 * b02 + a01 * b12 + a02 * b22 + a03 * b32;
+        out[oo + 9] = a10 * b02 + a11 * b12 + a12 * b22 + a13 * b32;
+        out[oo + 10] = a20 * b02 + a21 * b12 + a22 * b22 + a23 * b32;
+        out[oo + 11] = a30 * b02 + a31 * b12 + a32 * b22 + a33 * b32;
+
+        out[oo + 12] = a00 * b03 + a01 * b13 + a02 * b23 + a03 * b33;
+        out[oo + 13] = a10 * b03 + a11 * b13 + a12 * b23 + a13 * b33;
+        out[oo + 14] = a20 * b03 + a21 * b13 + a22 * b23 + a23 * b33;
+        out[oo + 15] = a30 * b03 + a31 * b13 + a32 * b23 + a33 * b33;
+    }
+
+
+    public static float determinant(float[] m, int mo)
+    {
+        float m0 = m[mo], m1 = m[mo + 1], m2 = m[mo + 2], m3 = m[mo + 3];
+        float m4 = m[mo + 4], m5 = m[mo + 5], m6 = m[mo + 6], m7 = m[mo + 7];
+        float m8 = m[mo + 8], m9 = m[mo + 9], m10 = m[mo + 10], m11 = m[mo + 11];
+        float m12 = m[mo + 12], m13 = m[mo + 13], m14 = m[mo + 14], m15 = m[mo + 15];
+
+        // 2x2 minors of the two lower columns
+        float s0 = m0 * m5 - m4 * m1;
+        float s1 = m0 * m6 - m4 * m2;
+        float s2 = m0 * m7 - m4 * m3;
+        float s3 = m1 * m6 - m5 * m2;
+        float s4 = m1 * m7 - m5 * m3;
+        float s5 = m2 * m7 - m6 * m3;
+
+        float c5 = m10 * m15 - m14 * m11;
+        float c4 = m9 * m15 - m13 * m11;
+        float c3 = m9 * m14 - m13 * m10;
+        float c2 = m8 * m15 - m12 * m11;
+        float c1 = m8 * m14 - m12 * m10;
+        float c0 = m8 * m13 - m12 * m9;
+
+        return s0 * c5 - s1 * c4 + s2 * c3 + s3 * c2 - s4 * c1 + s5 * c0;
+    }
+
+
+    // General inverse. Returns false and leaves out untouched if m is singular.
+    //
+    // Note that SampleMath.Matrix44FInverse returns the *transposed* inverse, so
+    // Matrix44FTranspose(Matrix44FInverse(m)) corresponds to a single call of this method.
+    public static boolean invert(float[] m, int mo, float[] out, int oo)
+    {
+        float m0 = m[mo], m1 = m[mo + 1], m2 = m[mo + 2], m3 = m[mo + 3];
+        float m4 = m[mo + 4], m5 = m[mo + 5], m6 = m[mo + 6], m7 = m[mo + 7];
+        float m8 = m[mo + 8], m9 = m[mo + 9], m10 = m[mo + 10], m11 = m[mo + 11];
+        float m12 = m[mo + 12], m13 = m[mo + 13], m14 = m[mo + 14], m15 = m[mo + 15];
+
+        float s0 = m0 * m5 - m4 * m1;
+        float s1 = m0 * m6 - m4 * m2;
+        float s2 = m0 * m7 - m4 * m3;
+        float s3 = m1 * m6 - m5 * m2;
+        float s4 = m1 * m7 - m5 * m3;
+        float s5 = m2 * m7 - m6 * m3;
+
+        float c5 = m10 * m15 - m14 * m11;
+        float c4 = m9 * m15 - m13 * m11;
+        float c3 = m9 * m14 - m13 * m10;
+        float c2 = m8 * m15 - m12 * m11;
+        float c1 = m8 * m14 - m12 * m10;
+        float c0 = m8 * m13 - m12 * m9;
+
+        float det = s0 * c5 - s1 * c4 + s2 * c3 + s3 * c2 - s4 * c1 + s5 * c0;
+
+        if (det == 0.0f)
+            return false;
+
+        float inv = 1.0f / det;
+
+        out[oo] = (m5 * c5 - m6 * c4 + m7 * c3) * inv;
+        out[oo + 1] = (-m1 * c5 + m2 * c4 - m3 * c3) * inv;
+        out[oo + 2] = (m13 * s5 - m14 * s4 + m15 * s3) * inv;
+        out[oo + 3] = (-m9 * s5 + m10 * s4 - m11 * s3) * inv;
+
+        out[oo + 4] = (-m4 * c5 + m6 * c2 - m7 * c1) * inv;
+        out[oo + 5] = (m0 * c5 - m2 * c2 + m3 * c1) * inv;
+        out[oo + 6] = (-m12 * s5 + m14 * s2 - m15 * s1) * inv;
+        out[oo + 7] = (m8 * s5 - m10 * s2 + m11 * s1) * inv;
+
+        out[oo + 8] = (m4 * c4 - m5 * c2 + m7 * c0) * inv;
+        out[oo + 9] = (-m0 * c4 + m1 * c2 - m3 * c0) * inv;
+        out[oo + 10] = (m12 * s4 - m13 * s2 + m15 * s0) * inv;
+        out[oo + 11] = (-m8 * s4 + m9 * s2 - m11 * s0) * inv;
+
+        out[oo + 12] = (-m4 * c3 + m5 * c1 - m6 * c0) * inv;
+        out[oo + 13] = (m0 * c3 - m1 * c1 + m2 * c0) * inv;
+        out[oo + 14] = (-m12 * s3 + m13 * s1 - m14 * s0) * inv;
+        out[oo + 15] = (m8 * s3 - m9 * s1 + m10 * s0) * inv;
+
+        return true;
+    }
+
+
+    // Inverse of a rigid transform [R | t] with an orthonormal R, i.e. [R^T | -R^T * t].
+    // The rotation part may also be a reflection (any orthogonal matrix works).
+    public static void invertRigid(float[] m, int mo, float[] out, int oo)
+    {
+        float r00 = m[mo], r10 = m[mo + 1], r20 = m[mo + 2];
+        float r01 = m[mo + 4], r11 = m[mo + 5], r21 = m[mo + 6];
+        float r02 = m[mo + 8], r12 = m[mo + 9], r22 = m[mo + 10];
+        float tx = m[mo + 12], ty = m[mo + 13], tz = m[mo + 14];
+
+        out[oo] = r00;
+        out[oo + 1] = r01;
+        out[oo + 2] = r02;
+        out[oo + 3] = 0.0f;
+
+        out[oo + 4] = r10;
+        out[oo + 5] = r11;
+        out[oo + 6] = r12;
+        out[oo + 7] = 0.0f;
+
+        out[oo + 8] = r20;
+        out[oo + 9] = r21;
+        out[oo + 10] = r22;
+        out[oo + 11] = 0.0f;
+
+        out[oo + 12] = -(r00 * tx + r10 * ty + r20 * tz);
+        out[oo + 13] = -(r01 * tx + r11 * ty + r21 * tz);
+        out[oo + 14] = -(r02 * tx + r12 * ty + r22 * tz);
+        out[oo + 15] = 1.0f;
+    }
+
+
+    // Transforms a point (w = 1) and applies the perspective divide.
+    public static void transformPoint(float[] m, int mo, float[] v, int vo, float[] out, int oo)
+    {
+        float x = v[vo], y = v[vo + 1], z = v[vo + 2];
+
+        float w = m[mo + 3] * x + m[mo + 7] * y + m[mo + 11] * z + m[mo + 15];
+        float rx = m[mo] * x + m[mo + 4] * y + m[mo + 8] * z + m[mo + 12];
+        float ry = m[mo + 1] * x + m[mo + 5] * y + m[mo + 9] * z + m[mo + 13];
+        float rz = m[mo + 2] * x + m[mo + 6] * y + m[mo + 10] * z + m[mo + 14];
+
+        out[oo] = rx / w;
+        out[oo + 1] = ry / w;
+        out[oo + 2] = rz / w;
+    }
+
+
+    // Transforms a direction (w = 0), translation is ignored.
+    public static void transformNormal(float[] m, int mo, float[] v, int vo, float[] out, int oo)
+    {
+        float x = v[vo], y = v[vo + 1], z = v[vo + 2];
+
+        out[oo] = m[mo] * x + m[mo + 4] * y + m[mo + 8] * z;
+        out[oo + 1] = m[mo + 1] * x + m[mo + 5] * y + m[mo + 9] * z;
+        out[oo + 2] = m[mo + 2] * x + m[mo + 6] * y + m[mo + 10] * z;
+    }
+
+
+    // Transforms a homogeneous vector, no divide is performed.
+    public static void transformVec4(float[] m, int mo, float[] v, int vo, float[] out, int oo)
+    {
+        float x = v[vo], y = v[vo + 1], z = v[vo + 2], w = v[vo + 3];
+
+        out[oo] = m[mo] * x + m[mo + 4] * y + m[mo + 8] * z + m[mo + 12] * w;
+        out[oo + 1] = m[mo + 1] * x + m[mo + 5] * y + m[mo + 9] * z + m[mo + 13] * w;
+        out[oo + 2] = m[mo + 2] * x + m[mo + 6] * y + m[mo + 10] * z + m[mo + 14] * w;
+        out[oo + 3] = m[mo + 3] * x + m[mo + 7] * y + m[mo + 11] * z + m[mo + 15] * w;
+    }
+
+
+    // Intersects the line given by two points with a plane. Returns false if they are parallel.
+    public static boolean linePlaneIntersection(float[] lineStart, int so, float[] lineEnd, int eo,
+                                                float[] pointOnPlane, int po, float[] planeNormal, int no,
+                                                float[] out, int oo)
+    {
+        float sx = lineStart[so], sy = lineStart[so + 1], sz = lineStart[so + 2];
+
+        float dx = lineEnd[eo] - sx;
+        float dy = lineEnd[eo + 1] - sy;
+        float dz = lineEnd[eo + 2] - sz;
+
+        float length = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+        if (length != 0.0f)
+            length = 1.0f / length;
+        dx *= length;
+        dy *= length;
+        dz *= length;
+
+        float nx = planeNormal[no], ny = planeNormal[no + 1], nz = planeNormal[no + 2];
+
+        float n = nx * (pointOnPlane[po] - sx) + ny * (pointOnPlane[po + 1] - sy)
+                + nz * (pointOnPlane[po + 2] - sz);
+        float d = nx * dx + ny * dy + nz * dz;
+
+        if (Math.abs(d) < PARALLEL_EPSILON)
+        {
+            // Line is parallel to plane
+            return false;
+        }
+
+        float dist = n / d;
+
+        out[oo] = sx + dx * dist;
+        out[oo + 1] = sy + dy * dist;
+        out[oo + 2] = sz + dz * dist;
+        return true;
+    }
+
+
+    // Unprojects a point given in normalized device coordinates to a line in object space
+    // (using the inverse projection and inverse model view matrices) and intersects it with a plane.
+    // lineStart and lineEnd receive the near and far points, intersection the hit point.
+    // Returns false if the line is parallel to the plane, in which case intersection is untouched.
+    public static boolean projectScreenPointToPlane(float[] inverseProjection, int ipo,
+                                                    float[] inverseModelView, int imvo,
+                                                    float ndcX, float ndcY,
+                                                    float[] planeCenter, int pco,
+                                                    float[] planeNormal, int pno,
+                                                    float[] lineStart, int lso,
+                                                    float[] lineEnd, int leo,
+                                                    float[] intersection, int io)
+    {
+        unprojectToObject(inverseProjection, ipo, inverseModelView, imvo, ndcX, ndcY, -1.0f, lineStart, lso);
+        unprojectToObject(inverseProjection, ipo, inverseModelView, imvo, ndcX, ndcY, 1.0f, lineEnd, leo);
+
+        return linePlaneIntersection(lineStart, lso, lineEnd, leo, planeCenter, pco, planeNormal, pno,
+                intersection, io);
+    }
+
+
+    // NDC -> eye coordinates (with perspective divide) -> object coordinates
+    private static void unprojectToObject(float[] ip, int ipo, float[] imv, int imvo,
+                                          float x, float y, float z, float[] out, int oo)
+    {
+        float ex = ip[ipo] * x + ip[ipo + 4] * y + ip[ipo + 8] * z + ip[ipo + 12];
+        float ey = ip[ipo + 1] * x + ip[ipo + 5] * y + ip[ipo + 9] * z + ip[ipo + 13];
+        float ez = ip[ipo + 2] * x + ip[ipo + 6] * y + ip[ipo + 10] * z + ip[ipo + 14];
+        float ew = ip[ipo + 3] * x + ip[ipo + 7] * y + ip[ipo + 11] * z + ip[ipo + 15];
+
+        ex /= ew;
+        ey /= ew;
+        ez /= ew;
+
+        out[oo] = imv[imvo] * ex + imv[imvo + 4] * ey + imv[imvo + 8] * ez + imv[imvo + 12];
+        out[oo + 1] = imv[imvo + 1] * ex + imv[imvo + 5] * ey + imv[imvo + 9] * ez + imv[imvo + 13];
+        out[oo + 2] = imv[imvo + 2] * ex + imv[imvo + 6] * ey + imv[imvo + 10] * ez + imv[imvo + 14];
+    }
+}
@@ -0,0 +1,149 @@
+package com.github.daemontus.ar.vuforia;
+
+/**
+ * Reusable container for the trackable poses of one camera frame.
+ *
+ * Poses are stored as row-major 3x4 matrices (as returned by Matrix34F.getData()), 12 floats
+ * per trackable, in one flat array. Arrays grow when needed and are never shrunk, so a frame
+ * filled every render cycle stops allocating after the first few frames.
+ */
+public class PoseFrame implements TrackingResults
+{
+
+    public static final int POSE_SIZE = 12;
+
+    // trackable status, TrackableResult.STATUS DETECTED, TRACKED and EXTENDED_TRACKED
+    public static final int STATUS_DETECTED = 1;
+    public static final int STATUS_TRACKED = 2;
+    public static final int STATUS_EXTENDED = 3;
+
+    // camera timestamp of the frame in seconds
+    public double timestamp;
+
+    // number of valid trackables, the arrays below may be longer
+    public int count;
+    public int[] ids;
+    // may contain nulls when the name is not known to the producer
+    public String[] names;
+    public int[] statuses;
+    public float[] poses;
+
+
+    public PoseFrame()
+    {
+        this(4);
+    }
+
+
+    public PoseFrame(int capacity)
+    {
+        ids = new int[capacity];
+        names = new String[capacity];
+        statuses = new int[capacity];
+        poses = new float[capacity * POSE_SIZE];
+    }
+
+
+    public void clear()
+    {
+        count = 0;
+    }
+
+
+    // Appends a tracked trackable, copying 12 floats of the pose starting at offset.
+    public void add(int id, String name, float[] pose, int offset)
+    {
+        add(id, name, STATUS_TRACKED, pose, offset);
+    }
+
+
+    public void add(int id, String name, int status, float[] pose, int offset)
+    {
+        ensureCapacity(count + 1);
+        ids[count] = id;
+        names[count] = name;
+        statuses[count] = status;
+        System.arraycopy(pose, offset, poses, count * POSE_SIZE, POSE_SIZE);
+        count++;
+    }
+
+
+    // Copies the whole frame from other.
+    public void set(PoseFrame other)
+    {
+        ensureCapacity(other.count);
+        timestamp = other.timestamp;
+        count = other.count;
+        System.arraycopy(other.ids, 0, ids, 0, count);
+        System.arraycopy(other.names, 0, names, 0, count);
+        System.arraycopy(other.statuses, 0, statuses, 0, count);
+        System.arraycopy(other.poses, 0, poses, 0, count * POSE_SIZE);
+    }
+
+
+    @Override
+    public double getTimestamp()
+    {
+        return timestamp;
+    }
+
+
+    @Override
+    public int getCount()
+    {
+        return count;
+    }
+
+
+    @Override
+    public int getId(int index)
+    {
+        return ids[index];
+    }
+
+
+    @Override
+    public String getName(int index)
+    {
+        return names[index];
+    }
+
+
+    @Override
+    public int getStatus(int index)
+    {
+        return statuses[index];
+    }
+
+
+    @Override
+    public void getPose(int index, float[] out, int offset)
+    {
+        System.arraycopy(poses, index * POSE_SIZE, out, offset, POSE_SIZE);
+    }
+
+
+    public void ensureCapacity(int capacity)
+    {
+        if (capacity <= ids.length)
+            return;
+        int size = Math.max(capacity, ids.length * 2);
+
+        int[] newIds = new int[size];
+        System.arraycopy(ids, 0, newIds, 0, count);
+        ids = newIds;
+
+        String[] newNames = new String[size];
+        System.arraycopy(names, 0, newNames, 0, count);
+        names = newNames;
+
+        int[] newStatuses = new int[size];
+        System.arraycopy(statuses, 0, newStatuses, 0, count);
+        statuses = newStatuses;
+
+        float[] newPoses = new float[size * POSE_SIZE];
+        System.arraycopy(poses, 0, newPoses, 0, count * POSE_SIZE);
+        poses = newPoses;
+    }
+
+}
@@ -0,0 +1,154 @@
+package com.github.daemontus.ar.vuforia;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Replays a log written by {@link PoseRecorder}.
+ *
+ * The file is memory mapped and decoded straight into the caller's frame, nothing is allocated
+ * per frame (names are decoded once per id). Frames are delivered either as fast as possible
+ * or paced to the recorded timestamps, in which case next() sleeps until the frame is due.
+ * Plain Java, runs on a desktop JVM.
+ */
+public class PoseLogReader implements PoseSource
+{
+
+    private final ByteBuffer data;
+    private final int start;
+    private final boolean realtime;
+
+    private long micros;
+    private String[] names = new String[16];
+
+    // wall clock and log time of the first frame, used for pacing
+    private long replayStartNanos;
+    private long firstMicros = -1;
+
+
+    // realtime: deliver frames at recorded speed instead of as fast as possible
+    public PoseLogReader(File file, boolean realtime) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try
+        {
+            FileChannel channel = raf.getChannel();
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                    .order(ByteOrder.LITTLE_ENDIAN);
+        } finally
+        {
+            raf.close();
+        }
+        if (data.remaining() < 8 || data.getInt() != PoseRecorder.MAGIC)
+            throw new IOException("Not a pose log: " + file);
+        int version = data.getInt();
+        if (version != PoseRecorder.VERSION)
+            throw new IOException("Unsupported pose log version " + version);
+        start = data.position();
+        this.realtime = realtime;
+    }
+
+
+    // Starts the replay from the first frame again.
+    public void rewind()
+    {
+        data.position(start);
+        micros = 0;
+        firstMicros = -1;
+    }
+
+
+    @Override
+    public boolean next(PoseFrame frame)
+    {
+        if (!data.hasRemaining())
+            return false;
+
+        long delta = getVarLong();
+        micros += (delta >>> 1) ^ -(delta & 1);
+        int count = (int) getVarLong();
+
+        frame.ensureCapacity(count);
+        frame.timestamp = micros / 1000000.0;
+        frame.count = count;
+        float[] poses = frame.poses;
+        for (int i = 0; i < count; i++)
+        {
+            long key = getVarLong();
+            int id = (int) (key >> 1);
+            if ((key & 1) != 0)
+                readName(id);
+            frame.ids[i] = id;
+            frame.names[i] = id >= 0 && id < names.length ? names[id] : null;
+            // status is not recorded
+            frame.statuses[i] = PoseFrame.STATUS_TRACKED;
+            int offset = i * PoseFrame.POSE_SIZE;
+            for (int k = 0; k < PoseFrame.POSE_SIZE; k++)
+                poses[offset + k] = data.getFloat();
+        }
+
+        if (realtime)
+            pace();
+        return true;
+    }
+
+
+    private void pace()
+    {
+        if (firstMicros < 0)
+        {
+            firstMicros = micros;
+            replayStartNanos = System.nanoTime();
+            return;
+        }
+        long due = replayStartNanos + (micros - firstMicros) * 1000;
+        long wait = due - System.nanoTime();
+        if (wait > 0)
+        {
+            try
+            {
+                Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+            } catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+
+    private void readName(int id)
+    {
+        int length = (int) getVarLong();
+        byte[] bytes = new byte[length];
+        data.get(bytes);
+        if (id < 0)
+            return;
+        if (id >= names.length)
+        {
+            String[] grown = new String[Math.max(id + 1, names.length * 2)];
+            System.arraycopy(names, 0, grown, 0, names.length);
+            names = grown;
+        }
+        names[id] = new String(bytes, PoseRecorder.UTF8);
+    }
+
+
+    private long getVarLong()
+    {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do
+        {
+            b = data.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+}
@@ -0,0 +1,160 @@
+package com.github.daemontus.ar.vuforia;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Writes pose frames into a compact append-only binary log, read back by {@link PoseLogReader}.
+ *
+ * Layout (little endian): int magic, int version, then frames until the end of file.
+ * A frame is a zigzag varint timestamp delta in microseconds, a varint trackable count and for
+ * every trackable a varint (id << 1 | hasName), the name (varint length + UTF-8) the first time
+ * the id appears, and 12 floats of the row-major 3x4 pose.
+ *
+ * Frames are collected in a direct buffer and written to the file channel when it fills up,
+ * so recording does not allocate and touches the file only every few hundred frames. A frame
+ * which does not fit into an empty buffer (many long names) grows it.
+ */
+public class PoseRecorder
+{
+
+    static final int MAGIC = 0x45534f50; // "POSE" in little endian
+    static final int VERSION = 1;
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileOutputStream stream;
+    private final FileChannel channel;
+    private ByteBuffer buffer;
+
+    private long lastMicros;
+    private boolean[] named = new boolean[16];
+
+
+    public PoseRecorder(File file) throws IOException
+    {
+        stream = new FileOutputStream(file);
+        channel = stream.getChannel();
+        buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+    }
+
+
+    // Whether the name of the trackable was already written, producers can skip looking it up.
+    public boolean hasName(int id)
+    {
+        return id >= 0 && id < named.length && named[id];
+    }
+
+
+    public void record(PoseFrame frame) throws IOException
+    {
+        ensure(maxFrameSize(frame));
+
+        long micros = (long) (frame.timestamp * 1000000.0);
+        long delta = micros - lastMicros;
+        lastMicros = micros;
+        putVarLong((delta << 1) ^ (delta >> 63));
+        putVarLong(frame.count);
+
+        float[] poses = frame.poses;
+        for (int i = 0; i < frame.count; i++)
+        {
+            int id = frame.ids[i];
+            String name = frame.names[i];
+            boolean writeName = name != null && !hasName(id);
+            putVarLong(((long) id << 1) | (writeName ? 1 : 0));
+            if (writeName)
+            {
+                byte[] bytes = name.getBytes(UTF8);
+                putVarLong(bytes.length);
+                buffer.put(bytes);
+                markNamed(id);
+            }
+            int offset = i * PoseFrame.POSE_SIZE;
+            for (int k = 0; k < PoseFrame.POSE_SIZE; k++)
+                buffer.putFloat(poses[offset + k]);
+        }
+    }
+
+
+    // Writes buffered frames to the file.
+    public void flush() throws IOException
+    {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+
+    public void close() throws IOException
+    {
+        try
+        {
+            flush();
+        } finally
+        {
+            stream.close();
+        }
+    }
+
+
+    // Upper bound of the encoded frame: 2 varints + (varint + name + 12 floats) per trackable.
+    private int maxFrameSize(PoseFrame frame)
+    {
+        int size = 20;
+        for (int i = 0; i < frame.count; i++)
+        {
+            size += 10 + PoseFrame.POSE_SIZE * 4;
+            String name = frame.names[i];
+            // at most 3 UTF-8 bytes per UTF-16 char, checked without encoding the name
+            if (name != null && !hasName(frame.ids[i]))
+                size += 10 + name.length() * 3;
+        }
+        return size;
+    }
+
+
+    private void ensure(int bytes) throws IOException
+    {
+        if (buffer.remaining() < bytes)
+            flush();
+        if (buffer.remaining() < bytes)
+            buffer = ByteBuffer.allocateDirect(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+
+    private void putVarLong(long value)
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+
+    private void markNamed(int id)
+    {
+        if (id < 0)
+            return;
+        if (id >= named.length)
+        {
+            boolean[] grown = new boolean[Math.max(id + 1, named.length * 2)];
+            System.arraycopy(named, 0, grown, 0, named.length);
+            named = grown;
+        }
+        named[id] = true;
+    }
+
+}
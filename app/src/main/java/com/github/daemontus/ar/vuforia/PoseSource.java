@@ -0,0 +1,12 @@
+package com.github.daemontus.ar.vuforia;
+
+/**
+ * Producer of pose frames, e.g. a replayed recording.
+ */
+public interface PoseSource
+{
+
+    // Fills the frame with the next set of poses, returns false when the source is exhausted.
+    boolean next(PoseFrame frame);
+
+}
@@ -0,0 +1,90 @@
+package com.github.daemontus.ar.vuforia;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Wait-free handoff of pose frames from the tracking thread to the render thread.
+ *
+ * Three preallocated frames rotate between the writer (back), the reader (front) and a shared
+ * middle slot. Publishing and acquiring are a single atomic exchange of the middle slot index,
+ * so neither side ever waits for the other: the writer always has a free frame to fill and the
+ * reader always sees the most recently published one. Frames published faster than they are
+ * read are dropped, the reader never sees a frame older than the one it already has.
+ *
+ * Exactly one writer and one reader thread are supported.
+ */
+public class PoseTripleBuffer
+{
+
+    // set in the shared state when the middle slot holds a frame the reader has not seen
+    private static final int FRESH = 4;
+    private static final int INDEX_MASK = 3;
+
+    private final PoseFrame[] frames = { new PoseFrame(), new PoseFrame(), new PoseFrame() };
+    // System.nanoTime at capture of every frame, owned together with the frame
+    private final long[] captureNanos = new long[3];
+
+    private final AtomicInteger middle = new AtomicInteger(1);
+
+    // writer thread only
+    private int back = 0;
+    // reader thread only
+    private int front = 2;
+
+
+    // Returns the frame to fill before publish, writer thread only.
+    public PoseFrame back()
+    {
+        return frames[back];
+    }
+
+
+    // Hands the back frame over to the reader, captureNanos is the System.nanoTime of capture.
+    public void publish(long captureNanos)
+    {
+        this.captureNanos[back] = captureNanos;
+        back = middle.getAndSet(back | FRESH) & INDEX_MASK;
+    }
+
+
+    // Copies frame into the back frame and publishes it.
+    public void publish(PoseFrame frame, long captureNanos)
+    {
+        frames[back].set(frame);
+        publish(captureNanos);
+    }
+
+
+    // Makes the latest published frame current, returns false if nothing new was published.
+    public boolean acquire()
+    {
+        if ((middle.get() & FRESH) == 0)
+            return false;
+        front = middle.getAndSet(front) & INDEX_MASK;
+        return true;
+    }
+
+
+    // The current frame of the reader, valid until the next acquire.
+    public PoseFrame front()
+    {
+        return frames[front];
+    }
+
+
+    // Capture time of the current reader frame, 0 if nothing was published yet.
+    public long frontCaptureNanos()
+    {
+        return captureNanos[front];
+    }
+
+
+    // Drops published poses, e.g. when tracking stops. Reader thread only.
+    public void clear()
+    {
+        acquire();
+        frames[front].clear();
+        captureNanos[front] = 0;
+    }
+
+}
@@ -14,6 +14,13 @@ import com.vuforia.Vec4F;
 import com.vuforia.VideoBackgroundConfig;
 
 
+/**
+ * Vuforia sample math helpers working on the native Vec/Matrix wrappers.
+ *
+ * Every getData() call copies the data over JNI and most methods share a static
+ * buffer, so this class is neither cheap nor thread-safe. Prefer {@link MatrixMath}
+ * in per-frame code.
+ */
 public class SampleMath
 {
 
@@ -24,6 +31,11 @@ public class SampleMath
     private static Vec3F mLineEnd = new Vec3F();
     private static Vec3F mIntersection = new Vec3F();
 
+    // Scratch space for the MatrixMath calls, shared like temp
+    private static final float[] mResult = new float[3];
+    private static final float[] mMatrices = new float[32];
+    private static final float[] mLine = new float[9];
+
 
     public static Vec2F Vec2FSub(Vec2F v1, Vec2F v2)
     {
@@ -364,25 +376,16 @@ public class SampleMath
     public static Vec3F linePlaneIntersection(Vec3F lineStart, Vec3F lineEnd,
                                               Vec3F pointOnPlane, Vec3F planeNormal)
     {
-        Vec3F lineDir = Vec3FSub(lineEnd, lineStart);
-        lineDir = Vec3FNormalize(lineDir);
-
-        Vec3F planeDir = Vec3FSub(pointOnPlane, lineStart);
-
-        float n = Vec3FDot(planeNormal, planeDir);
-        float d = Vec3FDot(planeNormal, lineDir);
+        float[] result = mResult;
 
-        if (Math.abs(d) < 0.00001)
+        if (!MatrixMath.linePlaneIntersection(lineStart.getData(), 0, lineEnd.getData(), 0,
+                pointOnPlane.getData(), 0, planeNormal.getData(), 0, result, 0))
         {
             // Line is parallel to plane
             return null;
         }
 
-        float dist = n / d;
-
-        Vec3F offset = Vec3FScale(lineDir, dist);
-
-        return Vec3FAdd(lineStart, offset);
+        return new Vec3F(result[0], result[1], result[2]);
     }
 
 
@@ -394,40 +397,37 @@ public class SampleMath
         VideoBackgroundConfig config = Renderer.getInstance()
                 .getVideoBackgroundConfig();
 
+        int[] viewport = config.getSize().getData();
+        float[] screenPoint = point.getData();
+
         float halfScreenWidth = screenWidth / 2.0f;
         float halfScreenHeight = screenHeight / 2.0f;
 
-        float halfViewportWidth = config.getSize().getData()[0] / 2.0f;
-        float halfViewportHeight = config.getSize().getData()[1] / 2.0f;
+        float halfViewportWidth = viewport[0] / 2.0f;
+        float halfViewportHeight = viewport[1] / 2.0f;
 
-        float x = (point.getData()[0] - halfScreenWidth) / halfViewportWidth;
-        float y = (point.getData()[1] - halfScreenHeight) / halfViewportHeight
+        float x = (screenPoint[0] - halfScreenWidth) / halfViewportWidth;
+        float y = (screenPoint[1] - halfScreenHeight) / halfViewportHeight
                 * -1;
 
-        Vec4F ndcNear = new Vec4F(x, y, -1, 1);
-        Vec4F ndcFar = new Vec4F(x, y, 1, 1);
-
-        // Normalized Device Coordinates to Eye Coordinates
-        Vec4F pointOnNearPlane = Vec4FTransform(ndcNear, inverseProjMatrix);
-        Vec4F pointOnFarPlane = Vec4FTransform(ndcFar, inverseProjMatrix);
-        pointOnNearPlane = Vec4FDiv(pointOnNearPlane,
-                pointOnNearPlane.getData()[3]);
-        pointOnFarPlane = Vec4FDiv(pointOnFarPlane,
-                pointOnFarPlane.getData()[3]);
-
-        // Eye Coordinates to Object Coordinates
-        Matrix44F inverseModelViewMatrix = Matrix44FInverse(modelViewMatrix);
-
-        Vec4F nearWorld = Vec4FTransform(pointOnNearPlane,
-                inverseModelViewMatrix);
-        Vec4F farWorld = Vec4FTransform(pointOnFarPlane, inverseModelViewMatrix);
-
-        mLineStart = new Vec3F(nearWorld.getData()[0], nearWorld.getData()[1],
-                nearWorld.getData()[2]);
-        mLineEnd = new Vec3F(farWorld.getData()[0], farWorld.getData()[1],
-                farWorld.getData()[2]);
-        mIntersection = linePlaneIntersection(mLineStart, mLineEnd,
-                planeCenter, planeNormal);
+        // MatrixMath works with column-major matrices, while the inverse projection
+        // matrix is expected in the row-major form produced by Matrix44FInverse
+        float[] matrices = mMatrices;
+        MatrixMath.transpose(inverseProjMatrix.getData(), 0, matrices, 0);
+        if (!MatrixMath.invert(modelViewMatrix.getData(), 0, matrices, 16))
+        {
+            Log.e(LOGTAG, "Model view matrix is not invertible");
+            mIntersection = null;
+            return;
+        }
+
+        float[] line = mLine;
+        boolean intersects = MatrixMath.projectScreenPointToPlane(matrices, 0, matrices, 16, x, y,
+                planeCenter.getData(), 0, planeNormal.getData(), 0, line, 0, line, 3, line, 6);
+
+        mLineStart = new Vec3F(line[0], line[1], line[2]);
+        mLineEnd = new Vec3F(line[3], line[4], line[5]);
+        mIntersection = intersects ? new Vec3F(line[6], line[7], line[8]) : null;
 
         if (mIntersection == null)
             Log.e(LOGTAG, "No intersection with the plane");
@@ -1,8 +1,5 @@
 package com.github.daemontus.ar.vuforia;
 
-
-import com.vuforia.State;
-
 /**
  * Interface you neet to implement if you want to control vuforia
  *
@@ -41,6 +38,11 @@ public interface SessionControl {
     void onInitARDone(VuforiaException e);
 
 
-    // This callback is called every cycle
-    void onQCARUpdate(State state);
+    // This callback is called every cycle, the frame is reused between calls
+    void onQCARUpdate(PoseFrame frame);
+
+
+    // This callback is called whenever the camera was (re)started, on start up
+    // and on every resume, camera settings like the focus mode are applied here
+    void onCameraStarted();
 }
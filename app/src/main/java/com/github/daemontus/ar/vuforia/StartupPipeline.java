@@ -0,0 +1,439 @@
+package com.github.daemontus.ar.vuforia;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs start up work as a graph of stages, every stage starts as soon as its dependencies finish.
+ *
+ * Stages run on a shared background pool unless they are given their own executor (e.g. the UI
+ * or GL thread). Each stage can report progress and should check for cancellation in long loops,
+ * cancel() also interrupts running stages. The first failing stage cancels the rest.
+ *
+ * Start and end of every stage and named marks (e.g. the first tracked frame) are recorded
+ * relative to the creation of the pipeline, timeline() formats them for the log.
+ */
+public class StartupPipeline
+{
+
+    // Work of one stage.
+    public interface Task
+    {
+        void run(Progress progress) throws Exception;
+    }
+
+
+    // Passed to a running task.
+    public interface Progress
+    {
+        // percent from 0 to 100
+        void report(int percent);
+
+
+        boolean isCancelled();
+    }
+
+
+    // Called on the callback executor.
+    public interface Listener
+    {
+        void onStageProgress(String stage, int percent);
+
+
+        void onStageFinished(String stage, long millis);
+
+
+        // The stage threw, everything not finished yet is cancelled.
+        void onStageFailed(String stage, Exception e);
+
+
+        // All stages finished, or the pipeline failed or was cancelled (success false).
+        void onFinished(boolean success);
+    }
+
+
+    private final class Stage implements Progress, Runnable
+    {
+        final String name;
+        final Task task;
+        final Executor executor;
+        final String[] dependencies;
+        final List<Stage> dependents = new ArrayList<Stage>();
+
+        // guarded by the pipeline
+        int pending;
+        Thread thread;
+        long startNanos;
+        long endNanos;
+        String threadName;
+
+
+        Stage(String name, Task task, Executor executor, String[] dependencies)
+        {
+            this.name = name;
+            this.task = task;
+            this.executor = executor;
+            this.dependencies = dependencies;
+        }
+
+
+        @Override
+        public void report(final int percent)
+        {
+            for (final Listener listener : mListeners)
+            {
+                mCallbackExecutor.execute(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        listener.onStageProgress(name, percent);
+                    }
+                });
+            }
+        }
+
+
+        @Override
+        public boolean isCancelled()
+        {
+            return mCancelled;
+        }
+
+
+        @Override
+        public void run()
+        {
+            synchronized (StartupPipeline.this)
+            {
+                if (mCancelled)
+                {
+                    stageDone();
+                    return;
+                }
+                thread = Thread.currentThread();
+                threadName = thread.getName();
+                startNanos = System.nanoTime();
+                mRunning++;
+            }
+
+            Exception failure = null;
+            try
+            {
+                task.run(this);
+            } catch (Exception e)
+            {
+                failure = e;
+            }
+
+            synchronized (StartupPipeline.this)
+            {
+                thread = null;
+                endNanos = System.nanoTime();
+                mRunning--;
+                if (failure != null && !mCancelled)
+                    fail(this, failure);
+                else if (!mCancelled)
+                {
+                    finished(this);
+                    for (Stage dependent : dependents)
+                        if (--dependent.pending == 0)
+                            dependent.executor.execute(dependent);
+                }
+                stageDone();
+            }
+        }
+    }
+
+
+    private final long mOrigin = System.nanoTime();
+    private final Executor mCallbackExecutor;
+    private final CopyOnWriteArrayList<Listener> mListeners = new CopyOnWriteArrayList<Listener>();
+    private final ExecutorService mPool;
+
+    // guarded by this
+    private final Map<String, Stage> mStages = new LinkedHashMap<String, Stage>();
+    private final Map<String, Long> mMarks = new LinkedHashMap<String, Long>();
+    private boolean mStarted;
+    private volatile boolean mCancelled;
+    private boolean mFailed;
+    private boolean mFinished;
+    private int mRunning;
+    private int mDone;
+
+
+    // callbackExecutor runs listener callbacks, e.g. on the UI thread
+    public StartupPipeline(Executor callbackExecutor)
+    {
+        mCallbackExecutor = callbackExecutor;
+        final AtomicInteger count = new AtomicInteger();
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        mPool = Executors.newFixedThreadPool(threads, new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "Startup-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+
+    public void addListener(Listener listener)
+    {
+        mListeners.addIfAbsent(listener);
+    }
+
+
+    // Adds a stage running on the background pool.
+    public void add(String name, Task task, String... dependencies)
+    {
+        add(name, task, mPool, dependencies);
+    }
+
+
+    // Adds a stage running on the given executor. Stages can only be added before start().
+    public synchronized void add(String name, Task task, Executor executor, String... dependencies)
+    {
+        if (mStarted)
+            throw new IllegalStateException("Pipeline already started");
+        if (mStages.containsKey(name))
+            throw new IllegalArgumentException("Duplicate stage " + name);
+        mStages.put(name, new Stage(name, task, executor, dependencies));
+    }
+
+
+    public synchronized boolean isStarted()
+    {
+        return mStarted;
+    }
+
+
+    public synchronized void start()
+    {
+        if (mStarted)
+            throw new IllegalStateException("Pipeline already started");
+        mStarted = true;
+        if (mCancelled)
+        {
+            mPool.shutdown();
+            finishAll(false);
+            return;
+        }
+
+        for (Stage stage : mStages.values())
+        {
+            for (String dependency : stage.dependencies)
+            {
+                Stage required = mStages.get(dependency);
+                if (required == null)
+                    throw new IllegalArgumentException(stage.name + " depends on unknown stage " + dependency);
+                required.dependents.add(stage);
+                stage.pending++;
+            }
+        }
+        checkAcyclic();
+
+        List<Stage> ready = new ArrayList<Stage>();
+        for (Stage stage : mStages.values())
+            if (stage.pending == 0)
+                ready.add(stage);
+        for (Stage stage : ready)
+            stage.executor.execute(stage);
+        if (mStages.isEmpty())
+            finishAll(true);
+    }
+
+
+    // Cancels stages which did not start yet and interrupts running ones on the background pool,
+    // does nothing once the pipeline finished.
+    public synchronized void cancel()
+    {
+        if (mCancelled || mFinished)
+            return;
+        mCancelled = true;
+        // threads of other executors (UI, GL) are not ours to interrupt
+        for (Stage stage : mStages.values())
+            if (stage.thread != null && stage.executor == mPool)
+                stage.thread.interrupt();
+        // stages which never get scheduled count as done
+        for (Stage stage : mStages.values())
+            if (stage.pending > 0 && stage.startNanos == 0)
+                stageDone();
+        if (mStarted && !mFailed)
+            finishAll(false);
+    }
+
+
+    // Waits until no stage is running, returns false on timeout.
+    public synchronized boolean awaitIdle(long millis) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + millis;
+        while (mRunning > 0)
+        {
+            long wait = deadline - System.currentTimeMillis();
+            if (wait <= 0)
+                return false;
+            wait(wait);
+        }
+        return true;
+    }
+
+
+    // Records a named point in time, only the first mark of each name is kept.
+    public synchronized void mark(String name)
+    {
+        if (!mMarks.containsKey(name))
+            mMarks.put(name, System.nanoTime());
+    }
+
+
+    // Milliseconds from the creation of the pipeline to the mark, -1 if it was not reached.
+    public synchronized long getMarkMillis(String name)
+    {
+        Long nanos = mMarks.get(name);
+        return nanos == null ? -1 : (nanos - mOrigin) / 1000000;
+    }
+
+
+    // Duration of the stage in milliseconds, -1 if it did not finish.
+    public synchronized long getStageMillis(String name)
+    {
+        Stage stage = mStages.get(name);
+        return stage == null || stage.endNanos == 0 ? -1 : (stage.endNanos - stage.startNanos) / 1000000;
+    }
+
+
+    public synchronized String timeline()
+    {
+        StringBuilder builder = new StringBuilder("startup timeline (ms since launch)");
+        for (Stage stage : mStages.values())
+        {
+            builder.append('\n').append(stage.name).append(": ");
+            if (stage.startNanos == 0)
+            {
+                builder.append("not run");
+                continue;
+            }
+            builder.append((stage.startNanos - mOrigin) / 1000000).append(" - ");
+            if (stage.endNanos == 0)
+                builder.append("running");
+            else
+                builder.append((stage.endNanos - mOrigin) / 1000000)
+                        .append(" (").append((stage.endNanos - stage.startNanos) / 1000000).append(')');
+            builder.append(" on ").append(stage.threadName);
+        }
+        for (Map.Entry<String, Long> mark : mMarks.entrySet())
+            builder.append('\n').append(mark.getKey()).append(": ")
+                    .append((mark.getValue() - mOrigin) / 1000000);
+        return builder.toString();
+    }
+
+
+    private void checkAcyclic()
+    {
+        // Kahn's algorithm on a copy of the pending counts
+        Map<Stage, Integer> pending = new LinkedHashMap<Stage, Integer>();
+        List<Stage> queue = new ArrayList<Stage>();
+        for (Stage stage : mStages.values())
+        {
+            pending.put(stage, stage.pending);
+            if (stage.pending == 0)
+                queue.add(stage);
+        }
+        int visited = 0;
+        while (!queue.isEmpty())
+        {
+            Stage stage = queue.remove(queue.size() - 1);
+            visited++;
+            for (Stage dependent : stage.dependents)
+            {
+                int left = pending.get(dependent) - 1;
+                pending.put(dependent, left);
+                if (left == 0)
+                    queue.add(dependent);
+            }
+        }
+        if (visited != mStages.size())
+            throw new IllegalArgumentException("Stage dependencies contain a cycle");
+    }
+
+
+    private void finished(final Stage stage)
+    {
+        final long millis = (stage.endNanos - stage.startNanos) / 1000000;
+        for (final Listener listener : mListeners)
+        {
+            mCallbackExecutor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    listener.onStageFinished(stage.name, millis);
+                }
+            });
+        }
+    }
+
+
+    private void fail(final Stage stage, final Exception e)
+    {
+        mFailed = true;
+        for (final Listener listener : mListeners)
+        {
+            mCallbackExecutor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    listener.onStageFailed(stage.name, e);
+                }
+            });
+        }
+        cancel();
+        finishAll(false);
+    }
+
+
+    // Counts finished (or skipped) stages, the last one ends the pipeline.
+    private void stageDone()
+    {
+        mDone++;
+        notifyAll();
+        if (mDone == mStages.size() && !mCancelled)
+            finishAll(true);
+        if (mDone >= mStages.size())
+            mPool.shutdown();
+    }
+
+
+    // Reports the end of the pipeline, only the first call counts.
+    private void finishAll(final boolean success)
+    {
+        if (mFinished)
+            return;
+        mFinished = true;
+        for (final Listener listener : mListeners)
+        {
+            mCallbackExecutor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    listener.onFinished(success);
+                }
+            });
+        }
+    }
+
+}
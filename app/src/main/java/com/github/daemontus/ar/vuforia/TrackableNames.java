@@ -0,0 +1,60 @@
+package com.github.daemontus.ar.vuforia;
+
+/**
+ * Trackable id to name table, filled once per data set load.
+ *
+ * Result producers store ids and look names up here instead of asking Vuforia for the name
+ * (a new Java string over JNI) of every result in every frame. Writes are rare and copy the
+ * table, reads are a plain array access and safe from any thread.
+ */
+public class TrackableNames
+{
+
+    private volatile String[] mNames = new String[16];
+
+
+    // Registers all trackables of a loaded data set.
+    public synchronized void putAll(VuforiaDataSet dataSet)
+    {
+        String[] names = mNames.clone();
+        int count = dataSet.getTrackableCount();
+        for (int i = 0; i < count; i++)
+        {
+            int id = dataSet.getTrackableId(i);
+            if (id < 0)
+                continue;
+            names = ensureCapacity(names, id + 1);
+            names[id] = dataSet.getTrackableName(i);
+        }
+        mNames = names;
+    }
+
+
+    public synchronized void put(int id, String name)
+    {
+        if (id < 0)
+            return;
+        String[] names = ensureCapacity(mNames.clone(), id + 1);
+        names[id] = name;
+        mNames = names;
+    }
+
+
+    // Returns the name of the trackable, or null if it was not registered.
+    public String get(int id)
+    {
+        String[] names = mNames;
+        return id >= 0 && id < names.length ? names[id] : null;
+    }
+
+
+    private static String[] ensureCapacity(String[] names, int capacity)
+    {
+        if (capacity <= names.length)
+            return names;
+        String[] grown = new String[Math.max(capacity, names.length * 2)];
+        System.arraycopy(names, 0, grown, 0, names.length);
+        return grown;
+    }
+
+}
@@ -0,0 +1,32 @@
+package com.github.daemontus.ar.vuforia;
+
+/**
+ * Read-only view of the trackable poses of one frame, as handed to render code.
+ *
+ * The view is owned by its producer and reused, it stays valid until the next frame is processed.
+ */
+public interface TrackingResults
+{
+
+    // Camera timestamp of the frame in seconds.
+    double getTimestamp();
+
+
+    int getCount();
+
+
+    int getId(int index);
+
+
+    // Name of the trackable, may be null if the producer does not know it.
+    String getName(int index);
+
+
+    // One of the PoseFrame.STATUS_ constants.
+    int getStatus(int index);
+
+
+    // Copies the row-major 3x4 pose (12 floats) of the trackable into out starting at offset.
+    void getPose(int index, float[] out, int offset);
+
+}
@@ -0,0 +1,282 @@
+package com.github.daemontus.ar.vuforia;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Tracking state of every trackable seen so far, indexed by trackable id.
+ *
+ * For each id the table keeps the status (lost or one of the PoseFrame.STATUS_ constants),
+ * the timestamps of the first and last frame of the current tracking run, the number of frames
+ * tracked in that run and the last valid pose, all in parallel primitive arrays.
+ *
+ * update() is called once per camera frame and costs O(tracked): trackables which are tracked
+ * are kept in a compact list and only they are checked for loss. Found and lost transitions are
+ * delivered to the listeners on an executor, never on the thread calling update().
+ */
+public class TrackingStateTable
+{
+
+    public static final int STATUS_LOST = 0;
+
+    // Receives found/lost transitions on the event executor.
+    public interface Listener
+    {
+        // timestamp is the camera time of the frame in which the transition happened
+        void onTrackableFound(int id, String name, double timestamp);
+
+
+        void onTrackableLost(int id, String name, double timestamp);
+    }
+
+
+    private final Executor mExecutor;
+    private final CopyOnWriteArrayList<Listener> mListeners = new CopyOnWriteArrayList<Listener>();
+
+    // per id state, guarded by this
+    private int[] mStatus = new int[0];
+    private double[] mFirstSeen = new double[0];
+    private double[] mLastSeen = new double[0];
+    private int[] mFramesTracked = new int[0];
+    private float[] mPoses = new float[0];
+    private String[] mNames = new String[0];
+    private long[] mSeenInUpdate = new long[0];
+
+    // ids which are not lost, in no particular order
+    private int[] mTracked = new int[4];
+    private int mTrackedCount;
+    private long mUpdate;
+    private double mTimestamp;
+
+
+    // Events are delivered on a single daemon thread.
+    public TrackingStateTable()
+    {
+        this(newEventExecutor());
+    }
+
+
+    public TrackingStateTable(Executor executor)
+    {
+        mExecutor = executor;
+    }
+
+
+    public void addListener(Listener listener)
+    {
+        mListeners.addIfAbsent(listener);
+    }
+
+
+    public void removeListener(Listener listener)
+    {
+        mListeners.remove(listener);
+    }
+
+
+    // Applies the results of one camera frame.
+    public synchronized void update(TrackingResults results)
+    {
+        mUpdate++;
+        double timestamp = results.getTimestamp();
+        mTimestamp = timestamp;
+        int count = results.getCount();
+        for (int i = 0; i < count; i++)
+        {
+            int id = results.getId(i);
+            if (id < 0)
+                continue;
+            ensureCapacity(id + 1);
+
+            if (mStatus[id] == STATUS_LOST)
+            {
+                mFirstSeen[id] = timestamp;
+                mFramesTracked[id] = 0;
+                addTracked(id);
+                String name = results.getName(i);
+                if (name != null)
+                    mNames[id] = name;
+                dispatch(true, id, mNames[id], timestamp);
+            }
+            mStatus[id] = results.getStatus(i);
+            mLastSeen[id] = timestamp;
+            mFramesTracked[id]++;
+            mSeenInUpdate[id] = mUpdate;
+            results.getPose(i, mPoses, id * PoseFrame.POSE_SIZE);
+        }
+
+        // everything tracked before but missing from this frame is lost
+        for (int i = mTrackedCount - 1; i >= 0; i--)
+        {
+            int id = mTracked[i];
+            if (mSeenInUpdate[id] == mUpdate)
+                continue;
+            mStatus[id] = STATUS_LOST;
+            mTracked[i] = mTracked[--mTrackedCount];
+            dispatch(false, id, mNames[id], timestamp);
+        }
+    }
+
+
+    // Marks everything lost, e.g. when the camera stops.
+    public synchronized void clear(double timestamp)
+    {
+        while (mTrackedCount > 0)
+        {
+            int id = mTracked[--mTrackedCount];
+            mStatus[id] = STATUS_LOST;
+            dispatch(false, id, mNames[id], timestamp);
+        }
+    }
+
+
+    // Marks everything lost at the time of the last update.
+    public synchronized void clear()
+    {
+        clear(mTimestamp);
+    }
+
+
+    public synchronized int getStatus(int id)
+    {
+        return id >= 0 && id < mStatus.length ? mStatus[id] : STATUS_LOST;
+    }
+
+
+    public synchronized boolean isTracked(int id)
+    {
+        return getStatus(id) != STATUS_LOST;
+    }
+
+
+    // Camera time of the first frame of the current (or last) tracking run, 0 if never seen.
+    public synchronized double getFirstSeen(int id)
+    {
+        return id >= 0 && id < mFirstSeen.length ? mFirstSeen[id] : 0;
+    }
+
+
+    public synchronized double getLastSeen(int id)
+    {
+        return id >= 0 && id < mLastSeen.length ? mLastSeen[id] : 0;
+    }
+
+
+    // Frames tracked in the current (or last) tracking run.
+    public synchronized int getFramesTracked(int id)
+    {
+        return id >= 0 && id < mFramesTracked.length ? mFramesTracked[id] : 0;
+    }
+
+
+    // Copies the last valid pose (row-major 3x4), returns false if the id was never seen.
+    public synchronized boolean getPose(int id, float[] out, int offset)
+    {
+        if (id < 0 || id >= mStatus.length || mSeenInUpdate[id] == 0)
+            return false;
+        System.arraycopy(mPoses, id * PoseFrame.POSE_SIZE, out, offset, PoseFrame.POSE_SIZE);
+        return true;
+    }
+
+
+    public synchronized int getTrackedCount()
+    {
+        return mTrackedCount;
+    }
+
+
+    // Copies the ids of all tracked trackables into out (at least getTrackedCount long).
+    public synchronized int getTrackedIds(int[] out)
+    {
+        System.arraycopy(mTracked, 0, out, 0, mTrackedCount);
+        return mTrackedCount;
+    }
+
+
+    private void dispatch(final boolean found, final int id, final String name, final double timestamp)
+    {
+        if (mListeners.isEmpty())
+            return;
+        mExecutor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                for (Listener listener : mListeners)
+                {
+                    if (found)
+                        listener.onTrackableFound(id, name, timestamp);
+                    else
+                        listener.onTrackableLost(id, name, timestamp);
+                }
+            }
+        });
+    }
+
+
+    private void addTracked(int id)
+    {
+        if (mTrackedCount == mTracked.length)
+        {
+            int[] grown = new int[mTracked.length * 2];
+            System.arraycopy(mTracked, 0, grown, 0, mTrackedCount);
+            mTracked = grown;
+        }
+        mTracked[mTrackedCount++] = id;
+    }
+
+
+    private void ensureCapacity(int capacity)
+    {
+        if (capacity <= mStatus.length)
+            return;
+        int size = Math.max(capacity, Math.max(8, mStatus.length * 2));
+
+        int[] status = new int[size];
+        System.arraycopy(mStatus, 0, status, 0, mStatus.length);
+        mStatus = status;
+
+        double[] firstSeen = new double[size];
+        System.arraycopy(mFirstSeen, 0, firstSeen, 0, mFirstSeen.length);
+        mFirstSeen = firstSeen;
+
+        double[] lastSeen = new double[size];
+        System.arraycopy(mLastSeen, 0, lastSeen, 0, mLastSeen.length);
+        mLastSeen = lastSeen;
+
+        int[] framesTracked = new int[size];
+        System.arraycopy(mFramesTracked, 0, framesTracked, 0, mFramesTracked.length);
+        mFramesTracked = framesTracked;
+
+        float[] poses = new float[size * PoseFrame.POSE_SIZE];
+        System.arraycopy(mPoses, 0, poses, 0, mPoses.length);
+        mPoses = poses;
+
+        String[] names = new String[size];
+        System.arraycopy(mNames, 0, names, 0, mNames.length);
+        mNames = names;
+
+        long[] seen = new long[size];
+        System.arraycopy(mSeenInUpdate, 0, seen, 0, mSeenInUpdate.length);
+        mSeenInUpdate = seen;
+    }
+
+
+    private static ExecutorService newEventExecutor()
+    {
+        return Executors.newSingleThreadExecutor(new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "TrackingEvents");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+}
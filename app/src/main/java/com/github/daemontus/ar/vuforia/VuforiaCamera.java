@@ -0,0 +1,47 @@
+package com.github.daemontus.ar.vuforia;
+
+/**
+ * Camera device operations used by the session (CameraDevice on a device).
+ *
+ * Only primitive types cross this interface, so it can be implemented without the Vuforia
+ * native library.
+ */
+public interface VuforiaCamera
+{
+
+    // Values of the CameraDevice constants, so callers do not need the Vuforia classes.
+    int DIRECTION_DEFAULT = 0;       // CAMERA_DIRECTION.CAMERA_DIRECTION_DEFAULT
+    int MODE_DEFAULT = -1;           // MODE.MODE_DEFAULT
+    int FOCUS_MODE_NORMAL = 0;       // FOCUS_MODE.FOCUS_MODE_NORMAL
+    int FOCUS_MODE_TRIGGERAUTO = 1;  // FOCUS_MODE.FOCUS_MODE_TRIGGERAUTO
+
+
+    boolean init(int direction);
+
+
+    boolean deinit();
+
+
+    boolean selectVideoMode(int mode);
+
+
+    boolean start();
+
+
+    boolean stop();
+
+
+    boolean setFocusMode(int mode);
+
+
+    boolean setFlashTorchMode(boolean on);
+
+
+    // Stores width and height of the video mode into size[0] and size[1].
+    void getVideoMode(int mode, int[] size);
+
+
+    // Stores size (x, y), focal length (x, y) and principal point (x, y) of the camera, 6 floats.
+    void getCalibration(float[] calibration);
+
+}
@@ -0,0 +1,20 @@
+package com.github.daemontus.ar.vuforia;
+
+/**
+ * Tracking data set (DataSet on a device).
+ */
+public interface VuforiaDataSet
+{
+
+    boolean load(String path, int storageType);
+
+
+    int getTrackableCount();
+
+
+    int getTrackableId(int index);
+
+
+    String getTrackableName(int index);
+
+}
@@ -0,0 +1,94 @@
+package com.github.daemontus.ar.vuforia;
+
+/**
+ * Entry point to the Vuforia SDK, wrapping its static singletons.
+ *
+ * The session and renderers only talk to Vuforia through this interface and the facades it
+ * returns, so they can run against {@link FakeVuforiaPlatform} on a plain JVM as well as
+ * against {@link DeviceVuforiaPlatform} on a device. The host the session needs (main thread,
+ * screen) is part of the interface as well, on a device it is the Activity.
+ */
+public interface VuforiaPlatform
+{
+
+    // Receives tracking results on the Vuforia thread once per camera frame.
+    interface UpdateListener
+    {
+        // The frame is reused after the call returns, copy what you need.
+        void onUpdate(PoseFrame frame);
+    }
+
+
+    // Values of the Vuforia constants, so callers do not need the Vuforia classes.
+    int INIT_GL_20 = 1;                  // Vuforia.GL_20
+    int INIT_DEVICE_NOT_SUPPORTED = -2;  // Vuforia.INIT_DEVICE_NOT_SUPPORTED
+    int PIXEL_FORMAT_RGB565 = 1;         // PIXEL_FORMAT.RGB565
+
+
+    void setInitParameters(int flags);
+
+
+    // Performs the next initialization step, returns progress (0 - 100) or a negative error code.
+    int init();
+
+
+    void deinit();
+
+
+    void onResume();
+
+
+    void onPause();
+
+
+    void onSurfaceCreated();
+
+
+    void onSurfaceChanged(int width, int height);
+
+
+    boolean setFrameFormat(int format, boolean enabled);
+
+
+    boolean setHint(long hint, int value);
+
+
+    boolean requiresAlpha();
+
+
+    void setUpdateListener(UpdateListener listener);
+
+
+    VuforiaCamera camera();
+
+
+    VuforiaTracker tracker();
+
+
+    VuforiaRenderState renderState();
+
+
+    // Names of the trackables of all data sets loaded so far, by trackable id.
+    TrackableNames trackableNames();
+
+
+    // Runs the task on the main (UI) thread after the delay.
+    void postToMain(Runnable task, long delayMillis);
+
+
+    // Removes pending runs of the task posted with postToMain.
+    void removeFromMain(Runnable task);
+
+
+    // Requests the screen orientation (ActivityInfo.SCREEN_ORIENTATION_*) and keeps the screen on.
+    void setScreenOrientation(int orientation);
+
+
+    // Stores width and height of the display into size[0] and size[1].
+    void getScreenSize(int[] size);
+
+
+    // Whether the current configuration is portrait.
+    boolean isPortrait();
+
+}
@@ -0,0 +1,33 @@
+package com.github.daemontus.ar.vuforia;
+
+/**
+ * Video background and per-frame tracking state (Renderer and State on a device).
+ *
+ * A frame is processed as begin, drawVideoBackground, readResults and end, all on the GL thread.
+ */
+public interface VuforiaRenderState
+{
+
+    // Clear color of the GL surface the video background is drawn into (glClearColor).
+    void setClearColor(float red, float green, float blue, float alpha);
+
+
+    void setVideoBackgroundConfig(boolean enabled, int x, int y, int width, int height);
+
+
+    boolean isVideoBackgroundReflected();
+
+
+    void begin();
+
+
+    void drawVideoBackground();
+
+
+    // Copies timestamp, ids, names and poses of the current frame's results into frame.
+    void readResults(PoseFrame frame);
+
+
+    void end();
+
+}
@@ -1,37 +1,52 @@
 package com.github.daemontus.ar.vuforia;
 
-import android.opengl.GLES20;
 import android.util.Log;
 
-import com.vuforia.CameraCalibration;
-import com.vuforia.CameraDevice;
-import com.vuforia.Renderer;
-import com.vuforia.State;
-import com.vuforia.TrackableResult;
-import com.vuforia.Vec2F;
-import com.vuforia.Vuforia;
+import java.io.File;
+import java.io.IOException;
 
 /**
  * Vuforia renderer, responsible for video background rendering, tracking and position calculations
+ *
+ * By default poses come from the Vuforia update callback (the tracking thread, see
+ * onTrackingUpdate) through a {@link PoseTripleBuffer}, so neither thread waits for the other.
+ * With setTrackingDecoupled(false) they are read from the render state inside the render call.
  */
 public class VuforiaRenderer {
 
     private static final String LOGTAG = "VuforiaRenderer";
 
-    public static String lastTrackableName = "";
-
     private AppSession vuforiaAppSession;
 
-    private Renderer mRenderer;
+    private VuforiaPlatform mPlatform;
 
     public boolean mIsActive = false;
 
-    public float fieldOfViewRadians;
+    // Per-stage frame timing, shared with the libgdx side.
+    public final FrameProfiler profiler = new FrameProfiler();
+
+    // Poses older than this are not drawn (tracking stopped or stalled).
+    private static final long STALE_POSE_NANOS = 250000000L;
+
+    // Set while poses are being recorded, see startRecording.
+    private volatile PoseRecorder mRecorder;
+
+    private volatile boolean mDecoupled = true;
+    private final PoseTripleBuffer mPoses = new PoseTripleBuffer();
+    private final TrackingStateTable mTrackingState = new TrackingStateTable();
+    // Set when tracking stops, the GL thread then drops the published poses.
+    private volatile boolean mDropPoses;
+
+    // Reused every frame, GL thread only.
+    private final PoseFrame mFrame = new PoseFrame();
+    private final PoseFrame mEmptyFrame = new PoseFrame(0);
+    private long mCaptureNanos;
 
 
     public VuforiaRenderer(AppSession session)
     {
         vuforiaAppSession = session;
+        session.setRenderer(this);
     }
 
 
@@ -50,9 +65,9 @@ public class VuforiaRenderer {
     {
         Log.d(LOGTAG, "GLRenderer.initRendering");
 
-        mRenderer = Renderer.getInstance();
+        mPlatform = vuforiaAppSession.getPlatform();
 
-        GLES20.glClearColor(0.0f, 0.0f, 0.0f, Vuforia.requiresAlpha() ? 0.0f
+        mPlatform.renderState().setClearColor(0.0f, 0.0f, 0.0f, mPlatform.requiresAlpha() ? 0.0f
                 : 1.0f);
 
 
@@ -62,35 +77,155 @@ public class VuforiaRenderer {
     }
 
 
-    // The render function.
-    public TrackableResult[] processFrame()
+    // Camera intrinsics and projection, refreshed by the session when the camera starts.
+    public CameraCalibrationCache getCalibration()
+    {
+        return vuforiaAppSession.getCalibration();
+    }
+
+
+    // Whether the video background is mirrored (front camera), cached on camera start.
+    public boolean isVideoBackgroundReflected()
+    {
+        return vuforiaAppSession.isVideoBackgroundReflected();
+    }
+
+
+    // Whether poses come from the update callback (default) or are read in processFrame.
+    public void setTrackingDecoupled(boolean decoupled)
+    {
+        mDecoupled = decoupled;
+    }
+
+
+    // Publishes the poses of a camera frame, called on the tracking thread (update callback).
+    public void onTrackingUpdate(PoseFrame frame)
+    {
+        if (!mDecoupled)
+            return;
+        long start = profiler.start();
+        mPoses.publish(frame, System.nanoTime());
+        mTrackingState.update(frame);
+        if (mRecorder != null)
+            record(frame);
+        profiler.record(FrameProfiler.TRACKING, start);
+    }
+
+
+    // Called by the session when camera and trackers stop: everything tracked is lost and the
+    // poses published before are not drawn again after a resume.
+    void onTrackingStopped()
+    {
+        mTrackingState.clear();
+        mDropPoses = true;
+    }
+
+
+    // Per trackable status, timestamps and last pose, with found/lost events.
+    public TrackingStateTable getTrackingState()
+    {
+        return mTrackingState;
+    }
+
+
+    // System.nanoTime at which the poses returned by the last processFrame were captured.
+    public long getPoseCaptureNanos()
+    {
+        return mCaptureNanos;
+    }
+
+
+    // Starts writing poses of every processed frame into file (replaced if it exists).
+    public synchronized void startRecording(File file) throws IOException
+    {
+        stopRecording();
+        mRecorder = new PoseRecorder(file);
+    }
+
+
+    public synchronized void stopRecording()
+    {
+        if (mRecorder == null)
+            return;
+        try
+        {
+            mRecorder.close();
+        } catch (IOException e)
+        {
+            Log.e(LOGTAG, "Unable to finish pose recording", e);
+        }
+        mRecorder = null;
+    }
+
+
+    // The render function, returns the poses of this frame (valid until the next call).
+    public TrackingResults processFrame()
     {
         if (!mIsActive)
             return null;
 
-        State state = mRenderer.begin();
-        mRenderer.drawVideoBackground();
+        VuforiaRenderState renderState = mPlatform.renderState();
+        long start = profiler.start();
+        renderState.begin();
+        renderState.drawVideoBackground();
+        profiler.record(FrameProfiler.BACKGROUND, start);
 
+        start = profiler.start();
 
         // did we find any trackables this frame?
-        TrackableResult[] results = new TrackableResult[state.getNumTrackableResults()];
-        for (int tIdx = 0; tIdx < state.getNumTrackableResults(); tIdx++)
+        PoseFrame frame;
+        boolean decoupled = mDecoupled;
+        if (decoupled)
+        {
+            if (mDropPoses)
+            {
+                mDropPoses = false;
+                mPoses.clear();
+            }
+            mPoses.acquire();
+            frame = mPoses.front();
+            mCaptureNanos = mPoses.frontCaptureNanos();
+            if (System.nanoTime() - mCaptureNanos > STALE_POSE_NANOS)
+            {
+                // no updates arrive while tracking is stopped, nothing can stay tracked
+                if (frame.count > 0)
+                    mTrackingState.clear(frame.timestamp);
+                frame = mEmptyFrame;
+            }
+        } else
         {
-            //remember trackable
-            TrackableResult result = state.getTrackableResult(tIdx);
-            lastTrackableName = result.getTrackable().getName();
-            results[tIdx] = result;
-
-            //calculate filed of view
-            CameraCalibration calibration = CameraDevice.getInstance().getCameraCalibration();
-            Vec2F size = calibration.getSize();
-            Vec2F focalLength = calibration.getFocalLength();
-            fieldOfViewRadians = (float) (2 * Math.atan(0.5f * size.getData()[0] / focalLength.getData()[0]));
+            frame = mFrame;
+            mCaptureNanos = System.nanoTime();
+            renderState.readResults(frame);
+            mTrackingState.update(frame);
         }
 
-        mRenderer.end();
+        profiler.record(FrameProfiler.TRACKABLES, start);
 
-        return results;
+        if (!decoupled && mRecorder != null)
+            record(frame);
+
+        start = profiler.start();
+        renderState.end();
+        profiler.record(FrameProfiler.END, start);
+
+        return frame;
+    }
+
+
+    // Called from the tracking thread or, when not decoupled, the GL thread.
+    private synchronized void record(PoseFrame frame)
+    {
+        if (mRecorder == null)
+            return;
+        try
+        {
+            mRecorder.record(frame);
+        } catch (IOException e)
+        {
+            Log.e(LOGTAG, "Pose recording failed, stopping", e);
+            stopRecording();
+        }
     }
 
 }
@@ -0,0 +1,40 @@
+package com.github.daemontus.ar.vuforia;
+
+/**
+ * Image (object) tracker and its data sets (TrackerManager and ObjectTracker on a device).
+ */
+public interface VuforiaTracker
+{
+
+    boolean init();
+
+
+    boolean deinit();
+
+
+    // Whether init() succeeded and deinit() was not called since.
+    boolean isInitialized();
+
+
+    boolean start();
+
+
+    void stop();
+
+
+    // Returns null if the tracker is not initialized.
+    VuforiaDataSet createDataSet();
+
+
+    boolean activateDataSet(VuforiaDataSet dataSet);
+
+
+    boolean deactivateDataSet(VuforiaDataSet dataSet);
+
+
+    boolean destroyDataSet(VuforiaDataSet dataSet);
+
+
+    boolean isActive(VuforiaDataSet dataSet);
+
+}
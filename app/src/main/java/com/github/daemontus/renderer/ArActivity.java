@@ -3,38 +3,76 @@ package com.github.daemontus.renderer;
 import android.content.pm.ActivityInfo;
 import android.content.res.Configuration;
 import android.os.Bundle;
+import android.os.Debug;
 import android.util.Log;
 import android.view.View;
 import android.widget.FrameLayout;
 import android.widget.Toast;
 
+import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.backends.android.AndroidApplication;
 import com.badlogic.gdx.backends.android.AndroidApplicationConfiguration;
 
+import com.github.daemontus.ar.libgdx.Display;
 import com.github.daemontus.ar.libgdx.Engine;
+import com.github.daemontus.ar.libgdx.ModelPreloader;
 import com.github.daemontus.ar.vuforia.AppSession;
+import com.github.daemontus.ar.vuforia.DataSetManager;
+import com.github.daemontus.ar.vuforia.DeviceVuforiaPlatform;
+import com.github.daemontus.ar.vuforia.PoseFrame;
 import com.github.daemontus.ar.vuforia.SessionControl;
+import com.github.daemontus.ar.vuforia.StartupPipeline;
+import com.github.daemontus.ar.vuforia.TrackingStateTable;
 import com.github.daemontus.ar.vuforia.VuforiaException;
+import com.github.daemontus.ar.vuforia.VuforiaPlatform;
 import com.github.daemontus.ar.vuforia.VuforiaRenderer;
 import com.vuforia.CameraDevice;
-import com.vuforia.DataSet;
 import com.vuforia.HINT;
-import com.vuforia.ObjectTracker;
 import com.vuforia.STORAGE_TYPE;
-import com.vuforia.State;
-import com.vuforia.Tracker;
-import com.vuforia.TrackerManager;
-import com.vuforia.Vuforia;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 
 
 public class ArActivity extends AndroidApplication implements SessionControl {
 
     private static final String LOGTAG = "MAIN";
 
+    // Number of image targets in StonesAndChips.xml which can be tracked at once
+    private static final int MAX_SIMULTANEOUS_TARGETS = 2;
+
+    // Target databases, the first one is activated during start up
+    private static final String[] DATA_SETS = {"StonesAndChips.xml"};
+    private static final int MAX_ACTIVE_DATA_SETS = 4;
+    private static final int MAX_LOADED_DATA_SETS = 8;
+
+    // Start up stages running next to the Vuforia ones
+    private static final String STAGE_DATA_PREFETCH = "data-prefetch";
+    private static final String STAGE_MODEL_PREPARE = "model-prepare";
+    private static final String STAGE_MODEL_UPLOAD = "model-upload";
+    private static final String MARK_FIRST_TRACKED = "first tracked frame";
+
+    // Upload cached meshes with 16 bit positions, octahedral normals and 16 bit texture coordinates,
+    // off until the decoding shaders have been checked on devices. Their QuantizedShader lights per
+    // fragment and only with the first directional light, see its doc for how it differs
+    private static final boolean QUANTIZE_VERTICES = false;
+
+    // Draw content with the InstancedRenderer (GLES2 uniform array batches) instead of the
+    // ModelBatch, pays off with many copies of the same meshes, see Renderer.setCopies
+    private static final boolean INSTANCED_DRAWING = false;
+
+    // Count draw calls with libgdx's GLProfiler, it wraps every GL call so timings get worse
+    private static final boolean PROFILE_GL_CALLS = false;
+
+    private VuforiaPlatform platform;
     private AppSession session;
 
-    private DataSet posterDataSet;
+    private DataSetManager dataSets;
     private Engine mEngine;
+    private ModelPreloader preloader;
+    private volatile boolean firstTracked;
 
     VuforiaRenderer mRenderer;
 
@@ -45,10 +83,27 @@ public class ArActivity extends AndroidApplication implements SessionControl {
         setContentView(R.layout.activity_ar);
         Log.d(LOGTAG, "onCreate");
 
-        session = new AppSession(this);
-        session.initAR(this, ActivityInfo.SCREEN_ORIENTATION_PORTRAIT);
+        platform = new DeviceVuforiaPlatform(this, getString(R.string.vuforia_key));
+        session = new AppSession(this, platform);
 
         mRenderer = new VuforiaRenderer(session);
+        mRenderer.getTrackingState().addListener(new TrackingStateTable.Listener() {
+            @Override
+            public void onTrackableFound(int id, String name, double timestamp) {
+                Log.d(LOGTAG, "Found " + name);
+                session.onTrackableFound();
+                if (!firstTracked) {
+                    firstTracked = true;
+                    session.getStartup().mark(MARK_FIRST_TRACKED);
+                    Log.i(LOGTAG, session.getStartup().timeline());
+                }
+            }
+
+            @Override
+            public void onTrackableLost(int id, String name, double timestamp) {
+                Log.d(LOGTAG, "Lost " + name);
+            }
+        });
 
         FrameLayout container = (FrameLayout) findViewById(R.id.ar_container);
 
@@ -57,11 +112,85 @@ public class ArActivity extends AndroidApplication implements SessionControl {
         config.useCompass = false;
         //config.useGL20 = true;
 
-        mEngine = new Engine(mRenderer);
+        preloader = new ModelPreloader(Display.MODEL_FILE, Display.CACHE_FILE);
+        preloader.setQuantizeVertices(QUANTIZE_VERTICES);
+        mEngine = new Engine(mRenderer, preloader);
+        mEngine.setProfileGLCalls(PROFILE_GL_CALLS);
+        mEngine.setInstancing(INSTANCED_DRAWING);
         View glView = initializeForView(mEngine, config);
 
         container.addView(glView);
 
+        //Gdx.app is ready now, the GL stages can be queued
+        addStartupStages(session.getStartup());
+        session.initAR(ActivityInfo.SCREEN_ORIENTATION_PORTRAIT);
+    }
+
+    private void addStartupStages(StartupPipeline startup) {
+        //these stages only speed up the start, so they are optional: a failure must not stop AR
+
+        //pull the tracking databases into the page cache while Vuforia initializes
+        startup.add(STAGE_DATA_PREFETCH, optional(STAGE_DATA_PREFETCH, new StartupPipeline.Task() {
+            @Override
+            public void run(StartupPipeline.Progress progress) throws Exception {
+                byte[] buffer = new byte[64 * 1024];
+                for (int i = 0; i < DATA_SETS.length && !progress.isCancelled(); i++) {
+                    String xml = DATA_SETS[i];
+                    prefetch(xml, buffer);
+                    prefetch(xml.substring(0, xml.length() - ".xml".length()) + ".dat", buffer);
+                    progress.report(100 * (i + 1) / DATA_SETS.length);
+                }
+            }
+        }));
+
+        //without a prepared cache the display falls back to loading the model itself
+        startup.add(STAGE_MODEL_PREPARE, optional(STAGE_MODEL_PREPARE, new StartupPipeline.Task() {
+            @Override
+            public void run(StartupPipeline.Progress progress) {
+                preloader.prepare();
+            }
+        }));
+
+        //GPU upload of the cached meshes, the display picks them up on its next frame
+        startup.add(STAGE_MODEL_UPLOAD, optional(STAGE_MODEL_UPLOAD, new StartupPipeline.Task() {
+            @Override
+            public void run(StartupPipeline.Progress progress) {
+                preloader.upload();
+            }
+        }), new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                Gdx.app.postRunnable(command);
+            }
+        }, STAGE_MODEL_PREPARE);
+    }
+
+    //logs and swallows failures of the task, so the pipeline carries on
+    private static StartupPipeline.Task optional(final String stage, final StartupPipeline.Task task) {
+        return new StartupPipeline.Task() {
+            @Override
+            public void run(StartupPipeline.Progress progress) {
+                try {
+                    task.run(progress);
+                } catch (InterruptedException e) {
+                    //cancelled, the pipeline knows already
+                    Thread.currentThread().interrupt();
+                } catch (Exception e) {
+                    Log.w(LOGTAG, "Optional startup stage " + stage + " failed, continuing without it", e);
+                }
+            }
+        };
+    }
+
+    private void prefetch(String asset, byte[] buffer) throws IOException, InterruptedException {
+        InputStream input = getAssets().open(asset);
+        try {
+            while (input.read(buffer) != -1) {
+                if (Thread.interrupted()) throw new InterruptedException();
+            }
+        } finally {
+            input.close();
+        }
     }
 
 
@@ -71,6 +200,11 @@ public class ArActivity extends AndroidApplication implements SessionControl {
         super.onResume();
         Log.d(LOGTAG, "onResume");
 
+        //a session torn down while paused renders nothing until it is initialized again
+        if (!session.isARRunning()) {
+            mRenderer.mIsActive = false;
+        }
+
         //we do not resume AR here if splash screen is visible
         try {
             session.resumeAR();
@@ -93,6 +227,13 @@ public class ArActivity extends AndroidApplication implements SessionControl {
         }
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        //drops a warm suspended session when the system needs the memory
+        session.onTrimMemory(level);
+    }
+
     @Override
     public void onConfigurationChanged(Configuration config) {
         Log.d(LOGTAG, "onConfigurationChanged");
@@ -101,6 +242,15 @@ public class ArActivity extends AndroidApplication implements SessionControl {
     }
 
 
+    @Override
+    public void onCameraStarted() {
+        //the session applies its default focus mode first, the camera does not keep it over a pause
+        boolean result = platform.camera().setFocusMode(CameraDevice.FOCUS_MODE.FOCUS_MODE_CONTINUOUSAUTO);
+
+        if (!result) Log.e(LOGTAG, "Unable to enable continuous autofocus");
+    }
+
+
     @Override
     public void onInitARDone(VuforiaException exception) {
         if (exception == null) {
@@ -112,10 +262,6 @@ public class ArActivity extends AndroidApplication implements SessionControl {
                 Log.e(LOGTAG, e.getString());
             }
 
-            boolean result = CameraDevice.getInstance().setFocusMode(CameraDevice.FOCUS_MODE.FOCUS_MODE_CONTINUOUSAUTO);
-
-            if (!result) Log.e(LOGTAG, "Unable to enable continuous autofocus");
-
             try {
                 mEngine.resume();
             } catch (Exception e) {
@@ -142,60 +288,56 @@ public class ArActivity extends AndroidApplication implements SessionControl {
         } catch (VuforiaException e) {
             Log.e(LOGTAG, e.getString());
         }
-
-        System.gc();
     }
 
 
     @Override
     public boolean doInitTrackers() {
-        // Indicate if the trackers were initialized correctly
-        boolean result = true;
-
         // Initialize the image tracker:
-        TrackerManager trackerManager = TrackerManager.getInstance();
-        Tracker tracker = trackerManager.initTracker(ObjectTracker.getClassType());
-
-        if (tracker == null) {
+        if (!platform.tracker().init()) {
             Log.d(LOGTAG, "Failed to initialize ImageTracker.");
-            result = false;
+            return false;
         }
 
-        return result;
+        dataSets = new DataSetManager(platform.tracker(), MAX_ACTIVE_DATA_SETS, MAX_LOADED_DATA_SETS);
+        dataSets.setMemoryMeter(new DataSetManager.MemoryMeter() {
+            @Override
+            public long usedBytes() {
+                return Debug.getNativeHeapAllocatedSize();
+            }
+        });
+        for (int i = 0; i < DATA_SETS.length; i++) {
+            //earlier data sets are kept active longer
+            dataSets.add(DATA_SETS[i], STORAGE_TYPE.STORAGE_APPRESOURCE, DATA_SETS.length - i);
+        }
+        mRenderer.getTrackingState().addListener(dataSets);
+
+        return true;
     }
 
 
     @Override
     public boolean doLoadTrackersData() {
-        // Get the image tracker:
-        TrackerManager trackerManager = TrackerManager.getInstance();
-        ObjectTracker imageTracker = (ObjectTracker) trackerManager.getTracker(ObjectTracker.getClassType());
-
-        if (imageTracker == null) {
+        if (dataSets == null) {
             Log.d(LOGTAG, "Failed to load tracking data set because the ImageTracker has not been initialized.");
             return false;
         }
 
-        // Create the data sets:
-        posterDataSet = imageTracker.createDataSet();
-        if (posterDataSet == null) {
-            Log.d(LOGTAG, "Failed to create a new tracking data.");
-            return false;
-        }
-
-        // Load the data sets:
-        if (!posterDataSet.load("StonesAndChips.xml", STORAGE_TYPE.STORAGE_APPRESOURCE)) {
-            Log.d(LOGTAG, "Failed to load data set.");
+        // Load and activate the first data set, the others are activated on demand:
+        try {
+            if (!dataSets.activate(DATA_SETS[0]).get()) {
+                Log.d(LOGTAG, "Failed to load data set.");
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             return false;
-        }
-
-        // Activate the data set:
-        if (!imageTracker.activateDataSet(posterDataSet)) {
-            Log.d(LOGTAG, "Failed to activate data set.");
+        } catch (ExecutionException e) {
+            Log.e(LOGTAG, "Failed to load data set.", e.getCause());
             return false;
         }
 
-        Log.d(LOGTAG, "Successfully loaded and activated data set.");
+        Log.d(LOGTAG, "Successfully loaded and activated data set: " + dataSets.getStats().get(0));
         return true;
     }
 
@@ -203,15 +345,11 @@ public class ArActivity extends AndroidApplication implements SessionControl {
     @Override
     public boolean doStartTrackers() {
         // Indicate if the trackers were started correctly
-        boolean result = true;
+        boolean result = dataSets != null && dataSets.startTracking();
 
-        Tracker imageTracker = TrackerManager.getInstance().getTracker(
-                ObjectTracker.getClassType());
-        if (imageTracker != null) {
-            imageTracker.start();
-            Vuforia.setHint(HINT.HINT_MAX_SIMULTANEOUS_IMAGE_TARGETS, 1);
-        } else
-            result = false;
+        if (result) {
+            platform.setHint(HINT.HINT_MAX_SIMULTANEOUS_IMAGE_TARGETS, MAX_SIMULTANEOUS_TARGETS);
+        }
 
         return result;
     }
@@ -220,44 +358,28 @@ public class ArActivity extends AndroidApplication implements SessionControl {
     @Override
     public boolean doStopTrackers() {
         // Indicate if the trackers were stopped correctly
-        boolean result = true;
-
-        Tracker imageTracker = TrackerManager.getInstance().getTracker(
-                ObjectTracker.getClassType());
-        if (imageTracker != null)
-            imageTracker.stop();
-        else
-            result = false;
+        if (dataSets == null)
+            return false;
 
-        return result;
+        dataSets.stopTracking();
+        return true;
     }
 
 
     @Override
     public boolean doUnloadTrackersData() {
         // Indicate if the trackers were unloaded correctly
-        boolean result = true;
-
-        // Get the image tracker:
-        TrackerManager trackerManager = TrackerManager.getInstance();
-        ObjectTracker imageTracker = (ObjectTracker) trackerManager
-                .getTracker(ObjectTracker.getClassType());
-        if (imageTracker == null) {
-            Log.d(LOGTAG, "Failed to destroy the tracking data set because the ImageTracker has not been initialized.");
+        if (dataSets == null) {
+            Log.d(LOGTAG, "Failed to destroy the tracking data sets because the ImageTracker has not been initialized.");
             return false;
         }
 
-        if (posterDataSet != null) {
-            if (imageTracker.getActiveDataSet(0) == posterDataSet && !imageTracker.deactivateDataSet(posterDataSet)) {
-                Log.d(LOGTAG, "Failed to destroy the tracking data set StonesAndChips because the data set could not be deactivated.");
-                result = false;
-            } else if (!imageTracker.destroyDataSet(posterDataSet)) {
-                Log.d(LOGTAG, "Failed to destroy the tracking data set StonesAndChips.");
-                result = false;
-            }
-
-            posterDataSet = null;
+        mRenderer.getTrackingState().removeListener(dataSets);
+        boolean result = dataSets.close();
+        if (!result) {
+            Log.d(LOGTAG, "Failed to destroy the tracking data sets.");
         }
+        dataSets = null;
 
         return result;
     }
@@ -266,13 +388,14 @@ public class ArActivity extends AndroidApplication implements SessionControl {
     public boolean doDeinitTrackers() {
 
         // Deinit the image tracker:
-        TrackerManager trackerManager = TrackerManager.getInstance();
-        trackerManager.deinitTracker(ObjectTracker.getClassType());
+        platform.tracker().deinit();
 
         return true;
     }
 
     @Override
-    public void onQCARUpdate(State state) {
+    public void onQCARUpdate(PoseFrame frame) {
+        //tracking thread, hand the poses over to the renderer
+        mRenderer.onTrackingUpdate(frame);
     }
 }
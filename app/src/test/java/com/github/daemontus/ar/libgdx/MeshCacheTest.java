@@ -0,0 +1,202 @@
+package com.github.daemontus.ar.libgdx;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Round trip of {@link MeshCache} and its handling of stale, truncated and corrupted files.
+ */
+public class MeshCacheTest {
+
+    //magic, version, hash length and the 20 byte SHA-1, source load time
+    private static final int MESH_COUNT_OFFSET = 4 + 4 + 4 + 20 + 8;
+
+    private File file;
+    private byte[] hash;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("mesh-cache", ".bin");
+        hash = MeshCache.hash(new ByteArrayInputStream("jet.g3db".getBytes("UTF-8")));
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        new File(file.getPath() + ".tmp").delete();
+    }
+
+    private static CachedModel model() {
+        CachedModel model = new CachedModel();
+        model.sourceLoadMillis = 1234;
+
+        CachedModel.MeshData mesh = new CachedModel.MeshData();
+        mesh.usage = new int[] { 1, 8 };
+        mesh.numComponents = new int[] { 3, 3 };
+        mesh.type = new int[] { 5126, 5126 };
+        mesh.normalized = new boolean[] { false, true };
+        mesh.unit = new int[] { 0, 0 };
+        mesh.alias = new String[] { "a_position", "a_normal" };
+        float[] vertices = new float[4 * 6];
+        for (int i = 0; i < vertices.length; i++) {
+            vertices[i] = i * 0.25f - 2f;
+        }
+        mesh.vertices = FloatBuffer.wrap(vertices);
+        //odd count, so the index block needs padding
+        mesh.indices = ShortBuffer.wrap(new short[] { 0, 1, 2, 2, 1, 3, 0, 2, 3 });
+        model.meshes.add(mesh);
+
+        CachedModel.PartData part = new CachedModel.PartData();
+        part.id = "body";
+        part.mesh = 0;
+        part.primitiveType = 4;
+        part.offset = 0;
+        part.size = 9;
+        model.parts.add(part);
+
+        CachedModel.MaterialData material = new CachedModel.MaterialData();
+        material.id = "paint";
+        material.flags = CachedModel.MaterialData.DIFFUSE | CachedModel.MaterialData.DIFFUSE_TEXTURE;
+        material.diffuse[0] = 0.5f;
+        material.diffuse[3] = 1f;
+        material.shininess = 20f;
+        material.texture = "jet.png";
+        material.minFilter = 9729;
+        model.materials.add(material);
+
+        CachedModel.NodeData root = new CachedModel.NodeData();
+        root.id = "root";
+        root.transform[6] = 1f;
+        model.nodes.add(root);
+        CachedModel.NodeData child = new CachedModel.NodeData();
+        child.id = "jet";
+        child.parent = 0;
+        child.transform[0] = 3f;
+        child.parts = new int[] { 0 };
+        child.materials = new int[] { 0 };
+        model.nodes.add(child);
+        return model;
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        CachedModel written = model();
+        MeshCache.write(file, hash, written);
+        CachedModel read = MeshCache.read(file, hash);
+        assertNotNull(read);
+
+        assertEquals(written.sourceLoadMillis, read.sourceLoadMillis);
+        assertEquals(1, read.meshes.size());
+        CachedModel.MeshData expected = written.meshes.get(0);
+        CachedModel.MeshData mesh = read.meshes.get(0);
+        assertArrayEquals(expected.alias, mesh.alias);
+        assertEquals(expected.normalized[1], mesh.normalized[1]);
+        assertEquals(expected.numComponents[1], mesh.numComponents[1]);
+        assertEquals(expected.vertices.capacity(), mesh.vertices.remaining());
+        for (int i = 0; i < expected.vertices.capacity(); i++) {
+            assertEquals(expected.vertices.get(i), mesh.vertices.get(i), 0f);
+        }
+        assertEquals(expected.indices.capacity(), mesh.indices.remaining());
+        for (int i = 0; i < expected.indices.capacity(); i++) {
+            assertEquals(expected.indices.get(i), mesh.indices.get(i));
+        }
+
+        assertEquals("body", read.parts.get(0).id);
+        assertEquals(9, read.parts.get(0).size);
+        CachedModel.MaterialData material = read.materials.get(0);
+        assertEquals("paint", material.id);
+        assertEquals(written.materials.get(0).flags, material.flags);
+        assertEquals(0.5f, material.diffuse[0], 0f);
+        assertEquals(20f, material.shininess, 0f);
+        assertEquals("jet.png", material.texture);
+        assertEquals(2, read.nodes.size());
+        assertEquals(0, read.nodes.get(1).parent);
+        assertEquals(3f, read.nodes.get(1).transform[0], 0f);
+        assertEquals(0, read.nodes.get(1).materials[0]);
+    }
+
+    @Test
+    public void staleHashIsMiss() throws IOException {
+        MeshCache.write(file, hash, model());
+        byte[] other = MeshCache.hash(new ByteArrayInputStream("jet2.g3db".getBytes("UTF-8")));
+        assertNull(MeshCache.read(file, other));
+    }
+
+    @Test
+    public void missingFileIsMiss() throws IOException {
+        file.delete();
+        assertNull(MeshCache.read(file, hash));
+    }
+
+    @Test
+    public void truncatedFileIsMiss() throws IOException {
+        MeshCache.write(file, hash, model());
+        long length = file.length();
+        //every cut inside the data, including the empty file
+        for (long cut = length - 1; cut >= 0; cut--) {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(cut);
+            } finally {
+                raf.close();
+            }
+            assertNull("cut at " + cut, MeshCache.read(file, hash));
+        }
+    }
+
+    @Test
+    public void corruptedCountsAreMiss() throws IOException {
+        int[] counts = { -1, Integer.MIN_VALUE, Integer.MAX_VALUE, 1 << 28 };
+        for (int count : counts) {
+            //mesh count and the attribute count of the first mesh
+            for (int offset = MESH_COUNT_OFFSET; offset <= MESH_COUNT_OFFSET + 4; offset += 4) {
+                MeshCache.write(file, hash, model());
+                putInt(offset, count);
+                assertNull("count " + count + " at " + offset, MeshCache.read(file, hash));
+            }
+        }
+    }
+
+    @Test
+    public void corruptedBytesNeverThrow() throws IOException {
+        MeshCache.write(file, hash, model());
+        long length = file.length();
+        Random random = new Random(7);
+        for (int i = 0; i < 500; i++) {
+            MeshCache.write(file, hash, model());
+            //leave the header alone, a broken header is a plain miss
+            int offset = (MESH_COUNT_OFFSET + random.nextInt((int) length - MESH_COUNT_OFFSET - 4)) & ~3;
+            putInt(offset, random.nextBoolean() ? random.nextInt() : -random.nextInt(64));
+            //either a model with garbage values or a miss, but no exception
+            MeshCache.read(file, hash);
+        }
+    }
+
+    private void putInt(int offset, int value) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0, value);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(offset);
+            raf.write(buffer.array());
+        } finally {
+            raf.close();
+        }
+    }
+}
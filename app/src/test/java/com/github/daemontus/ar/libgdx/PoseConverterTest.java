@@ -0,0 +1,88 @@
+package com.github.daemontus.ar.libgdx;
+
+import com.github.daemontus.ar.vuforia.MatrixMath;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Checks that {@link PoseConverter#setPose} produces a rigid inverse and does not allocate.
+ */
+public class PoseConverterTest {
+
+    private static final int ITERATIONS = 100000;
+    private static final int POSES = 64;
+    private static final int ROUNDS = 5;
+
+    //row-major 3x4 pose rotated by angle around a tilted axis, 300 units in front of the camera
+    private static void pose(float angle, float[] out, int offset) {
+        float x = 0.36f, y = 0.48f, z = 0.8f;
+        float c = (float) Math.cos(angle), s = (float) Math.sin(angle), t = 1 - c;
+        float[] pose = {
+                t * x * x + c, t * x * y - s * z, t * x * z + s * y, 12f,
+                t * x * y + s * z, t * y * y + c, t * y * z - s * x, -7f,
+                t * x * z - s * y, t * y * z + s * x, t * z * z + c, 300f
+        };
+        System.arraycopy(pose, 0, out, offset, 12);
+    }
+
+    @Test
+    public void inverseUndoesModelView() {
+        float[] pose = new float[12];
+        float[] identity = new float[16];
+        float[] product = new float[16];
+        MatrixMath.identity(identity, 0);
+        PoseConverter converter = new PoseConverter();
+        for (int i = 0; i < 8; i++) {
+            pose(i * 0.8f, pose, 0);
+            converter.setPose(pose, 0, i % 2 == 0);
+            MatrixMath.multiply(converter.getModelView(), 0, converter.getInverseModelView(), 0, product, 0);
+            assertArrayEquals(identity, product, 1e-3f);
+        }
+    }
+
+    @Test
+    public void setPoseDoesNotAllocate() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long thread = Thread.currentThread().getId();
+
+        float[] poses = new float[POSES * 12];
+        for (int i = 0; i < POSES; i++) {
+            pose(i * 0.02f, poses, i * 12);
+        }
+        PoseConverter converter = new PoseConverter();
+
+        //warm up, so class loading and compilation are not counted
+        float sink = run(converter, poses);
+        //the first rounds may still see allocations of the compiler transitions, a per-call
+        //allocation would show up in every round
+        long allocated = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long before = threads.getThreadAllocatedBytes(thread);
+            sink += run(converter, poses);
+            allocated = Math.min(allocated, threads.getThreadAllocatedBytes(thread) - before);
+        }
+
+        assertEquals("bytes allocated by " + ITERATIONS + " setPose calls", 0L, allocated);
+        //keep the results alive
+        assertEquals(sink, sink, 0f);
+    }
+
+    private static float run(PoseConverter converter, float[] poses) {
+        float sink = 0f;
+        for (int i = 0; i < ITERATIONS; i++) {
+            converter.setPose(poses, (i % POSES) * 12, (i & 1) == 0);
+            sink += converter.getInverseModelView()[12];
+        }
+        return sink;
+    }
+}
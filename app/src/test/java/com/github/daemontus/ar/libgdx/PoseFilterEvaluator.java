@@ -0,0 +1,87 @@
+package com.github.daemontus.ar.libgdx;
+
+/**
+ * Replays a pose sequence through a {@link PoseFilter} and measures jitter and lag, used by the
+ * filter tests to check (and tune) filter settings offline.
+ *
+ * Jitter is the RMS of the second difference of the translation (frame to frame acceleration,
+ * in pose units), which is what shows up as shaking on screen. Lag is the time shift of the raw
+ * sequence that best matches the filtered one; negative lag means the filter predicts ahead.
+ */
+class PoseFilterEvaluator {
+
+    static class Result {
+        public float rawJitter;
+        public float filteredJitter;
+        //seconds, positive if the filtered pose trails the raw one
+        public float lag;
+
+        @Override
+        public String toString() {
+            return "jitter " + rawJitter + " -> " + filteredJitter + ", lag " + (lag * 1000f) + " ms";
+        }
+    }
+
+    //largest shift (in frames) considered when estimating lag
+    private static final int MAX_SHIFT = 15;
+
+    private PoseFilterEvaluator() {
+    }
+
+    /**
+     * @param timestamps capture time of every frame in seconds
+     * @param poses row-major 3x4 poses, 12 floats per frame, not modified
+     * @param count number of frames
+     */
+    static Result evaluate(PoseFilter filter, double[] timestamps, float[] poses, int count) {
+        float[] filtered = new float[count * 12];
+        System.arraycopy(poses, 0, filtered, 0, count * 12);
+        filter.reset(0);
+        for (int i = 0; i < count; i++) {
+            filter.filter(0, filtered, i * 12, timestamps[i]);
+        }
+
+        Result result = new Result();
+        result.rawJitter = jitter(poses, count);
+        result.filteredJitter = jitter(filtered, count);
+
+        int bestShift = 0;
+        double bestError = Double.POSITIVE_INFINITY;
+        for (int shift = -MAX_SHIFT; shift <= MAX_SHIFT; shift++) {
+            double error = 0;
+            int samples = 0;
+            for (int i = Math.max(0, shift); i < count && i - shift < count; i++) {
+                error += distance2(filtered, i, poses, i - shift);
+                samples++;
+            }
+            if (samples > 0 && error / samples < bestError) {
+                bestError = error / samples;
+                bestShift = shift;
+            }
+        }
+        double frame = count > 1 ? (timestamps[count - 1] - timestamps[0]) / (count - 1) : 0;
+        result.lag = (float) (bestShift * frame);
+        return result;
+    }
+
+    private static float jitter(float[] poses, int count) {
+        if (count < 3) return 0f;
+        double sum = 0;
+        for (int i = 1; i < count - 1; i++) {
+            for (int k = 3; k < 12; k += 4) {
+                double a = poses[(i + 1) * 12 + k] - 2 * poses[i * 12 + k] + poses[(i - 1) * 12 + k];
+                sum += a * a;
+            }
+        }
+        return (float) Math.sqrt(sum / (count - 2));
+    }
+
+    private static double distance2(float[] a, int i, float[] b, int j) {
+        double sum = 0;
+        for (int k = 3; k < 12; k += 4) {
+            double d = a[i * 12 + k] - b[j * 12 + k];
+            sum += d * d;
+        }
+        return sum;
+    }
+}
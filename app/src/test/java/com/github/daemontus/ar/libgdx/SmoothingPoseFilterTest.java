@@ -0,0 +1,85 @@
+package com.github.daemontus.ar.libgdx;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays a synthetic noisy tracking trace through {@link SmoothingPoseFilter} and checks that it
+ * removes jitter without trailing the motion.
+ */
+public class SmoothingPoseFilterTest {
+
+    private static final int FRAMES = 300;
+    private static final double FRAME_TIME = 1.0 / 30.0;
+    //noise of the tracked position in pose units (millimetres), and of the rotation in radians
+    private static final double POSITION_NOISE = 0.5;
+    private static final double ROTATION_NOISE = 0.002;
+
+    //a target moving 40 mm side to side and slowly turning, 300 mm in front of the camera
+    private static void trace(double[] timestamps, float[] poses, boolean noisy) {
+        Random random = new Random(42);
+        double noise = noisy ? POSITION_NOISE : 0;
+        double rotationNoise = noisy ? ROTATION_NOISE : 0;
+        for (int i = 0; i < FRAMES; i++) {
+            double t = i * FRAME_TIME;
+            timestamps[i] = t;
+            double angle = 0.3 * Math.sin(2 * Math.PI * 0.2 * t) + rotationNoise * random.nextGaussian();
+            float c = (float) Math.cos(angle), s = (float) Math.sin(angle);
+            int o = i * 12;
+            poses[o] = c;
+            poses[o + 1] = 0f;
+            poses[o + 2] = s;
+            poses[o + 3] = (float) (40 * Math.sin(2 * Math.PI * 0.5 * t) + noise * random.nextGaussian());
+            poses[o + 4] = 0f;
+            poses[o + 5] = 1f;
+            poses[o + 6] = 0f;
+            poses[o + 7] = (float) (10 * Math.cos(2 * Math.PI * 0.3 * t) + noise * random.nextGaussian());
+            poses[o + 8] = -s;
+            poses[o + 9] = 0f;
+            poses[o + 10] = c;
+            poses[o + 11] = (float) (300 + noise * random.nextGaussian());
+        }
+    }
+
+    private static PoseFilterEvaluator.Result replay(SmoothingPoseFilter filter) {
+        double[] timestamps = new double[FRAMES];
+        float[] poses = new float[FRAMES * 12];
+        trace(timestamps, poses, true);
+        return PoseFilterEvaluator.evaluate(filter, timestamps, poses, FRAMES);
+    }
+
+    @Test
+    public void reducesJitter() {
+        PoseFilterEvaluator.Result result = replay(new SmoothingPoseFilter());
+        //prediction extrapolates with the (noisy) velocity, so it gives back part of the smoothing
+        assertTrue(result.toString(), result.filteredJitter < result.rawJitter * 0.75f);
+    }
+
+    @Test
+    public void predictionKeepsUpWithMotion() {
+        PoseFilterEvaluator.Result result = replay(new SmoothingPoseFilter());
+        //at most one camera frame behind or ahead
+        assertTrue(result.toString(), Math.abs(result.lag) <= FRAME_TIME + 1e-6);
+    }
+
+    @Test
+    public void lagWithoutPredictionIsBounded() {
+        SmoothingPoseFilter filter = new SmoothingPoseFilter();
+        filter.setPrediction(0f);
+        PoseFilterEvaluator.Result result = replay(filter);
+        assertTrue(result.toString(), result.filteredJitter < result.rawJitter * 0.6f);
+        assertTrue(result.toString(), result.lag >= 0f && result.lag <= 3 * FRAME_TIME + 1e-6);
+    }
+
+    @Test
+    public void cleanTraceIsNotDistorted() {
+        double[] timestamps = new double[FRAMES];
+        float[] poses = new float[FRAMES * 12];
+        trace(timestamps, poses, false);
+        PoseFilterEvaluator.Result result = PoseFilterEvaluator.evaluate(new SmoothingPoseFilter(), timestamps, poses, FRAMES);
+        assertTrue(result.toString(), Math.abs(result.lag) <= FRAME_TIME + 1e-6);
+    }
+}
@@ -0,0 +1,120 @@
+package com.github.daemontus.ar.libgdx;
+
+import com.badlogic.gdx.math.Intersector;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.Ray;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares {@link TriangleBvh} queries with brute force picking over all triangles.
+ */
+public class TriangleBvhTest {
+
+    private static final int TRIANGLES = 1000;
+    private static final int RAYS = 5000;
+
+    //triangles up to 20 units wide scattered in a 100 unit box, like the parts of a model
+    private static float[] soup(Random random, int count) {
+        float[] vertices = new float[count * 9];
+        for (int t = 0; t < count; t++) {
+            float cx = random.nextFloat() * 100f, cy = random.nextFloat() * 100f, cz = random.nextFloat() * 100f;
+            for (int k = 0; k < 9; k += 3) {
+                vertices[t * 9 + k] = cx + (random.nextFloat() - 0.5f) * 20f;
+                vertices[t * 9 + k + 1] = cy + (random.nextFloat() - 0.5f) * 20f;
+                vertices[t * 9 + k + 2] = cz + (random.nextFloat() - 0.5f) * 20f;
+            }
+        }
+        return vertices;
+    }
+
+    //closest hit in units of the direction, -1 for a miss
+    private static float bruteForce(float[] vertices, int count, Ray ray) {
+        Vector3 a = new Vector3(), b = new Vector3(), c = new Vector3();
+        Vector3 hit = new Vector3();
+        float best = -1;
+        for (int t = 0; t < count; t++) {
+            int v = t * 9;
+            a.set(vertices[v], vertices[v + 1], vertices[v + 2]);
+            b.set(vertices[v + 3], vertices[v + 4], vertices[v + 5]);
+            c.set(vertices[v + 6], vertices[v + 7], vertices[v + 8]);
+            if (Intersector.intersectRayTriangle(ray, a, b, c, hit)) {
+                float d = hit.dst(ray.origin) / ray.direction.len();
+                if (best < 0 || d < best) best = d;
+            }
+        }
+        return best;
+    }
+
+    @Test
+    public void closestHitMatchesBruteForce() {
+        Random random = new Random(11);
+        float[] vertices = soup(random, TRIANGLES);
+        TriangleBvh tree = new TriangleBvh(vertices, TRIANGLES);
+        assertEquals(TRIANGLES, tree.getTriangleCount());
+
+        Ray ray = new Ray(new Vector3(), new Vector3());
+        int hits = 0;
+        for (int i = 0; i < RAYS; i++) {
+            //from a point around the box towards a point inside it, unnormalized like a model space pick ray
+            ray.origin.set(random.nextFloat() * 300f - 100f, random.nextFloat() * 300f - 100f, -150f);
+            ray.direction.set(random.nextFloat() * 100f, random.nextFloat() * 100f, random.nextFloat() * 100f)
+                    .sub(ray.origin).scl(0.01f + random.nextFloat());
+            Vector3 o = ray.origin, d = ray.direction;
+
+            float expected = bruteForce(vertices, TRIANGLES, ray);
+            float actual = tree.intersect(o.x, o.y, o.z, d.x, d.y, d.z, Float.POSITIVE_INFINITY);
+            if (expected < 0) {
+                assertEquals("ray " + i, -1f, actual, 0f);
+            } else {
+                hits++;
+                assertEquals("ray " + i, expected, actual, expected * 1e-4f);
+                assertTrue(tree.getLastTriangle() >= 0);
+            }
+        }
+        //most rays go through the cloud, so the traversal is exercised
+        assertTrue("hits " + hits, hits > RAYS / 2);
+    }
+
+    @Test
+    public void hitsBeyondMaxTAreIgnored() {
+        Random random = new Random(12);
+        float[] vertices = soup(random, TRIANGLES);
+        TriangleBvh tree = new TriangleBvh(vertices, TRIANGLES);
+
+        Ray ray = new Ray(new Vector3(), new Vector3(0f, 0f, 1f));
+        for (int i = 0; i < 100; i++) {
+            float x = random.nextFloat() * 100f, y = random.nextFloat() * 100f;
+            ray.origin.set(x, y, -50f);
+            float closest = bruteForce(vertices, TRIANGLES, ray);
+            if (closest < 0) continue;
+            assertEquals(closest, tree.intersect(x, y, -50f, 0f, 0f, 1f, closest * 1.001f), closest * 1e-4f);
+            assertEquals(-1f, tree.intersect(x, y, -50f, 0f, 0f, 1f, closest * 0.999f), 0f);
+        }
+    }
+
+    @Test
+    public void rayStartingInsideHitsOnlyAhead() {
+        //a single triangle behind the origin is not hit, the one in front is
+        float[] vertices = {
+                -1f, -1f, -5f, 1f, -1f, -5f, 0f, 1f, -5f,
+                -1f, -1f, 5f, 1f, -1f, 5f, 0f, 1f, 5f,
+        };
+        TriangleBvh tree = new TriangleBvh(vertices, 2);
+        assertEquals(5f, tree.intersect(0f, 0f, 0f, 0f, 0f, 1f, Float.POSITIVE_INFINITY), 1e-5f);
+        assertEquals(2.5f, tree.intersect(0f, 0f, 0f, 0f, 0f, 2f, Float.POSITIVE_INFINITY), 1e-5f);
+        assertEquals(-1f, tree.intersect(0f, 0f, 0f, 1f, 0f, 0f, Float.POSITIVE_INFINITY), 0f);
+    }
+
+    @Test
+    public void emptyTreeMisses() {
+        TriangleBvh tree = new TriangleBvh(new float[0], 0);
+        assertEquals(-1f, tree.intersect(0f, 0f, 0f, 0f, 0f, 1f, Float.POSITIVE_INFINITY), 0f);
+        assertEquals(-1, tree.getLastTriangle());
+    }
+}
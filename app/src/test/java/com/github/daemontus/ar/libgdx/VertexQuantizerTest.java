@@ -0,0 +1,194 @@
+package com.github.daemontus.ar.libgdx;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Decodes meshes quantized by {@link VertexQuantizer} the way the shader does and checks the
+ * error against the quantization step.
+ */
+public class VertexQuantizerTest {
+
+    private static final int VERTICES = 2000;
+    //position (3), normal (3), color (4) and texture coordinates (2)
+    private static final int STRIDE = 12;
+    //relative float error of the decode arithmetic on top of half a quantization step
+    private static final float EPSILON = 1e-6f;
+    //octahedral coordinates are quantized to 2 / MAX steps and y loses its lowest bit to the
+    //NaN guard, which keeps the angle error below ~1e-4 radians
+    private static final double MAX_ANGLE = 2e-4;
+
+    private static CachedModel.MeshData mesh(float[] vertices) {
+        CachedModel.MeshData mesh = new CachedModel.MeshData();
+        mesh.usage = new int[] { 1, 8, 2, 16 };
+        mesh.numComponents = new int[] { 3, 3, 4, 2 };
+        mesh.type = new int[] { 0x1406, 0x1406, 0x1406, 0x1406 };
+        mesh.normalized = new boolean[] { false, false, false, false };
+        mesh.unit = new int[] { 0, 0, 0, 0 };
+        mesh.alias = new String[] { "a_position", "a_normal", "a_color", "a_texCoord0" };
+        mesh.vertices = FloatBuffer.wrap(vertices);
+        mesh.indices = ShortBuffer.wrap(new short[] { 0, 1, 2 });
+        return mesh;
+    }
+
+    private static float[] randomVertices(Random random) {
+        float[] vertices = new float[VERTICES * STRIDE];
+        for (int v = 0; v < VERTICES; v++) {
+            int o = v * STRIDE;
+            //an off-center, flat box, so every axis has its own extent
+            vertices[o] = 120f + random.nextFloat() * 500f;
+            vertices[o + 1] = -30f + random.nextFloat() * 60f;
+            vertices[o + 2] = random.nextFloat() * 3f;
+            float[] normal = randomUnit(random);
+            System.arraycopy(normal, 0, vertices, o + 3, 3);
+            for (int c = 0; c < 4; c++) {
+                vertices[o + 6 + c] = random.nextInt(3) == 0 ? 1f : random.nextFloat();
+            }
+            vertices[o + 10] = random.nextFloat();
+            vertices[o + 11] = -2f + random.nextFloat() * 4f;
+        }
+        return vertices;
+    }
+
+    private static float[] randomUnit(Random random) {
+        float x = (float) random.nextGaussian();
+        float y = (float) random.nextGaussian();
+        float z = (float) random.nextGaussian();
+        float length = (float) Math.sqrt(x * x + y * y + z * z);
+        return new float[] { x / length, y / length, z / length };
+    }
+
+    //angle between the normal and its octahedral round trip through 16 bit values
+    private static double roundTripAngle(float x, float y, float z) {
+        float[] encoded = new float[2];
+        VertexQuantizer.encodeOctahedral(x, y, z, encoded);
+        int qx = VertexQuantizer.quantize(encoded[0], -1f, 2f);
+        //the NaN guard clears the lowest bit of y
+        int qy = VertexQuantizer.quantize(encoded[1], -1f, 2f) & ~1;
+        float[] decoded = new float[3];
+        VertexQuantizer.decodeOctahedral(VertexQuantizer.dequantize(qx, -1f, 2f),
+                VertexQuantizer.dequantize(qy, -1f, 2f), decoded);
+        return angle(x, y, z, decoded);
+    }
+
+    //atan2 of the cross and dot products, acos of a float dot product cannot resolve 1e-4 radians
+    private static double angle(double x, double y, double z, float[] decoded) {
+        double cx = y * decoded[2] - z * decoded[1];
+        double cy = z * decoded[0] - x * decoded[2];
+        double cz = x * decoded[1] - y * decoded[0];
+        double dot = x * decoded[0] + y * decoded[1] + z * decoded[2];
+        return Math.atan2(Math.sqrt(cx * cx + cy * cy + cz * cz), dot);
+    }
+
+    @Test
+    public void positionErrorIsWithinHalfAStep() {
+        float[] vertices = randomVertices(new Random(1));
+        VertexQuantizer.Result result = VertexQuantizer.quantize(mesh(vertices));
+        assertNotNull(result);
+        FloatBuffer out = result.mesh.vertices;
+        int outStride = out.capacity() / VERTICES;
+        assertEquals(5, outStride);
+        for (int c = 0; c < 3; c++) {
+            float min = result.decode[c];
+            float extent = result.decode[3 + c];
+            float bound = extent / VertexQuantizer.MAX * 0.5f + extent * EPSILON;
+            for (int v = 0; v < VERTICES; v++) {
+                int high = VertexQuantizer.unpack(out.get(v * outStride), c);
+                int low = VertexQuantizer.unpack(out.get(v * outStride + 1), c);
+                float decoded = VertexQuantizer.dequantize(VertexQuantizer.join(high, low), min, extent);
+                float expected = vertices[v * STRIDE + c];
+                assertEquals("vertex " + v + " axis " + c, expected, decoded, bound);
+            }
+        }
+    }
+
+    @Test
+    public void textureErrorIsWithinTheLowBitAndHalfAStep() {
+        float[] vertices = randomVertices(new Random(2));
+        VertexQuantizer.Result result = VertexQuantizer.quantize(mesh(vertices));
+        FloatBuffer out = result.mesh.vertices;
+        for (int c = 0; c < 2; c++) {
+            float min = result.decode[6 + c];
+            float extent = result.decode[8 + c];
+            //v loses its lowest bit to the NaN guard
+            float steps = c == 0 ? 0.5f : 1.5f;
+            float bound = extent / VertexQuantizer.MAX * steps + extent * EPSILON;
+            for (int v = 0; v < VERTICES; v++) {
+                float packed = out.get(v * 5 + 4);
+                int q = VertexQuantizer.join(VertexQuantizer.unpack(packed, 2 * c), VertexQuantizer.unpack(packed, 2 * c + 1));
+                float decoded = VertexQuantizer.dequantize(q, min, extent);
+                assertEquals("vertex " + v + " component " + c, vertices[v * STRIDE + 10 + c], decoded, bound);
+            }
+        }
+    }
+
+    @Test
+    public void octahedralRoundTrip() {
+        Random random = new Random(3);
+        int lower = 0;
+        for (int i = 0; i < 100000; i++) {
+            float[] n = randomUnit(random);
+            if (n[2] < 0f) lower++;
+            double angle = roundTripAngle(n[0], n[1], n[2]);
+            assertTrue("normal " + n[0] + ", " + n[1] + ", " + n[2] + " off by " + angle, angle < MAX_ANGLE);
+        }
+        //the folded lower hemisphere is covered
+        assertTrue(lower > 40000);
+    }
+
+    @Test
+    public void octahedralPolesAndFoldEdges() {
+        float s = (float) Math.sqrt(0.5);
+        float[][] normals = {
+                { 0f, 0f, 1f }, { 0f, 0f, -1f },
+                { 1f, 0f, 0f }, { -1f, 0f, 0f }, { 0f, 1f, 0f }, { 0f, -1f, 0f },
+                { s, s, 0f }, { -s, s, 0f }, { s, -s, 0f }, { -s, -s, 0f },
+                { s, 0f, -s }, { 0f, -s, -s }, { -s, 0f, -s }, { 0f, s, -s },
+                //just below and above the equator
+                { 1f, 0f, -1e-4f }, { 0f, -1f, 1e-4f },
+                //next to the lower pole, where the fold is most sensitive
+                { 1e-4f, -1e-4f, -1f }, { -1e-3f, 1e-3f, -1f },
+        };
+        for (float[] n : normals) {
+            double angle = roundTripAngle(n[0], n[1], n[2]);
+            assertTrue("normal " + n[0] + ", " + n[1] + ", " + n[2] + " off by " + angle, angle < MAX_ANGLE);
+        }
+    }
+
+    @Test
+    public void zeroNormalMapsToUp() {
+        float[] encoded = new float[2];
+        VertexQuantizer.encodeOctahedral(0f, 0f, 0f, encoded);
+        float[] decoded = new float[3];
+        VertexQuantizer.decodeOctahedral(encoded[0], encoded[1], decoded);
+        assertEquals(1f, decoded[2], 0f);
+    }
+
+    @Test
+    public void noPackedValueIsNaN() {
+        Random random = new Random(4);
+        float[] vertices = randomVertices(random);
+        //saturated colors and extreme coordinates fill every byte with 0xFF
+        for (int v = 0; v < VERTICES; v += 2) {
+            int o = v * STRIDE;
+            vertices[o] = vertices[o + 1] = vertices[o + 2] = 1000f;
+            vertices[o + 3] = 0f;
+            vertices[o + 4] = 1f;
+            vertices[o + 5] = 0f;
+            vertices[o + 6] = vertices[o + 7] = vertices[o + 8] = vertices[o + 9] = 1f;
+            vertices[o + 10] = vertices[o + 11] = 100f;
+        }
+        FloatBuffer out = VertexQuantizer.quantize(mesh(vertices)).mesh.vertices;
+        for (int i = 0; i < out.capacity(); i++) {
+            assertFalse("value " + i, Float.isNaN(out.get(i)));
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.github.daemontus.ar.vuforia;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link AppSession} and {@link VuforiaRenderer} running against {@link FakeVuforiaPlatform}.
+ */
+public class AppSessionTest implements SessionControl {
+
+    //ActivityInfo.SCREEN_ORIENTATION_PORTRAIT
+    private static final int PORTRAIT = 1;
+
+    private final FakeVuforiaPlatform platform = new FakeVuforiaPlatform();
+    private final CountDownLatch ready = new CountDownLatch(1);
+    private volatile VuforiaException error;
+    private AppSession session;
+    private VuforiaRenderer renderer;
+    private VuforiaDataSet dataSet;
+
+    @Before
+    public void setUp() throws Exception {
+        platform.setStrict(true);
+        platform.addTarget(3, "stones", new float[PoseFrame.POSE_SIZE]);
+        session = new AppSession(this, platform);
+        renderer = new VuforiaRenderer(session);
+        renderer.initRendering();
+        session.initAR(PORTRAIT);
+        assertTrue(ready.await(5, TimeUnit.SECONDS));
+        assertNull(error);
+        assertTrue(session.isARRunning());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        session.stopAR();
+        assertEquals(0, platform.getViolationCount());
+    }
+
+    @Test
+    public void tracksAfterStart() {
+        assertEquals(PORTRAIT, platform.getScreenOrientation());
+        platform.deliverUpdate();
+        assertEquals(1, renderer.processFrame().getCount());
+        assertTrue(renderer.getTrackingState().isTracked(3));
+    }
+
+    @Test
+    public void warmSuspendDropsTrackingState() throws Exception {
+        platform.deliverUpdate();
+        assertEquals(1, renderer.processFrame().getCount());
+
+        session.pauseAR();
+        //the last poses are still fresh, but nothing is tracked while suspended
+        assertFalse(renderer.getTrackingState().isTracked(3));
+        assertEquals(0, renderer.processFrame().getCount());
+
+        session.resumeAR();
+        assertTrue(session.isARRunning());
+        assertEquals(0, renderer.processFrame().getCount());
+        platform.deliverUpdate();
+        assertEquals(1, renderer.processFrame().getCount());
+        assertTrue(renderer.getTrackingState().isTracked(3));
+    }
+
+    @Override
+    public boolean doInitTrackers() {
+        return platform.tracker().init();
+    }
+
+    @Override
+    public boolean doLoadTrackersData() {
+        dataSet = platform.tracker().createDataSet();
+        return dataSet.load("StonesAndChips.xml", 1) && platform.tracker().activateDataSet(dataSet);
+    }
+
+    @Override
+    public boolean doStartTrackers() {
+        return platform.tracker().start();
+    }
+
+    @Override
+    public boolean doStopTrackers() {
+        platform.tracker().stop();
+        return true;
+    }
+
+    @Override
+    public boolean doUnloadTrackersData() {
+        return platform.tracker().deactivateDataSet(dataSet) && platform.tracker().destroyDataSet(dataSet);
+    }
+
+    @Override
+    public boolean doDeinitTrackers() {
+        return platform.tracker().deinit();
+    }
+
+    @Override
+    public void onInitARDone(VuforiaException exception) {
+        //fake main thread
+        error = exception;
+        if (exception == null) {
+            renderer.mIsActive = true;
+            try {
+                session.startAR(VuforiaCamera.DIRECTION_DEFAULT);
+            } catch (VuforiaException e) {
+                error = e;
+            }
+        }
+        ready.countDown();
+    }
+
+    @Override
+    public void onQCARUpdate(PoseFrame frame) {
+        renderer.onTrackingUpdate(frame);
+    }
+
+    @Override
+    public void onCameraStarted() {
+    }
+}
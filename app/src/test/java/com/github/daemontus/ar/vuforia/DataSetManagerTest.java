@@ -0,0 +1,270 @@
+package com.github.daemontus.ar.vuforia;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Swapping of data sets by {@link DataSetManager} against an in-memory tracker.
+ */
+public class DataSetManagerTest {
+
+    private static final int STORAGE = 1;
+
+    private final FakeTracker tracker = new FakeTracker();
+    private DataSetManager manager;
+
+    @After
+    public void tearDown() {
+        if (manager != null) manager.close();
+    }
+
+    private DataSetManager create(int maxActive, int maxLoaded, String... paths) {
+        manager = new DataSetManager(tracker, maxActive, maxLoaded);
+        for (int i = 0; i < paths.length; i++) {
+            //earlier paths have higher priority, like in ArActivity
+            manager.add(paths[i], STORAGE, paths.length - i);
+        }
+        return manager;
+    }
+
+    private DataSetManager createEqual(int maxActive, int maxLoaded, String... paths) {
+        manager = new DataSetManager(tracker, maxActive, maxLoaded);
+        for (String path : paths) {
+            manager.add(path, STORAGE, 1);
+        }
+        return manager;
+    }
+
+    private DataSetManager.Stats stats(String path) {
+        for (DataSetManager.Stats stats : manager.getStats()) {
+            if (stats.path.equals(path)) return stats;
+        }
+        throw new AssertionError(path);
+    }
+
+    private void assertState(String path, boolean loaded, boolean active) {
+        DataSetManager.Stats stats = stats(path);
+        assertEquals(path + " loaded", loaded, stats.loaded);
+        assertEquals(path + " active", active, stats.active);
+    }
+
+    @Test
+    public void swapWithAllLoadedActive() throws Exception {
+        create(2, 2, "a", "b", "c");
+        assertTrue(manager.activate("a").get());
+        assertTrue(manager.activate("b").get());
+        //the new data set must survive its own load, the lowest priority active one makes room
+        assertTrue(manager.activate("c").get());
+
+        assertState("a", true, true);
+        assertState("b", false, false);
+        assertState("c", true, true);
+        assertEquals(2, tracker.active.size());
+        assertEquals(2, tracker.loaded());
+        assertEquals(0, tracker.violations);
+    }
+
+    @Test
+    public void lowestPriorityIsDeactivatedFirst() throws Exception {
+        create(2, 3, "a", "b", "c", "d");
+        assertTrue(manager.activate("b").get());
+        assertTrue(manager.activate("a").get());
+        //b is older, but a has the higher priority
+        assertTrue(manager.activate("c").get());
+        assertState("a", true, true);
+        assertState("b", true, false);
+        assertState("c", true, true);
+
+        //c has the lowest priority of the active ones, b the lowest of the inactive ones
+        assertTrue(manager.activate("d").get());
+        assertState("a", true, true);
+        assertState("b", false, false);
+        assertState("c", true, false);
+        assertState("d", true, true);
+        assertEquals(0, tracker.violations);
+    }
+
+    @Test
+    public void leastRecentlyUsedIsDeactivatedFirst() throws Exception {
+        createEqual(2, 3, "a", "b", "c", "d");
+        assertTrue(manager.activate("a").get());
+        assertTrue(manager.activate("b").get());
+        //a target of a is found, b is now the least recently used
+        manager.onTrackableFound(FakeTracker.id("a", 0), "a-0", 1.0);
+        assertTrue(manager.activate("c").get());
+        assertState("a", true, true);
+        assertState("b", true, false);
+        assertState("c", true, true);
+
+        manager.touch("c");
+        assertTrue(manager.activate("d").get());
+        assertState("a", true, false);
+        assertState("b", false, false);
+        assertState("c", true, true);
+        assertState("d", true, true);
+
+        //an inactive, still loaded data set comes back without a load
+        int loads = tracker.loads;
+        assertTrue(manager.activate("a").get());
+        assertEquals(loads, tracker.loads);
+        assertState("a", true, true);
+        assertState("c", true, false);
+        assertEquals(0, tracker.violations);
+    }
+
+    @Test
+    public void swapStopsAndRestartsTheTracker() throws Exception {
+        create(1, 1, "a", "b");
+        assertTrue(manager.activate("a").get());
+        assertTrue(manager.startTracking());
+        //the fake refuses (de)activation while running
+        assertTrue(manager.activate("b").get());
+        assertTrue(tracker.running);
+        assertState("a", false, false);
+        assertState("b", true, true);
+
+        manager.stopTracking();
+        assertTrue(manager.activate("a").get());
+        assertFalse(tracker.running);
+        assertEquals(0, tracker.violations);
+    }
+
+    @Test
+    public void closeUnloadsEverything() throws Exception {
+        create(2, 3, "a", "b", "c");
+        assertTrue(manager.activate("a").get());
+        assertTrue(manager.preload("b").get());
+        assertTrue(manager.close());
+        manager = null;
+        assertEquals(0, tracker.active.size());
+        assertEquals(0, tracker.loaded());
+        assertEquals(0, tracker.violations);
+    }
+
+    //tracker with the rules of Vuforia's ObjectTracker that matter for swaps
+    private static class FakeTracker implements VuforiaTracker {
+
+        final List<DataSet> active = new ArrayList<DataSet>();
+        final List<DataSet> created = new ArrayList<DataSet>();
+        boolean running;
+        int loads;
+        int violations;
+
+        static int id(String path, int index) {
+            return path.hashCode() * 10 + index;
+        }
+
+        synchronized int loaded() {
+            int count = 0;
+            for (DataSet dataSet : created) {
+                if (dataSet.path != null) count++;
+            }
+            return count;
+        }
+
+        @Override
+        public boolean init() {
+            return true;
+        }
+
+        @Override
+        public boolean deinit() {
+            return true;
+        }
+
+        @Override
+        public boolean isInitialized() {
+            return true;
+        }
+
+        @Override
+        public synchronized boolean start() {
+            running = true;
+            return true;
+        }
+
+        @Override
+        public synchronized void stop() {
+            running = false;
+        }
+
+        @Override
+        public synchronized VuforiaDataSet createDataSet() {
+            DataSet dataSet = new DataSet();
+            created.add(dataSet);
+            return dataSet;
+        }
+
+        @Override
+        public synchronized boolean activateDataSet(VuforiaDataSet dataSet) {
+            DataSet fake = (DataSet) dataSet;
+            if (running || fake.path == null || active.contains(fake)) {
+                violations++;
+                return false;
+            }
+            active.add(fake);
+            return true;
+        }
+
+        @Override
+        public synchronized boolean deactivateDataSet(VuforiaDataSet dataSet) {
+            if (running) {
+                violations++;
+                return false;
+            }
+            return active.remove(dataSet);
+        }
+
+        @Override
+        public synchronized boolean destroyDataSet(VuforiaDataSet dataSet) {
+            if (active.contains(dataSet)) {
+                violations++;
+                return false;
+            }
+            ((DataSet) dataSet).path = null;
+            created.remove(dataSet);
+            return true;
+        }
+
+        @Override
+        public synchronized boolean isActive(VuforiaDataSet dataSet) {
+            return active.contains(dataSet);
+        }
+
+        private class DataSet implements VuforiaDataSet {
+
+            String path;
+
+            @Override
+            public boolean load(String path, int storageType) {
+                synchronized (FakeTracker.this) {
+                    loads++;
+                    this.path = path;
+                }
+                return true;
+            }
+
+            @Override
+            public int getTrackableCount() {
+                return 2;
+            }
+
+            @Override
+            public int getTrackableId(int index) {
+                return id(path, index);
+            }
+
+            @Override
+            public String getTrackableName(int index) {
+                return path + "-" + index;
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.github.daemontus.ar.vuforia;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Round trip of pose logs through {@link PoseRecorder} and {@link PoseLogReader}.
+ */
+public class PoseRecorderTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("poses", ".log");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    private static String name(int id, int length) {
+        StringBuilder builder = new StringBuilder();
+        //multi-byte UTF-8 characters, so the encoded name is longer than the string
+        builder.append("target-").append(id).append("-\u017elut\u00fd-\u20ac-");
+        while (builder.length() < length) {
+            builder.append((char) ('a' + builder.length() % 26));
+        }
+        return builder.toString();
+    }
+
+    //frames with the given trackables, every trackable has a name on every frame like Vuforia reports it
+    private static PoseFrame[] frames(int frameCount, int trackables, int nameLength) {
+        Random random = new Random(5);
+        PoseFrame[] frames = new PoseFrame[frameCount];
+        float[] pose = new float[PoseFrame.POSE_SIZE];
+        for (int f = 0; f < frameCount; f++) {
+            PoseFrame frame = new PoseFrame();
+            frame.timestamp = 100.0 + f / 30.0;
+            for (int t = 0; t < trackables; t++) {
+                for (int k = 0; k < pose.length; k++) {
+                    pose[k] = random.nextFloat() * 200f - 100f;
+                }
+                //ids are sparse and not in order
+                int id = (t * 7 + f) % trackables * 3;
+                frame.add(id, name(id, nameLength), pose, 0);
+            }
+            frames[f] = frame;
+        }
+        return frames;
+    }
+
+    private void assertRoundTrip(PoseFrame[] written) throws IOException {
+        PoseRecorder recorder = new PoseRecorder(file);
+        for (PoseFrame frame : written) {
+            recorder.record(frame);
+        }
+        recorder.close();
+
+        PoseLogReader reader = new PoseLogReader(file, false);
+        PoseFrame read = new PoseFrame();
+        float[] expected = new float[PoseFrame.POSE_SIZE];
+        float[] actual = new float[PoseFrame.POSE_SIZE];
+        for (int f = 0; f < written.length; f++) {
+            assertTrue("frame " + f, reader.next(read));
+            PoseFrame frame = written[f];
+            //timestamps are stored in microseconds
+            assertEquals(frame.timestamp, read.getTimestamp(), 1e-6);
+            assertEquals(frame.getCount(), read.getCount());
+            for (int t = 0; t < frame.getCount(); t++) {
+                assertEquals(frame.getId(t), read.getId(t));
+                assertEquals(frame.getName(t), read.getName(t));
+                frame.getPose(t, expected, 0);
+                read.getPose(t, actual, 0);
+                for (int k = 0; k < expected.length; k++) {
+                    assertEquals(expected[k], actual[k], 0f);
+                }
+            }
+        }
+        assertFalse(reader.next(read));
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        assertRoundTrip(frames(2000, 3, 20));
+    }
+
+    @Test
+    public void longNamesOfManyTrackables() throws IOException {
+        //the first frame alone holds ~100 kB of names, more than the record buffer
+        assertRoundTrip(frames(50, 40, 2000));
+    }
+
+    @Test
+    public void newNameBeforeKnownTrackables() throws IOException {
+        //every frame starts with a new, long named trackable and continues with 39 known ones,
+        //the name eats into the space the frame reserved for the others
+        Random random = new Random(6);
+        PoseFrame[] frames = new PoseFrame[300];
+        float[] pose = new float[PoseFrame.POSE_SIZE];
+        for (int f = 0; f < frames.length; f++) {
+            PoseFrame frame = new PoseFrame();
+            frame.timestamp = f / 30.0;
+            int newId = 100 + f;
+            frame.add(newId, name(newId, 500 + random.nextInt(1500)), pose, 0);
+            for (int t = 0; t < 39; t++) {
+                pose[0] = random.nextFloat();
+                frame.add(t, name(t, 10), pose, 0);
+            }
+            frames[f] = frame;
+        }
+        assertRoundTrip(frames);
+    }
+
+    @Test
+    public void frameWithoutNames() throws IOException {
+        PoseFrame frame = new PoseFrame();
+        frame.timestamp = 1.5;
+        frame.add(4, null, new float[PoseFrame.POSE_SIZE], 0);
+        PoseRecorder recorder = new PoseRecorder(file);
+        recorder.record(frame);
+        recorder.close();
+
+        PoseLogReader reader = new PoseLogReader(file, false);
+        PoseFrame read = new PoseFrame();
+        assertTrue(reader.next(read));
+        assertEquals(4, read.getId(0));
+        assertNull(read.getName(0));
+        assertFalse(reader.next(read));
+    }
+}
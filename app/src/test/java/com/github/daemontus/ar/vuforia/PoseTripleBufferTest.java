@@ -0,0 +1,128 @@
+package com.github.daemontus.ar.vuforia;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Single threaded semantics of {@link PoseTripleBuffer} and a bounded stress test with a
+ * publisher and an acquirer thread.
+ */
+public class PoseTripleBufferTest {
+
+    private static final int FRAMES = 200000;
+    private static final int TRACKABLES = 4;
+
+    //fills the back frame with values all derived from the sequence number
+    private static void publish(PoseTripleBuffer buffer, int sequence) {
+        PoseFrame frame = buffer.back();
+        frame.clear();
+        frame.timestamp = sequence;
+        float[] pose = new float[PoseFrame.POSE_SIZE];
+        for (int t = 0; t < TRACKABLES; t++) {
+            for (int i = 0; i < pose.length; i++) {
+                pose[i] = sequence + t;
+            }
+            frame.add(sequence, null, pose, 0);
+        }
+        buffer.publish(sequence);
+    }
+
+    //returns the sequence number of the front frame, fails if the frame mixes two publishes
+    private static int check(PoseTripleBuffer buffer) {
+        PoseFrame frame = buffer.front();
+        int sequence = (int) frame.timestamp;
+        assertEquals("capture time", sequence, buffer.frontCaptureNanos());
+        assertEquals("count", TRACKABLES, frame.getCount());
+        float[] pose = new float[PoseFrame.POSE_SIZE];
+        for (int t = 0; t < TRACKABLES; t++) {
+            assertEquals("id", sequence, frame.getId(t));
+            frame.getPose(t, pose, 0);
+            for (int i = 0; i < pose.length; i++) {
+                assertEquals("pose", sequence + t, pose[i], 0f);
+            }
+        }
+        return sequence;
+    }
+
+    @Test
+    public void acquireSeesLatestFrameOnce() {
+        PoseTripleBuffer buffer = new PoseTripleBuffer();
+        assertFalse(buffer.acquire());
+        assertEquals(0, buffer.frontCaptureNanos());
+
+        publish(buffer, 1);
+        publish(buffer, 2);
+        publish(buffer, 3);
+        assertTrue(buffer.acquire());
+        assertEquals(3, check(buffer));
+        assertFalse(buffer.acquire());
+        assertEquals(3, check(buffer));
+
+        publish(buffer, 4);
+        assertTrue(buffer.acquire());
+        assertEquals(4, check(buffer));
+
+        publish(buffer, 5);
+        buffer.clear();
+        assertEquals(0, buffer.front().getCount());
+        assertEquals(0, buffer.frontCaptureNanos());
+        assertFalse(buffer.acquire());
+    }
+
+    @Test(timeout = 60000)
+    public void concurrentHandoffKeepsOrderAndIntegrity() throws InterruptedException {
+        final PoseTripleBuffer buffer = new PoseTripleBuffer();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final int[] acquired = new int[1];
+        final int[] last = new int[1];
+
+        Thread publisher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int sequence = 1; sequence <= FRAMES && failure.get() == null; sequence++) {
+                    publish(buffer, sequence);
+                }
+            }
+        }, "publisher");
+
+        Thread acquirer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    int previous = 0;
+                    while (previous < FRAMES && failure.get() == null) {
+                        if (!buffer.acquire()) {
+                            Thread.yield();
+                            continue;
+                        }
+                        int sequence = check(buffer);
+                        //frames may be dropped, but never repeated or reordered
+                        assertTrue("sequence " + sequence + " after " + previous, sequence > previous);
+                        previous = sequence;
+                        acquired[0]++;
+                    }
+                    last[0] = previous;
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }
+        }, "acquirer");
+
+        acquirer.start();
+        publisher.start();
+        publisher.join();
+        acquirer.join();
+
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        //the last frame is never dropped
+        assertEquals(FRAMES, last[0]);
+        assertTrue(acquired[0] > 0);
+    }
+}
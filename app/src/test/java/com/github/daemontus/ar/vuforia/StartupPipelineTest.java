@@ -0,0 +1,123 @@
+package com.github.daemontus.ar.vuforia;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * End of a {@link StartupPipeline} is reported exactly once, whatever calls cancel() afterwards.
+ */
+public class StartupPipelineTest {
+
+    //callbacks run on the calling thread
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static class Recorder implements StartupPipeline.Listener {
+
+        final List<Boolean> finished = new ArrayList<Boolean>();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        @Override
+        public void onStageProgress(String stage, int percent) {
+        }
+
+        @Override
+        public void onStageFinished(String stage, long millis) {
+        }
+
+        @Override
+        public void onStageFailed(String stage, Exception e) {
+        }
+
+        @Override
+        public synchronized void onFinished(boolean success) {
+            finished.add(success);
+            done.countDown();
+        }
+
+        synchronized List<Boolean> finished() {
+            return new ArrayList<Boolean>(finished);
+        }
+    }
+
+    private static final StartupPipeline.Task NOTHING = new StartupPipeline.Task() {
+        @Override
+        public void run(StartupPipeline.Progress progress) {
+        }
+    };
+
+    @Test
+    public void cancelAfterSuccessIsIgnored() throws Exception {
+        StartupPipeline pipeline = new StartupPipeline(DIRECT);
+        Recorder recorder = new Recorder();
+        pipeline.addListener(recorder);
+        pipeline.add("a", NOTHING);
+        pipeline.add("b", NOTHING, "a");
+        pipeline.start();
+        assertTrue(recorder.done.await(5, TimeUnit.SECONDS));
+        assertTrue(pipeline.awaitIdle(5000));
+
+        //what stopAR does with every pipeline
+        pipeline.cancel();
+        assertEquals(1, recorder.finished().size());
+        assertEquals(Boolean.TRUE, recorder.finished().get(0));
+    }
+
+    @Test
+    public void cancelAfterFailureIsIgnored() throws Exception {
+        StartupPipeline pipeline = new StartupPipeline(DIRECT);
+        Recorder recorder = new Recorder();
+        pipeline.addListener(recorder);
+        pipeline.add("a", new StartupPipeline.Task() {
+            @Override
+            public void run(StartupPipeline.Progress progress) throws Exception {
+                throw new Exception("failing stage");
+            }
+        });
+        pipeline.add("b", NOTHING, "a");
+        pipeline.start();
+        assertTrue(recorder.done.await(5, TimeUnit.SECONDS));
+        assertTrue(pipeline.awaitIdle(5000));
+
+        pipeline.cancel();
+        assertEquals(1, recorder.finished().size());
+        assertEquals(Boolean.FALSE, recorder.finished().get(0));
+    }
+
+    @Test
+    public void cancelWhileRunningFinishesOnce() throws Exception {
+        StartupPipeline pipeline = new StartupPipeline(DIRECT);
+        Recorder recorder = new Recorder();
+        pipeline.addListener(recorder);
+        final CountDownLatch running = new CountDownLatch(1);
+        pipeline.add("a", new StartupPipeline.Task() {
+            @Override
+            public void run(StartupPipeline.Progress progress) throws Exception {
+                running.countDown();
+                //until interrupted by cancel
+                Thread.sleep(10000);
+            }
+        });
+        pipeline.add("b", NOTHING, "a");
+        pipeline.start();
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+
+        pipeline.cancel();
+        assertTrue(pipeline.awaitIdle(5000));
+        pipeline.cancel();
+        assertEquals(1, recorder.finished().size());
+        assertEquals(Boolean.FALSE, recorder.finished().get(0));
+    }
+}
@@ -0,0 +1,257 @@
+package com.github.daemontus.ar.benchmarks;
+
+import com.github.daemontus.ar.libgdx.PoseConverter;
+import com.github.daemontus.ar.libgdx.SmoothingPoseFilter;
+import com.github.daemontus.ar.vuforia.AppSession;
+import com.github.daemontus.ar.vuforia.FakeVuforiaPlatform;
+import com.github.daemontus.ar.vuforia.PoseFrame;
+import com.github.daemontus.ar.vuforia.SessionControl;
+import com.github.daemontus.ar.vuforia.TrackingResults;
+import com.github.daemontus.ar.vuforia.VuforiaCamera;
+import com.github.daemontus.ar.vuforia.VuforiaDataSet;
+import com.github.daemontus.ar.vuforia.VuforiaException;
+import com.github.daemontus.ar.vuforia.VuforiaRenderer;
+import com.github.daemontus.ar.vuforia.VuforiaTracker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs {@link AppSession} and {@link VuforiaRenderer} against {@link FakeVuforiaPlatform}: the
+ * start up pipeline and shutdown, the warm pause/resume and the per-frame loop.
+ *
+ * initMicros sets the latency of every Vuforia.init() step and of the camera start, which
+ * shows how much of the startup is spent waiting on the SDK versus in our own code.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FakeSessionBenchmark {
+
+    //STORAGE_TYPE.STORAGE_APPRESOURCE and ActivityInfo.SCREEN_ORIENTATION_PORTRAIT
+    private static final int STORAGE_APPRESOURCE = 1;
+    private static final int SCREEN_ORIENTATION_PORTRAIT = 1;
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    @Param({"0", "1000"})
+    public long initMicros;
+
+    private final FakeVuforiaPlatform platform = new FakeVuforiaPlatform();
+    private final SmoothingPoseFilter filter = new SmoothingPoseFilter();
+    private final PoseConverter converter = new PoseConverter();
+    private final float[] pose = new float[PoseFrame.POSE_SIZE];
+
+    @Setup
+    public void setup() {
+        platform.setStrict(true);
+        platform.setLatency(FakeVuforiaPlatform.Call.INIT, initMicros * 1000);
+        platform.setLatency(FakeVuforiaPlatform.Call.CAMERA_START, initMicros * 1000);
+        platform.addTarget(0, "stones", Poses.pose(0.3f));
+        platform.addTarget(1, "chips", Poses.pose(-0.5f));
+    }
+
+    /**
+     * initAR until the camera and trackers run (start up stages, onInitARDone, startAR), then stopAR.
+     */
+    @Benchmark
+    public boolean startStop() throws Exception {
+        Session session = new Session(platform);
+        session.start();
+        session.stop();
+        return session.app.isARRunning();
+    }
+
+    /**
+     * Warm pause and resume of a running session, only camera and trackers are restarted.
+     */
+    @Benchmark
+    public boolean pauseResume(StartedSession started) throws Exception {
+        AppSession app = started.session.app;
+        app.pauseAR();
+        app.resumeAR();
+        return app.isARRunning();
+    }
+
+    /**
+     * VuforiaRenderer.processFrame and the pose work of Renderer.placeContent, minus GL.
+     * Decoupled sessions get a tracking update (the Vuforia thread's work) before every frame.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public float[] frame(RunningSession running) {
+        if (running.decoupled) {
+            running.session.platform.deliverUpdate();
+        }
+        TrackingResults results = running.session.renderer.processFrame();
+        for (int i = 0, count = results.getCount(); i < count; i++) {
+            results.getPose(i, pose, 0);
+            filter.filter(results.getId(i), pose, 0, results.getTimestamp());
+            converter.setPose(pose, 0, false);
+        }
+        return converter.getModelView();
+    }
+
+    /**
+     * A session which is initialized and tracking, for the warm pause/resume.
+     */
+    @State(Scope.Thread)
+    public static class StartedSession {
+
+        Session session;
+
+        @Setup
+        public void setup() throws Exception {
+            FakeVuforiaPlatform platform = new FakeVuforiaPlatform();
+            platform.setStrict(true);
+            session = new Session(platform);
+            session.start();
+        }
+
+        @TearDown
+        public void tearDown() throws Exception {
+            session.stop();
+        }
+    }
+
+    /**
+     * A session which is initialized and tracking, with the renderer active.
+     */
+    @State(Scope.Thread)
+    public static class RunningSession {
+
+        @Param({"true", "false"})
+        public boolean decoupled;
+
+        Session session;
+
+        @Setup
+        public void setup() throws Exception {
+            FakeVuforiaPlatform platform = new FakeVuforiaPlatform();
+            platform.addTarget(0, "stones", Poses.pose(0.3f));
+            platform.addTarget(1, "chips", Poses.pose(-0.5f));
+            session = new Session(platform);
+            session.renderer.setTrackingDecoupled(decoupled);
+            session.start();
+        }
+
+        @TearDown
+        public void tearDown() throws Exception {
+            session.stop();
+        }
+    }
+
+    /**
+     * The application side of a session, what ArActivity does with a single data set.
+     * The benchmark thread stands in for the UI thread, the fake runs posted work on its own.
+     */
+    static class Session implements SessionControl {
+
+        final FakeVuforiaPlatform platform;
+        final AppSession app;
+        final VuforiaRenderer renderer;
+
+        private final CountDownLatch ready = new CountDownLatch(1);
+        private volatile VuforiaException error;
+        private VuforiaDataSet dataSet;
+
+        Session(FakeVuforiaPlatform platform) {
+            this.platform = platform;
+            app = new AppSession(this, platform);
+            renderer = new VuforiaRenderer(app);
+            renderer.initRendering();
+        }
+
+        void start() throws Exception {
+            app.initAR(SCREEN_ORIENTATION_PORTRAIT);
+            if (!ready.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                throw new IllegalStateException("Session did not start");
+            }
+            if (error != null) {
+                throw new IllegalStateException(error.getString());
+            }
+        }
+
+        void stop() throws VuforiaException {
+            renderer.mIsActive = false;
+            app.stopAR();
+        }
+
+        @Override
+        public boolean doInitTrackers() {
+            return platform.tracker().init();
+        }
+
+        @Override
+        public boolean doLoadTrackersData() {
+            VuforiaTracker tracker = platform.tracker();
+            dataSet = tracker.createDataSet();
+            return dataSet.load("StonesAndChips.xml", STORAGE_APPRESOURCE) && tracker.activateDataSet(dataSet);
+        }
+
+        @Override
+        public boolean doStartTrackers() {
+            return platform.tracker().start();
+        }
+
+        @Override
+        public boolean doStopTrackers() {
+            platform.tracker().stop();
+            return true;
+        }
+
+        @Override
+        public boolean doUnloadTrackersData() {
+            VuforiaTracker tracker = platform.tracker();
+            boolean result = tracker.deactivateDataSet(dataSet) && tracker.destroyDataSet(dataSet);
+            dataSet = null;
+            return result;
+        }
+
+        @Override
+        public boolean doDeinitTrackers() {
+            return platform.tracker().deinit();
+        }
+
+        @Override
+        public void onInitARDone(VuforiaException exception) {
+            //fake main thread, like ArActivity
+            if (exception == null) {
+                renderer.mIsActive = true;
+                try {
+                    app.startAR(VuforiaCamera.DIRECTION_DEFAULT);
+                } catch (VuforiaException e) {
+                    error = e;
+                }
+            } else {
+                error = exception;
+            }
+            ready.countDown();
+        }
+
+        @Override
+        public void onQCARUpdate(PoseFrame frame) {
+            renderer.onTrackingUpdate(frame);
+        }
+
+        @Override
+        public void onCameraStarted() {
+        }
+    }
+}
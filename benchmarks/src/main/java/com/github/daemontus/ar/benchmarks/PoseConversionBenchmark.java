@@ -0,0 +1,91 @@
+package com.github.daemontus.ar.benchmarks;
+
+import com.github.daemontus.ar.libgdx.PoseConverter;
+import com.github.daemontus.ar.libgdx.SmoothingPoseFilter;
+import com.github.daemontus.ar.vuforia.SampleMath;
+import com.vuforia.Matrix44F;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-trackable pose processing done every frame by the renderer.
+ *
+ * The legacy variant replays the axis swap, Matrix44FInverse and Matrix44FTranspose sequence
+ * originally found in Renderer.setProjectionAndCamera, the others use the current code.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PoseConversionBenchmark {
+
+    private static final int FRAMES = 64;
+
+    private final float[] poses = new float[FRAMES * 12];
+    private final float[] scratch = new float[12];
+    private final float[] glMatrix = new float[16];
+    private final PoseConverter converter = new PoseConverter();
+    private final SmoothingPoseFilter filter = new SmoothingPoseFilter();
+    private int frame;
+    private double time;
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < FRAMES; i++) {
+            System.arraycopy(Poses.pose(i * 0.02f), 0, poses, i * 12, 12);
+        }
+    }
+
+    @Benchmark
+    public Matrix44F legacy() {
+        int offset = next();
+        Poses.toColumnMajor(poses, offset, glMatrix);
+        Matrix44F modelViewMatrix = new Matrix44F();
+        modelViewMatrix.setData(glMatrix);
+        float[] raw = modelViewMatrix.getData();
+        //back camera
+        float[] rotated = new float[]{
+                raw[1], -raw[0], raw[2], raw[3],
+                raw[5], -raw[4], raw[6], raw[7],
+                raw[9], -raw[8], raw[10], raw[11],
+                raw[13], -raw[12], raw[14], raw[15]
+        };
+        Matrix44F rot = new Matrix44F();
+        rot.setData(rotated);
+        Matrix44F inverse = SampleMath.Matrix44FInverse(rot);
+        return SampleMath.Matrix44FTranspose(inverse);
+    }
+
+    @Benchmark
+    public float[] converter() {
+        converter.setPose(poses, next(), false);
+        return converter.getInverseModelView();
+    }
+
+    @Benchmark
+    public float[] filterAndConverter() {
+        System.arraycopy(poses, next(), scratch, 0, 12);
+        time += 1.0 / 30.0;
+        filter.filter(0, scratch, 0, time);
+        converter.setPose(scratch, 0, false);
+        return converter.getModelView();
+    }
+
+    private int next() {
+        frame = (frame + 1) % FRAMES;
+        return frame * 12;
+    }
+}
@@ -0,0 +1,95 @@
+package com.github.daemontus.ar.benchmarks;
+
+import com.github.daemontus.ar.vuforia.PoseFrame;
+import com.github.daemontus.ar.vuforia.PoseTripleBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stress test of the tracking to render handoff: one thread publishes frames as fast as it can
+ * while another acquires them.
+ *
+ * Every published frame is filled with its sequence number, the reader checks that it never
+ * sees a torn frame (mixed sequence numbers or a wrong count) or goes back in time, and fails
+ * the run with IllegalStateException if it does. The reader result is the age of the acquired
+ * frame (publish to acquire) in nanoseconds.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+public class PoseHandoffBenchmark {
+
+    // keeps sequence numbers exactly representable as float
+    private static final int SEQUENCE_MASK = 0xFFFFF;
+
+    private final PoseTripleBuffer buffer = new PoseTripleBuffer();
+
+    // writer thread only
+    private int written;
+    // reader thread only
+    private double lastSeen = -1;
+
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(1)
+    public void publish() {
+        int sequence = ++written & SEQUENCE_MASK;
+        PoseFrame frame = buffer.back();
+        frame.clear();
+        frame.timestamp = written;
+        int count = 1 + sequence % 3;
+        frame.ensureCapacity(count);
+        for (int i = 0; i < count * PoseFrame.POSE_SIZE; i++) {
+            frame.poses[i] = sequence;
+        }
+        for (int i = 0; i < count; i++) {
+            frame.ids[i] = sequence;
+        }
+        frame.count = count;
+        buffer.publish(System.nanoTime());
+    }
+
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(1)
+    public long acquire() {
+        if (!buffer.acquire()) {
+            return 0;
+        }
+        PoseFrame frame = buffer.front();
+        if (frame.timestamp <= lastSeen) {
+            throw new IllegalStateException("Frame " + frame.timestamp + " after " + lastSeen);
+        }
+        lastSeen = frame.timestamp;
+        int sequence = (int) frame.timestamp & SEQUENCE_MASK;
+        if (frame.count != 1 + sequence % 3) {
+            throw new IllegalStateException("Torn count in frame " + frame.timestamp);
+        }
+        for (int i = 0; i < frame.count; i++) {
+            if (frame.ids[i] != sequence) {
+                throw new IllegalStateException("Torn id in frame " + frame.timestamp);
+            }
+        }
+        for (int i = 0; i < frame.count * PoseFrame.POSE_SIZE; i++) {
+            if (frame.poses[i] != sequence) {
+                throw new IllegalStateException("Torn pose in frame " + frame.timestamp);
+            }
+        }
+        return System.nanoTime() - buffer.frontCaptureNanos();
+    }
+}
@@ -0,0 +1,93 @@
+package com.github.daemontus.ar.benchmarks;
+
+import com.github.daemontus.ar.libgdx.PoseConverter;
+import com.github.daemontus.ar.libgdx.SmoothingPoseFilter;
+import com.github.daemontus.ar.vuforia.PoseFrame;
+import com.github.daemontus.ar.vuforia.PoseLogReader;
+import com.github.daemontus.ar.vuforia.PoseRecorder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a pose log at maximum speed, alone and through the filter and converter.
+ *
+ * Pass a log recorded on a device with -p trace=/path/to/log, by default a synthetic
+ * trace with two targets is generated.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PoseReplayBenchmark {
+
+    private static final int SYNTHETIC_FRAMES = 100000;
+
+    @Param("")
+    public String trace;
+
+    private PoseLogReader reader;
+    private final PoseFrame frame = new PoseFrame();
+    private final SmoothingPoseFilter filter = new SmoothingPoseFilter();
+    private final PoseConverter converter = new PoseConverter();
+
+    @Setup
+    public void setup() throws IOException {
+        File file;
+        if (trace.isEmpty()) {
+            file = File.createTempFile("poses", ".log");
+            file.deleteOnExit();
+            PoseRecorder recorder = new PoseRecorder(file);
+            PoseFrame synthetic = new PoseFrame();
+            for (int i = 0; i < SYNTHETIC_FRAMES; i++) {
+                synthetic.clear();
+                synthetic.timestamp = i / 30.0;
+                synthetic.add(0, "stones", Poses.pose(i * 0.01f), 0);
+                if (i % 4 != 0) {
+                    synthetic.add(1, "chips", Poses.pose(-i * 0.02f), 0);
+                }
+                recorder.record(synthetic);
+            }
+            recorder.close();
+        } else {
+            file = new File(trace);
+        }
+        reader = new PoseLogReader(file, false);
+    }
+
+    @Benchmark
+    public PoseFrame replay() {
+        if (!reader.next(frame)) {
+            reader.rewind();
+            reader.next(frame);
+        }
+        return frame;
+    }
+
+    @Benchmark
+    public float[] replayFilterConvert() {
+        PoseFrame f = replay();
+        float[] poses = f.poses;
+        for (int i = 0; i < f.count; i++) {
+            int offset = i * PoseFrame.POSE_SIZE;
+            filter.filter(f.ids[i], poses, offset, f.timestamp);
+            converter.setPose(poses, offset, false);
+        }
+        return converter.getModelView();
+    }
+}
@@ -0,0 +1,36 @@
+package com.github.daemontus.ar.benchmarks;
+
+/**
+ * Synthetic tracker poses for benchmarks.
+ */
+final class Poses {
+
+    private Poses() {
+    }
+
+    /**
+     * @return row-major 3x4 pose (as Matrix34F.getData()) rotated by angle around a tilted axis,
+     * 300 units in front of the camera
+     */
+    static float[] pose(float angle) {
+        float x = 0.36f, y = 0.48f, z = 0.8f;
+        float c = (float) Math.cos(angle), s = (float) Math.sin(angle), t = 1 - c;
+        return new float[] {
+                t * x * x + c, t * x * y - s * z, t * x * z + s * y, 12f,
+                t * x * y + s * z, t * y * y + c, t * y * z - s * x, -7f,
+                t * x * z - s * y, t * y * z + s * x, t * z * z + c, 300f
+        };
+    }
+
+    /**
+     * Expands a row-major 3x4 pose into a column-major 4x4 matrix (what Tool.convertPose2GLMatrix does).
+     */
+    static void toColumnMajor(float[] pose, int offset, float[] out) {
+        for (int c = 0; c < 4; c++) {
+            out[c * 4] = pose[offset + c];
+            out[c * 4 + 1] = pose[offset + 4 + c];
+            out[c * 4 + 2] = pose[offset + 8 + c];
+            out[c * 4 + 3] = c == 3 ? 1f : 0f;
+        }
+    }
+}
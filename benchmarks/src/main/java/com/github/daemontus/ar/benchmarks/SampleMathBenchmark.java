@@ -0,0 +1,132 @@
+package com.github.daemontus.ar.benchmarks;
+
+import com.github.daemontus.ar.vuforia.MatrixMath;
+import com.github.daemontus.ar.vuforia.SampleMath;
+import com.vuforia.Matrix44F;
+import com.vuforia.Vec2F;
+import com.vuforia.Vec3F;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SampleMath (Vuforia vector types, allocating) next to the MatrixMath kernel it delegates to
+ * (flat arrays, allocation free).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SampleMathBenchmark {
+
+    private Matrix44F modelView;
+    private Matrix44F inverseProjection;
+    private Vec3F point;
+    private Vec3F lineStart;
+    private Vec3F lineEnd;
+    private Vec3F planeCenter;
+    private Vec3F planeNormal;
+    private Vec2F screenPoint;
+
+    private final float[] matrix = new float[16];
+    private final float[] inverse = new float[16];
+    private final float[] inverseProjectionData = new float[16];
+    private final float[] vector = new float[3];
+    private final float[] line = { 0, 0, 0, 10, 20, 300 };
+    private final float[] result = new float[9];
+    private final float[] center = new float[3];
+    private final float[] normal = new float[3];
+
+    @Setup
+    public void setup() {
+        float[] pose = Poses.pose(0.3f);
+        Poses.toColumnMajor(pose, 0, matrix);
+        modelView = new Matrix44F();
+        modelView.setData(matrix);
+
+        //inverse of a typical camera projection (near 1, far 1000, 60 degrees)
+        float f = 1f / (float) Math.tan(Math.toRadians(30));
+        float[] projection = {
+                f / 1.77f, 0, 0, 0,
+                0, f, 0, 0,
+                0, 0, -1001f / 999f, -1,
+                0, 0, -2000f / 999f, 0
+        };
+        MatrixMath.invert(projection, 0, inverseProjectionData, 0);
+        inverseProjection = new Matrix44F();
+        float[] rowMajor = new float[16];
+        MatrixMath.transpose(inverseProjectionData, 0, rowMajor, 0);
+        inverseProjection.setData(rowMajor);
+
+        point = new Vec3F(10, 20, 30);
+        lineStart = new Vec3F(0, 0, 0);
+        lineEnd = new Vec3F(10, 20, 300);
+        planeCenter = new Vec3F(0, 0, 250);
+        planeNormal = new Vec3F(0, 0.2f, 1);
+        screenPoint = new Vec2F(700, 400);
+        vector[0] = 10;
+        vector[1] = 20;
+        vector[2] = 30;
+        center[2] = 250;
+        normal[1] = 0.2f;
+        normal[2] = 1;
+    }
+
+    @Benchmark
+    public Matrix44F sampleMathInverse() {
+        return SampleMath.Matrix44FInverse(modelView);
+    }
+
+    @Benchmark
+    public float[] matrixMathInvert() {
+        MatrixMath.invert(matrix, 0, inverse, 0);
+        return inverse;
+    }
+
+    @Benchmark
+    public Vec3F sampleMathTransform() {
+        return SampleMath.Vec3FTransform(point, modelView);
+    }
+
+    @Benchmark
+    public float[] matrixMathTransform() {
+        MatrixMath.transformPoint(matrix, 0, vector, 0, result, 0);
+        return result;
+    }
+
+    @Benchmark
+    public Vec3F sampleMathLinePlane() {
+        return SampleMath.linePlaneIntersection(lineStart, lineEnd, planeCenter, planeNormal);
+    }
+
+    @Benchmark
+    public void matrixMathLinePlane(Blackhole blackhole) {
+        blackhole.consume(MatrixMath.linePlaneIntersection(line, 0, line, 3, center, 0, normal, 0, result, 6));
+    }
+
+    @Benchmark
+    public Vec3F sampleMathScreenToPlane() {
+        return SampleMath.getPointToPlaneIntersection(inverseProjection, modelView, 1280, 720,
+                screenPoint, planeCenter, planeNormal);
+    }
+
+    @Benchmark
+    public void matrixMathScreenToPlane(Blackhole blackhole) {
+        MatrixMath.invert(matrix, 0, inverse, 0);
+        blackhole.consume(MatrixMath.projectScreenPointToPlane(inverseProjectionData, 0, inverse, 0, 0.1f, 0.1f,
+                center, 0, normal, 0, result, 0, result, 3, result, 6));
+    }
+}
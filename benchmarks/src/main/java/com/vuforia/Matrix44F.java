@@ -0,0 +1,24 @@
+package com.vuforia;
+
+/**
+ * JVM stand-in for the Vuforia JNI type. Like the original, data is copied in and out.
+ */
+public class Matrix44F {
+
+    private float[] data = new float[16];
+
+    public Matrix44F() {
+    }
+
+    public Matrix44F(Matrix44F other) {
+        setData(other.data);
+    }
+
+    public float[] getData() {
+        return data.clone();
+    }
+
+    public void setData(float[] data) {
+        System.arraycopy(data, 0, this.data, 0, 16);
+    }
+}
@@ -0,0 +1,19 @@
+package com.vuforia;
+
+/**
+ * JVM stand-in for the Vuforia renderer singleton, only provides the video background configuration.
+ */
+public class Renderer {
+
+    private static final Renderer INSTANCE = new Renderer();
+
+    private final VideoBackgroundConfig config = new VideoBackgroundConfig();
+
+    public static Renderer getInstance() {
+        return INSTANCE;
+    }
+
+    public VideoBackgroundConfig getVideoBackgroundConfig() {
+        return config;
+    }
+}
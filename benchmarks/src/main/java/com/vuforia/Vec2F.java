@@ -0,0 +1,32 @@
+package com.vuforia;
+
+/**
+ * JVM stand-in for the Vuforia JNI type. Like the original, data is copied in and out.
+ */
+public class Vec2F {
+
+    private float[] data = new float[2];
+
+    public Vec2F() {
+    }
+
+    public Vec2F(float x, float y) {
+        data = new float[] { x, y };
+    }
+
+    public Vec2F(float[] data) {
+        setData(data);
+    }
+
+    public Vec2F(Vec2F other) {
+        setData(other.data);
+    }
+
+    public float[] getData() {
+        return data.clone();
+    }
+
+    public void setData(float[] data) {
+        System.arraycopy(data, 0, this.data, 0, 2);
+    }
+}
@@ -0,0 +1,32 @@
+package com.vuforia;
+
+/**
+ * JVM stand-in for the Vuforia JNI type. Like the original, data is copied in and out.
+ */
+public class Vec2I {
+
+    private int[] data = new int[2];
+
+    public Vec2I() {
+    }
+
+    public Vec2I(int x, int y) {
+        data = new int[] { x, y };
+    }
+
+    public Vec2I(int[] data) {
+        setData(data);
+    }
+
+    public Vec2I(Vec2I other) {
+        setData(other.data);
+    }
+
+    public int[] getData() {
+        return data.clone();
+    }
+
+    public void setData(int[] data) {
+        System.arraycopy(data, 0, this.data, 0, 2);
+    }
+}
@@ -0,0 +1,32 @@
+package com.vuforia;
+
+/**
+ * JVM stand-in for the Vuforia JNI type. Like the original, data is copied in and out.
+ */
+public class Vec3F {
+
+    private float[] data = new float[3];
+
+    public Vec3F() {
+    }
+
+    public Vec3F(float x, float y, float z) {
+        data = new float[] { x, y, z };
+    }
+
+    public Vec3F(float[] data) {
+        setData(data);
+    }
+
+    public Vec3F(Vec3F other) {
+        setData(other.data);
+    }
+
+    public float[] getData() {
+        return data.clone();
+    }
+
+    public void setData(float[] data) {
+        System.arraycopy(data, 0, this.data, 0, 3);
+    }
+}
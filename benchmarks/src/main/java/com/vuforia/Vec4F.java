@@ -0,0 +1,32 @@
+package com.vuforia;
+
+/**
+ * JVM stand-in for the Vuforia JNI type. Like the original, data is copied in and out.
+ */
+public class Vec4F {
+
+    private float[] data = new float[4];
+
+    public Vec4F() {
+    }
+
+    public Vec4F(float x, float y, float z, float w) {
+        data = new float[] { x, y, z, w };
+    }
+
+    public Vec4F(float[] data) {
+        setData(data);
+    }
+
+    public Vec4F(Vec4F other) {
+        setData(other.data);
+    }
+
+    public float[] getData() {
+        return data.clone();
+    }
+
+    public void setData(float[] data) {
+        System.arraycopy(data, 0, this.data, 0, 4);
+    }
+}
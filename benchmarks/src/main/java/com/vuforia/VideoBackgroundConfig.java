@@ -0,0 +1,26 @@
+package com.vuforia;
+
+/**
+ * JVM stand-in for the Vuforia JNI type.
+ */
+public class VideoBackgroundConfig {
+
+    private Vec2I size = new Vec2I(1280, 720);
+    private int reflection;
+
+    public Vec2I getSize() {
+        return new Vec2I(size);
+    }
+
+    public void setSize(Vec2I size) {
+        this.size = new Vec2I(size);
+    }
+
+    public int getReflection() {
+        return reflection;
+    }
+
+    public void setReflection(int reflection) {
+        this.reflection = reflection;
+    }
+}
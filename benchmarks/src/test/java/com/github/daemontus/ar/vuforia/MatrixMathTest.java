@@ -0,0 +1,231 @@
+package com.github.daemontus.ar.vuforia;
+
+import com.vuforia.Matrix44F;
+import com.vuforia.Vec3F;
+import com.vuforia.Vec4F;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares {@link MatrixMath} with the results of the legacy {@link SampleMath} routines it replaced.
+ *
+ * SampleMath reads its matrices row-major (element 3 is the x translation), MatrixMath column-major,
+ * so the legacy side always gets the transposed data.
+ */
+public class MatrixMathTest {
+
+    private static final float EPSILON = 1e-4f;
+
+    //rigid pose rotated around a tilted axis, 300 units in front of the camera
+    private static float[] pose(float angle) {
+        float x = 0.36f, y = 0.48f, z = 0.8f;
+        float c = (float) Math.cos(angle), s = (float) Math.sin(angle), t = 1 - c;
+        return new float[] {
+                t * x * x + c, t * x * y + s * z, t * x * z - s * y, 0f,
+                t * x * y - s * z, t * y * y + c, t * y * z + s * x, 0f,
+                t * x * z + s * y, t * y * z - s * x, t * z * z + c, 0f,
+                12f, -7f, 300f, 1f
+        };
+    }
+
+    //perspective projection, 60 degree vertical field of view
+    private static float[] projection() {
+        float f = 1f / (float) Math.tan(Math.toRadians(30));
+        float near = 1f, far = 1000f;
+        float[] m = new float[16];
+        m[0] = f / 1.77f;
+        m[5] = f;
+        m[10] = (far + near) / (near - far);
+        m[11] = -1f;
+        m[14] = 2f * far * near / (near - far);
+        return m;
+    }
+
+    //general matrix with no structure at all
+    private static float[] general() {
+        return new float[] {
+                2f, 0.5f, -1f, 0.1f,
+                0.3f, 3f, 0.2f, -0.4f,
+                -0.7f, 0.1f, 1.5f, 0.25f,
+                4f, -2f, 6f, 1.2f
+        };
+    }
+
+    private static float[] transpose(float[] m) {
+        float[] out = new float[16];
+        MatrixMath.transpose(m, 0, out, 0);
+        return out;
+    }
+
+    private static Matrix44F matrix(float[] data) {
+        Matrix44F m = new Matrix44F();
+        m.setData(data);
+        return m;
+    }
+
+    @Test
+    public void invertMatchesTransposedLegacyInverse() {
+        float[][] matrices = { pose(0.3f), pose(2.5f), projection(), general() };
+        for (float[] m : matrices) {
+            float[] out = new float[16];
+            assertTrue(MatrixMath.invert(m, 0, out, 0));
+            float[] legacy = transpose(SampleMath.Matrix44FInverse(matrix(m)).getData());
+            assertArrayEquals(legacy, out, EPSILON);
+        }
+    }
+
+    @Test
+    public void invertRejectsSingularMatrix() {
+        float[] m = general();
+        //second column equal to the first
+        System.arraycopy(m, 0, m, 4, 4);
+        float[] out = new float[16];
+        out[0] = 42f;
+        assertFalse(MatrixMath.invert(m, 0, out, 0));
+        assertTrue(out[0] == 42f);
+    }
+
+    @Test
+    public void invertRigidMatchesLegacyInverse() {
+        for (float angle = 0f; angle < 6.3f; angle += 0.7f) {
+            float[] m = pose(angle);
+            float[] out = new float[16];
+            MatrixMath.invertRigid(m, 0, out, 0);
+            float[] legacy = transpose(SampleMath.Matrix44FInverse(matrix(m)).getData());
+            assertArrayEquals(legacy, out, EPSILON);
+        }
+    }
+
+    @Test
+    public void multiplyMatchesReference() {
+        float[] a = projection();
+        float[] b = pose(0.8f);
+        float[] out = new float[16];
+        MatrixMath.multiply(a, 0, b, 0, out, 0);
+
+        //SampleMath has no multiply, the legacy code composed transforms vector by vector
+        float[] expected = new float[16];
+        for (int c = 0; c < 4; c++) {
+            Vec4F column = new Vec4F(b[c * 4], b[c * 4 + 1], b[c * 4 + 2], b[c * 4 + 3]);
+            float[] result = SampleMath.Vec4FTransform(column, matrix(transpose(a))).getData();
+            System.arraycopy(result, 0, expected, c * 4, 4);
+        }
+        assertArrayEquals(expected, out, EPSILON);
+    }
+
+    @Test
+    public void multiplyAllowsAliasing() {
+        float[] a = general();
+        float[] b = pose(1.1f);
+        float[] expected = new float[16];
+        MatrixMath.multiply(a, 0, b, 0, expected, 0);
+
+        float[] buffer = new float[32];
+        System.arraycopy(a, 0, buffer, 0, 16);
+        System.arraycopy(b, 0, buffer, 16, 16);
+        MatrixMath.multiply(buffer, 0, buffer, 16, buffer, 0);
+        float[] out = new float[16];
+        System.arraycopy(buffer, 0, out, 0, 16);
+        assertArrayEquals(expected, out, 0f);
+    }
+
+    @Test
+    public void transformsMatchLegacy() {
+        float[][] matrices = { pose(0.3f), projection(), general() };
+        float[] v = { 10f, -20f, 150f, 1f };
+        for (float[] m : matrices) {
+            Matrix44F legacy = matrix(transpose(m));
+            float[] out = new float[4];
+
+            MatrixMath.transformPoint(m, 0, v, 0, out, 0);
+            float[] expected = SampleMath.Vec3FTransform(new Vec3F(v[0], v[1], v[2]), legacy).getData();
+            assertArrayEquals(expected, slice(out, 3), EPSILON);
+
+            MatrixMath.transformNormal(m, 0, v, 0, out, 0);
+            expected = SampleMath.Vec3FTransformNormal(new Vec3F(v[0], v[1], v[2]), legacy).getData();
+            assertArrayEquals(expected, slice(out, 3), EPSILON);
+
+            MatrixMath.transformVec4(m, 0, v, 0, out, 0);
+            expected = SampleMath.Vec4FTransform(new Vec4F(v[0], v[1], v[2], v[3]), legacy).getData();
+            assertArrayEquals(expected, out, EPSILON);
+        }
+    }
+
+    @Test
+    public void linePlaneIntersectionMatchesLegacy() {
+        float[] start = { 0f, 0f, 0f };
+        float[] end = { 10f, 20f, 300f };
+        float[] center = { 0f, 0f, 250f };
+        float[][] normals = { { 0f, 0.2f, 1f }, { 0f, 0f, 1f }, { 1f, -1f, 0.5f } };
+        for (float[] normal : normals) {
+            float[] out = new float[3];
+            assertTrue(MatrixMath.linePlaneIntersection(start, 0, end, 0, center, 0, normal, 0, out, 0));
+            Vec3F expected = legacyLinePlaneIntersection(vec(start), vec(end), vec(center), vec(normal));
+            //large coordinates, compare relative to the distance travelled
+            assertArrayEquals(expected.getData(), out, 300f * EPSILON);
+        }
+    }
+
+    @Test
+    public void linePlaneIntersectionRejectsParallelLine() {
+        float[] start = { 0f, 0f, 0f };
+        float[] end = { 10f, 20f, 0f };
+        float[] center = { 0f, 0f, 250f };
+        float[] normal = { 0f, 0f, 1f };
+        float[] out = new float[3];
+        assertFalse(MatrixMath.linePlaneIntersection(start, 0, end, 0, center, 0, normal, 0, out, 0));
+        assertNull(legacyLinePlaneIntersection(vec(start), vec(end), vec(center), vec(normal)));
+        assertNull(SampleMath.linePlaneIntersection(vec(start), vec(end), vec(center), vec(normal)));
+    }
+
+    @Test
+    public void sampleMathDelegateMatchesLegacy() {
+        Vec3F start = new Vec3F(1f, 2f, 3f);
+        Vec3F end = new Vec3F(-5f, 30f, 400f);
+        Vec3F center = new Vec3F(0f, 0f, 250f);
+        Vec3F normal = new Vec3F(0.1f, 0.2f, 1f);
+        Vec3F expected = legacyLinePlaneIntersection(start, end, center, normal);
+        //twice, the delegate reuses its scratch arrays
+        for (int i = 0; i < 2; i++) {
+            Vec3F result = SampleMath.linePlaneIntersection(start, end, center, normal);
+            assertArrayEquals(expected.getData(), result.getData(), 300f * EPSILON);
+        }
+    }
+
+    //SampleMath.linePlaneIntersection before it delegated to MatrixMath
+    private static Vec3F legacyLinePlaneIntersection(Vec3F lineStart, Vec3F lineEnd,
+                                                     Vec3F pointOnPlane, Vec3F planeNormal) {
+        Vec3F lineDir = SampleMath.Vec3FSub(lineEnd, lineStart);
+        lineDir = SampleMath.Vec3FNormalize(lineDir);
+
+        Vec3F planeDir = SampleMath.Vec3FSub(pointOnPlane, lineStart);
+
+        float n = SampleMath.Vec3FDot(planeNormal, planeDir);
+        float d = SampleMath.Vec3FDot(planeNormal, lineDir);
+
+        if (Math.abs(d) < 0.00001) {
+            return null;
+        }
+
+        float dist = n / d;
+
+        Vec3F offset = SampleMath.Vec3FScale(lineDir, dist);
+
+        return SampleMath.Vec3FAdd(lineStart, offset);
+    }
+
+    private static Vec3F vec(float[] v) {
+        return new Vec3F(v[0], v[1], v[2]);
+    }
+
+    private static float[] slice(float[] v, int length) {
+        float[] out = new float[length];
+        System.arraycopy(v, 0, out, 0, length);
+        return out;
+    }
+}
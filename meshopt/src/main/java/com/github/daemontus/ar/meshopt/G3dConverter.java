@@ -0,0 +1,194 @@
+package com.github.daemontus.ar.meshopt;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.g3d.model.data.ModelData;
+import com.badlogic.gdx.graphics.g3d.model.data.ModelMaterial;
+import com.badlogic.gdx.graphics.g3d.model.data.ModelMesh;
+import com.badlogic.gdx.graphics.g3d.model.data.ModelMeshPart;
+import com.badlogic.gdx.graphics.g3d.model.data.ModelNode;
+import com.badlogic.gdx.graphics.g3d.model.data.ModelNodePart;
+import com.badlogic.gdx.graphics.g3d.model.data.ModelTexture;
+import com.github.daemontus.ar.libgdx.CachedModel;
+
+import java.io.File;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Turns parsed g3db data into a {@link CachedModel} without creating any GL objects.
+ *
+ * The result matches what CachedModelLoader.snapshot produces for the same asset loaded by the
+ * asset manager: parts of a mesh share one index buffer in file order, materials keep their
+ * order, nodes are stored depth first and textures use the default model loader parameters.
+ */
+public class G3dConverter {
+
+    private static final int GL_LINEAR = 0x2601;
+    private static final int GL_REPEAT = 0x2901;
+
+    private G3dConverter() {
+    }
+
+    /**
+     * @param textureDir asset path of the directory holding the model ("" for the assets root)
+     */
+    public static CachedModel convert(ModelData data, String textureDir) {
+        CachedModel cached = new CachedModel();
+
+        //libgdx looks parts up by id, the first one wins
+        Map<String, Integer> partIndex = new HashMap<String, Integer>();
+        for (ModelMesh mesh : data.meshes) {
+            int meshIndex = cached.meshes.size();
+            int indexCount = 0;
+            for (ModelMeshPart part : mesh.parts) {
+                indexCount += part.indices.length;
+            }
+            short[] indices = new short[indexCount];
+            int offset = 0;
+            for (ModelMeshPart part : mesh.parts) {
+                CachedModel.PartData partData = new CachedModel.PartData();
+                partData.id = part.id;
+                partData.mesh = meshIndex;
+                partData.primitiveType = part.primitiveType;
+                partData.offset = offset;
+                partData.size = part.indices.length;
+                System.arraycopy(part.indices, 0, indices, offset, part.indices.length);
+                offset += part.indices.length;
+                if (!partIndex.containsKey(part.id)) {
+                    partIndex.put(part.id, cached.parts.size());
+                }
+                cached.parts.add(partData);
+            }
+            cached.meshes.add(convert(mesh, indices));
+        }
+
+        Map<String, Integer> materialIndex = new HashMap<String, Integer>();
+        for (ModelMaterial material : data.materials) {
+            materialIndex.put(material.id, cached.materials.size());
+            cached.materials.add(convert(material, textureDir));
+        }
+
+        for (ModelNode node : data.nodes) {
+            convert(node, -1, cached, partIndex, materialIndex);
+        }
+        return cached;
+    }
+
+    private static CachedModel.MeshData convert(ModelMesh mesh, short[] indices) {
+        int count = mesh.attributes.length;
+        CachedModel.MeshData data = new CachedModel.MeshData();
+        data.usage = new int[count];
+        data.numComponents = new int[count];
+        data.type = new int[count];
+        data.normalized = new boolean[count];
+        data.unit = new int[count];
+        data.alias = new String[count];
+        for (int a = 0; a < count; a++) {
+            VertexAttribute attribute = mesh.attributes[a];
+            data.usage[a] = attribute.usage;
+            data.numComponents[a] = attribute.numComponents;
+            data.type[a] = attribute.type;
+            data.normalized[a] = attribute.normalized;
+            data.unit[a] = attribute.unit;
+            data.alias[a] = attribute.alias;
+        }
+        data.vertices = FloatBuffer.wrap(mesh.vertices);
+        data.indices = ShortBuffer.wrap(indices);
+        return data;
+    }
+
+    private static CachedModel.MaterialData convert(ModelMaterial material, String textureDir) {
+        CachedModel.MaterialData data = new CachedModel.MaterialData();
+        data.id = material.id;
+        convertColor(material.diffuse, CachedModel.MaterialData.DIFFUSE, data.diffuse, data);
+        convertColor(material.specular, CachedModel.MaterialData.SPECULAR, data.specular, data);
+        convertColor(material.ambient, CachedModel.MaterialData.AMBIENT, data.ambient, data);
+        convertColor(material.emissive, CachedModel.MaterialData.EMISSIVE, data.emissive, data);
+        //same conditions as Model.convertMaterial
+        if (material.shininess > 0f) {
+            data.flags |= CachedModel.MaterialData.SHININESS;
+            data.shininess = material.shininess;
+        }
+        if (material.opacity != 1f) {
+            data.flags |= CachedModel.MaterialData.BLENDING;
+            data.opacity = material.opacity;
+        }
+        if (material.textures != null) {
+            for (ModelTexture texture : material.textures) {
+                if (texture.usage != ModelTexture.USAGE_DIFFUSE) continue;
+                //the loader prefixes the host directory, the app resolves textures next to the asset
+                String name = new File(texture.fileName).getName();
+                data.flags |= CachedModel.MaterialData.DIFFUSE_TEXTURE;
+                data.texture = textureDir.isEmpty() ? name : textureDir + "/" + name;
+                data.minFilter = GL_LINEAR;
+                data.magFilter = GL_LINEAR;
+                data.uWrap = GL_REPEAT;
+                data.vWrap = GL_REPEAT;
+            }
+        }
+        return data;
+    }
+
+    private static void convertColor(Color color, int flag, float[] out, CachedModel.MaterialData data) {
+        if (color != null) {
+            data.flags |= flag;
+            out[0] = color.r;
+            out[1] = color.g;
+            out[2] = color.b;
+            out[3] = color.a;
+        }
+    }
+
+    private static void convert(ModelNode node, int parent, CachedModel cached,
+                                Map<String, Integer> partIndex, Map<String, Integer> materialIndex) {
+        CachedModel.NodeData data = new CachedModel.NodeData();
+        data.id = node.id;
+        data.parent = parent;
+        float[] t = data.transform;
+        if (node.translation != null) {
+            t[0] = node.translation.x;
+            t[1] = node.translation.y;
+            t[2] = node.translation.z;
+        }
+        if (node.rotation != null) {
+            t[3] = node.rotation.x;
+            t[4] = node.rotation.y;
+            t[5] = node.rotation.z;
+            t[6] = node.rotation.w;
+        } else {
+            t[6] = 1f;
+        }
+        if (node.scale != null) {
+            t[7] = node.scale.x;
+            t[8] = node.scale.y;
+            t[9] = node.scale.z;
+        } else {
+            t[7] = t[8] = t[9] = 1f;
+        }
+        if (node.parts != null) {
+            data.parts = new int[node.parts.length];
+            data.materials = new int[node.parts.length];
+            for (int p = 0; p < node.parts.length; p++) {
+                ModelNodePart part = node.parts[p];
+                data.parts[p] = indexOf(partIndex, part.meshPartId);
+                data.materials[p] = indexOf(materialIndex, part.materialId);
+            }
+        }
+
+        int index = cached.nodes.size();
+        cached.nodes.add(data);
+        if (node.children != null) {
+            for (ModelNode child : node.children) {
+                convert(child, index, cached, partIndex, materialIndex);
+            }
+        }
+    }
+
+    private static int indexOf(Map<String, Integer> index, String id) {
+        Integer value = index.get(id);
+        return value == null ? -1 : value;
+    }
+}
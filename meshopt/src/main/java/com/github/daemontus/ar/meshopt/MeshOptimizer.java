@@ -0,0 +1,200 @@
+package com.github.daemontus.ar.meshopt;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.g3d.loader.G3dModelLoader;
+import com.badlogic.gdx.graphics.g3d.model.data.ModelData;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+import com.badlogic.gdx.utils.UBJsonReader;
+import com.github.daemontus.ar.libgdx.CachedModel;
+import com.github.daemontus.ar.libgdx.MeshCache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Build time mesh optimization of a g3db asset, runs on a plain JVM (see the optimizeModels task).
+ *
+ * The model is parsed, duplicate vertices are welded, triangles are reordered for the vertex
+ * cache and vertices for fetch locality, then simplified levels of detail are generated. The
+ * results are written as {@link MeshCache} files hashed with the source asset, so the app maps
+ * them exactly like the cache it writes itself, and stale ones are ignored the same way.
+ *
+ * Usage: MeshOptimizer &lt;assets dir&gt; &lt;model&gt; &lt;cache file&gt; &lt;output dir&gt;, the model and cache
+ * paths are relative to the assets.
+ */
+public class MeshOptimizer {
+
+    //fraction of triangles kept by each shipped level of detail, finest first
+    private static final float[] LOD_RATIOS = { 0.4f, 0.15f };
+
+    //VertexAttributes.Usage.Position
+    private static final int USAGE_POSITION = 1;
+    private static final int GL_TRIANGLES = 0x0004;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 4) {
+            System.err.println("Usage: MeshOptimizer <assets dir> <model> <cache file> <output dir>");
+            System.exit(1);
+        }
+        File assets = new File(args[0]);
+        String modelFile = args[1];
+        String cacheFile = args[2];
+        File output = new File(args[3]);
+
+        File source = new File(assets, modelFile);
+        byte[] hash;
+        InputStream input = new FileInputStream(source);
+        try {
+            hash = MeshCache.hash(input);
+        } finally {
+            input.close();
+        }
+
+        //the loader composes node transforms with native matrix code
+        GdxNativesLoader.load();
+        ModelData data = new G3dModelLoader(new UBJsonReader()).parseModel(new FileHandle(source));
+        String parent = new File(modelFile).getParent();
+        CachedModel model = G3dConverter.convert(data, parent == null ? "" : parent.replace(File.separatorChar, '/'));
+
+        System.out.println("Optimizing " + modelFile);
+        report("source", model);
+        CachedModel optimized = optimize(model);
+        report("optimized", optimized);
+        MeshCache.write(new File(output, cacheFile), hash, optimized);
+
+        for (int level = 0; level < LOD_RATIOS.length; level++) {
+            CachedModel lod = simplify(optimized, LOD_RATIOS[level]);
+            report("lod" + (level + 1), lod);
+            MeshCache.write(new File(output, MeshCache.lodFile(cacheFile, level + 1)), hash, lod);
+        }
+    }
+
+    /**
+     * Welds duplicates, then reorders triangles of every triangle list part and the vertices.
+     */
+    public static CachedModel optimize(CachedModel source) {
+        CachedModel result = copyStructure(source);
+        for (int m = 0; m < source.meshes.size(); m++) {
+            CachedModel.MeshData mesh = source.meshes.get(m);
+            int stride = mesh.stride();
+            float[] vertices = mesh.readVertices();
+            short[] indices = mesh.readIndices();
+            int count = stride == 0 ? 0 : vertices.length / stride;
+            if (indices.length > 0) {
+                count = VertexRemapper.weld(vertices, stride, count, indices);
+                for (CachedModel.PartData part : result.parts) {
+                    if (part.mesh == m && part.primitiveType == GL_TRIANGLES) {
+                        VertexCacheOptimizer.optimize(indices, part.offset, part.size, count);
+                    }
+                }
+                count = VertexRemapper.reorderForFetch(vertices, stride, count, indices);
+            }
+            result.meshes.add(copy(mesh, vertices, count * stride, indices));
+        }
+        return result;
+    }
+
+    /**
+     * Simplifies an optimized model and optimizes the result again.
+     */
+    public static CachedModel simplify(CachedModel source, float ratio) {
+        CachedModel simplified = copyStructure(source);
+        for (int m = 0; m < source.meshes.size(); m++) {
+            CachedModel.MeshData mesh = source.meshes.get(m);
+            int stride = mesh.stride();
+            int position = mesh.offset(USAGE_POSITION);
+            float[] vertices = mesh.readVertices();
+            short[] indices = mesh.readIndices();
+            if (position < 0 || indices.length == 0) {
+                simplified.meshes.add(copy(mesh, vertices, vertices.length, indices));
+                continue;
+            }
+
+            int partCount = 0;
+            for (CachedModel.PartData part : simplified.parts) {
+                if (part.mesh == m) partCount++;
+            }
+            CachedModel.PartData[] parts = new CachedModel.PartData[partCount];
+            int[] offsets = new int[partCount];
+            int[] sizes = new int[partCount];
+            boolean[] triangles = new boolean[partCount];
+            int p = 0;
+            for (CachedModel.PartData part : simplified.parts) {
+                if (part.mesh != m) continue;
+                parts[p] = part;
+                offsets[p] = part.offset;
+                sizes[p] = part.size;
+                triangles[p] = part.primitiveType == GL_TRIANGLES;
+                p++;
+            }
+            short[] result = QuadricSimplifier.simplify(vertices, stride, position, vertices.length / stride,
+                    indices, offsets, sizes, triangles, ratio);
+            for (p = 0; p < partCount; p++) {
+                parts[p].offset = offsets[p];
+                parts[p].size = sizes[p];
+            }
+            simplified.meshes.add(copy(mesh, vertices, vertices.length, result));
+        }
+        return optimize(simplified);
+    }
+
+    private static void report(String label, CachedModel model) {
+        int vertices = 0;
+        int triangles = 0;
+        int misses = 0;
+        for (int m = 0; m < model.meshes.size(); m++) {
+            CachedModel.MeshData mesh = model.meshes.get(m);
+            int stride = mesh.stride();
+            int count = stride == 0 ? 0 : mesh.vertices.limit() / stride;
+            vertices += count;
+            short[] indices = mesh.readIndices();
+            for (CachedModel.PartData part : model.parts) {
+                if (part.mesh != m || part.primitiveType != GL_TRIANGLES || indices.length == 0) continue;
+                triangles += part.size / 3;
+                misses += VertexCacheOptimizer.countMisses(indices, part.offset, part.size, count,
+                        VertexCacheOptimizer.FIFO_SIZE);
+            }
+        }
+        float acmr = triangles == 0 ? 0f : (float) misses / triangles;
+        System.out.println(String.format(Locale.US, "  %-10s vertices %7d  triangles %7d  ACMR(%d) %.3f",
+                label, vertices, triangles, VertexCacheOptimizer.FIFO_SIZE, acmr));
+    }
+
+    //new model with copies of the parts, sharing materials and nodes, meshes are added by the caller
+    private static CachedModel copyStructure(CachedModel source) {
+        CachedModel result = new CachedModel();
+        //nothing was loaded at run time, the app reports 0 as the cold load time
+        result.sourceLoadMillis = 0;
+        for (CachedModel.PartData part : source.parts) {
+            CachedModel.PartData copy = new CachedModel.PartData();
+            copy.id = part.id;
+            copy.mesh = part.mesh;
+            copy.primitiveType = part.primitiveType;
+            copy.offset = part.offset;
+            copy.size = part.size;
+            result.parts.add(copy);
+        }
+        result.materials.addAll(source.materials);
+        result.nodes.addAll(source.nodes);
+        return result;
+    }
+
+    private static CachedModel.MeshData copy(CachedModel.MeshData mesh, float[] vertices, int length, short[] indices) {
+        CachedModel.MeshData data = new CachedModel.MeshData();
+        data.usage = mesh.usage;
+        data.numComponents = mesh.numComponents;
+        data.type = mesh.type;
+        data.normalized = mesh.normalized;
+        data.unit = mesh.unit;
+        data.alias = mesh.alias;
+        data.vertices = FloatBuffer.wrap(Arrays.copyOf(vertices, length));
+        data.indices = ShortBuffer.wrap(indices);
+        return data;
+    }
+}
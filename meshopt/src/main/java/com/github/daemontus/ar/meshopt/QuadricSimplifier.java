@@ -0,0 +1,422 @@
+package com.github.daemontus.ar.meshopt;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Simplifies a triangle mesh by edge collapses ordered by quadric error (Garland and Heckbert).
+ *
+ * Every point carries the sum of the squared distances to the planes of its triangles, the
+ * cheapest edge is collapsed first. Collapses are half edge collapses onto an existing point,
+ * so no attribute has to be interpolated and the vertex buffer stays as it is, the simplified
+ * index buffer only uses fewer of its vertices.
+ *
+ * Topology is built on positions, not vertices: exporters split vertices along normal and
+ * texture seams, and collapsing such vertices one by one would crack the seams open. When a
+ * point moves, every corner takes the vertex of the target point with the closest attributes.
+ * Open borders get extra planes perpendicular to them so they do not shrink, and collapses
+ * flipping a triangle are rejected.
+ */
+public class QuadricSimplifier {
+
+    //weight of the planes keeping open borders in place, relative to the triangle planes
+    private static final double BORDER_WEIGHT = 10.0;
+    //minimal cosine between a triangle normal before and after a collapse
+    private static final double MIN_NORMAL_DOT = 0.2;
+
+    private QuadricSimplifier() {
+    }
+
+    /**
+     * Simplifies the triangle list parts of one mesh, the others are copied.
+     *
+     * @param offsets start of every part in indices, updated to the result
+     * @param sizes index count of every part, updated to the result
+     * @param triangles which parts are triangle lists
+     * @param ratio fraction of triangles to keep
+     * @return new index buffer
+     */
+    public static short[] simplify(float[] vertices, int stride, int position, int vertexCount, short[] indices,
+                                   int[] offsets, int[] sizes, boolean[] triangles, float ratio) {
+        //vertices with the same position form one point
+        int[] pointOf = new int[vertexCount];
+        Map<PositionKey, Integer> pointIndex = new HashMap<PositionKey, Integer>();
+        float[] points = new float[vertexCount * 3];
+        int pointCount = 0;
+        for (int v = 0; v < vertexCount; v++) {
+            int base = v * stride + position;
+            PositionKey key = new PositionKey(vertices[base], vertices[base + 1], vertices[base + 2]);
+            Integer point = pointIndex.get(key);
+            if (point == null) {
+                point = pointCount++;
+                pointIndex.put(key, point);
+                System.arraycopy(vertices, base, points, point * 3, 3);
+            }
+            pointOf[v] = point;
+        }
+        int[][] pointVertices = group(pointOf, pointCount);
+
+        int triangleCount = 0;
+        for (int p = 0; p < offsets.length; p++) {
+            if (triangles[p]) triangleCount += sizes[p] / 3;
+        }
+
+        //working copy of all triangles (points and vertices of the corners), dead ones are skipped
+        int[] corners = new int[triangleCount * 3];
+        int[] cornerVertices = new int[triangleCount * 3];
+        boolean[] dead = new boolean[triangleCount];
+        boolean[] locked = new boolean[pointCount];
+        int t = 0;
+        for (int p = 0; p < offsets.length; p++) {
+            if (triangles[p]) {
+                for (int i = 0; i + 2 < sizes[p]; i += 3, t++) {
+                    for (int k = 0; k < 3; k++) {
+                        int v = indices[offsets[p] + i + k] & 0xFFFF;
+                        cornerVertices[t * 3 + k] = v;
+                        corners[t * 3 + k] = pointOf[v];
+                    }
+                }
+            } else {
+                //points and lines would not follow the collapses
+                for (int i = 0; i < sizes[p]; i++) {
+                    locked[pointOf[indices[offsets[p] + i] & 0xFFFF]] = true;
+                }
+            }
+        }
+
+        int[][] pointTriangles = new int[pointCount][];
+        int[] pointTriangleCount = new int[pointCount];
+        for (int i = 0; i < corners.length; i++) {
+            pointTriangleCount[corners[i]]++;
+        }
+        for (int point = 0; point < pointCount; point++) {
+            pointTriangles[point] = new int[Math.max(4, pointTriangleCount[point])];
+            pointTriangleCount[point] = 0;
+        }
+        for (int i = 0; i < corners.length; i++) {
+            int point = corners[i];
+            pointTriangles[point][pointTriangleCount[point]++] = i / 3;
+        }
+
+        double[] quadrics = new double[pointCount * 10];
+        for (t = 0; t < triangleCount; t++) {
+            addTrianglePlane(points, corners, t, quadrics);
+        }
+        addBorderPlanes(points, corners, pointTriangles, pointTriangleCount, quadrics);
+
+        //candidates are never updated, stale ones are recognized by the version of their points
+        int[] version = new int[pointCount];
+        boolean[] removed = new boolean[pointCount];
+        PriorityQueue<Collapse> queue = new PriorityQueue<Collapse>();
+        for (t = 0; t < triangleCount; t++) {
+            for (int k = 0; k < 3; k++) {
+                int a = corners[t * 3 + k];
+                int b = corners[t * 3 + (k + 1) % 3];
+                push(queue, a, b, points, quadrics, locked, version);
+                push(queue, b, a, points, quadrics, locked, version);
+            }
+        }
+
+        int target = (int) (triangleCount * ratio);
+        int alive = triangleCount;
+        while (alive > target && !queue.isEmpty()) {
+            Collapse collapse = queue.poll();
+            int u = collapse.from;
+            int v = collapse.to;
+            if (removed[u] || removed[v] || collapse.fromVersion != version[u] || collapse.toVersion != version[v]) {
+                continue;
+            }
+            if (flips(u, v, points, corners, dead, pointTriangles[u], pointTriangleCount[u])) {
+                continue;
+            }
+
+            //triangles on the edge disappear, the others move from u to v
+            for (int i = 0; i < pointTriangleCount[u]; i++) {
+                int tri = pointTriangles[u][i];
+                if (dead[tri]) continue;
+                int base = tri * 3;
+                if (corners[base] == v || corners[base + 1] == v || corners[base + 2] == v) {
+                    dead[tri] = true;
+                    alive--;
+                    continue;
+                }
+                for (int k = 0; k < 3; k++) {
+                    if (corners[base + k] != u) continue;
+                    corners[base + k] = v;
+                    cornerVertices[base + k] = closest(vertices, stride, position, cornerVertices[base + k], pointVertices[v]);
+                }
+                if (pointTriangleCount[v] == pointTriangles[v].length) {
+                    pointTriangles[v] = Arrays.copyOf(pointTriangles[v], pointTriangles[v].length * 2);
+                }
+                pointTriangles[v][pointTriangleCount[v]++] = tri;
+            }
+            removed[u] = true;
+            pointTriangleCount[u] = 0;
+            for (int q = 0; q < 10; q++) {
+                quadrics[v * 10 + q] += quadrics[u * 10 + q];
+            }
+            version[v]++;
+
+            //new candidates for every edge around v
+            for (int i = 0; i < pointTriangleCount[v]; i++) {
+                int tri = pointTriangles[v][i];
+                if (dead[tri]) continue;
+                for (int k = 0; k < 3; k++) {
+                    int w = corners[tri * 3 + k];
+                    if (w == v) continue;
+                    push(queue, w, v, points, quadrics, locked, version);
+                    push(queue, v, w, points, quadrics, locked, version);
+                }
+            }
+        }
+
+        //surviving triangles keep their part and order
+        int capacity = 0;
+        for (int p = 0; p < offsets.length; p++) {
+            capacity += sizes[p];
+        }
+        short[] result = new short[capacity];
+        int size = 0;
+        t = 0;
+        for (int p = 0; p < offsets.length; p++) {
+            int offset = offsets[p];
+            int start = size;
+            if (triangles[p]) {
+                for (int i = 0; i + 2 < sizes[p]; i += 3, t++) {
+                    if (dead[t]) continue;
+                    for (int k = 0; k < 3; k++) {
+                        result[size++] = (short) cornerVertices[t * 3 + k];
+                    }
+                }
+            } else {
+                System.arraycopy(indices, offset, result, size, sizes[p]);
+                size += sizes[p];
+            }
+            offsets[p] = start;
+            sizes[p] = size - start;
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    //members of every group
+    private static int[][] group(int[] groupOf, int groupCount) {
+        int[] count = new int[groupCount];
+        for (int g : groupOf) {
+            count[g]++;
+        }
+        int[][] members = new int[groupCount][];
+        for (int g = 0; g < groupCount; g++) {
+            members[g] = new int[count[g]];
+            count[g] = 0;
+        }
+        for (int i = 0; i < groupOf.length; i++) {
+            int g = groupOf[i];
+            members[g][count[g]++] = i;
+        }
+        return members;
+    }
+
+    //the candidate whose attributes (everything but the position) are nearest to those of vertex
+    private static int closest(float[] vertices, int stride, int position, int vertex, int[] candidates) {
+        int best = candidates[0];
+        double bestDistance = Double.MAX_VALUE;
+        for (int candidate : candidates) {
+            double distance = 0;
+            for (int i = 0; i < stride; i++) {
+                if (i >= position && i < position + 3) continue;
+                double d = vertices[candidate * stride + i] - vertices[vertex * stride + i];
+                distance += d * d;
+            }
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    private static void push(PriorityQueue<Collapse> queue, int u, int v, float[] points,
+                             double[] quadrics, boolean[] locked, int[] version) {
+        if (locked[u]) return;
+        double x = points[v * 3];
+        double y = points[v * 3 + 1];
+        double z = points[v * 3 + 2];
+        double cost = error(quadrics, u, x, y, z) + error(quadrics, v, x, y, z);
+        queue.add(new Collapse(u, v, cost, version[u], version[v]));
+    }
+
+    //true if moving u onto v turns a remaining triangle of u over or makes it degenerate
+    private static boolean flips(int u, int v, float[] points, int[] corners,
+                                 boolean[] dead, int[] uTriangles, int uTriangleCount) {
+        double[] before = new double[3];
+        double[] after = new double[3];
+        for (int i = 0; i < uTriangleCount; i++) {
+            int tri = uTriangles[i];
+            if (dead[tri]) continue;
+            int base = tri * 3;
+            int a = corners[base];
+            int b = corners[base + 1];
+            int c = corners[base + 2];
+            if (a == v || b == v || c == v) continue;
+            normal(points, a, b, c, -1, -1, before);
+            normal(points, a, b, c, u, v, after);
+            double lengthBefore = length(before);
+            double lengthAfter = length(after);
+            if (lengthAfter == 0 || lengthBefore == 0) return true;
+            double dot = (before[0] * after[0] + before[1] * after[1] + before[2] * after[2]) / (lengthBefore * lengthAfter);
+            if (dot < MIN_NORMAL_DOT) return true;
+        }
+        return false;
+    }
+
+    //unnormalized normal of (a, b, c), with corner "replace" moved to the point "with"
+    private static void normal(float[] points, int a, int b, int c, int replace, int with, double[] out) {
+        int pa = (a == replace ? with : a) * 3;
+        int pb = (b == replace ? with : b) * 3;
+        int pc = (c == replace ? with : c) * 3;
+        double e1x = points[pb] - points[pa];
+        double e1y = points[pb + 1] - points[pa + 1];
+        double e1z = points[pb + 2] - points[pa + 2];
+        double e2x = points[pc] - points[pa];
+        double e2y = points[pc + 1] - points[pa + 1];
+        double e2z = points[pc + 2] - points[pa + 2];
+        out[0] = e1y * e2z - e1z * e2y;
+        out[1] = e1z * e2x - e1x * e2z;
+        out[2] = e1x * e2y - e1y * e2x;
+    }
+
+    private static double length(double[] v) {
+        return Math.sqrt(v[0] * v[0] + v[1] * v[1] + v[2] * v[2]);
+    }
+
+    //area weighted plane of the triangle, added to all three corners
+    private static void addTrianglePlane(float[] points, int[] corners, int t, double[] quadrics) {
+        double[] n = new double[3];
+        int a = corners[t * 3];
+        normal(points, a, corners[t * 3 + 1], corners[t * 3 + 2], -1, -1, n);
+        double length = length(n);
+        if (length == 0) return;
+        double area = length / 2;
+        double nx = n[0] / length;
+        double ny = n[1] / length;
+        double nz = n[2] / length;
+        double d = -(nx * points[a * 3] + ny * points[a * 3 + 1] + nz * points[a * 3 + 2]);
+        for (int k = 0; k < 3; k++) {
+            addPlane(quadrics, corners[t * 3 + k], nx, ny, nz, d, area);
+        }
+    }
+
+    //every edge used by a single triangle gets a plane through it, perpendicular to the triangle
+    private static void addBorderPlanes(float[] points, int[] corners,
+                                        int[][] pointTriangles, int[] pointTriangleCount, double[] quadrics) {
+        double[] n = new double[3];
+        for (int t = 0; t < corners.length / 3; t++) {
+            for (int k = 0; k < 3; k++) {
+                int a = corners[t * 3 + k];
+                int b = corners[t * 3 + (k + 1) % 3];
+                //another triangle with both ends means the edge is shared
+                boolean shared = false;
+                for (int i = 0; i < pointTriangleCount[a] && !shared; i++) {
+                    int other = pointTriangles[a][i];
+                    if (other == t) continue;
+                    for (int j = 0; j < 3; j++) {
+                        if (corners[other * 3 + j] == b) {
+                            shared = true;
+                            break;
+                        }
+                    }
+                }
+                if (shared) continue;
+
+                normal(points, corners[t * 3], corners[t * 3 + 1], corners[t * 3 + 2], -1, -1, n);
+                double ex = points[b * 3] - points[a * 3];
+                double ey = points[b * 3 + 1] - points[a * 3 + 1];
+                double ez = points[b * 3 + 2] - points[a * 3 + 2];
+                double px = ey * n[2] - ez * n[1];
+                double py = ez * n[0] - ex * n[2];
+                double pz = ex * n[1] - ey * n[0];
+                double length = Math.sqrt(px * px + py * py + pz * pz);
+                if (length == 0) continue;
+                px /= length;
+                py /= length;
+                pz /= length;
+                double d = -(px * points[a * 3] + py * points[a * 3 + 1] + pz * points[a * 3 + 2]);
+                double weight = BORDER_WEIGHT * (ex * ex + ey * ey + ez * ez);
+                addPlane(quadrics, a, px, py, pz, d, weight);
+                addPlane(quadrics, b, px, py, pz, d, weight);
+            }
+        }
+    }
+
+    //symmetric 4x4 matrix stored as its upper triangle: aa ab ac ad bb bc bd cc cd dd
+    private static void addPlane(double[] quadrics, int v, double a, double b, double c, double d, double weight) {
+        int q = v * 10;
+        quadrics[q] += weight * a * a;
+        quadrics[q + 1] += weight * a * b;
+        quadrics[q + 2] += weight * a * c;
+        quadrics[q + 3] += weight * a * d;
+        quadrics[q + 4] += weight * b * b;
+        quadrics[q + 5] += weight * b * c;
+        quadrics[q + 6] += weight * b * d;
+        quadrics[q + 7] += weight * c * c;
+        quadrics[q + 8] += weight * c * d;
+        quadrics[q + 9] += weight * d * d;
+    }
+
+    private static double error(double[] quadrics, int v, double x, double y, double z) {
+        int q = v * 10;
+        return x * x * quadrics[q] + 2 * x * y * quadrics[q + 1] + 2 * x * z * quadrics[q + 2] + 2 * x * quadrics[q + 3]
+                + y * y * quadrics[q + 4] + 2 * y * z * quadrics[q + 5] + 2 * y * quadrics[q + 6]
+                + z * z * quadrics[q + 7] + 2 * z * quadrics[q + 8] + quadrics[q + 9];
+    }
+
+    private static class Collapse implements Comparable<Collapse> {
+
+        final int from;
+        final int to;
+        final double cost;
+        final int fromVersion;
+        final int toVersion;
+
+        Collapse(int from, int to, double cost, int fromVersion, int toVersion) {
+            this.from = from;
+            this.to = to;
+            this.cost = cost;
+            this.fromVersion = fromVersion;
+            this.toVersion = toVersion;
+        }
+
+        @Override
+        public int compareTo(Collapse other) {
+            return Double.compare(cost, other.cost);
+        }
+    }
+
+    //position compared by bits, -0 and 0 are different points (exporters write them consistently)
+    private static class PositionKey {
+
+        private final int x;
+        private final int y;
+        private final int z;
+
+        PositionKey(float x, float y, float z) {
+            this.x = Float.floatToIntBits(x);
+            this.y = Float.floatToIntBits(y);
+            this.z = Float.floatToIntBits(z);
+        }
+
+        @Override
+        public int hashCode() {
+            return (x * 31 + y) * 31 + z;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof PositionKey)) return false;
+            PositionKey other = (PositionKey) o;
+            return other.x == x && other.y == y && other.z == z;
+        }
+    }
+}
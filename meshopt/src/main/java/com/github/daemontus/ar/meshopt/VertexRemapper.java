@@ -0,0 +1,101 @@
+package com.github.daemontus.ar.meshopt;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Vertex buffer passes that only renumber vertices, the geometry stays exactly the same.
+ *
+ * Both work in place on an interleaved float array and the index buffer referring to it and
+ * return the new vertex count, the tail of the array past it is garbage.
+ */
+public class VertexRemapper {
+
+    private VertexRemapper() {
+    }
+
+    /**
+     * Merges vertices whose attributes are bit for bit identical (exporters often split every
+     * face corner).
+     */
+    public static int weld(float[] vertices, int stride, int vertexCount, short[] indices) {
+        int[] remap = new int[vertexCount];
+        Map<VertexKey, Integer> unique = new HashMap<VertexKey, Integer>();
+        int count = 0;
+        for (int v = 0; v < vertexCount; v++) {
+            VertexKey key = new VertexKey(vertices, v * stride, stride);
+            Integer existing = unique.get(key);
+            if (existing == null) {
+                //unique vertices only move towards the front, so nothing is overwritten before it is read
+                System.arraycopy(vertices, v * stride, vertices, count * stride, stride);
+                unique.put(new VertexKey(vertices, count * stride, stride), count);
+                remap[v] = count++;
+            } else {
+                remap[v] = existing;
+            }
+        }
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = (short) remap[indices[i] & 0xFFFF];
+        }
+        return count;
+    }
+
+    /**
+     * Puts vertices in the order the index buffer first uses them, so the vertex fetch walks the
+     * buffer mostly sequentially. Vertices no index refers to are dropped.
+     */
+    public static int reorderForFetch(float[] vertices, int stride, int vertexCount, short[] indices) {
+        int[] remap = new int[vertexCount];
+        Arrays.fill(remap, -1);
+        float[] source = Arrays.copyOf(vertices, vertexCount * stride);
+        int count = 0;
+        for (int i = 0; i < indices.length; i++) {
+            int v = indices[i] & 0xFFFF;
+            if (remap[v] < 0) {
+                System.arraycopy(source, v * stride, vertices, count * stride, stride);
+                remap[v] = count++;
+            }
+            indices[i] = (short) remap[v];
+        }
+        return count;
+    }
+
+    //attribute values of one vertex, compared by their bits (so -0 and NaN payloads stay apart)
+    private static class VertexKey {
+
+        private final float[] data;
+        private final int offset;
+        private final int length;
+        private final int hash;
+
+        VertexKey(float[] data, int offset, int length) {
+            this.data = data;
+            this.offset = offset;
+            this.length = length;
+            int h = 1;
+            for (int i = 0; i < length; i++) {
+                h = 31 * h + Float.floatToRawIntBits(data[offset + i]);
+            }
+            hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof VertexKey)) return false;
+            VertexKey other = (VertexKey) o;
+            if (other.length != length || other.hash != hash) return false;
+            for (int i = 0; i < length; i++) {
+                if (Float.floatToRawIntBits(data[offset + i]) != Float.floatToRawIntBits(other.data[other.offset + i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.github.daemontus.ar.meshopt;
+
+/**
+ * Regular grids of the unit square for the optimizer tests.
+ */
+class Grids {
+
+    //position (3) and texture coordinates (2)
+    static final int STRIDE = 5;
+    static final int POSITION = 0;
+
+    private Grids() {
+    }
+
+    //(cells + 1)^2 shared vertices, the height is a bump so that no collapse is free
+    static float[] vertices(int cells) {
+        int side = cells + 1;
+        float[] vertices = new float[side * side * STRIDE];
+        for (int y = 0; y < side; y++) {
+            for (int x = 0; x < side; x++) {
+                float u = (float) x / cells, v = (float) y / cells;
+                int base = (y * side + x) * STRIDE;
+                vertices[base] = u;
+                vertices[base + 1] = v;
+                vertices[base + 2] = (float) (Math.sin(u * Math.PI) * Math.sin(v * Math.PI)) * 0.3f;
+                vertices[base + 3] = u;
+                vertices[base + 4] = v;
+            }
+        }
+        return vertices;
+    }
+
+    //two counter clockwise triangles per cell, row by row
+    static short[] indices(int cells) {
+        int side = cells + 1;
+        short[] indices = new short[cells * cells * 6];
+        int i = 0;
+        for (int y = 0; y < cells; y++) {
+            for (int x = 0; x < cells; x++) {
+                int corner = y * side + x;
+                indices[i++] = (short) corner;
+                indices[i++] = (short) (corner + 1);
+                indices[i++] = (short) (corner + side + 1);
+                indices[i++] = (short) corner;
+                indices[i++] = (short) (corner + side + 1);
+                indices[i++] = (short) (corner + side);
+            }
+        }
+        return indices;
+    }
+
+    //triangle with its corners rotated so that the smallest index comes first (keeps the winding)
+    static long triangle(short[] indices, int i) {
+        int a = indices[i] & 0xFFFF, b = indices[i + 1] & 0xFFFF, c = indices[i + 2] & 0xFFFF;
+        while (a > b || a > c) {
+            int t = a;
+            a = b;
+            b = c;
+            c = t;
+        }
+        return ((long) a << 32) | ((long) b << 16) | c;
+    }
+}
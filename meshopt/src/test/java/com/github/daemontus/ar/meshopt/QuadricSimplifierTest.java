@@ -0,0 +1,75 @@
+package com.github.daemontus.ar.meshopt;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Triangle budgets and validity of {@link QuadricSimplifier} results.
+ */
+public class QuadricSimplifierTest {
+
+    private static final int CELLS = 24;
+    private static final int TRIANGLES = CELLS * CELLS * 2;
+    private static final int VERTICES = (CELLS + 1) * (CELLS + 1);
+
+    private static void assertValid(short[] indices, int offset, int size) {
+        assertEquals(0, size % 3);
+        for (int i = offset; i < offset + size; i += 3) {
+            int a = indices[i] & 0xFFFF, b = indices[i + 1] & 0xFFFF, c = indices[i + 2] & 0xFFFF;
+            assertTrue(a < VERTICES && b < VERTICES && c < VERTICES);
+            assertTrue("degenerate triangle at " + i, a != b && b != c && a != c);
+        }
+    }
+
+    private static short[] simplify(float ratio, int[] offsets, int[] sizes) {
+        return QuadricSimplifier.simplify(Grids.vertices(CELLS), Grids.STRIDE, Grids.POSITION, VERTICES,
+                Grids.indices(CELLS), offsets, sizes, new boolean[] { true }, ratio);
+    }
+
+    @Test
+    public void hitsTriangleTargets() {
+        for (float ratio : new float[] { 0.5f, 0.4f, 0.15f }) {
+            int[] offsets = { 0 };
+            int[] sizes = { TRIANGLES * 3 };
+            short[] indices = simplify(ratio, offsets, sizes);
+            int target = (int) (TRIANGLES * ratio);
+            //a collapse removes two triangles on the inside, one on the border
+            assertTrue(ratio + ": " + sizes[0] / 3 + " > " + target, sizes[0] / 3 <= target);
+            assertTrue(ratio + ": " + sizes[0] / 3 + " < " + (target - 2), sizes[0] / 3 >= target - 2);
+            assertValid(indices, offsets[0], sizes[0]);
+        }
+    }
+
+    @Test
+    public void fullRatioKeepsTheMesh() {
+        int[] offsets = { 0 };
+        int[] sizes = { TRIANGLES * 3 };
+        short[] indices = simplify(1f, offsets, sizes);
+        assertEquals(TRIANGLES * 3, sizes[0]);
+        assertArrayEquals(Grids.indices(CELLS), indices);
+    }
+
+    @Test
+    public void copiesOtherParts() {
+        //a triangle list followed by a line part sharing the vertices
+        short[] grid = Grids.indices(CELLS);
+        short[] lines = { 0, 1, 1, (short) (CELLS + 2) };
+        short[] indices = new short[grid.length + lines.length];
+        System.arraycopy(grid, 0, indices, 0, grid.length);
+        System.arraycopy(lines, 0, indices, grid.length, lines.length);
+        int[] offsets = { 0, grid.length };
+        int[] sizes = { grid.length, lines.length };
+
+        short[] result = QuadricSimplifier.simplify(Grids.vertices(CELLS), Grids.STRIDE, Grids.POSITION, VERTICES,
+                indices, offsets, sizes, new boolean[] { true, false }, 0.25f);
+        assertTrue(sizes[0] / 3 <= TRIANGLES / 4);
+        assertValid(result, offsets[0], sizes[0]);
+        assertEquals(lines.length, sizes[1]);
+        for (int i = 0; i < lines.length; i++) {
+            assertEquals(lines[i], result[offsets[1] + i]);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.github.daemontus.ar.meshopt;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Triangle order produced by {@link VertexCacheOptimizer}.
+ */
+public class VertexCacheOptimizerTest {
+
+    private static final int CELLS = 32;
+    private static final int VERTICES = (CELLS + 1) * (CELLS + 1);
+
+    //the grid with its triangles in random order, like many exporters leave them
+    private static short[] shuffled() {
+        short[] indices = Grids.indices(CELLS);
+        Random random = new Random(7);
+        for (int t = indices.length / 3 - 1; t > 0; t--) {
+            int other = random.nextInt(t + 1);
+            for (int c = 0; c < 3; c++) {
+                short swap = indices[t * 3 + c];
+                indices[t * 3 + c] = indices[other * 3 + c];
+                indices[other * 3 + c] = swap;
+            }
+        }
+        return indices;
+    }
+
+    private static float acmr(short[] indices, int offset, int count) {
+        int misses = VertexCacheOptimizer.countMisses(indices, offset, count, VERTICES, VertexCacheOptimizer.FIFO_SIZE);
+        return misses / (count / 3f);
+    }
+
+    private static long[] triangles(short[] indices, int offset, int count) {
+        long[] triangles = new long[count / 3];
+        for (int t = 0; t < triangles.length; t++) {
+            triangles[t] = Grids.triangle(indices, offset + t * 3);
+        }
+        Arrays.sort(triangles);
+        return triangles;
+    }
+
+    @Test
+    public void acmrImproves() {
+        short[] indices = shuffled();
+        float before = acmr(indices, 0, indices.length);
+        VertexCacheOptimizer.optimize(indices, 0, indices.length, VERTICES);
+        float after = acmr(indices, 0, indices.length);
+        //random order is close to no reuse, a regular grid can get down to 0.5
+        assertTrue("before " + before, before > 2f);
+        assertTrue("after " + after, after < 0.8f);
+    }
+
+    @Test
+    public void keepsTrianglesAndWinding() {
+        short[] indices = shuffled();
+        long[] expected = triangles(indices, 0, indices.length);
+        VertexCacheOptimizer.optimize(indices, 0, indices.length, VERTICES);
+        assertTrue(Arrays.equals(expected, triangles(indices, 0, indices.length)));
+    }
+
+    @Test
+    public void staysInsideTheRange() {
+        short[] indices = shuffled();
+        short[] original = indices.clone();
+        int offset = 300, count = 900;
+        VertexCacheOptimizer.optimize(indices, offset, count, VERTICES);
+        for (int i = 0; i < indices.length; i++) {
+            if (i < offset || i >= offset + count) {
+                assertEquals("index " + i, original[i], indices[i]);
+            }
+        }
+        assertTrue(Arrays.equals(triangles(original, offset, count), triangles(indices, offset, count)));
+        assertTrue(acmr(indices, offset, count) < acmr(original, offset, count));
+    }
+}
@@ -0,0 +1,99 @@
+package com.github.daemontus.ar.meshopt;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Vertex welding and fetch reordering of {@link VertexRemapper}.
+ */
+public class VertexRemapperTest {
+
+    private static final int CELLS = 8;
+    private static final int STRIDE = Grids.STRIDE;
+
+    //every corner of every triangle gets its own copy of the vertex
+    private static float[] split(float[] vertices, short[] indices) {
+        float[] split = new float[indices.length * STRIDE];
+        for (int i = 0; i < indices.length; i++) {
+            System.arraycopy(vertices, indices[i] * STRIDE, split, i * STRIDE, STRIDE);
+        }
+        return split;
+    }
+
+    private static short[] sequence(int count) {
+        short[] indices = new short[count];
+        for (int i = 0; i < count; i++) indices[i] = (short) i;
+        return indices;
+    }
+
+    //the i-th corner has exactly the attributes of the expected vertex
+    private static void assertCorners(float[] expected, short[] expectedIndices, float[] vertices, short[] indices) {
+        assertEquals(expectedIndices.length, indices.length);
+        for (int i = 0; i < indices.length; i++) {
+            for (int c = 0; c < STRIDE; c++) {
+                assertEquals("corner " + i, expected[expectedIndices[i] * STRIDE + c], vertices[indices[i] * STRIDE + c], 0f);
+            }
+        }
+    }
+
+    @Test
+    public void weldMergesIdenticalVertices() {
+        float[] grid = Grids.vertices(CELLS);
+        short[] gridIndices = Grids.indices(CELLS);
+        float[] vertices = split(grid, gridIndices);
+        short[] indices = sequence(gridIndices.length);
+
+        int count = VertexRemapper.weld(vertices, STRIDE, indices.length, indices);
+        assertEquals((CELLS + 1) * (CELLS + 1), count);
+        assertCorners(grid, gridIndices, vertices, indices);
+        for (short index : indices) {
+            assertTrue((index & 0xFFFF) < count);
+        }
+    }
+
+    @Test
+    public void weldKeepsSeams() {
+        //same position, different texture coordinates (a texture seam) and a signed zero
+        float[] vertices = {
+                0f, 0f, 0f, 0f, 0f,
+                1f, 0f, 0f, 1f, 0f,
+                0f, 1f, 0f, 0f, 1f,
+                1f, 0f, 0f, 0f, 0f,
+                0f, 1f, 0f, 0f, 1f,
+                0f, 1f, -0f, 0f, 1f,
+        };
+        float[] original = vertices.clone();
+        short[] indices = sequence(6);
+        short[] originalIndices = indices.clone();
+
+        int count = VertexRemapper.weld(vertices, STRIDE, 6, indices);
+        assertEquals(5, count);
+        assertEquals(indices[2], indices[4]);
+        assertCorners(original, originalIndices, vertices, indices);
+    }
+
+    @Test
+    public void reorderFollowsFirstUse() {
+        float[] grid = Grids.vertices(CELLS);
+        short[] gridIndices = Grids.indices(CELLS);
+        //reverse the triangles and leave one vertex unreferenced
+        short[] indices = new short[gridIndices.length - 6];
+        for (int t = 0; t < indices.length / 3; t++) {
+            System.arraycopy(gridIndices, gridIndices.length - 3 - t * 3, indices, t * 3, 3);
+        }
+        short[] before = indices.clone();
+        float[] vertices = grid.clone();
+
+        int count = VertexRemapper.reorderForFetch(vertices, STRIDE, grid.length / STRIDE, indices);
+        assertEquals(grid.length / STRIDE - 1, count);
+        assertCorners(grid, before, vertices, indices);
+        int next = 0;
+        for (short index : indices) {
+            if (index == next) next++;
+            assertTrue(index < next);
+        }
+        assertEquals(count, next);
+    }
+}